@@ -105,8 +105,9 @@ final class LoadSessionAction extends AbstractAction {
         new WatchedProcess(owner) {
             public void watch() {
                 try {
-                    FileInputStream in = new FileInputStream(file);
-                    DecompressibleInputStream objIn = new DecompressibleInputStream(in);
+                    InputStream in = SessionArchive.isArchive(file) ? null : new FileInputStream(file);
+                    ObjectInputStream objIn = in == null ? SessionArchive.open(file)
+                            : new DecompressibleInputStream(in);
                     Object o = objIn.readObject();
 
                     TetradMetadata metadata = null;
@@ -128,7 +129,7 @@ final class LoadSessionAction extends AbstractAction {
                         sessionWrapper = (SessionWrapper) o;
                     }
 
-                    in.close();
+                    objIn.close();
 
                     if (metadata == null) {
                         throw new NullPointerException("Could not read metadata.");
@@ -83,19 +83,14 @@ final class  SaveSessionAction extends AbstractAction {
                                                 
         // Save it.
         try {
-            FileOutputStream out = new FileOutputStream(file);              
-            ObjectOutputStream objOut = new ObjectOutputStream(out);
-
             sessionWrapper.setNewSession(false);
-            objOut.writeObject(metadata);
-            objOut.writeObject(sessionWrapper);
-            out.close();
+            SessionArchive.save(file, metadata, sessionWrapper);
 //            JOptionPane.showMessageDialog(JOptionUtils.centeringComp(),
 //                    "Session saved.");
 
-            FileInputStream in = new FileInputStream(file);
-            ObjectInputStream objIn = new ObjectInputStream(in);
+            ObjectInputStream objIn = SessionArchive.open(file);
             objIn.readObject();
+            objIn.close();
         }
         catch (Exception e2) {
             e2.printStackTrace();
@@ -0,0 +1,754 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.app;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves sessions in a container file in which large models--the contents of data sets and large matrices such as
+ * covariance matrices--are kept as separate, individually compressed entries, apart from the entry holding the rest
+ * of the session. The contents of data sets are loaded lazily, the first time they are needed (see LazyDataBox);
+ * large matrices are loaded when the session is. Shared references are preserved, since the session entry refers to
+ * each separate entry once, however many times the object is referred to.
+ * <p>
+ * A file starts with a header giving the position of an index of the entries. Saving a session to a file that
+ * already holds one appends the entries that have changed since they were last saved or loaded, together with a
+ * new session entry and index, and then points the header at the new index; entries that have not changed are not
+ * written again. Whether a model has changed is decided by comparing a fingerprint of its contents, taken when it
+ * was last saved or loaded, except for data that have not been loaded, which cannot have changed. Once more than
+ * half of a file is taken up by entries no longer in use, it is rewritten.
+ * <p>
+ * Graphs and lists of graphs are kept in the session entry, since they share nodes with the rest of the session.
+ *
+ * @author Joseph Ramsey
+ */
+public final class SessionArchive {
+
+    // The first bytes of a session archive.
+    private static final byte[] MAGIC = "TETRADSA".getBytes(StandardCharsets.US_ASCII);
+
+    // The format version.
+    private static final int VERSION = 1;
+
+    // Magic, version and the position of the index.
+    private static final int HEADER_LENGTH = 8 + 4 + 8;
+
+    // The name of the entry holding the session.
+    private static final String SESSION_ENTRY = "session";
+
+    // Data boxes and matrices with fewer cells than this are kept in the session entry.
+    private static final long MIN_CELLS = 10000;
+
+    // Files are not rewritten to recover space until they are at least this long.
+    private static final long MIN_COMPACT_LENGTH = 1 << 20;
+
+    // Kinds of data box that hold their data directly and may be kept in separate entries.
+    private static final Set<Class<?>> STORED_BOXES = new HashSet<Class<?>>(Arrays.asList(
+            DoubleDataBox.class, VerticalDoubleDataBox.class, FloatDataBox.class, LongDataBox.class,
+            IntDataBox.class, VerticalIntDataBox.class, ShortDataBox.class, ByteDataBox.class,
+            MixedDataBox.class, ColtDataBox.class));
+
+    // The entry each data box or matrix in memory was last saved to or loaded from, by identity.
+    private static final Map<Object, Entry> SOURCES = Collections.synchronizedMap(new WeakHashMap<Object, Entry>());
+
+    // Entries for data that may not have been loaded yet; these are kept when their files are rewritten.
+    private static final Map<Entry, Boolean> PENDING = Collections.synchronizedMap(new WeakHashMap<Entry, Boolean>());
+
+    // Held for reading while entries are read, and for writing while files are replaced and entries moved.
+    private static final ReentrantReadWriteLock FILES = new ReentrantReadWriteLock();
+
+    private SessionArchive() {
+    }
+
+    /**
+     * @return true if the given file is a session archive, as opposed to a session saved as a single stream of
+     * serialized objects.
+     */
+    public static boolean isArchive(File file) {
+        if (!file.isFile() || file.length() < HEADER_LENGTH) return false;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Saves the given objects (for a session, the metadata and then the session wrapper) to the given file.
+     */
+    public static synchronized void save(File file, Object... objects) throws IOException {
+        File target = file.getAbsoluteFile();
+
+        if (isArchive(target)) {
+            Writer writer = new Writer(target, target, true);
+
+            try {
+                writer.writeSession(objects);
+                writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            } finally {
+                writer.close();
+            }
+
+            writer.commit();
+
+            long live = writer.liveLength();
+
+            if (target.length() >= MIN_COMPACT_LENGTH && live < target.length() / 2) {
+                compact(target, writer.index);
+            }
+        } else {
+            File temp = tempFile(target);
+            Writer writer = new Writer(target, temp, false);
+
+            try {
+                writer.writeSession(objects);
+                writer.carryKnown();
+                writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.close();
+                temp.delete();
+                throw e;
+            }
+
+            writer.close();
+            replace(temp, target, writer);
+        }
+    }
+
+    /**
+     * Opens the session entry of the given archive for reading. Objects are read from the returned stream in the
+     * order they were saved; it should be closed afterward.
+     */
+    public static ObjectInputStream open(File file) throws IOException {
+        File source = file.getAbsoluteFile();
+        Map<String, long[]> index = readIndex(source);
+        long[] location = index.get(SESSION_ENTRY);
+
+        if (location == null) {
+            throw new IOException("No session in " + file + ".");
+        }
+
+        Entry entry = new Entry(SESSION_ENTRY, source, location[0], location[1]);
+        return new ArchiveInputStream(entry.openPayload(), source, index);
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Rewrites the target so that it holds just the given entries and any entries for data not yet loaded.
+    private static void compact(File target, Map<String, long[]> index) throws IOException {
+        File temp = tempFile(target);
+        Writer writer = new Writer(target, temp, false);
+
+        try {
+            for (Map.Entry<String, long[]> e : index.entrySet()) {
+                long[] location = e.getValue();
+                writer.copy(new Entry(e.getKey(), target, location[0], location[1]));
+            }
+
+            writer.carryKnown();
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            temp.delete();
+            throw e;
+        }
+
+        writer.close();
+        replace(temp, target, writer);
+    }
+
+    // Moves the temporary file over the target and points the entries written at it.
+    private static void replace(File temp, File target, Writer writer) throws IOException {
+        FILES.writeLock().lock();
+
+        try {
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            writer.commit();
+        } finally {
+            FILES.writeLock().unlock();
+        }
+    }
+
+    private static File tempFile(File target) throws IOException {
+        File dir = target.getParentFile();
+        return File.createTempFile(target.getName(), ".tmp", dir);
+    }
+
+    private static Map<String, long[]> readIndex(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a session archive: " + file);
+            }
+
+            int version = in.readInt();
+
+            if (version > VERSION) {
+                throw new IOException("This session was saved in a newer format (" + version + ").");
+            }
+
+            long indexOffset = in.readLong();
+            in.seek(indexOffset);
+
+            int count = in.readInt();
+            Map<String, long[]> index = new LinkedHashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long offset = in.readLong();
+                long length = in.readLong();
+                index.put(name, new long[]{offset, length});
+            }
+
+            return index;
+        }
+    }
+
+    // A fingerprint of the contents of a data box or matrix, to tell whether it has changed.
+    private static long fingerprint(Object o) {
+        long h = 0xcbf29ce484222325L;
+
+        if (o instanceof DataBox) {
+            DataBox box = (DataBox) o;
+            h = mix(mix(h, box.numRows()), box.numCols());
+
+            for (int j = 0; j < box.numCols(); j++) {
+                for (int i = 0; i < box.numRows(); i++) {
+                    Number value = box.get(i, j);
+                    h = mix(h, value == null ? 0x7ff8dead : Double.doubleToLongBits(value.doubleValue()));
+                }
+            }
+        } else {
+            TetradMatrix matrix = (TetradMatrix) o;
+            h = mix(mix(h, matrix.rows()), matrix.columns());
+
+            for (int i = 0; i < matrix.rows(); i++) {
+                for (int j = 0; j < matrix.columns(); j++) {
+                    h = mix(h, Double.doubleToLongBits(matrix.get(i, j)));
+                }
+            }
+        }
+
+        return h;
+    }
+
+    private static long mix(long h, long bits) {
+        return (h ^ bits) * 0x100000001b3L;
+    }
+
+    /**
+     * The location of an entry: its name, the file it is in, and where in the file. Each entry is written as its
+     * name followed by its deflated contents; the name is checked on reading.
+     */
+    private static final class Entry implements LazyDataBox.Loader {
+        private final String name;
+        private File file;
+        private long offset;
+        private long length;
+
+        // The fingerprint of the contents when last loaded or saved.
+        private long fingerprint;
+
+        private Entry(String name, File file, long offset, long length) {
+            this.name = name;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public DataBox load() throws IOException {
+            Object o = read();
+
+            if (!(o instanceof DataBox)) {
+                throw new IOException("Entry " + name + " does not hold data.");
+            }
+
+            return (DataBox) o;
+        }
+
+        // Reads the contents and remembers the entry as their source.
+        private Object read() throws IOException {
+            FILES.readLock().lock();
+
+            try (ObjectInputStream in = new DecompressibleInputStream(openPayload())) {
+                Object o = in.readObject();
+
+                synchronized (this) {
+                    fingerprint = fingerprint(o);
+                }
+
+                SOURCES.put(o, this);
+                PENDING.remove(this);
+                return o;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            } finally {
+                FILES.readLock().unlock();
+            }
+        }
+
+        // The deflated contents, after the name has been checked.
+        private synchronized InputStream openPayload() throws IOException {
+            final RandomAccessFile in = new RandomAccessFile(file, "r");
+
+            try {
+                in.seek(offset);
+
+                if (!name.equals(in.readUTF())) {
+                    throw new IOException("Entry " + name + " is no longer in " + file + ".");
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+
+            final long end = offset + length;
+
+            InputStream raw = new InputStream() {
+                public int read() throws IOException {
+                    if (in.getFilePointer() >= end) return -1;
+                    return in.read();
+                }
+
+                public int read(byte[] b, int off, int len) throws IOException {
+                    long left = end - in.getFilePointer();
+                    if (left <= 0) return -1;
+                    return in.read(b, off, (int) Math.min(len, left));
+                }
+
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+
+            return new InflaterInputStream(new BufferedInputStream(raw, 1 << 16), new java.util.zip.Inflater(),
+                    1 << 16);
+        }
+
+        // Whether the entry is still where it says it is.
+        private synchronized boolean isValid() {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                if (offset + length > in.length()) return false;
+                in.seek(offset);
+                return name.equals(in.readUTF());
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private synchronized boolean isIn(File file) {
+            return this.file.equals(file);
+        }
+    }
+
+    /**
+     * Stands in the session entry for a data box or matrix kept in an entry of its own.
+     */
+    private static final class Ref implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        private final String name;
+        private final boolean dataBox;
+        private final int numRows;
+        private final int numCols;
+
+        private Ref(String name, boolean dataBox, int numRows, int numCols) {
+            this.name = name;
+            this.dataBox = dataBox;
+            this.numRows = numRows;
+            this.numCols = numCols;
+        }
+    }
+
+    /**
+     * Writes entries to a file, keeping an index of them. Nothing is visible to other sessions until commit is
+     * called.
+     */
+    private static final class Writer {
+        private final File target;
+        private final boolean append;
+        private final RandomAccessFile file;
+
+        // The length of the file before anything was appended.
+        private final long start;
+
+        // Entries in the new index, by name.
+        private final Map<String, long[]> index = new LinkedHashMap<>();
+
+        // Entries moved to the new file, with their new offsets.
+        private final Map<Entry, Long> moved = new IdentityHashMap<>();
+
+        // Entries written for objects in memory, with the objects.
+        private final Map<Object, Entry> written = new IdentityHashMap<>();
+
+        private Writer(File target, File out, boolean append) throws IOException {
+            this.target = target;
+            this.append = append;
+            this.file = new RandomAccessFile(out, "rw");
+            this.start = file.length();
+
+            if (append) {
+                file.seek(start);
+            } else {
+                file.setLength(0);
+                file.write(MAGIC);
+                file.writeInt(VERSION);
+                file.writeLong(0L);
+            }
+        }
+
+        private void writeSession(Object[] objects) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(bytes, deflater);
+                ObjectOutputStream out = new ArchiveOutputStream(deflated, this);
+
+                for (Object o : objects) {
+                    out.writeObject(o);
+                }
+
+                out.flush();
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+
+            write(SESSION_ENTRY, bytes.toByteArray());
+        }
+
+        // Returns a reference to an entry holding the given data box or matrix, writing it if necessary.
+        private Ref store(Object o) throws IOException {
+            if (o instanceof LazyDataBox) {
+                LazyDataBox box = (LazyDataBox) o;
+
+                if (!box.isLoaded() && box.getLoader() instanceof Entry) {
+                    Entry entry = (Entry) box.getLoader();
+                    return new Ref(place(entry), true, box.numRows(), box.numCols());
+                }
+
+                Ref ref = store(box.getDelegate());
+                return new Ref(ref.name, true, ref.numRows, ref.numCols);
+            }
+
+            Entry source = SOURCES.get(o);
+            long fingerprint = fingerprint(o);
+            String name = null;
+
+            if (source != null) {
+                synchronized (source) {
+                    if (source.fingerprint == fingerprint && source.isValid()) {
+                        name = place(source);
+                    }
+                }
+            }
+
+            if (name == null) {
+                name = UUID.randomUUID().toString();
+                long offset = write(name, o);
+                Entry entry = new Entry(name, target, offset, index.get(name)[1]);
+                entry.fingerprint = fingerprint;
+                written.put(o, entry);
+            }
+
+            if (o instanceof DataBox) {
+                return new Ref(name, true, ((DataBox) o).numRows(), ((DataBox) o).numCols());
+            } else {
+                return new Ref(name, false, ((TetradMatrix) o).rows(), ((TetradMatrix) o).columns());
+            }
+        }
+
+        // Puts an existing entry in the new index, copying it if it is not already in place, and returns its name.
+        private String place(Entry entry) throws IOException {
+            if (index.containsKey(entry.name)) return entry.name;
+
+            synchronized (entry) {
+                if (append && entry.isIn(target)) {
+                    if (!entry.isValid()) {
+                        throw new IOException("Entry " + entry.name + " is no longer in " + target + ".");
+                    }
+
+                    index.put(entry.name, new long[]{entry.offset, entry.length});
+                    return entry.name;
+                }
+            }
+
+            copy(entry);
+            return entry.name;
+        }
+
+        // Copies an entry's bytes into this file, unless an entry by that name is already there.
+        private void copy(Entry entry) throws IOException {
+            if (index.containsKey(entry.name)) {
+                moved.put(entry, index.get(entry.name)[0]);
+                return;
+            }
+
+            long offset = file.getFilePointer();
+            long length;
+
+            synchronized (entry) {
+                if (!entry.isValid()) {
+                    throw new IOException("Entry " + entry.name + " is no longer in " + entry.file + ".");
+                }
+
+                try (RandomAccessFile in = new RandomAccessFile(entry.file, "r")) {
+                    in.seek(entry.offset);
+                    byte[] buffer = new byte[1 << 16];
+                    long left = entry.length;
+
+                    while (left > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                        if (n < 0) throw new EOFException();
+                        file.write(buffer, 0, n);
+                        left -= n;
+                    }
+                }
+
+                length = entry.length;
+            }
+
+            index.put(entry.name, new long[]{offset, length});
+            moved.put(entry, offset);
+        }
+
+        // When the target is rewritten, copies into it the entries in it for data not yet loaded, so that they
+        // are not lost, and points entries already copied at their new places.
+        private void carryKnown() throws IOException {
+            List<Entry> pending;
+            List<Entry> sources;
+
+            synchronized (PENDING) {
+                pending = new ArrayList<>(PENDING.keySet());
+            }
+
+            synchronized (SOURCES) {
+                sources = new ArrayList<>(SOURCES.values());
+            }
+
+            for (Entry entry : pending) {
+                if (entry.isIn(target) && (index.containsKey(entry.name) || entry.isValid())) {
+                    copy(entry);
+                }
+            }
+
+            for (Entry entry : sources) {
+                if (entry.isIn(target) && index.containsKey(entry.name)) {
+                    copy(entry);
+                }
+            }
+        }
+
+        // Writes an entry holding the given object, streaming it into the file, and returns its offset.
+        private long write(String name, Object o) throws IOException {
+            long offset = file.getFilePointer();
+            file.writeUTF(name);
+
+            OutputStream raw = new OutputStream() {
+                public void write(int b) throws IOException {
+                    file.write(b);
+                }
+
+                public void write(byte[] b, int off, int len) throws IOException {
+                    file.write(b, off, len);
+                }
+            };
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(new BufferedOutputStream(raw, 1 << 16),
+                        deflater, 1 << 16);
+                ObjectOutputStream out = new ObjectOutputStream(deflated);
+                out.writeObject(o);
+                out.flush();
+                deflated.finish();
+                deflated.flush();
+            } finally {
+                deflater.end();
+            }
+
+            index.put(name, new long[]{offset, file.getFilePointer() - offset});
+            return offset;
+        }
+
+        // Writes the session entry from its deflated bytes.
+        private void write(String name, byte[] payload) throws IOException {
+            long offset = file.getFilePointer();
+            file.writeUTF(name);
+            file.write(payload);
+            index.put(name, new long[]{offset, file.getFilePointer() - offset});
+        }
+
+        // Writes the index and points the header at it.
+        private void finish() throws IOException {
+            long indexOffset = file.getFilePointer();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(index.size());
+
+            for (Map.Entry<String, long[]> e : index.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue()[0]);
+                out.writeLong(e.getValue()[1]);
+            }
+
+            out.flush();
+            file.write(bytes.toByteArray());
+            file.getFD().sync();
+
+            file.seek(MAGIC.length + 4);
+            file.writeLong(indexOffset);
+            file.getFD().sync();
+        }
+
+        private long liveLength() {
+            long live = HEADER_LENGTH;
+            for (long[] location : index.values()) live += location[1];
+            return live;
+        }
+
+        // Points moved entries at the target and remembers the entries written.
+        private void commit() {
+            for (Map.Entry<Entry, Long> e : moved.entrySet()) {
+                Entry entry = e.getKey();
+
+                synchronized (entry) {
+                    entry.file = target;
+                    entry.offset = e.getValue();
+                }
+            }
+
+            for (Map.Entry<Object, Entry> e : written.entrySet()) {
+                SOURCES.put(e.getKey(), e.getValue());
+            }
+        }
+
+        // Removes anything appended, leaving the file as it was.
+        private void abort() throws IOException {
+            if (append) file.setLength(start);
+        }
+
+        private void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the session entry, putting references to entries of their own in place of large data boxes and
+     * matrices.
+     */
+    private static final class ArchiveOutputStream extends ObjectOutputStream {
+        private final Writer writer;
+
+        private ArchiveOutputStream(OutputStream out, Writer writer) throws IOException {
+            super(out);
+            this.writer = writer;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object o) throws IOException {
+            if (o instanceof LazyDataBox) {
+                return writer.store(o);
+            } else if (o instanceof DataBox && STORED_BOXES.contains(o.getClass())) {
+                DataBox box = (DataBox) o;
+
+                if ((long) box.numRows() * box.numCols() >= MIN_CELLS) {
+                    return writer.store(o);
+                }
+            } else if (o != null && o.getClass() == TetradMatrix.class) {
+                TetradMatrix matrix = (TetradMatrix) o;
+
+                if ((long) matrix.rows() * matrix.columns() >= MIN_CELLS) {
+                    return writer.store(o);
+                }
+            }
+
+            return o;
+        }
+    }
+
+    /**
+     * Reads the session entry, putting lazily loaded data boxes and loaded matrices in place of references to
+     * entries of their own.
+     */
+    private static final class ArchiveInputStream extends DecompressibleInputStream {
+        private final File file;
+        private final Map<String, long[]> index;
+
+        private ArchiveInputStream(InputStream in, File file, Map<String, long[]> index) throws IOException {
+            super(in);
+            this.file = file;
+            this.index = index;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object o) throws IOException {
+            if (!(o instanceof Ref)) return o;
+
+            Ref ref = (Ref) o;
+            long[] location = index.get(ref.name);
+
+            if (location == null) {
+                throw new IOException("Missing entry " + ref.name + ".");
+            }
+
+            Entry entry = new Entry(ref.name, file, location[0], location[1]);
+
+            if (ref.dataBox) {
+                PENDING.put(entry, Boolean.TRUE);
+                return new LazyDataBox(ref.numRows, ref.numCols, entry);
+            } else {
+                return entry.read();
+            }
+        }
+    }
+}
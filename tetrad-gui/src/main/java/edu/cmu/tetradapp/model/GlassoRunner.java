@@ -21,7 +21,6 @@
 
 package edu.cmu.tetradapp.model;
 
-import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.IKnowledge;
@@ -88,27 +87,46 @@ public class GlassoRunner extends AbstractAlgorithmRunner
         if (dataModel instanceof DataSet) {
             DataSet dataSet = (DataSet) dataModel;
 
-            DoubleMatrix2D cov = new DenseDoubleMatrix2D(dataSet.getCovarianceMatrix().toArray());
-
-            Glasso glasso = new Glasso(cov);
-            glasso.setMaxit((int) params.get("maxit", 10000));
-            glasso.setIa(params.getBoolean("ia", false));
-            glasso.setIs(params.getBoolean("is", false));
-            glasso.setItr(params.getBoolean("itr", false));
-            glasso.setIpen(params.getBoolean("ipen", false));
-            glasso.setThr(params.getDouble("thr", 1e-4));
-            glasso.setRhoAllEqual(1.0);
-
-            Glasso.Result result = glasso.search();
-            TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
-
+            double[][] cov = dataSet.getCovarianceMatrix().toArray();
             List<Node> variables = dataSet.getVariables();
             Graph resultGraph = new EdgeListGraph(variables);
 
-            for (int i = 0; i < variables.size(); i++) {
-                for (int j = i + 1; j < variables.size(); j++) {
-                    if (wwi.get(i, j) != 0.0 && wwi.get(i, j) != 0.0) {
-                        resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+            if (params.getBoolean("ia", false)) {
+                Glasso glasso = new Glasso(new DenseDoubleMatrix2D(cov));
+                glasso.setMaxit((int) params.get("maxit", 10000));
+                glasso.setIa(true);
+                glasso.setIs(params.getBoolean("is", false));
+                glasso.setItr(params.getBoolean("itr", false));
+                glasso.setIpen(params.getBoolean("ipen", false));
+                glasso.setThr(params.getDouble("thr", 1e-4));
+                glasso.setRhoAllEqual(1.0);
+
+                Glasso.Result result = glasso.search();
+                TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
+
+                for (int i = 0; i < variables.size(); i++) {
+                    for (int j = i + 1; j < variables.size(); j++) {
+                        if (wwi.get(i, j) != 0.0 && wwi.get(j, i) != 0.0) {
+                            resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+                        }
+                    }
+                }
+            } else {
+                BlockGlasso glasso = new BlockGlasso(cov);
+                glasso.setMaxit((int) params.get("maxit", 10000));
+                glasso.setPenalizeDiagonal(params.getBoolean("ipen", false));
+                glasso.setThr(params.getDouble("thr", 1e-4));
+
+                BlockGlasso.Result result = glasso.search(1.0);
+
+                for (int[] block : result.getBlocks()) {
+                    for (int i = 0; i < block.length; i++) {
+                        for (int j = i + 1; j < block.length; j++) {
+                            if (result.getWwi(block[i], block[j]) != 0.0
+                                    && result.getWwi(block[j], block[i]) != 0.0) {
+                                resultGraph.addUndirectedEdge(variables.get(block[i]), variables.get(block[j]));
+                            }
+                        }
                     }
                 }
             }
@@ -22,6 +22,7 @@ import edu.cmu.tetrad.session.Session;
 import edu.cmu.tetrad.util.JOptionUtils;
 import edu.cmu.tetrad.util.Version;
 import edu.cmu.tetradapp.app.DecompressibleInputStream;
+import edu.cmu.tetradapp.app.SessionArchive;
 import edu.cmu.tetradapp.app.SessionEditor;
 import edu.cmu.tetradapp.app.SessionEditorWorkbench;
 import edu.cmu.tetradapp.model.SessionWrapper;
@@ -33,6 +34,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -88,8 +90,9 @@ public class SessionFileTransferHandler extends TransferHandler {
                     }
                 }
 
-                try (InputStream in = Files.newInputStream(file.toPath())) {
-                    DecompressibleInputStream objIn = new DecompressibleInputStream(in);
+                try (InputStream in = SessionArchive.isArchive(file) ? null : Files.newInputStream(file.toPath());
+                     ObjectInputStream objIn = in == null ? SessionArchive.open(file)
+                             : new DecompressibleInputStream(in)) {
                     Object o = objIn.readObject();
 
                     TetradMetadata metadata = null;
@@ -111,7 +114,7 @@ public class SessionFileTransferHandler extends TransferHandler {
                         sessionWrapper = (SessionWrapper) o;
                     }
 
-                    in.close();
+                    objIn.close();
 
                     if (metadata == null) {
                         throw new NullPointerException("Could not read metadata.");
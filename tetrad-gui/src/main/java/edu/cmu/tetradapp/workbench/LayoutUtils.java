@@ -45,7 +45,7 @@ public class LayoutUtils {
     public enum Layout {
         lag0TopToBottom, lag0BottomToTop, lag0LeftToRight, lag0RightToLeft,
         topToBottom, bottomToTop, leftToRight, rightToLeft, layered, source, knowledge, circle,
-        kamadaKawai, fruchtermReingold, distanceFromSelected
+        kamadaKawai, fruchtermReingold, barnesHut, distanceFromSelected
     }
 
     static Layout layout = Layout.bottomToTop;
@@ -611,6 +611,20 @@ public class LayoutUtils {
         layout = Layout.fruchtermReingold;
     }
 
+    public static void barnesHutLayout(LayoutEditable layoutEditable) {
+        Graph graph = layoutEditable.getGraph();
+
+        for (Node node : new ArrayList<>(graph.getNodes())) {
+            if (node.getNodeType() == NodeType.ERROR) {
+                ((SemGraph) graph).setShowErrorTerms(false);
+            }
+        }
+
+        GraphUtils.barnesHutLayout(graph);
+        layoutEditable.layoutByGraph(graph);
+        layout = Layout.barnesHut;
+    }
+
     public static void distanceFromSelectedLayout(LayoutEditable layoutEditable) {
         Graph graph = layoutEditable.getGraph();
 
@@ -670,6 +684,9 @@ public class LayoutUtils {
             case fruchtermReingold:
                 fruchtermanReingoldLayout(layoutEditable);
                 break;
+            case barnesHut:
+                barnesHutLayout(layoutEditable);
+                break;
             default:
         }
     }
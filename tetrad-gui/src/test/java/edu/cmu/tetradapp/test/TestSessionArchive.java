@@ -0,0 +1,120 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetradapp.app.SessionArchive;
+import edu.cmu.tetradapp.model.DataWrapper;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests saving and loading sessions with SessionArchive.
+ *
+ * @author Joseph Ramsey jdramsey@andrew.cmu.edu
+ */
+public class TestSessionArchive {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = File.createTempFile("session", ".tet");
+        file.deleteOnExit();
+
+        DataSet data = randomData(1000, 20);
+        DataWrapper wrapper = new DataWrapper(data);
+
+        SessionArchive.save(file, "metadata", wrapper);
+        assertTrue(SessionArchive.isArchive(file));
+
+        Object[] objects = load(file);
+        assertEquals("metadata", objects[0]);
+
+        DataSet loaded = (DataSet) ((DataWrapper) objects[1]).getSelectedDataModel();
+        assertEquals(data.getNumRows(), loaded.getNumRows());
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                assertEquals(data.getDouble(i, j), loaded.getDouble(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testResave() throws Exception {
+        File file = File.createTempFile("session", ".tet");
+        file.deleteOnExit();
+
+        DataWrapper wrapper = new DataWrapper(randomData(1000, 20));
+        SessionArchive.save(file, "metadata", wrapper);
+
+        DataWrapper loaded = (DataWrapper) load(file)[1];
+
+        // Saving again without changes adds a new session entry, but does not write the data again.
+        long length = file.length();
+        SessionArchive.save(file, "metadata", loaded);
+        assertTrue(file.length() - length < 20000);
+
+        // Changed data are written again.
+        DataSet dataSet = (DataSet) loaded.getSelectedDataModel();
+        dataSet.setDouble(0, 0, 42.0);
+
+        length = file.length();
+        SessionArchive.save(file, "metadata", loaded);
+        assertTrue(file.length() - length > 20000);
+
+        DataSet reloaded = (DataSet) ((DataWrapper) load(file)[1]).getSelectedDataModel();
+        assertEquals(42.0, reloaded.getDouble(0, 0), 0.0);
+    }
+
+    private Object[] load(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = SessionArchive.open(file)) {
+            return new Object[]{in.readObject(), in.readObject()};
+        }
+    }
+
+    private DataSet randomData(int numRows, int numColumns) {
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < numColumns; j++) {
+            variables.add(new ContinuousVariable("X" + (j + 1)));
+        }
+
+        DataSet data = new BoxDataSet(new DoubleDataBox(numRows, numColumns), variables);
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                data.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        return data;
+    }
+}
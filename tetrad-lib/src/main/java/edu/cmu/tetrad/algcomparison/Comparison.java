@@ -32,10 +32,12 @@ import edu.cmu.tetrad.algcomparison.score.ScoreWrapper;
 import edu.cmu.tetrad.algcomparison.simulation.LoadDataAndGraphs;
 import edu.cmu.tetrad.algcomparison.simulation.Simulation;
 import edu.cmu.tetrad.algcomparison.simulation.Simulations;
+import edu.cmu.tetrad.algcomparison.simulation.StreamingSimulation;
 import edu.cmu.tetrad.algcomparison.statistic.ElapsedTime;
 import edu.cmu.tetrad.algcomparison.statistic.ParameterColumn;
 import edu.cmu.tetrad.algcomparison.statistic.Statistic;
 import edu.cmu.tetrad.algcomparison.statistic.Statistics;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.algcomparison.utils.HasKnowledge;
 import edu.cmu.tetrad.algcomparison.utils.HasParameterValues;
 import edu.cmu.tetrad.algcomparison.utils.HasParameters;
@@ -81,8 +83,10 @@ public class Comparison {
     private boolean parallelized = true;
     private boolean savePatterns = false;
     private boolean savePags = false;
+    private boolean saveDataBinary = false;
     private ArrayList<String> dirs = null;
     private ComparisonGraph comparisonGraph = ComparisonGraph.true_DAG;
+    private LinkedList<StatisticsTask> statisticsTasks = new LinkedList<>();
 
     public void compareFromFiles(String filePath, Algorithms algorithms,
                                  Statistics statistics, Parameters parameters) {
@@ -502,8 +506,6 @@ public class Comparison {
                     parameters.set(param, simulationWrapper.getValue(param));
                 }
 
-                simulationWrapper.createData(simulationWrapper.getSimulationSpecificParameters());
-
                 File subdir = dir;
                 if(simulationWrappers.size() > 1){
                     index++;
@@ -532,6 +534,25 @@ public class Comparison {
                     dir4.mkdirs();
                 }
 
+                // Simulations that can stream write their data as they go, so the data need not fit in memory.
+                final boolean streaming = simulationWrapper.getSimulation() instanceof StreamingSimulation;
+
+                if (streaming) {
+                    final File _dir2 = dir2;
+
+                    simulationWrapper.createData(simulationWrapper.getSimulationSpecificParameters(),
+                            new StreamingSimulation.Sinks() {
+                                public DataSink getSink(int index) throws IOException {
+                                    if (isSaveDataBinary()) {
+                                        return new BinaryDataSink(new File(_dir2, "data." + (index + 1) + ".bin"));
+                                    } else {
+                                        return new TabularDataSink(new File(_dir2, "data." + (index + 1) + ".txt"), '\t');
+                                    }
+                                }
+                            });
+                } else {
+                    simulationWrapper.createData(simulationWrapper.getSimulationSpecificParameters());
+                }
 
                 for (int j = 0; j < simulationWrapper.getNumDataModels(); j++) {
                     File file2 = new File(dir1, "graph." + (j + 1) + ".txt");
@@ -539,11 +560,13 @@ public class Comparison {
 
                     GraphUtils.saveGraph(graph, file2, false);
 
-                    File file = new File(dir2, "data." + (j + 1) + ".txt");
-                    Writer out = new FileWriter(file);
-                    DataModel dataModel = (DataModel) simulationWrapper.getDataModel(j);
-                    DataWriter.writeRectangularData((DataSet) dataModel, out, '\t');
-                    out.close();
+                    if (!streaming) {
+                        File file = new File(dir2, "data." + (j + 1) + ".txt");
+                        Writer out = new FileWriter(file);
+                        DataModel dataModel = (DataModel) simulationWrapper.getDataModel(j);
+                        DataWriter.writeRectangularData((DataSet) dataModel, out, '\t');
+                        out.close();
+                    }
 
                     if (isSavePatterns()) {
                         File file3 = new File(dir3, "pattern." + (j + 1) + ".txt");
@@ -871,6 +894,11 @@ public class Comparison {
             }
         }
 
+        // Wait for the statistics still being calculated.
+        while (!statisticsTasks.isEmpty()) {
+            statisticsTasks.removeFirst().store();
+        }
+
 //        if (!isParallelized()) {
 //            for (AlgorithmTask task : tasks) {
 //                task.compute();
@@ -1004,6 +1032,21 @@ public class Comparison {
         this.savePags = savePags;
     }
 
+    /**
+     * @return True if simulated data should be saved out in binary form (see BinaryDataSink) rather than as text.
+     */
+    public boolean isSaveDataBinary() {
+        return saveDataBinary;
+    }
+
+    /**
+     * @param saveDataBinary True if simulated data should be saved out in binary form (see BinaryDataSink) rather
+     *                       than as text. This applies only to simulations that stream their data.
+     */
+    public void setSaveDataBinary(boolean saveDataBinary) {
+        this.saveDataBinary = saveDataBinary;
+    }
+
 
     /**
      * @return True iff tables should be tab delimited (e.g. for easy pasting into Excel).
@@ -1094,6 +1137,96 @@ public class Comparison {
         }
     }
 
+    /**
+     * Calculates the statistics for one run. The counts the statistics share are made once for each pair of true
+     * and estimated graphs, in a ComparisonContext. The task works on its own copies of the graphs and of the list
+     * of statistics, and keeps its results until store is called, from the thread running the comparison, so that
+     * it may run while the next run's search is done.
+     */
+    private class StatisticsTask extends RecursiveTask<double[][]> {
+        private final List<Statistic> statistics;
+        private final int numGraphTypes;
+        private final boolean[] graphTypeUsed;
+        private final Graph[] truth;
+        private final Graph[] est;
+        private final long elapsed;
+        private final double[][][][] allStats;
+        private final Run run;
+
+        public StatisticsTask(Statistics statistics, int numGraphTypes, Graph[] truth, Graph[] est, long elapsed,
+                              double[][][][] allStats, Run run) {
+            this.statistics = new ArrayList<>(statistics.getStatistics());
+            this.numGraphTypes = numGraphTypes;
+            this.graphTypeUsed = Comparison.this.graphTypeUsed.clone();
+            this.truth = copy(truth);
+            this.est = copy(est);
+            this.elapsed = elapsed;
+            this.allStats = allStats;
+            this.run = run;
+        }
+
+        @Override
+        protected double[][] compute() {
+            double[][] values = new double[numGraphTypes][statistics.size()];
+
+            for (int u = 0; u < numGraphTypes; u++) {
+                if (!graphTypeUsed[u]) continue;
+
+                ComparisonContext.share(truth[u], est[u]);
+
+                try {
+                    int statIndex = -1;
+
+                    for (Statistic _stat : statistics) {
+                        statIndex++;
+
+                        if (_stat instanceof ParameterColumn) continue;
+
+                        double stat;
+
+                        if (_stat instanceof ElapsedTime) {
+                            stat = elapsed / 1000.0;
+                        } else {
+                            stat = _stat.getValue(truth[u], est[u]);
+                        }
+
+                        values[u][statIndex] = stat;
+                    }
+                } finally {
+                    ComparisonContext.release();
+                }
+            }
+
+            return values;
+        }
+
+        /**
+         * Waits for the statistics, once the task has been started, and copies them into the table of all statistics.
+         */
+        private void store() {
+            double[][] values = join();
+
+            for (int u = 0; u < numGraphTypes; u++) {
+                if (!graphTypeUsed[u]) continue;
+
+                for (int statIndex = 0; statIndex < statistics.size(); statIndex++) {
+                    if (statistics.get(statIndex) instanceof ParameterColumn) continue;
+                    allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = values[u][statIndex];
+                }
+            }
+        }
+
+        private Graph[] copy(Graph[] graphs) {
+            Graph[] copies = new Graph[graphs.length];
+
+            for (int u = 0; u < graphs.length; u++) {
+                if (graphs[u] != null) copies[u] = new EdgeListGraph(graphs[u]);
+            }
+
+            return copies;
+        }
+    }
+
     private void printParameters(List<String> names, Parameters parameters, PrintStream out) {
     	out.println("Comparison.printParameters");
         ParamDescriptions descriptions = ParamDescriptions.getInstance();
@@ -1260,25 +1393,20 @@ public class Comparison {
         }
 
         if (comparisonGraph != null) {
-            for (int u = 0; u < numGraphTypes; u++) {
-                if (!graphTypeUsed[u]) continue;
+            StatisticsTask task = new StatisticsTask(statistics, numGraphTypes, truth, est, elapsed, allStats, run);
 
-                int statIndex = -1;
-
-                for (Statistic _stat : statistics.getStatistics()) {
-                    statIndex++;
-
-                    if (_stat instanceof ParameterColumn) continue;
-
-                    double stat;
+            if (!isParallelized()) {
+                task.invoke();
+                task.store();
+            } else {
 
-                    if (_stat instanceof ElapsedTime) {
-                        stat = elapsed / 1000.0;
-                    } else {
-                        stat = _stat.getValue(truth[u], est[u]);
-                    }
+                // The statistics for this run are calculated while the next run's search is done; no more than
+                // one batch per processor is kept waiting.
+                ForkJoinPoolInstance.getInstance().getPool().execute(task);
+                statisticsTasks.add(task);
 
-                    allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stat;
+                while (statisticsTasks.size() > Runtime.getRuntime().availableProcessors()) {
+                    statisticsTasks.removeFirst().store();
                 }
             }
         }
@@ -1781,9 +1909,19 @@ public class Comparison {
             }
         }
 
+        // Streams the data to the given sinks; only the graphs are kept.
+        public void createData(Parameters parameters, StreamingSimulation.Sinks sinks) throws IOException {
+            ((StreamingSimulation) simulation).createData(parameters, sinks);
+            this.graphs = new ArrayList<>();
+            this.dataModels = new ArrayList<>();
+            for (int i = 0; i < simulation.getNumDataModels(); i++) {
+                this.graphs.add(simulation.getTrueGraph(i));
+            }
+        }
+
         @Override
         public int getNumDataModels() {
-            return dataModels.size();
+            return graphs.size();
         }
 
         @Override
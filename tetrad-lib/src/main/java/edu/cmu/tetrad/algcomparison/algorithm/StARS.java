@@ -3,15 +3,11 @@ package edu.cmu.tetrad.algcomparison.algorithm;
 import edu.cmu.tetrad.algcomparison.utils.TakesInitialGraph;
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Graph;
-import edu.cmu.tetrad.graph.GraphUtils;
-import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.Parameters;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveAction;
 
 /**
  * StARS
@@ -27,6 +23,7 @@ public class StARS implements Algorithm, TakesInitialGraph {
     private Algorithm algorithm;
     private Graph initialGraph = null;
     private DataSet _dataSet;
+    private boolean useCovariance = false;
 
     public StARS(Algorithm algorithm, String parameter, double low, double high) {
         if (low >= high) {
@@ -42,189 +39,59 @@ public class StARS implements Algorithm, TakesInitialGraph {
     public Graph search(DataModel dataSet, Parameters parameters) {
         this._dataSet = (DataSet) dataSet;
 
-//        int numVars = Math.min(50, ((DataSet) dataSet).getNumColumns());
-//        int[] cols = new int[numVars];
-//        for (int i = 0; i < numVars; i++) cols[i] = i;
-        _dataSet = (DataSet) dataSet;//.subsetColumns(cols);
-
         double percentageB = parameters.getDouble("percentSubsampleSize");
-        double tolerance = parameters.getDouble("StARS.tolerance");
         double beta = parameters.getDouble("StARS.cutoff");
         int numSubsamples = parameters.getInt("numSubsamples");
 
         Parameters _parameters = new Parameters(parameters);
 
-        List<DataSet> samples = new ArrayList<>();
-
-        for (int i = 0; i < numSubsamples; i++) {
-            BootstrapSampler sampler = new BootstrapSampler();
-            sampler.setWithoutReplacements(true);
-            samples.add(sampler.sample(_dataSet, (int) (percentageB * _dataSet.getNumRows())));
-        }
+        // The subsamples, and their covariance matrices if asked for, are made once and shared by every value.
+        StabilityEngine engine = new StabilityEngine(_dataSet, numSubsamples,
+                (int) (percentageB * _dataSet.getNumRows()));
+        engine.setUseCovariance(useCovariance);
 
-//        double pFrom = low;
-//        double pTo = high;
-        double maxD = Double.NEGATIVE_INFINITY;
-        double _lambda = Double.NaN;
+        List<Double> grid = new ArrayList<>();
 
         for (double lambda = low; lambda <= high; lambda += 0.5) {
-            double D = getD(parameters, parameter, lambda, samples, algorithm);
-            System.out.println("lambda = " + lambda + " D = " + D);
-
-            if (D > maxD && D < beta) {
-                maxD = D;
-                _lambda = lambda;
-            }
+            grid.add(getValue(lambda, parameters));
         }
 
-//        double D1 = getD(parameters, parameter, low, samples, algorithm);
-//        System.out.println("D1 (low) = " + D1);
-//        double D2 = getD(parameters, parameter, high, samples, algorithm);
-//        System.out.println("D2 (high) = " + D2);
-//
-//        double lastD;
-//        double pMid;
-//        double pBest;
-//        double bestD;
-//
-//        if (D1 > D2 && D1 < beta) {
-//            lastD = D1;
-//            pBest = low;
-//            bestD = D1;
-//        } else if (D2 > D1 && D2 < beta) {
-//            lastD = D2;
-//            pBest = high;
-//            bestD = D2;
-//        } else {
-//            lastD = Double.NEGATIVE_INFINITY;
-//            pBest = (low + high) / 2.0;
-//            bestD = Double.NEGATIVE_INFINITY;
-//        }
-//
-//        System.out.println("lastD = " + lastD);
-//
-//        while (abs(pFrom - pTo) > tolerance) {
-//            pMid = (pFrom + pTo) / 2.0;
-//            double D = getD(parameters, parameter, pMid, samples, algorithm);
-//            System.out.println("pFrom = " + pFrom + " pTo = " + pTo + " pMid = " + pMid + " D = " + D);
-//
-//            if (D1 > D2) {
-//                if (D > bestD && D < beta) {
-//                    pTo = pMid;
-//                    pBest = pMid;
-//                    bestD = D;
-//                } else {
-//                    pFrom = pMid;
-//                }
-//            } else {
-//                if (D > bestD && D < beta) {
-//                    pFrom = pMid;
-//                    pBest = pMid;
-//                    bestD = D;
-//                } else {
-//                    pTo = pMid;
-//                }
-//            }
-//
-//            lastD = D;
-//            System.out.println("lastD = " + lastD + " pBest = " + pBest);
-//        }
-//
-//        if (D1 > bestD) {
-//            pBest = low;
-//        }
-//
-//        if (D2 > bestD) {
-//            pBest = high;
-//        }
-        System.out.println("FINAL: lambda = " + _lambda + " D = " + maxD);
-
-        System.out.println(parameter + " = " + getValue(_lambda, parameters));
-        _parameters.set(parameter, getValue(_lambda, parameters));
-
-        return algorithm.search(dataSet, _parameters);
-    }
-
-    private static double getD(Parameters params, String paramName, double paramValue, final List<DataSet> samples,
-            Algorithm algorithm) {
-        params.set(paramName, paramValue);
-
-        List<Graph> graphs = new ArrayList<>();
-
-//        for (DataSet d : samples) {
-//            Graph e = GraphUtils.undirectedGraph(algorithm.search(d, params));
-//            e = GraphUtils.replaceNodes(e, samples.get(0).getVariables());
-//            graphs.add(e);
-//        }
-        final ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-
-        class StabilityAction extends RecursiveAction {
-
-            private int chunk;
-            private int from;
-            private int to;
-
-            private StabilityAction(int chunk, int from, int to) {
-                this.chunk = chunk;
-                this.from = from;
-                this.to = to;
-            }
-
-            @Override
-            protected void compute() {
-                if (to - from <= chunk) {
-                    for (int s = from; s < to; s++) {
-                        Graph e = algorithm.search(samples.get(s), params);
-                        e = GraphUtils.replaceNodes(e, samples.get(0).getVariables());
-                        graphs.add(e);
-                    }
-                } else {
-                    final int mid = (to + from) / 2;
-
-                    StabilityAction left = new StabilityAction(chunk, from, mid);
-                    StabilityAction right = new StabilityAction(chunk, mid, to);
-
-                    left.fork();
-                    right.compute();
-                    left.join();
-                }
-            }
+        // The path is walked from its sparser, more stable end, found by searching one subsample at each end.
+        if (grid.size() > 1 && numEdges(engine, parameters, grid.get(grid.size() - 1))
+                < numEdges(engine, parameters, grid.get(0))) {
+            Collections.reverse(grid);
         }
 
-        final int chunk = 1;
-
-        pool.invoke(new StabilityAction(chunk, 0, samples.size()));
+        double[] values = new double[grid.size()];
+        for (int i = 0; i < values.length; i++) values[i] = grid.get(i);
 
-        int p = samples.get(0).getNumColumns();
-        List<Node> nodes = graphs.get(0).getNodes();
+        StabilityEngine.Path path = engine.searchPath(algorithm, parameters, parameter, values, beta);
 
-        double D = 0.0;
-        int count = 0;
+        for (int i = 0; i < path.size(); i++) {
+            System.out.println(parameter + " = " + path.getValue(i) + " D = " + path.getInstability(i));
+        }
 
-        for (int i = 0; i < p; i++) {
-            for (int j = i + 1; j < p; j++) {
-                double theta = 0.0;
-                Node x = nodes.get(i);
-                Node y = nodes.get(j);
+        double value = path.getSelectedValue(beta);
 
-                for (int k = 0; k < graphs.size(); k++) {
-                    if (graphs.get(k).isAdjacentTo(x, y)) {
-                        theta += 1.0;
-                    }
-                }
+        System.out.println("FINAL: " + parameter + " = " + value);
+        _parameters.set(parameter, value);
 
-                theta /= graphs.size();
-                double xsi = 2 * theta * (1.0 - theta);
+        return algorithm.search(dataSet, _parameters);
+    }
 
-//                if (xsi != 0){
-                D += xsi;
-                count++;
-//                }
-            }
-        }
+    /**
+     * True if the algorithm should be given each subsample's covariance matrix rather than the subsample itself,
+     * so that the covariance matrices are computed only once. The algorithm must accept covariance matrices.
+     */
+    public void setUseCovariance(boolean useCovariance) {
+        this.useCovariance = useCovariance;
+    }
 
-        D /= (double) count;
-        return D;
+    // The number of edges found in the first subsample with the parameter at the given value.
+    private int numEdges(StabilityEngine engine, Parameters parameters, double value) {
+        Parameters _parameters = new Parameters(parameters);
+        _parameters.set(parameter, value);
+        return algorithm.search(engine.getSubsample(0), _parameters).getNumEdges();
     }
 
     private static double getValue(double value, Parameters parameters) {
@@ -256,7 +123,6 @@ public class StARS implements Algorithm, TakesInitialGraph {
         parameters.add("depth");
         parameters.add("verbose");
         parameters.add("StARS.percentageB");
-        parameters.add("StARS.tolerance");
         parameters.add("StARS.cutoff");
         parameters.add("numSubsamples");
 
@@ -0,0 +1,373 @@
+package edu.cmu.tetrad.algcomparison.algorithm;
+
+import edu.cmu.tetrad.algcomparison.utils.TakesInitialGraph;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.rmi.MarshalledObject;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an algorithm over a fixed set of subsamples of a data set, for stability selection and StARS. The
+ * subsamples are drawn once, on construction, and each is made into a data set once; if covariance matrices are
+ * used, each subsample's covariance matrix is also computed once and then passed to the algorithm in place of
+ * the data for every search over that subsample, along the whole penalty path.
+ * <p>
+ * Searches over different subsamples run in parallel. Along a penalty path, each subsample's search at one value
+ * is started from its result at the neighboring value, if the algorithm takes an initial graph; otherwise several
+ * values of the path are searched at once. The path is walked from the end the caller gives as its more stable
+ * end and stopped once the instability reaches the cutoff, so that values past the cutoff are not searched.
+ *
+ * @author jdramsey
+ */
+public final class StabilityEngine {
+
+    private final List<Node> variables;
+    private final DataSet[] subsamples;
+    private DataModel[] models = null;
+    private boolean useCovariance = false;
+    private boolean warmStart = true;
+
+    /**
+     * Draws the subsamples.
+     *
+     * @param dataSet        The data.
+     * @param numSubsamples  The number of subsamples.
+     * @param subsampleSize  The number of rows in each subsample, drawn without replacement.
+     */
+    public StabilityEngine(DataSet dataSet, int numSubsamples, int subsampleSize) {
+        if (numSubsamples < 1) throw new IllegalArgumentException("Need at least one subsample.");
+
+        if (subsampleSize < 1 || subsampleSize > dataSet.getNumRows()) {
+            throw new IllegalArgumentException("Subsample size must be between 1 and the number of rows.");
+        }
+
+        this.variables = dataSet.getVariables();
+        this.subsamples = new DataSet[numSubsamples];
+
+        int n = dataSet.getNumRows();
+        int[] rows = new int[n];
+
+        for (int s = 0; s < numSubsamples; s++) {
+            for (int i = 0; i < n; i++) rows[i] = i;
+
+            // A partial shuffle; the first subsampleSize rows are a sample without replacement.
+            for (int i = 0; i < subsampleSize; i++) {
+                int j = i + RandomUtil.getInstance().nextInt(n - i);
+                int t = rows[i];
+                rows[i] = rows[j];
+                rows[j] = t;
+            }
+
+            int[] sample = Arrays.copyOf(rows, subsampleSize);
+            Arrays.sort(sample);
+            subsamples[s] = dataSet.subsetRows(sample);
+        }
+    }
+
+    /**
+     * True if the algorithm should be given each subsample's covariance matrix rather than the subsample
+     * itself. The algorithm must accept covariance matrices. Default false.
+     */
+    public void setUseCovariance(boolean useCovariance) {
+        this.useCovariance = useCovariance;
+        this.models = null;
+    }
+
+    /**
+     * True if searches along a penalty path should start from the result at the neighboring value, for
+     * algorithms that take an initial graph. Default true.
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    public int getNumSubsamples() {
+        return subsamples.length;
+    }
+
+    /**
+     * @return the subsample at the given index, or its covariance matrix if covariance matrices are used.
+     */
+    public DataModel getSubsample(int index) {
+        return getModels()[index];
+    }
+
+    /**
+     * Runs the algorithm with the given parameters over every subsample.
+     *
+     * @return the graphs, one for each subsample, in order.
+     */
+    public List<Graph> search(Algorithm algorithm, Parameters parameters) {
+        Graph[] graphs = new Graph[subsamples.length];
+        runCells(algorithm, parameters, null, new double[0], 1, null, graphs);
+        return Arrays.asList(graphs);
+    }
+
+    /**
+     * Walks the given values of the given parameter in order, computing the instability at each value (see
+     * getInstability) until it reaches the cutoff. The first value should be the more stable end of the path,
+     * usually the one giving the sparsest graphs; only the values up to the first at or over the cutoff are
+     * searched (a few more if the algorithm does not take an initial graph, since several values are then
+     * searched at once).
+     *
+     * @param algorithm  The algorithm.
+     * @param parameters The other parameters.
+     * @param parameter  The name of the parameter.
+     * @param values     The values of the parameter to try, in order along the path from its more stable end.
+     * @param cutoff     The instability cutoff.
+     * @return the values tried and their instabilities. The selected value is the one with the greatest
+     * instability below the cutoff.
+     */
+    public Path searchPath(Algorithm algorithm, Parameters parameters, String parameter, double[] values,
+                           double cutoff) {
+        if (values.length == 0) throw new IllegalArgumentException("No values were given.");
+
+        Path path = new Path();
+        int p = subsamples.length;
+
+        Graph[] previous = new Graph[p];
+        path.add(values[0], getInstability(searchAt(algorithm, parameters, parameter, values[0], null, previous)));
+
+        if (path.getInstability(0) >= cutoff) {
+            return path;
+        }
+
+        boolean warm = warmStart && algorithm instanceof TakesInitialGraph;
+        int window = warm ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors() / p);
+
+        for (int from = 1; from < values.length; from += window) {
+            int to = Math.min(values.length, from + window);
+            double[] _values = Arrays.copyOfRange(values, from, to);
+            Graph[] graphs = new Graph[_values.length * p];
+
+            runCells(algorithm, parameters, parameter, _values, _values.length, warm ? previous : null, graphs);
+
+            for (int k = 0; k < _values.length; k++) {
+                Graph[] _graphs = Arrays.copyOfRange(graphs, k * p, (k + 1) * p);
+                double d = getInstability(Arrays.asList(_graphs));
+                path.add(_values[k], d);
+                previous = _graphs;
+
+                if (d >= cutoff) return path;
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns the total instability of the given graphs, one per subsample: the average over pairs of variables
+     * of 2 theta (1 - theta), where theta is the fraction of the graphs in which the pair is adjacent. This is
+     * the D of Liu, Roeder and Wasserman's StARS.
+     */
+    public double getInstability(List<Graph> graphs) {
+        int p = variables.size();
+        if (p < 2) return 0.0;
+
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < p; i++) indices.put(variables.get(i).getName(), i);
+
+        int[][] counts = new int[p][p];
+
+        for (Graph graph : graphs) {
+            Set<Long> adjacent = new HashSet<>();
+
+            for (Edge edge : graph.getEdges()) {
+                Integer i = indices.get(edge.getNode1().getName());
+                Integer j = indices.get(edge.getNode2().getName());
+                if (i == null || j == null || i.equals(j)) continue;
+
+                // Counted once per graph, however many edges the pair has.
+                if (adjacent.add((long) Math.min(i, j) * p + Math.max(i, j))) {
+                    counts[Math.min(i, j)][Math.max(i, j)]++;
+                }
+            }
+        }
+
+        double D = 0.0;
+
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                double theta = counts[i][j] / (double) graphs.size();
+                D += 2 * theta * (1.0 - theta);
+            }
+        }
+
+        return D / (p * (p - 1) / 2.0);
+    }
+
+    /**
+     * The values of a penalty path that were tried, in the order tried, with their instabilities.
+     */
+    public static final class Path {
+        private final List<Double> values = new ArrayList<>();
+        private final List<Double> instabilities = new ArrayList<>();
+
+        private void add(double value, double instability) {
+            values.add(value);
+            instabilities.add(instability);
+        }
+
+        public int size() {
+            return values.size();
+        }
+
+        public double getValue(int index) {
+            return values.get(index);
+        }
+
+        public double getInstability(int index) {
+            return instabilities.get(index);
+        }
+
+        /**
+         * @return the value with the greatest instability below the cutoff, or the most stable value if none is
+         * below it.
+         */
+        public double getSelectedValue(double cutoff) {
+            int best = -1;
+            int mostStable = 0;
+
+            for (int i = 0; i < values.size(); i++) {
+                double d = instabilities.get(i);
+
+                if (d < cutoff && (best == -1 || d > instabilities.get(best))) {
+                    best = i;
+                }
+
+                if (d < instabilities.get(mostStable)) {
+                    mostStable = i;
+                }
+            }
+
+            return values.get(best == -1 ? mostStable : best);
+        }
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private List<Graph> searchAt(Algorithm algorithm, Parameters parameters, String parameter, double value,
+                                 Graph[] initial, Graph[] graphs) {
+        runCells(algorithm, parameters, parameter, new double[]{value}, 1, initial, graphs);
+        return Arrays.asList(graphs);
+    }
+
+    // Searches each subsample at each of the given values, in parallel; the graph for value k and subsample s
+    // goes into graphs[k * numSubsamples + s]. With no parameter, searches each subsample once.
+    private void runCells(final Algorithm algorithm, final Parameters parameters, final String parameter,
+                          final double[] values, int numValues, final Graph[] initial, final Graph[] graphs) {
+        final DataModel[] models = getModels();
+        final int p = subsamples.length;
+
+        class SearchAction extends RecursiveAction {
+            private final int chunk;
+            private final int from;
+            private final int to;
+
+            private SearchAction(int chunk, int from, int to) {
+                this.chunk = chunk;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    for (int c = from; c < to; c++) {
+                        int s = c % p;
+                        Parameters _parameters = new Parameters(parameters);
+
+                        if (parameter != null) {
+                            _parameters.set(parameter, values[c / p]);
+                        }
+
+                        Algorithm _algorithm = algorithm;
+
+                        if (initial != null && initial[s] != null) {
+                            _algorithm = copy(algorithm);
+                            ((TakesInitialGraph) _algorithm).setInitialGraph(initial[s]);
+                        }
+
+                        graphs[c] = _algorithm.search(models[s], _parameters);
+                    }
+                } else {
+                    final int mid = (to + from) / 2;
+
+                    SearchAction left = new SearchAction(chunk, from, mid);
+                    SearchAction right = new SearchAction(chunk, mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+                }
+            }
+        }
+
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+        pool.invoke(new SearchAction(1, 0, numValues * p));
+    }
+
+    // The data models passed to the algorithm; covariance matrices are computed in parallel on first use.
+    private synchronized DataModel[] getModels() {
+        if (models != null) return models;
+
+        final DataModel[] _models = new DataModel[subsamples.length];
+
+        if (!useCovariance) {
+            System.arraycopy(subsamples, 0, _models, 0, subsamples.length);
+        } else {
+            class CovarianceAction extends RecursiveAction {
+                private final int from;
+                private final int to;
+
+                private CovarianceAction(int from, int to) {
+                    this.from = from;
+                    this.to = to;
+                }
+
+                @Override
+                protected void compute() {
+                    if (to - from <= 1) {
+                        for (int s = from; s < to; s++) {
+                            _models[s] = new CovarianceMatrix(subsamples[s]);
+                        }
+                    } else {
+                        final int mid = (to + from) / 2;
+
+                        CovarianceAction left = new CovarianceAction(from, mid);
+                        CovarianceAction right = new CovarianceAction(mid, to);
+
+                        left.fork();
+                        right.compute();
+                        left.join();
+                    }
+                }
+            }
+
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new CovarianceAction(0, subsamples.length));
+        }
+
+        models = _models;
+        return models;
+    }
+
+    // A copy of the algorithm, so that an initial graph can be set on it without affecting other searches.
+    private static Algorithm copy(Algorithm algorithm) {
+        try {
+            return new MarshalledObject<>(algorithm).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not copy " + algorithm.getDescription()
+                    + " to give it an initial graph.", e);
+        }
+    }
+}
@@ -1,20 +1,15 @@
 package edu.cmu.tetrad.algcomparison.algorithm;
 
 import edu.cmu.tetrad.algcomparison.utils.TakesInitialGraph;
-import edu.cmu.tetrad.data.BootstrapSampler;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.graph.*;
-import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.Parameters;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveAction;
 
 /**
  * Stability selection.
@@ -26,6 +21,7 @@ public class StabilitySelection implements Algorithm, TakesInitialGraph {
     static final long serialVersionUID = 23L;
     private Algorithm algorithm;
     private Graph initialGraph = null;
+    private boolean useCovariance = false;
 
     public StabilitySelection(Algorithm algorithm) {
         this.algorithm = algorithm;
@@ -40,56 +36,12 @@ public class StabilitySelection implements Algorithm, TakesInitialGraph {
 
         Map<Edge, Integer> counts = new HashMap<>();
 
-        List<Graph> graphs = new ArrayList<>();
+        StabilityEngine engine = new StabilityEngine(_dataSet, numSubsamples,
+                (int) (percentageB * _dataSet.getNumRows()));
+        engine.setUseCovariance(useCovariance);
 
-        final ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+        List<Graph> graphs = engine.search(algorithm, parameters);
 
-        class StabilityAction extends RecursiveAction {
-
-            private int chunk;
-            private int from;
-            private int to;
-
-            private StabilityAction(int chunk, int from, int to) {
-                this.chunk = chunk;
-                this.from = from;
-                this.to = to;
-            }
-
-            @Override
-            protected void compute() {
-                if (to - from <= chunk) {
-                    for (int s = from; s < to; s++) {
-                        BootstrapSampler sampler = new BootstrapSampler();
-                        sampler.setWithoutReplacements(true);
-                        DataSet sample = sampler.sample(_dataSet, (int) (percentageB * _dataSet.getNumRows()));
-                        Graph graph = algorithm.search(sample, parameters);
-                        graphs.add(graph);
-                    }
-                } else {
-                    final int mid = (to + from) / 2;
-
-                    StabilityAction left = new StabilityAction(chunk, from, mid);
-                    StabilityAction right = new StabilityAction(chunk, mid, to);
-
-                    left.fork();
-                    right.compute();
-                    left.join();
-                }
-            }
-        }
-
-        final int chunk = 2;
-
-        pool.invoke(new StabilityAction(chunk, 0, numSubsamples));
-
-//        for (int i = 0; i < numSubsamples; i++) {
-//            BootstrapSampler sampler = new BootstrapSampler();
-//            sampler.setWithoutReplacements(true);
-//            DataSet sample = sampler.sample(_dataSet, (int) (percentageB * _dataSet.getNumRows()));
-//            Graph graph = algorithm.search(sample, parameters);
-//            graphs.add(graph);
-//        }
         for (Graph graph : graphs) {
             for (Edge edge : graph.getEdges()) {
                 increment(edge, counts);
@@ -108,6 +60,14 @@ public class StabilitySelection implements Algorithm, TakesInitialGraph {
         return initialGraph;
     }
 
+    /**
+     * True if the algorithm should be given each subsample's covariance matrix rather than the subsample itself.
+     * The algorithm must accept covariance matrices.
+     */
+    public void setUseCovariance(boolean useCovariance) {
+        this.useCovariance = useCovariance;
+    }
+
     private void increment(Edge edge, Map<Edge, Integer> counts) {
         counts.putIfAbsent(edge, 0);
         counts.put(edge, counts.get(edge) + 1);
@@ -1,6 +1,5 @@
 package edu.cmu.tetrad.algcomparison.algorithm.other;
 
-import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.annotation.AlgType;
@@ -9,6 +8,7 @@ import edu.cmu.tetrad.graph.EdgeListGraph;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BlockGlasso;
 import edu.cmu.tetrad.util.Parameters;
 import edu.cmu.tetrad.util.TetradMatrix;
 import edu.pitt.dbmi.algo.bootstrap.BootstrapEdgeEnsemble;
@@ -30,28 +30,46 @@ public class Glasso implements Algorithm {
 
     public Graph search(DataModel ds, Parameters parameters) {
     	if (parameters.getInt("bootstrapSampleSize") < 1) {
-            DoubleMatrix2D cov = new DenseDoubleMatrix2D(DataUtils.getContinuousDataSet(ds)
-                    .getCovarianceMatrix().toArray());
+            double[][] cov = DataUtils.getContinuousDataSet(ds).getCovarianceMatrix().toArray();
+            List<Node> variables = ds.getVariables();
+            Graph resultGraph = new EdgeListGraph(variables);
 
-            edu.cmu.tetrad.search.Glasso glasso = new edu.cmu.tetrad.search.Glasso(cov);
-            glasso.setMaxit((int) parameters.getInt("maxit"));
-            glasso.setIa(parameters.getBoolean("ia"));
-            glasso.setIs(parameters.getBoolean("is"));
-            glasso.setItr(parameters.getBoolean("itr"));
-            glasso.setIpen(parameters.getBoolean("ipen"));
-            glasso.setThr(parameters.getDouble("thr"));
-            glasso.setRhoAllEqual(1.0);
+            if (parameters.getBoolean("ia")) {
+                edu.cmu.tetrad.search.Glasso glasso = new edu.cmu.tetrad.search.Glasso(new DenseDoubleMatrix2D(cov));
+                glasso.setMaxit((int) parameters.getInt("maxit"));
+                glasso.setIa(true);
+                glasso.setIs(parameters.getBoolean("is"));
+                glasso.setItr(parameters.getBoolean("itr"));
+                glasso.setIpen(parameters.getBoolean("ipen"));
+                glasso.setThr(parameters.getDouble("thr"));
+                glasso.setRhoAllEqual(1.0);
 
-            edu.cmu.tetrad.search.Glasso.Result result = glasso.search();
-            TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
+                edu.cmu.tetrad.search.Glasso.Result result = glasso.search();
+                TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
 
-            List<Node> variables = ds.getVariables();
-            Graph resultGraph = new EdgeListGraph(variables);
+                for (int i = 0; i < variables.size(); i++) {
+                    for (int j = i + 1; j < variables.size(); j++) {
+                        if (wwi.get(i, j) != 0.0 && wwi.get(j, i) != 0.0) {
+                            resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+                        }
+                    }
+                }
+            } else {
+                BlockGlasso glasso = new BlockGlasso(cov);
+                glasso.setMaxit(parameters.getInt("maxit"));
+                glasso.setPenalizeDiagonal(parameters.getBoolean("ipen"));
+                glasso.setThr(parameters.getDouble("thr"));
+
+                BlockGlasso.Result result = glasso.search(1.0);
 
-            for (int i = 0; i < variables.size(); i++) {
-                for (int j = i + 1; j < variables.size(); j++) {
-                    if (wwi.get(i, j) != 0.0 && wwi.get(i, j) != 0.0) {
-                        resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+                for (int[] block : result.getBlocks()) {
+                    for (int i = 0; i < block.length; i++) {
+                        for (int j = i + 1; j < block.length; j++) {
+                            if (result.getWwi(block[i], block[j]) != 0.0
+                                    && result.getWwi(block[j], block[i]) != 0.0) {
+                                resultGraph.addUndirectedEdge(variables.get(block[i]), variables.get(block[j]));
+                            }
+                        }
                     }
                 }
             }
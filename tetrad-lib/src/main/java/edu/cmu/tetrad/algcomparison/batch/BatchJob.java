@@ -0,0 +1,317 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.algcomparison.batch;
+
+import edu.cmu.tetrad.data.DelimiterType;
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.util.Parameters;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A search to be run by a BatchSearchEngine: a data file, an algorithm given by the name or command in its
+ * annotation (with an independence test and score if it needs them, also by name or command), parameters, and
+ * optionally knowledge, together with limits on how long the search may take and how much memory it may be
+ * assumed to need.
+ * <p>
+ * Jobs may be read from a file with one job per line, each a list of key=value pairs separated by white space.
+ * The keys id, data, algorithm, test, score, knowledge, covariance (true to search over the covariance matrix of
+ * the data), delimiter (tab, comma or whitespace), timeout (in seconds) and memory (in megabytes) describe the job;
+ * any other key is taken to be a parameter. Lines that are blank or start with # are skipped.
+ *
+ * @author jdramsey
+ */
+public class BatchJob {
+
+    private final String id;
+    private final File dataFile;
+    private final String algorithm;
+    private String test = null;
+    private String score = null;
+    private Parameters parameters = new Parameters();
+    private File knowledgeFile = null;
+    private IKnowledge knowledge = null;
+    private boolean useCovariance = false;
+    private DelimiterType delimiter = DelimiterType.TAB;
+    private long timeoutMillis = 0;
+    private long memoryBytes = 0;
+
+    /**
+     * @param id        A name for the job, unique among the jobs given to an engine; results are saved under it.
+     * @param dataFile  The tabular data file to search over, with variable names in the first row.
+     * @param algorithm The name or command of the algorithm, as given in its annotation.
+     */
+    public BatchJob(String id, File dataFile, String algorithm) {
+        if (id == null) throw new NullPointerException("Id was not provided.");
+        if (dataFile == null) throw new NullPointerException("Data file was not provided.");
+        if (algorithm == null) throw new NullPointerException("Algorithm was not provided.");
+
+        this.id = id;
+        this.dataFile = dataFile;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Reads jobs from the given file, in the format described above.
+     */
+    public static List<BatchJob> readJobs(File file) throws IOException {
+        List<BatchJob> jobs = new ArrayList<>();
+
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                try {
+                    jobs.add(parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Parses a job from a line of key=value pairs.
+     */
+    public static BatchJob parse(String line) {
+        String id = null;
+        String data = null;
+        String algorithm = null;
+        List<String[]> rest = new ArrayList<>();
+
+        for (String token : line.trim().split("\\s+")) {
+            int eq = token.indexOf('=');
+
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expecting key=value: " + token);
+            }
+
+            String key = token.substring(0, eq);
+            String value = token.substring(eq + 1);
+
+            if ("id".equals(key)) {
+                id = value;
+            } else if ("data".equals(key)) {
+                data = value;
+            } else if ("algorithm".equals(key)) {
+                algorithm = value;
+            } else {
+                rest.add(new String[]{key, value});
+            }
+        }
+
+        if (data == null) throw new IllegalArgumentException("No data file given.");
+        if (algorithm == null) throw new IllegalArgumentException("No algorithm given.");
+        if (id == null) id = algorithm + "_" + new File(data).getName();
+
+        BatchJob job = new BatchJob(id, new File(data), algorithm);
+
+        for (String[] pair : rest) {
+            String key = pair[0];
+            String value = pair[1];
+
+            switch (key) {
+                case "test":
+                    job.setTest(value);
+                    break;
+                case "score":
+                    job.setScore(value);
+                    break;
+                case "knowledge":
+                    job.setKnowledgeFile(new File(value));
+                    break;
+                case "covariance":
+                    job.setUseCovariance(Boolean.parseBoolean(value));
+                    break;
+                case "delimiter":
+                    job.setDelimiter(parseDelimiter(value));
+                    break;
+                case "timeout":
+                    job.setTimeoutMillis((long) (Double.parseDouble(value) * 1000));
+                    break;
+                case "memory":
+                    job.setMemoryBytes((long) (Double.parseDouble(value) * 1024 * 1024));
+                    break;
+                default:
+                    job.getParameters().set(key, parseValue(value));
+            }
+        }
+
+        return job;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    /**
+     * @return the name or command of the algorithm.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the name or command of the independence test, or null.
+     */
+    public String getTest() {
+        return test;
+    }
+
+    public void setTest(String test) {
+        this.test = test;
+    }
+
+    /**
+     * @return the name or command of the score, or null.
+     */
+    public String getScore() {
+        return score;
+    }
+
+    public void setScore(String score) {
+        this.score = score;
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Parameters parameters) {
+        if (parameters == null) throw new NullPointerException("Parameters were not provided.");
+        this.parameters = parameters;
+    }
+
+    /**
+     * @return the file to read knowledge from, or null. Knowledge given directly takes precedence.
+     */
+    public File getKnowledgeFile() {
+        return knowledgeFile;
+    }
+
+    public void setKnowledgeFile(File knowledgeFile) {
+        this.knowledgeFile = knowledgeFile;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * @return true if the search should be given the covariance matrix of the data rather than the data.
+     */
+    public boolean isUseCovariance() {
+        return useCovariance;
+    }
+
+    public void setUseCovariance(boolean useCovariance) {
+        this.useCovariance = useCovariance;
+    }
+
+    public DelimiterType getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(DelimiterType delimiter) {
+        if (delimiter == null) throw new NullPointerException("Delimiter was not provided.");
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @return the time the search may take, in milliseconds, or 0 for no limit.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) throw new IllegalArgumentException("Timeout must be >= 0.");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the memory the search may be assumed to need, in bytes, or 0 to estimate it from the data.
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public void setMemoryBytes(long memoryBytes) {
+        if (memoryBytes < 0) throw new IllegalArgumentException("Memory must be >= 0.");
+        this.memoryBytes = memoryBytes;
+    }
+
+    public String toString() {
+        return id + ": " + algorithm + " on " + dataFile;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private static DelimiterType parseDelimiter(String value) {
+        switch (value.toLowerCase()) {
+            case "tab":
+                return DelimiterType.TAB;
+            case "comma":
+                return DelimiterType.COMMA;
+            case "whitespace":
+                return DelimiterType.WHITESPACE;
+            default:
+                throw new IllegalArgumentException("Unknown delimiter: " + value);
+        }
+    }
+
+    private static Object parseValue(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.parseBoolean(value);
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            // not an integer
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.algcomparison.batch;
+
+import edu.cmu.tetrad.graph.Graph;
+
+/**
+ * The outcome of a BatchJob, with timings.
+ *
+ * @author jdramsey
+ */
+public class BatchResult {
+
+    /**
+     * How a job ended.
+     */
+    public enum Status {
+        /**
+         * The search finished.
+         */
+        COMPLETED,
+
+        /**
+         * The search or the loading of its inputs threw an exception.
+         */
+        FAILED,
+
+        /**
+         * The search did not finish within the job's time limit.
+         */
+        TIMED_OUT,
+
+        /**
+         * The job needs more memory than the engine has to give.
+         */
+        REJECTED
+    }
+
+    private final BatchJob job;
+    private final Status status;
+    private final Graph graph;
+    private final String message;
+    private final long waitMillis;
+    private final long loadMillis;
+    private final long searchMillis;
+    private final long allocatedBytes;
+
+    BatchResult(BatchJob job, Status status, Graph graph, String message, long waitMillis, long loadMillis,
+                long searchMillis, long allocatedBytes) {
+        this.job = job;
+        this.status = status;
+        this.graph = graph;
+        this.message = message;
+        this.waitMillis = waitMillis;
+        this.loadMillis = loadMillis;
+        this.searchMillis = searchMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public BatchJob getJob() {
+        return job;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the result graph, or null if the search did not complete.
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return why the job did not complete, or null.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the time from submission until a worker started the job, in milliseconds.
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * @return the time taken to load (or find in the cache) the data and knowledge, in milliseconds.
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * @return the time taken by the search, in milliseconds.
+     */
+    public long getSearchMillis() {
+        return searchMillis;
+    }
+
+    /**
+     * @return the bytes allocated by the worker thread while running the job, or -1 if this is not known.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public String toString() {
+        return job.getId() + ": " + status + (message == null ? "" : " (" + message + ")");
+    }
+}
@@ -0,0 +1,485 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.algcomparison.batch;
+
+import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
+import edu.cmu.tetrad.algcomparison.algorithm.AlgorithmFactory;
+import edu.cmu.tetrad.algcomparison.independence.IndependenceWrapper;
+import edu.cmu.tetrad.algcomparison.score.ScoreWrapper;
+import edu.cmu.tetrad.algcomparison.utils.HasKnowledge;
+import edu.cmu.tetrad.annotation.AlgorithmAnnotations;
+import edu.cmu.tetrad.annotation.AnnotatedClass;
+import edu.cmu.tetrad.annotation.ScoreAnnotations;
+import edu.cmu.tetrad.annotation.TestOfIndependenceAnnotations;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs searches without a user interface. Jobs (see BatchJob) are queued and run by a fixed number of worker
+ * threads; each job names its algorithm, test and score by the name or command given in their annotations, so any
+ * annotated algorithm may be used. Data sets, covariance matrices and knowledge are loaded once and shared by all
+ * jobs that use the same files.
+ * <p>
+ * A job's time limit counts from when a worker starts it. When the limit is reached the job is reported as timed
+ * out and its worker is interrupted; since a search cannot be stopped from outside, a search that does not check
+ * for interruption keeps its worker, and the memory admitted for it, until it finishes, and its result is then
+ * discarded.
+ * <p>
+ * Memory is handled as admission control. The engine has a budget, by default three quarters of the maximum heap,
+ * and a job may start searching only when the memory it needs is free in the budget, which it holds until its
+ * search finishes. A job's need is what it states, or else an estimate from the number of variables; a job that
+ * needs more than the whole budget is rejected, and a job that runs out of memory anyway is reported as failed.
+ * <p>
+ * For each completed job the result graph is saved as graphs/[id].txt in the output directory, and for every job a
+ * line of timings is added to metrics.txt there.
+ *
+ * @author jdramsey
+ */
+public class BatchSearchEngine {
+
+    // Memory is counted in units of this many bytes.
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // The least memory a job is assumed to need, in megabytes.
+    private static final int MIN_JOB_MEMORY = 64;
+
+    private final File outputDir;
+    private final File graphsDir;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Semaphore memory;
+    private final int memoryBudget;
+    private final InputCache cache = new InputCache();
+    private final PrintWriter metrics;
+
+    /**
+     * Constructs an engine with the given number of workers and a memory budget of three quarters of the maximum
+     * heap.
+     *
+     * @param outputDir  The directory to save graphs and metrics to; created if need be.
+     * @param numWorkers The number of jobs that may run at once.
+     */
+    public BatchSearchEngine(File outputDir, int numWorkers) throws IOException {
+        this(outputDir, numWorkers, Runtime.getRuntime().maxMemory() / 4 * 3);
+    }
+
+    /**
+     * @param outputDir    The directory to save graphs and metrics to; created if need be.
+     * @param numWorkers   The number of jobs that may run at once.
+     * @param memoryBudget The memory, in bytes, that the jobs running at once may together need.
+     */
+    public BatchSearchEngine(File outputDir, int numWorkers, long memoryBudget) throws IOException {
+        if (numWorkers < 1) throw new IllegalArgumentException("Number of workers must be at least 1.");
+        if (memoryBudget < MEGABYTE) throw new IllegalArgumentException("Memory budget must be at least 1 MB.");
+
+        this.outputDir = outputDir;
+        this.graphsDir = new File(outputDir, "graphs");
+
+        if (!graphsDir.isDirectory() && !graphsDir.mkdirs()) {
+            throw new IOException("Could not create " + graphsDir);
+        }
+
+        this.memoryBudget = (int) Math.min(Integer.MAX_VALUE, memoryBudget / MEGABYTE);
+        this.memory = new Semaphore(this.memoryBudget, true);
+
+        this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("batch-worker-"));
+
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("batch-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        this.metrics = new PrintWriter(new BufferedWriter(new FileWriter(new File(outputDir, "metrics.txt"))));
+        this.metrics.println("id\talgorithm\tstatus\twait (ms)\tload (ms)\tsearch (ms)\tallocated (MB)"
+                + "\tnodes\tedges\tmessage");
+        this.metrics.flush();
+    }
+
+    /**
+     * Runs the jobs in the given file, saving results to the given directory.
+     * <p>
+     * Usage: BatchSearchEngine jobFile outputDir [numWorkers]
+     */
+    public static void main(String... args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: BatchSearchEngine jobFile outputDir [numWorkers]");
+            return;
+        }
+
+        int numWorkers = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        BatchSearchEngine engine = new BatchSearchEngine(new File(args[1]), numWorkers);
+
+        try {
+            for (BatchResult result : engine.runAll(BatchJob.readJobs(new File(args[0])))) {
+                System.out.println(result);
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Queues the given job.
+     *
+     * @return the result of the job, available once it has completed, failed, timed out or been rejected.
+     */
+    public Future<BatchResult> submit(BatchJob job) {
+        if (job == null) throw new NullPointerException("Job was not provided.");
+
+        Run run = new Run(job);
+
+        try {
+            workers.execute(run);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("The engine has been shut down.");
+        }
+
+        return run.result;
+    }
+
+    /**
+     * Queues the given jobs and waits for all of them.
+     *
+     * @return the results, in the order of the jobs.
+     */
+    public List<BatchResult> runAll(List<BatchJob> jobs) throws InterruptedException {
+        List<Future<BatchResult>> futures = new ArrayList<>();
+
+        for (BatchJob job : jobs) {
+            futures.add(submit(job));
+        }
+
+        List<BatchResult> results = new ArrayList<>();
+
+        for (Future<BatchResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Stops taking jobs and, once the jobs queued have been run, releases the loaded inputs and closes the metrics
+     * file. Returns at once.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        timer.shutdown();
+
+        new DaemonThreadFactory("batch-shutdown-").newThread(new Runnable() {
+            public void run() {
+                try {
+                    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Close anyway.
+                }
+
+                cache.clear();
+
+                synchronized (metrics) {
+                    metrics.close();
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Waits until all queued jobs have been run, after shutdown.
+     *
+     * @return true if they have, false if the wait timed out.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return the directory graphs and metrics are saved to.
+     */
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    /**
+     * A job in the queue or running.
+     */
+    private class Run implements Runnable {
+        private final BatchJob job;
+        private final CompletableFuture<BatchResult> result = new CompletableFuture<>();
+        private final long submitted = System.currentTimeMillis();
+
+        // Guards the interrupting of the worker, so that it is not interrupted after it has moved on, and the
+        // completing of the result, so that a graph is saved only for a job that has not timed out.
+        private final Object lock = new Object();
+        private boolean finished = false;
+
+        // The memory taken from the budget, in megabytes; only what was acquired is released.
+        private int acquired = 0;
+
+        private long waitMillis = 0;
+        private long loadMillis = 0;
+
+        private Run(BatchJob job) {
+            this.job = job;
+        }
+
+        public void run() {
+            long start = System.currentTimeMillis();
+            waitMillis = start - submitted;
+
+            final Thread worker = Thread.currentThread();
+            ScheduledFuture<?> timeout = null;
+
+            if (job.getTimeoutMillis() > 0) {
+                timeout = timer.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (lock) {
+                            if (finished) return;
+                            worker.interrupt();
+                            finish(BatchResult.Status.TIMED_OUT, null,
+                                    "No result after " + job.getTimeoutMillis() + " ms", 0, -1);
+                        }
+                    }
+                }, job.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+
+            int permits;
+
+            try {
+                DataModel data;
+                IKnowledge knowledge;
+
+                int maxDiscrete = job.getParameters().getInt("maxDistinctValuesDiscrete");
+
+                if (job.getMemoryBytes() > 0) {
+                    permits = (int) Math.min(Integer.MAX_VALUE, (job.getMemoryBytes() + MEGABYTE - 1) / MEGABYTE);
+                    if (!admit(permits)) return;
+                }
+
+                DataSet dataSet = cache.getDataSet(job.getDataFile(), job.getDelimiter(), maxDiscrete);
+
+                if (job.getMemoryBytes() == 0) {
+                    permits = estimate(dataSet);
+                    if (!admit(permits)) return;
+                }
+
+                data = job.isUseCovariance()
+                        ? cache.getCovarianceMatrix(job.getDataFile(), job.getDelimiter(), maxDiscrete)
+                        : dataSet;
+
+                knowledge = job.getKnowledge();
+
+                if (knowledge == null && job.getKnowledgeFile() != null) {
+                    knowledge = cache.getKnowledge(job.getKnowledgeFile());
+                }
+
+                Algorithm algorithm = AlgorithmFactory.create(findAlgorithm(job.getAlgorithm()),
+                        findTest(job.getTest()), findScore(job.getScore()));
+
+                if (knowledge != null) {
+                    if (!(algorithm instanceof HasKnowledge)) {
+                        throw new IllegalArgumentException(job.getAlgorithm() + " does not take knowledge.");
+                    }
+
+                    ((HasKnowledge) algorithm).setKnowledge(knowledge);
+                }
+
+                loadMillis = System.currentTimeMillis() - start;
+
+                long allocated = allocatedBytes();
+                long searchStart = System.currentTimeMillis();
+
+                Graph graph = algorithm.search(data, job.getParameters());
+
+                long searchMillis = System.currentTimeMillis() - searchStart;
+                allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+
+                synchronized (lock) {
+                    if (!result.isDone()) {
+                        GraphUtils.saveGraph(graph, new File(graphsDir, job.getId() + ".txt"), false);
+                        finish(BatchResult.Status.COMPLETED, graph, null, searchMillis, allocated);
+                    }
+                }
+            } catch (InterruptedException e) {
+                finish(BatchResult.Status.TIMED_OUT, null, "Interrupted", 0, -1);
+            } catch (OutOfMemoryError e) {
+                finish(BatchResult.Status.FAILED, null, "Out of memory", 0, -1);
+            } catch (Throwable e) {
+                finish(BatchResult.Status.FAILED, null, e.toString(), 0, -1);
+            } finally {
+                if (acquired > 0) {
+                    memory.release(acquired);
+                }
+
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+
+                synchronized (lock) {
+                    finished = true;
+                }
+
+                // Clears an interrupt that came too late to stop the search.
+                Thread.interrupted();
+            }
+        }
+
+        // Waits for the given memory, in megabytes, to be free; rejects the job if it never can be.
+        private boolean admit(int permits) throws InterruptedException {
+            if (permits > memoryBudget) {
+                finish(BatchResult.Status.REJECTED, null, "Needs " + permits + " MB; the budget is "
+                        + memoryBudget + " MB", 0, -1);
+                return false;
+            }
+
+            memory.acquire(permits);
+            acquired = permits;
+            return true;
+        }
+
+        private void finish(BatchResult.Status status, Graph graph, String message, long searchMillis,
+                            long allocated) {
+            BatchResult batchResult = new BatchResult(job, status, graph, message, waitMillis, loadMillis,
+                    searchMillis, allocated);
+
+            synchronized (lock) {
+                if (result.complete(batchResult)) {
+                    writeMetrics(batchResult);
+                }
+            }
+        }
+    }
+
+    // A rough estimate of the memory a search over the given data needs, in megabytes: room for the data and a few
+    // p x p matrices.
+    private static int estimate(DataSet dataSet) {
+        long n = dataSet.getNumRows();
+        long p = dataSet.getNumColumns();
+        long bytes = 8 * (2 * n * p + 4 * p * p);
+        return (int) Math.max(MIN_JOB_MEMORY, Math.min(Integer.MAX_VALUE, bytes / MEGABYTE));
+    }
+
+    private void writeMetrics(BatchResult result) {
+        Graph graph = result.getGraph();
+        long allocated = result.getAllocatedBytes();
+
+        synchronized (metrics) {
+            metrics.println(result.getJob().getId()
+                    + "\t" + result.getJob().getAlgorithm()
+                    + "\t" + result.getStatus()
+                    + "\t" + result.getWaitMillis()
+                    + "\t" + result.getLoadMillis()
+                    + "\t" + result.getSearchMillis()
+                    + "\t" + (allocated < 0 ? "*" : allocated / MEGABYTE)
+                    + "\t" + (graph == null ? "*" : graph.getNumNodes())
+                    + "\t" + (graph == null ? "*" : graph.getNumEdges())
+                    + "\t" + (result.getMessage() == null ? "" : result.getMessage().replace('\t', ' ')));
+            metrics.flush();
+        }
+    }
+
+    // The bytes allocated so far by the current thread, or -1 if the JVM does not say.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean _bean = (com.sun.management.ThreadMXBean) bean;
+
+            if (_bean.isThreadAllocatedMemorySupported() && _bean.isThreadAllocatedMemoryEnabled()) {
+                return _bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Algorithm> findAlgorithm(String name) {
+        for (AnnotatedClass<edu.cmu.tetrad.annotation.Algorithm> c
+                : AlgorithmAnnotations.getInstance().getAnnotatedClasses()) {
+            if (c.getAnnotation().name().equalsIgnoreCase(name) || c.getAnnotation().command().equalsIgnoreCase(name)) {
+                return (Class<? extends Algorithm>) c.getClazz();
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown algorithm: " + name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends IndependenceWrapper> findTest(String name) {
+        if (name == null) return null;
+
+        for (AnnotatedClass<edu.cmu.tetrad.annotation.TestOfIndependence> c
+                : TestOfIndependenceAnnotations.getInstance().getAnnotatedClasses()) {
+            if (c.getAnnotation().name().equalsIgnoreCase(name) || c.getAnnotation().command().equalsIgnoreCase(name)) {
+                return (Class<? extends IndependenceWrapper>) c.getClazz();
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown independence test: " + name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends ScoreWrapper> findScore(String name) {
+        if (name == null) return null;
+
+        for (AnnotatedClass<edu.cmu.tetrad.annotation.Score> c : ScoreAnnotations.getInstance().getAnnotatedClasses()) {
+            if (c.getAnnotation().name().equalsIgnoreCase(name) || c.getAnnotation().command().equalsIgnoreCase(name)) {
+                return (Class<? extends ScoreWrapper>) c.getClazz();
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown score: " + name);
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
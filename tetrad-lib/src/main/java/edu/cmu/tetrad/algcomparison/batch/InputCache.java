@@ -0,0 +1,146 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.algcomparison.batch;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.util.DataConvertUtils;
+import edu.pitt.dbmi.data.Delimiter;
+import edu.pitt.dbmi.data.reader.tabular.MixedTabularDataFileReader;
+import edu.pitt.dbmi.data.reader.tabular.TabularDataReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Holds the data sets, covariance matrices and knowledge loaded for the jobs of a BatchSearchEngine, so that jobs
+ * over the same inputs load them once, even when they run at the same time. The first job to ask for an input
+ * loads it; any others asking meanwhile wait for that load rather than starting their own. A load that fails is
+ * forgotten, so that a later job may try again.
+ *
+ * @author jdramsey
+ */
+class InputCache {
+
+    private final ConcurrentMap<List<Object>, Future<Object>> inputs = new ConcurrentHashMap<>();
+
+    /**
+     * @return the data set in the given file, read with the given delimiter. The data set is shared among jobs and
+     * must not be changed.
+     */
+    DataSet getDataSet(final File file, final DelimiterType delimiter, final int maxIntegralDiscrete)
+            throws IOException, InterruptedException {
+        return (DataSet) get(Arrays.<Object>asList("data", file.getAbsoluteFile(), delimiter, maxIntegralDiscrete),
+                new Callable<Object>() {
+                    public Object call() throws IOException {
+                        TabularDataReader reader = new MixedTabularDataFileReader(maxIntegralDiscrete, file,
+                                toDelimiter(delimiter));
+                        reader.setHasHeader(true);
+                        reader.setCommentMarker("//");
+                        reader.setMissingValueMarker("*");
+                        return DataConvertUtils.toDataModel(reader.readInData());
+                    }
+                });
+    }
+
+    /**
+     * @return the covariance matrix of the data set in the given file. The matrix is shared among jobs and must not
+     * be changed.
+     */
+    ICovarianceMatrix getCovarianceMatrix(final File file, final DelimiterType delimiter,
+                                          final int maxIntegralDiscrete) throws IOException, InterruptedException {
+        return (ICovarianceMatrix) get(Arrays.<Object>asList("covariance", file.getAbsoluteFile(), delimiter,
+                maxIntegralDiscrete), new Callable<Object>() {
+            public Object call() throws IOException, InterruptedException {
+                return new CovarianceMatrix(getDataSet(file, delimiter, maxIntegralDiscrete));
+            }
+        });
+    }
+
+    /**
+     * @return a copy of the knowledge in the given file, which the caller may change.
+     */
+    IKnowledge getKnowledge(final File file) throws IOException, InterruptedException {
+        IKnowledge knowledge = (IKnowledge) get(Arrays.<Object>asList("knowledge", file.getAbsoluteFile()),
+                new Callable<Object>() {
+                    public Object call() throws IOException {
+                        KnowledgeReader reader = new KnowledgeReader();
+                        reader.setCommentMarker("//");
+                        return reader.parseKnowledge(file);
+                    }
+                });
+
+        return knowledge.copy();
+    }
+
+    /**
+     * Forgets everything loaded.
+     */
+    void clear() {
+        inputs.clear();
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private static Delimiter toDelimiter(DelimiterType delimiter) {
+        if (delimiter == DelimiterType.TAB) {
+            return Delimiter.TAB;
+        } else if (delimiter == DelimiterType.COMMA) {
+            return Delimiter.COMMA;
+        } else if (delimiter == DelimiterType.WHITESPACE) {
+            return Delimiter.WHITESPACE;
+        } else {
+            throw new IllegalArgumentException("Unsupported delimiter: " + delimiter);
+        }
+    }
+
+    private Object get(List<Object> key, Callable<Object> loader) throws IOException, InterruptedException {
+        Future<Object> future = inputs.get(key);
+
+        if (future == null) {
+            FutureTask<Object> task = new FutureTask<>(loader);
+            future = inputs.putIfAbsent(key, task);
+
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            inputs.remove(key, future);
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (CancellationException e) {
+            inputs.remove(key, future);
+            throw new InterruptedException("Loading was cancelled.");
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package edu.cmu.tetrad.algcomparison.independence;
 
+import edu.cmu.tetrad.algcomparison.utils.DiscreteStatistics;
 import edu.cmu.tetrad.annotation.TestOfIndependence;
 import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.search.*;
@@ -25,7 +27,8 @@ public class BDeuTest implements IndependenceWrapper {
 
     @Override
     public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
-        BDeuScore score = new BDeuScore(DataUtils.getDiscreteDataSet(dataSet));
+        DataSet _dataSet = DataUtils.getDiscreteDataSet(dataSet);
+        BDeuScore score = new BDeuScore(_dataSet, DiscreteStatistics.getStatistics(_dataSet));
         score.setSamplePrior(parameters.getDouble("samplePrior"));
         score.setStructurePrior(parameters.getDouble("structurePrior"));
         return new IndTestScore(score);
@@ -0,0 +1,141 @@
+package edu.cmu.tetrad.algcomparison.independence;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataType;
+import edu.cmu.tetrad.search.IndTestCaching;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.Parameters;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Remembers the results of another test, one store of results for each data set and setting of the wrapped test's
+ * parameters other than alpha, so that algorithms given the same instance of this wrapper, say all of the
+ * algorithms of a comparison, share the tests they do on each data set. Alpha is kept with each result in the
+ * store. Data sets are held weakly, so their stores are dropped once the data sets are no longer in use.
+ *
+ * @author jdramsey
+ */
+public class CachedTest implements IndependenceWrapper {
+
+    static final long serialVersionUID = 23L;
+    private final IndependenceWrapper test;
+    private int maxSize = 100000;
+    private transient Map<DataKey, Map<List<Object>, IndTestCaching.Store>> stores;
+    private transient ReferenceQueue<DataModel> cleared;
+
+    /**
+     * @param test The test to remember the results of.
+     */
+    public CachedTest(IndependenceWrapper test) {
+        if (test == null) throw new NullPointerException("Test was not provided.");
+        this.test = test;
+    }
+
+    @Override
+    public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
+        IndependenceTest _test = test.getTest(dataSet, parameters);
+        return new IndTestCaching(_test, getStore(dataSet, parameters, _test));
+    }
+
+    /**
+     * @return the store of results for the given data set and parameters, or null if no test has been made for
+     * them.
+     */
+    public synchronized IndTestCaching.Store getStore(DataModel dataSet, Parameters parameters) {
+        if (stores == null) return null;
+        Map<List<Object>, IndTestCaching.Store> _stores = stores.get(new DataKey(dataSet, null));
+        return _stores == null ? null : _stores.get(settings(parameters));
+    }
+
+    /**
+     * Sets the largest number of results to keep for each data set and setting.
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 2) throw new IllegalArgumentException("Max size must be at least 2: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String getDescription() {
+        return test.getDescription() + ", cached";
+    }
+
+    @Override
+    public DataType getDataType() {
+        return test.getDataType();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return test.getParameters();
+    }
+
+    private synchronized IndTestCaching.Store getStore(DataModel dataSet, Parameters parameters,
+                                                       IndependenceTest test) {
+        if (stores == null) {
+            stores = new HashMap<>();
+            cleared = new ReferenceQueue<>();
+        }
+
+        // Drops the stores of data sets no longer in use.
+        for (Reference<? extends DataModel> ref; (ref = cleared.poll()) != null; ) {
+            stores.remove(ref);
+        }
+
+        DataKey key = new DataKey(dataSet, cleared);
+        Map<List<Object>, IndTestCaching.Store> _stores = stores.get(key);
+
+        if (_stores == null) {
+            _stores = new HashMap<>();
+            stores.put(key, _stores);
+        }
+
+        List<Object> settings = settings(parameters);
+        IndTestCaching.Store store = _stores.get(settings);
+
+        if (store == null) {
+            store = new IndTestCaching.Store(test.getVariableNames(), maxSize);
+            _stores.put(settings, store);
+        }
+
+        return store;
+    }
+
+    // The values of the wrapped test's parameters other than alpha, which is kept with each result.
+    private List<Object> settings(Parameters parameters) {
+        List<Object> settings = new ArrayList<>();
+
+        for (String name : test.getParameters()) {
+            if (name.equals("alpha")) continue;
+            settings.add(name);
+            settings.add(parameters.get(name));
+        }
+
+        return settings;
+    }
+
+    // A data set, held weakly and compared by identity.
+    private static final class DataKey extends WeakReference<DataModel> {
+        private final int hash;
+
+        DataKey(DataModel dataSet, ReferenceQueue<DataModel> queue) {
+            super(dataSet, queue);
+            this.hash = System.identityHashCode(dataSet);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DataKey)) return false;
+            DataModel dataSet = get();
+            return dataSet != null && dataSet == ((DataKey) o).get();
+        }
+    }
+}
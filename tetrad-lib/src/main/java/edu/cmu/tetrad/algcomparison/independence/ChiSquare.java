@@ -1,7 +1,9 @@
 package edu.cmu.tetrad.algcomparison.independence;
 
+import edu.cmu.tetrad.algcomparison.utils.DiscreteStatistics;
 import edu.cmu.tetrad.annotation.TestOfIndependence;
 import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.search.IndTestChiSquare;
@@ -26,7 +28,9 @@ public class ChiSquare implements IndependenceWrapper {
 
     @Override
     public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
-        return new IndTestChiSquare(DataUtils.getDiscreteDataSet(dataSet), parameters.getDouble("alpha"));
+        DataSet _dataSet = DataUtils.getDiscreteDataSet(dataSet);
+        return new IndTestChiSquare(_dataSet, parameters.getDouble("alpha"),
+                DiscreteStatistics.getStatistics(_dataSet));
     }
 
     @Override
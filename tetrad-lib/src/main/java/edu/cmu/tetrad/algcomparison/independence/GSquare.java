@@ -1,7 +1,9 @@
 package edu.cmu.tetrad.algcomparison.independence;
 
+import edu.cmu.tetrad.algcomparison.utils.DiscreteStatistics;
 import edu.cmu.tetrad.annotation.TestOfIndependence;
 import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.search.IndTestGSquare;
@@ -26,7 +28,9 @@ public class GSquare implements IndependenceWrapper {
 
     @Override
     public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
-        return new IndTestGSquare(DataUtils.getDiscreteDataSet(dataSet), parameters.getDouble("alpha"));
+        DataSet _dataSet = DataUtils.getDiscreteDataSet(dataSet);
+        return new IndTestGSquare(_dataSet, parameters.getDouble("alpha"),
+                DiscreteStatistics.getStatistics(_dataSet));
     }
 
     @Override
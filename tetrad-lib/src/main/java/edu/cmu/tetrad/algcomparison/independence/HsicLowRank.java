@@ -0,0 +1,57 @@
+package edu.cmu.tetrad.algcomparison.independence;
+
+import edu.cmu.tetrad.annotation.TestOfIndependence;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataType;
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.search.IndTestHsicLowRank;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.Parameters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the random Fourier feature approximation to the HSIC test.
+ *
+ * @author jdramsey
+ */
+@TestOfIndependence(
+        name = "HSIC Test (Low Rank)",
+        command = "hsic-low-rank",
+        dataType = DataType.Continuous
+)
+public class HsicLowRank implements IndependenceWrapper {
+
+    static final long serialVersionUID = 23L;
+
+    @Override
+    public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
+        IndTestHsicLowRank test = new IndTestHsicLowRank(DataUtils.getContinuousDataSet(dataSet),
+                parameters.getDouble("alpha"));
+        test.setNumFeatures(parameters.getInt("hsicNumFeatures"));
+        test.setNumConditioningFeatures(parameters.getInt("hsicNumConditioningFeatures"));
+        test.setPerms(parameters.getInt("hsicNumPermutations"));
+        return test;
+    }
+
+    @Override
+    public String getDescription() {
+        return "HSIC Test (Low Rank)";
+    }
+
+    @Override
+    public DataType getDataType() {
+        return DataType.Continuous;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        List<String> params = new ArrayList<>();
+        params.add("alpha");
+        params.add("hsicNumFeatures");
+        params.add("hsicNumConditioningFeatures");
+        params.add("hsicNumPermutations");
+        return params;
+    }
+
+}
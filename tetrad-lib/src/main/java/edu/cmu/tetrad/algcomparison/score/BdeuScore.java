@@ -1,6 +1,8 @@
 package edu.cmu.tetrad.algcomparison.score;
 
+import edu.cmu.tetrad.algcomparison.utils.DiscreteStatistics;
 import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.graph.Node;
@@ -27,8 +29,9 @@ public class BdeuScore implements ScoreWrapper {
     @Override
     public Score getScore(DataModel dataSet, Parameters parameters) {
         this.dataSet = dataSet;
+        DataSet _dataSet = DataUtils.getDiscreteDataSet(dataSet);
         edu.cmu.tetrad.search.BDeuScore score
-                = new edu.cmu.tetrad.search.BDeuScore(DataUtils.getDiscreteDataSet(dataSet));
+                = new edu.cmu.tetrad.search.BDeuScore(_dataSet, DiscreteStatistics.getStatistics(_dataSet));
         score.setSamplePrior(parameters.getDouble("samplePrior"));
         score.setStructurePrior(parameters.getDouble("structurePrior"));
         return score;
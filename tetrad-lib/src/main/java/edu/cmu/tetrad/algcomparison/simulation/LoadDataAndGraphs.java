@@ -49,6 +49,15 @@ public class LoadDataAndGraphs implements Simulation {
 
                     GraphUtils.circleLayout(this.graphs.get(i), 225, 200, 150);
 
+                    // Data saved in binary form (see Comparison.setSaveDataBinary) is read as such.
+                    File binary = new File(path + "/data/data." + (i + 1) + ".bin");
+
+                    if (binary.exists()) {
+                        System.out.println("Loading data from " + binary.getAbsolutePath());
+                        dataSets.add(BinaryDataSink.read(binary));
+                        continue;
+                    }
+
                     File file1 = new File(path + "/data/data." + (i + 1) + ".txt");
 
                     System.out.println("Loading data from " + file1.getAbsolutePath());
@@ -2,23 +2,26 @@ package edu.cmu.tetrad.algcomparison.simulation;
 
 import edu.cmu.tetrad.algcomparison.graph.RandomGraph;
 import edu.cmu.tetrad.algcomparison.graph.SingleGraph;
-import edu.cmu.tetrad.data.DataModel;
-import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.data.DataType;
-import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodeType;
 import edu.cmu.tetrad.graph.SemGraph;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.sem.SparseSemSimulator;
 import edu.cmu.tetrad.util.Parameters;
 import edu.cmu.tetrad.util.RandomUtil;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * @author jdramsey
  */
-public class SemSimulation implements Simulation {
+public class SemSimulation implements StreamingSimulation {
 
     static final long serialVersionUID = 23L;
     private RandomGraph randomGraph;
@@ -65,29 +68,51 @@ public class SemSimulation implements Simulation {
             graphs.add(graph);
 
             DataSet dataSet = simulate(graph, parameters);
+            dataSet = transform(dataSet, parameters);
+            dataSet.setName("" + (i + 1));
+            dataSets.add(dataSet);
+        }
+    }
 
-            if (parameters.getBoolean("standardize")) {
-                dataSet = DataUtils.standardizeData(dataSet);
-            }
+    /**
+     * Simulates the data sets straight to the given sinks. Where the SEM allows (see
+     * SparseSemSimulator.canSimulate) and the data are not to be standardized, rows are simulated a block at a
+     * time, so that memory use does not grow with the sample size; otherwise each data set is simulated in memory
+     * and then written.
+     */
+    @Override
+    public void createData(Parameters parameters, Sinks sinks) throws IOException {
+        Graph graph = randomGraph.createGraph(parameters);
 
-            double variance = parameters.getDouble("measurementVariance");
+        dataSets = new ArrayList<>();
+        graphs = new ArrayList<>();
+        ims = new ArrayList<>();
 
-            if (variance > 0) {
-                for (int k = 0; k < dataSet.getNumRows(); k++) {
-                    for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                        double d = dataSet.getDouble(k, j);
-                        double norm = RandomUtil.getInstance().nextNormal(0, Math.sqrt(variance));
-                        dataSet.setDouble(k, j, d + norm);
-                    }
-                }
-            }
+        for (int i = 0; i < parameters.getInt("numRuns"); i++) {
+            System.out.println("Simulating dataset #" + (i + 1));
 
-            if (parameters.getBoolean("randomizeColumns")) {
-                dataSet = DataUtils.reorderColumns(dataSet);
+            if (parameters.getBoolean("differentGraphs") && i > 0) {
+                graph = randomGraph.createGraph(parameters);
             }
 
-            dataSet.setName("" + (i + 1));
-            dataSets.add(dataSet);
+            graphs.add(graph);
+
+            SemIm im = getIm(graph, parameters);
+            ims.add(im);
+
+            try (DataSink sink = sinks.getSink(i)) {
+                if (!parameters.getBoolean("standardize") && SparseSemSimulator.canSimulate(im)) {
+                    stream(im, parameters, sink);
+                } else {
+                    DataSet dataSet = im.simulateData(parameters.getInt("sampleSize"),
+                            parameters.getBoolean("saveLatentVars"));
+                    dataSet = transform(dataSet, parameters);
+
+                    double[][] columns = dataSet.getDoubleData().transpose().toArray();
+                    sink.start(dataSet.getVariables(), dataSet.getNumRows());
+                    sink.write(columns, dataSet.getNumRows());
+                }
+            }
         }
     }
 
@@ -133,7 +158,7 @@ public class SemSimulation implements Simulation {
 
     @Override
     public int getNumDataModels() {
-        return dataSets.size();
+        return graphs.size();
     }
 
     @Override
@@ -141,6 +166,90 @@ public class SemSimulation implements Simulation {
         return DataType.Continuous;
     }
 
+    // Standardizes, adds measurement error and shuffles columns, as the parameters ask.
+    private DataSet transform(DataSet dataSet, Parameters parameters) {
+        if (parameters.getBoolean("standardize")) {
+            dataSet = DataUtils.standardizeData(dataSet);
+        }
+
+        double variance = parameters.getDouble("measurementVariance");
+
+        if (variance > 0) {
+            for (int k = 0; k < dataSet.getNumRows(); k++) {
+                for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                    double d = dataSet.getDouble(k, j);
+                    double norm = RandomUtil.getInstance().nextNormal(0, Math.sqrt(variance));
+                    dataSet.setDouble(k, j, d + norm);
+                }
+            }
+        }
+
+        if (parameters.getBoolean("randomizeColumns")) {
+            dataSet = DataUtils.reorderColumns(dataSet);
+        }
+
+        return dataSet;
+    }
+
+    // Simulates from the compiled SEM a block of rows at a time, choosing columns, adding measurement error and
+    // shuffling columns on the way to the sink.
+    private void stream(SemIm im, Parameters parameters, final DataSink sink) throws IOException {
+        List<Node> nodes = im.getVariableNodes();
+        final List<Integer> kept = new ArrayList<>();
+
+        for (int j = 0; j < nodes.size(); j++) {
+            if (parameters.getBoolean("saveLatentVars") || nodes.get(j).getNodeType() == NodeType.MEASURED) {
+                kept.add(j);
+            }
+        }
+
+        if (parameters.getBoolean("randomizeColumns")) {
+            Collections.shuffle(kept);
+        }
+
+        List<Node> variables = new ArrayList<>();
+
+        for (int j : kept) {
+            ContinuousVariable variable = new ContinuousVariable(nodes.get(j).getName());
+            variable.setNodeType(nodes.get(j).getNodeType());
+            variables.add(variable);
+        }
+
+        final double sd = Math.sqrt(Math.max(0, parameters.getDouble("measurementVariance")));
+        final double[][] columns = new double[kept.size()][];
+        int sampleSize = parameters.getInt("sampleSize");
+
+        sink.start(variables, sampleSize);
+
+        new SparseSemSimulator(im).simulate(sampleSize, RandomUtil.getInstance().nextLong(), new DataSink() {
+            public void start(List<Node> variables, int numRows) {
+            }
+
+            public void write(double[][] block, int numRows) throws IOException {
+                for (int j = 0; j < kept.size(); j++) {
+                    columns[j] = block[kept.get(j)];
+
+                    if (sd > 0) {
+                        for (int i = 0; i < numRows; i++) {
+                            columns[j][i] += RandomUtil.getInstance().nextNormal(0, sd);
+                        }
+                    }
+                }
+
+                sink.write(columns, numRows);
+            }
+
+            public void close() {
+            }
+        });
+    }
+
+    // The SEM to simulate the given graph from.
+    private SemIm getIm(Graph graph, Parameters parameters) {
+        if (im != null) return im;
+        return new SemIm(pm != null ? pm : new SemPm(graph), parameters);
+    }
+
     private DataSet simulate(Graph graph, Parameters parameters) {
         boolean saveLatentVars = parameters.getBoolean("saveLatentVars");
 
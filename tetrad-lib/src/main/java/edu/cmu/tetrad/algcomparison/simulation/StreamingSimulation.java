@@ -0,0 +1,34 @@
+package edu.cmu.tetrad.algcomparison.simulation;
+
+import edu.cmu.tetrad.data.DataSink;
+import edu.cmu.tetrad.util.Parameters;
+
+import java.io.IOException;
+
+/**
+ * A simulation that can pass its data sets to sinks a block of rows at a time rather than keeping them, so that
+ * data sets larger than memory can be simulated straight to disk.
+ *
+ * @author jdramsey
+ */
+public interface StreamingSimulation extends Simulation {
+
+    /**
+     * Does what createData does, except that the data sets are not kept: the rows of the i'th data set are
+     * passed to the sink that sinks.getSink(i) returns, which is started, written to and then closed before the
+     * next data set is simulated. Afterward the true graphs are available as usual, but getDataModel may not be
+     * called.
+     */
+    void createData(Parameters parameters, Sinks sinks) throws IOException;
+
+    /**
+     * Supplies a sink for each data set.
+     */
+    interface Sinks {
+
+        /**
+         * @return the sink for the data set at the given index.
+         */
+        DataSink getSink(int index) throws IOException;
+    }
+}
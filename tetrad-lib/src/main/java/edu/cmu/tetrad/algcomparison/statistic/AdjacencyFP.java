@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -24,8 +24,8 @@ public class AdjacencyFP implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
-        return adjConfusion.getAdjFp();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        return context.getAdjFp();
     }
 
     @Override
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -24,11 +24,11 @@ public class AdjacencyPrecision implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
-        int adjTp = adjConfusion.getAdjTp();
-        int adjFp = adjConfusion.getAdjFp();
-//        int adjFn = adjConfusion.getAdjFn();
-//        int adjTn = adjConfusion.getAdjTn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        int adjTp = context.getAdjTp();
+        int adjFp = context.getAdjFp();
+//        int adjFn = context.getAdjFn();
+//        int adjTn = context.getAdjTn();
         return adjTp / (double) (adjTp + adjFp);
     }
 
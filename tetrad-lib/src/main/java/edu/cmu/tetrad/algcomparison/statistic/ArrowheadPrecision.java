@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,9 +27,9 @@ public class ArrowheadPrecision implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion confusion = new ArrowConfusion(trueGraph, estGraph);
-        double arrowsTp = confusion.getArrowsTp();
-        double arrowsFp = confusion.getArrowsFp();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        double arrowsTp = context.getArrowsTp();
+        double arrowsFp = context.getArrowsFp();
         return arrowsTp / (arrowsTp + arrowsFp);
     }
 
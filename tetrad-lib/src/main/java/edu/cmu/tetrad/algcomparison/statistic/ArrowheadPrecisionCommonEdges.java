@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -27,9 +27,9 @@ public class ArrowheadPrecisionCommonEdges implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion confusion = new ArrowConfusion(trueGraph, estGraph);
-        double arrowsTp = confusion.getArrowsTpc();
-        double arrowsFp = confusion.getArrowsFpc();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        double arrowsTp = context.getArrowsTpc();
+        double arrowsFp = context.getArrowsFpc();
         return arrowsTp / (arrowsTp + arrowsFp);
     }
 
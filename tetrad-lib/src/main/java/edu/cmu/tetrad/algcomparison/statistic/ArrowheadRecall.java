@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -27,9 +27,9 @@ public class ArrowheadRecall implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion adjConfusion = new ArrowConfusion(trueGraph, estGraph);
-        double arrowsTp = adjConfusion.getArrowsTp();
-        double arrowsFn = adjConfusion.getArrowsFn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        double arrowsTp = context.getArrowsTp();
+        double arrowsFn = context.getArrowsFn();
         double den = arrowsTp + arrowsFn;
         return arrowsTp / den;
     }
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -27,11 +27,11 @@ public class F1Adj implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
-        int adjTp = adjConfusion.getAdjTp();
-        int adjFp = adjConfusion.getAdjFp();
-        int adjFn = adjConfusion.getAdjFn();
-        int adjTn = adjConfusion.getAdjTn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        int adjTp = context.getAdjTp();
+        int adjFp = context.getAdjFp();
+        int adjFn = context.getAdjFn();
+        int adjTn = context.getAdjTn();
         double adjPrecision = adjTp / (double) (adjTp + adjFp);
         double adjRecall = adjTp / (double) (adjTp + adjFn);
         return 2 * (adjPrecision * adjRecall) / (adjPrecision + adjRecall);
@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,16 +27,15 @@ public class F1All implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
-        ArrowConfusion arrowConfusion = new ArrowConfusion(trueGraph, estGraph);
-        int adjTp = adjConfusion.getAdjTp();
-        int adjFp = adjConfusion.getAdjFp();
-        int adjFn = adjConfusion.getAdjFn();
-        int adjTn = adjConfusion.getAdjTn();
-        int arrowTp = arrowConfusion.getArrowsTp();
-        int arrowFp = arrowConfusion.getArrowsFp();
-        int arrowFn = arrowConfusion.getArrowsFn();
-        int arrowTn = arrowConfusion.getArrowsTn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        int adjTp = context.getAdjTp();
+        int adjFp = context.getAdjFp();
+        int adjFn = context.getAdjFn();
+        int adjTn = context.getAdjTn();
+        int arrowTp = context.getArrowsTp();
+        int arrowFp = context.getArrowsFp();
+        int arrowFn = context.getArrowsFn();
+        int arrowTn = context.getArrowsTn();
         double adjPrecision = adjTp / (double) (adjTp + adjFp);
         double adjRecall = adjTp / (double) (adjTp + adjFn);
         double arrowPrecision = arrowTp / (double) (arrowTp + arrowFp);
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -30,11 +30,11 @@ public class F1Arrow implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion arrowConfusion = new ArrowConfusion(trueGraph, estGraph);
-        int arrowTp = arrowConfusion.getArrowsTp();
-        int arrowFp = arrowConfusion.getArrowsFp();
-        int arrowFn = arrowConfusion.getArrowsFn();
-        int arrowTn = arrowConfusion.getArrowsTn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        int arrowTp = context.getArrowsTp();
+        int arrowFp = context.getArrowsFp();
+        int arrowFn = context.getArrowsFn();
+        int arrowTn = context.getArrowsTn();
         double arrowPrecision = arrowTp / (double) (arrowTp + arrowFp);
         double arrowRecall = arrowTp / (double) (arrowTp + arrowFn);
         return 2 * (arrowPrecision * arrowRecall) / (arrowPrecision + arrowRecall);
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -32,11 +32,11 @@ public class MathewsCorrArrow implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion adjConfusion = new ArrowConfusion(trueGraph, estGraph);
-        int arrowsTp = adjConfusion.getArrowsTp();
-        int arrowsFp = adjConfusion.getArrowsFp();
-        int arrowsFn = adjConfusion.getArrowsFn();
-        int arrowsTn = adjConfusion.getArrowsTn();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        int arrowsTp = context.getArrowsTp();
+        int arrowsFp = context.getArrowsFp();
+        int arrowsFn = context.getArrowsFn();
+        int arrowsTn = context.getArrowsTn();
         return mcc(arrowsTp, arrowsFp, arrowsTn, arrowsFn);
     }
 
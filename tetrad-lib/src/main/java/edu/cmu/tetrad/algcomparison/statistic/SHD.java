@@ -1,8 +1,7 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
-import edu.cmu.tetrad.graph.GraphUtils;
-import edu.cmu.tetrad.search.SearchGraphUtils;
 
 /**
  * Calculates the structural Hamming distance (SHD) between the estimated graph and
@@ -25,8 +24,7 @@ public class SHD implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        GraphUtils.GraphComparison comparison = SearchGraphUtils.getGraphComparison3(estGraph, trueGraph, System.out);
-        return comparison.getShd();
+        return ComparisonContext.get(trueGraph, estGraph).getShd();
     }
 
     @Override
@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,9 +27,9 @@ public class TailPrecision implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        TailConfusion adjConfusion = new TailConfusion(trueGraph, estGraph);
-        double arrowsTp = adjConfusion.getArrowsTp();
-        double arrowsFp = adjConfusion.getArrowsFp();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        double arrowsTp = context.getTailsTp();
+        double arrowsFp = context.getTailsFp();
         return arrowsTp / (arrowsTp + arrowsFp);
     }
 
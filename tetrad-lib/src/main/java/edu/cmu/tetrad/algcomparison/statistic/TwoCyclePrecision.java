@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -26,9 +26,9 @@ public class TwoCyclePrecision implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion adjConfusion = new ArrowConfusion(trueGraph, estGraph);
-        double TwoCycleTp = adjConfusion.getTwoCycleTp();
-        double TwoCycleFp = adjConfusion.getTwoCycleFp();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        double TwoCycleTp = context.getTwoCycleTp();
+        double TwoCycleFp = context.getTwoCycleFp();
         double precision = TwoCycleTp / (TwoCycleTp + TwoCycleFp);
 //        if (precision == 0) precision = Double.NaN;
         return precision;
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -26,8 +26,8 @@ public class TwoCycleTruePositive implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion adjConfusion = new ArrowConfusion(trueGraph, estGraph);
-        final int twoCycleTp = adjConfusion.getTwoCycleTp();
+        ComparisonContext context = ComparisonContext.get(trueGraph, estGraph);
+        final int twoCycleTp = context.getTwoCycleTp();
         return (double) twoCycleTp;
 
     }
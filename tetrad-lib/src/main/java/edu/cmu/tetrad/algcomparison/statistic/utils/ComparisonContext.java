@@ -0,0 +1,435 @@
+package edu.cmu.tetrad.algcomparison.statistic.utils;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * The counts behind the adjacency, arrowhead, tail, two-cycle and SHD statistics for a true graph and an
+ * estimated graph, all taken in one pass over the pairs of nodes adjacent in either graph. Nodes are matched by
+ * name and edges are encoded by node index and endpoint, so no graph lookups are made during the pass. The counts
+ * are the same as those of AdjacencyConfusion, ArrowConfusion, TailConfusion and
+ * SearchGraphUtils.structuralHammingDistance3.
+ * <p>
+ * So that the statistics for a pair of graphs don't each make their own pass, a context may be shared for the
+ * current thread (see share and release); get returns the shared context if it is for the graphs asked about.
+ *
+ * @author jdramsey
+ */
+public class ComparisonContext {
+
+    // Endpoint codes.
+    private static final int NONE = 0;
+    private static final int TAIL = 1;
+    private static final int ARROW = 2;
+    private static final int CIRCLE = 3;
+    private static final int OTHER = 4;
+
+    // The context shared for the current thread, if any.
+    private static final ThreadLocal<ComparisonContext> SHARED = new ThreadLocal<>();
+
+    private final Graph trueGraph;
+    private final Graph estGraph;
+
+    private int adjTp;
+    private int adjFp;
+    private int adjFn;
+    private int adjTn;
+
+    private int arrowsTp;
+    private int arrowsTpc;
+    private int arrowsFp;
+    private int arrowsFpc;
+    private int arrowsFn;
+    private int arrowsFnc;
+    private int arrowsTn;
+    private int arrowsTnc;
+
+    private int tailsTp;
+    private int tailsFp;
+    private int tailsFn;
+    private int tailsTn;
+
+    private int twoCycleTp;
+    private int twoCycleFp;
+    private int twoCycleFn;
+
+    private int shd;
+
+    /**
+     * Counts the given estimated graph against the given true graph.
+     */
+    public ComparisonContext(Graph trueGraph, Graph estGraph) {
+        this.trueGraph = trueGraph;
+        this.estGraph = estGraph;
+
+        // Nodes are indexed in the order of the true graph, then any others in the estimated graph.
+        Map<String, Integer> indices = new HashMap<>();
+
+        for (Node node : trueGraph.getNodes()) {
+            indices.put(node.getName(), indices.size());
+        }
+
+        for (Node node : estGraph.getNodes()) {
+            if (!indices.containsKey(node.getName())) {
+                indices.put(node.getName(), indices.size());
+            }
+        }
+
+        // The edges between each pair, in the order Graph.getEdge would find them.
+        Map<Long, int[]> trueEdges = new HashMap<>();
+        Map<Long, int[]> estEdges = new HashMap<>();
+
+        for (Node node : trueGraph.getNodes()) {
+            int i = indices.get(node.getName());
+
+            for (Edge edge : trueGraph.getEdges(node)) {
+                int j = indices.get(edge.getDistalNode(node).getName());
+                if (i < j) add(trueEdges, indices, edge);
+            }
+        }
+
+        for (Edge edge : estGraph.getEdges()) {
+            add(estEdges, indices, edge);
+        }
+
+        Set<Long> pairs = new HashSet<>(trueEdges.keySet());
+        pairs.addAll(estEdges.keySet());
+
+        int[] none = new int[0];
+
+        for (long pair : pairs) {
+            int[] t = trueEdges.containsKey(pair) ? trueEdges.get(pair) : none;
+            int[] e = estEdges.containsKey(pair) ? estEdges.get(pair) : none;
+            count(t, e);
+        }
+
+        int numNodes = trueGraph.getNumNodes();
+        adjTn = numNodes * (numNodes - 1) / 2 - adjFn;
+
+        // The two-cycle counts are made once from each edge of a two-cycle.
+        twoCycleTp /= 2;
+        twoCycleFn /= 2;
+        twoCycleFp /= 2;
+    }
+
+    /**
+     * @return the context shared for the given graphs in the current thread, if there is one, or otherwise a new
+     * context for them.
+     */
+    public static ComparisonContext get(Graph trueGraph, Graph estGraph) {
+        ComparisonContext context = SHARED.get();
+
+        if (context != null && context.trueGraph == trueGraph && context.estGraph == estGraph) {
+            return context;
+        }
+
+        return new ComparisonContext(trueGraph, estGraph);
+    }
+
+    /**
+     * Makes a context for the given graphs and shares it with statistics calculated in the current thread until
+     * release is called. The graphs should not be changed in the meantime.
+     */
+    public static ComparisonContext share(Graph trueGraph, Graph estGraph) {
+        ComparisonContext context = new ComparisonContext(trueGraph, estGraph);
+        SHARED.set(context);
+        return context;
+    }
+
+    /**
+     * Stops sharing the context shared in the current thread.
+     */
+    public static void release() {
+        SHARED.remove();
+    }
+
+    public int getAdjTp() {
+        return adjTp;
+    }
+
+    public int getAdjFp() {
+        return adjFp;
+    }
+
+    public int getAdjFn() {
+        return adjFn;
+    }
+
+    public int getAdjTn() {
+        return adjTn;
+    }
+
+    public int getArrowsTp() {
+        return arrowsTp;
+    }
+
+    public int getArrowsFp() {
+        return arrowsFp;
+    }
+
+    public int getArrowsFn() {
+        return arrowsFn;
+    }
+
+    public int getArrowsTn() {
+        return arrowsTn;
+    }
+
+    /**
+     * True positives for common edges.
+     */
+    public int getArrowsTpc() {
+        return arrowsTpc;
+    }
+
+    /**
+     * False positives for common edges.
+     */
+    public int getArrowsFpc() {
+        return arrowsFpc;
+    }
+
+    /**
+     * False negatives for common edges.
+     */
+    public int getArrowsFnc() {
+        return arrowsFnc;
+    }
+
+    /**
+     * True negatives for common edges.
+     */
+    public int getArrowsTnc() {
+        return arrowsTnc;
+    }
+
+    public int getTailsTp() {
+        return tailsTp;
+    }
+
+    public int getTailsFp() {
+        return tailsFp;
+    }
+
+    public int getTailsFn() {
+        return tailsFn;
+    }
+
+    public int getTailsTn() {
+        return tailsTn;
+    }
+
+    public int getTwoCycleTp() {
+        return twoCycleTp;
+    }
+
+    public int getTwoCycleFp() {
+        return twoCycleFp;
+    }
+
+    public int getTwoCycleFn() {
+        return twoCycleFn;
+    }
+
+    /**
+     * The structural Hamming distance, as in SearchGraphUtils.structuralHammingDistance3.
+     */
+    public int getShd() {
+        return shd;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Appends the edge, as node1, node2, endpoint1, endpoint2, to the list for its pair. Self-loops are skipped.
+    private static void add(Map<Long, int[]> edges, Map<String, Integer> indices, Edge edge) {
+        int i = indices.get(edge.getNode1().getName());
+        int j = indices.get(edge.getNode2().getName());
+        if (i == j) return;
+
+        long pair = ((long) Math.min(i, j) << 32) | Math.max(i, j);
+
+        int[] list = edges.get(pair);
+        int[] _list = list == null ? new int[4] : Arrays.copyOf(list, list.length + 4);
+        int k = _list.length - 4;
+
+        _list[k] = i;
+        _list[k + 1] = j;
+        _list[k + 2] = code(edge.getEndpoint1());
+        _list[k + 3] = code(edge.getEndpoint2());
+
+        edges.put(pair, _list);
+    }
+
+    // Adds in the counts for one pair of nodes, given the true and estimated edges between them.
+    private void count(int[] t, int[] e) {
+        int nt = t.length / 4;
+        int ne = e.length / 4;
+
+        if (nt > 0 && ne > 0) {
+            adjTp++;
+        } else if (ne > 0) {
+            adjFp++;
+        } else {
+            adjFn++;
+        }
+
+        for (int k = 0; k < nt; k++) {
+            int a = t[4 * k];
+            int b = t[4 * k + 1];
+
+            int edge1 = pick(e, a, b);
+            int edge2 = pick(t, a, b);
+
+            int e1Est = proximal(e, edge1, a);
+            int e2Est = proximal(e, edge1, b);
+            int e1True = proximal(t, edge2, a);
+            int e2True = proximal(t, edge2, b);
+
+            boolean common = edge1 != -1 && edge2 != -1;
+
+            countTrueEndpoint(e1True, e1Est, common);
+            countTrueEndpoint(e2True, e2Est, common);
+
+            if (nt == 2 && ne == 2) twoCycleTp++;
+            if (nt == 2 && ne != 2) twoCycleFn++;
+        }
+
+        for (int k = 0; k < ne; k++) {
+            int a = e[4 * k];
+            int b = e[4 * k + 1];
+
+            int edge1 = pick(e, a, b);
+            int edge2 = pick(t, a, b);
+
+            int e1Est = proximal(e, edge1, a);
+            int e2Est = proximal(e, edge1, b);
+            int e1True = proximal(t, edge2, a);
+            int e2True = proximal(t, edge2, b);
+
+            boolean common = edge1 != -1 && edge2 != -1;
+
+            countEstEndpoint(e1True, e1Est, common);
+            countEstEndpoint(e2True, e2Est, common);
+
+            if (nt != 2 && ne == 2) twoCycleFp++;
+        }
+
+        shd += shd(t, nt > 0 ? 0 : -1, e, ne > 0 ? 0 : -1);
+    }
+
+    // Counts an endpoint of a true edge against the estimated endpoint at the same node.
+    private void countTrueEndpoint(int _true, int est, boolean common) {
+        if (_true == ARROW && est != ARROW) {
+            arrowsFn++;
+            if (common) arrowsFnc++;
+        }
+
+        if (_true == ARROW && est == ARROW) {
+            arrowsTp++;
+            if (common) arrowsTpc++;
+        }
+
+        if (_true != ARROW && est != ARROW) {
+            arrowsTn++;
+            if (common) arrowsTnc++;
+        }
+
+        if (_true == TAIL && est != TAIL) tailsFn++;
+        if (_true == TAIL && est == TAIL) tailsTp++;
+        if (_true != TAIL && est != TAIL) tailsTn++;
+    }
+
+    // Counts an endpoint of an estimated edge against the true endpoint at the same node.
+    private void countEstEndpoint(int _true, int est, boolean common) {
+        if (est == ARROW && _true != ARROW) {
+            arrowsFp++;
+            if (common) arrowsFpc++;
+        }
+
+        if (est == TAIL && _true != TAIL) tailsFp++;
+    }
+
+    // The edge between a and b that Graph.getEdges(a, b) and Graph.getDirectedEdge(a, b) would give: the only
+    // edge if there is one, or else the edge a --> b if there is one, or else none (-1).
+    private static int pick(int[] edges, int a, int b) {
+        int n = edges.length / 4;
+
+        if (n == 1) return 0;
+
+        for (int k = 0; k < n; k++) {
+            if (directed(edges, k) && proximal(edges, k, b) == ARROW) {
+                return k;
+            }
+        }
+
+        return -1;
+    }
+
+    // The endpoint of edge k at node x, or NONE if there is no edge k.
+    private static int proximal(int[] edges, int k, int x) {
+        if (k == -1) return NONE;
+        if (edges[4 * k] == x) return edges[4 * k + 2];
+        if (edges[4 * k + 1] == x) return edges[4 * k + 3];
+        return NONE;
+    }
+
+    private static boolean directed(int[] edges, int k) {
+        int e1 = edges[4 * k + 2];
+        int e2 = edges[4 * k + 3];
+        return (e1 == TAIL && e2 == ARROW) || (e1 == ARROW && e2 == TAIL);
+    }
+
+    private static boolean nondirected(int[] edges, int k) {
+        return edges[4 * k + 2] == CIRCLE && edges[4 * k + 3] == CIRCLE;
+    }
+
+    private static int head(int[] edges, int k) {
+        return edges[4 * k + 2] == ARROW ? edges[4 * k] : edges[4 * k + 1];
+    }
+
+    private static int tail(int[] edges, int k) {
+        return edges[4 * k + 2] == TAIL ? edges[4 * k] : edges[4 * k + 1];
+    }
+
+    // The structural Hamming distance for one pair, given the true edge k1 and the estimated edge k2, either of
+    // which may be -1 for no edge.
+    private static int shd(int[] t, int k1, int[] e, int k2) {
+        boolean none1 = k1 == -1;
+        boolean none2 = k2 == -1;
+        boolean nondirected1 = !none1 && nondirected(t, k1);
+        boolean nondirected2 = !none2 && nondirected(e, k2);
+        boolean directed1 = !none1 && directed(t, k1);
+        boolean directed2 = !none2 && directed(e, k2);
+
+        if (none1 && nondirected2) {
+            return 1;
+        } else if (none2 && nondirected1) {
+            return 1;
+        } else if (none1 && directed2) {
+            return 2;
+        } else if (none2 && directed1) {
+            return 2;
+        } else if (nondirected1 && directed2) {
+            return 1;
+        } else if (nondirected2 && directed1) {
+            return 1;
+        } else if (directed1 && directed2) {
+            if (head(t, k1) == tail(e, k2)) {
+                return 1;
+            }
+        }
+
+        return 0;
+    }
+
+    private static int code(Endpoint endpoint) {
+        if (endpoint == Endpoint.TAIL) return TAIL;
+        if (endpoint == Endpoint.ARROW) return ARROW;
+        if (endpoint == Endpoint.CIRCLE) return CIRCLE;
+        return OTHER;
+    }
+}
@@ -0,0 +1,74 @@
+package edu.cmu.tetrad.algcomparison.utils;
+
+import edu.cmu.tetrad.data.AdTreeStatistics;
+import edu.cmu.tetrad.data.DataSet;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds one AdTreeStatistics for each discrete data set given to the discrete score and test wrappers, so that the
+ * scores and tests made over a data set, by one algorithm or several, count from one AD tree and one coded copy of
+ * its columns. Data sets are held weakly and compared by identity, so their statistics are dropped once the data
+ * sets are no longer in use. Statistics are made again for a data set whose rows, columns or categories have
+ * changed; a data set should not otherwise be changed once it has been given to a wrapper.
+ *
+ * @author jdramsey
+ */
+public final class DiscreteStatistics {
+
+    private static final Map<DataKey, AdTreeStatistics> statistics = new HashMap<>();
+    private static final ReferenceQueue<DataSet> cleared = new ReferenceQueue<>();
+
+    private DiscreteStatistics() {
+    }
+
+    /**
+     * @return the statistics for the given discrete data set, made the first time they are asked for.
+     */
+    public static AdTreeStatistics getStatistics(DataSet dataSet) {
+        if (dataSet == null) throw new NullPointerException("Data set was not provided.");
+
+        synchronized (statistics) {
+
+            // Drops the statistics of data sets no longer in use.
+            for (Reference<? extends DataSet> ref; (ref = cleared.poll()) != null; ) {
+                statistics.remove(ref);
+            }
+
+            DataKey key = new DataKey(dataSet, cleared);
+            AdTreeStatistics _statistics = statistics.get(key);
+
+            if (_statistics == null || !_statistics.isFor(dataSet)) {
+                _statistics = new AdTreeStatistics(dataSet);
+                statistics.put(key, _statistics);
+            }
+
+            return _statistics;
+        }
+    }
+
+    // A data set, held weakly and compared by identity.
+    private static final class DataKey extends WeakReference<DataSet> {
+        private final int hash;
+
+        DataKey(DataSet dataSet, ReferenceQueue<DataSet> queue) {
+            super(dataSet, queue);
+            this.hash = System.identityHashCode(dataSet);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DataKey)) return false;
+            DataSet dataSet = get();
+            return dataSet != null && dataSet == ((DataKey) o).get();
+        }
+    }
+}
@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.bayes;
 
+import edu.cmu.tetrad.data.AdTreeStatistics;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
 
@@ -41,6 +42,14 @@ public final class MlBayesEstimator {
      * in the given Bayes PM must be equal to a variable in the given data set.
      */
     public BayesIm  estimate(BayesPm bayesPm, DataSet dataSet) {
+        return estimate(bayesPm, dataSet, null);
+    }
+
+    /**
+     * Estimates a Bayes IM as above, counting from the given statistics, which must have been made from the given
+     * data set and may be shared with the scores and tests over it. If the statistics are null, they are made here.
+     */
+    public BayesIm estimate(BayesPm bayesPm, DataSet dataSet, AdTreeStatistics statistics) {
         if (bayesPm == null) {
             throw new NullPointerException();
         }
@@ -49,6 +58,12 @@ public final class MlBayesEstimator {
             throw new NullPointerException();
         }
 
+        if (statistics == null) {
+            statistics = new AdTreeStatistics(dataSet);
+        } else if (!statistics.isFor(dataSet)) {
+            throw new IllegalArgumentException("The statistics were not made from this data set.");
+        }
+
 //        if (DataUtils.containsMissingValue(dataSet)) {
 //            throw new IllegalArgumentException("Please remove or impute missing values.");
 //        }
@@ -65,6 +80,49 @@ public final class MlBayesEstimator {
         List<Node> variables = estimatedIm.getVariables();
         DataSet columnDataSet2 = dataSet.subsetColumns(variables);
         this.reorderedDataSetDiscrete = columnDataSet2;
+
+        int numNodes = estimatedIm.getNumNodes();
+
+        // Where there are no missing values, the estimates are just ratios of conditional counts.
+        int[] columns = new int[numNodes];
+        boolean useCounts = true;
+
+        for (int i = 0; i < numNodes; i++) {
+            columns[i] = dataSet.getColumn(dataSet.getVariable(variables.get(i).getName()));
+
+            if (statistics.hasMissingValues(columns[i])
+                    || statistics.getNumCategories(columns[i]) != estimatedIm.getNumColumns(i)) {
+                useCounts = false;
+            }
+        }
+
+        if (useCounts) {
+            for (int node = 0; node < numNodes; node++) {
+                int[] parents = estimatedIm.getParents(node);
+                int[] parentColumns = new int[parents.length];
+
+                for (int k = 0; k < parents.length; k++) {
+                    parentColumns[k] = columns[parents[k]];
+                }
+
+                int[][] n_jk = statistics.getCounts(columns[node], parentColumns);
+
+                for (int row = 0; row < estimatedIm.getNumRows(node); row++) {
+                    int n_j = 0;
+
+                    for (int col = 0; col < estimatedIm.getNumColumns(node); col++) {
+                        n_j += n_jk[row][col];
+                    }
+
+                    for (int col = 0; col < estimatedIm.getNumColumns(node); col++) {
+                        estimatedIm.setProbability(node, row, col, n_jk[row][col] / (double) n_j);
+                    }
+                }
+            }
+
+            return estimatedIm;
+        }
+
         DiscreteProbs discreteProbs = new DataSetProbs(columnDataSet2);
 
         // We will use the same estimation methods as the updaters, to ensure
@@ -73,8 +131,6 @@ public final class MlBayesEstimator {
         Proposition condition = Proposition.tautology(estimatedIm);
         Evidence evidence2 = Evidence.tautology(estimatedIm);
 
-        int numNodes = estimatedIm.getNumNodes();
-
         for (int node = 0; node < numNodes; node++) {
             int numRows = estimatedIm.getNumRows(node);
             int numCols = estimatedIm.getNumColumns(node);
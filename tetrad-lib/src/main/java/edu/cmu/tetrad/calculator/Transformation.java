@@ -28,10 +28,7 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
 
 import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Represents a transformation on some dataset. For instance if the
@@ -85,92 +82,44 @@ public class Transformation {
             throw new IllegalStateException("Unknown variable " + equation.getVariable());
         }
         int column = data.getColumn(variable);
-        // build the context pairs.
-        List<String> contextVars = getContextVariables(expression);
-        // now do the transformation row by row.
-        DataBackedContext context = new DataBackedContext(data, contextVars);
+
+        // Compile the expression over the columns of the data, then do the transformation a block of rows at a
+        // time, reading only the columns the expression uses.
+        CompiledExpression compiled = new ExpressionCompiler(data.getVariableNames()).compile(expression);
+        int[] slots = compiled.getSlots();
         int rows = data.getNumRows();
-        for (int row = 0; row < rows; row++) {
-            // build the context
-            context.setRow(row);
-            double newValue = expression.evaluate(context);
-            data.setDouble(row, column, newValue);
-        }
-    }
+        int blockSize = Math.min(rows, 1024);
+        double[][] columns = new double[data.getNumColumns()][];
+        double[] values = new double[blockSize];
 
-    /**
-     * Adds a column for the given varible if required.
-     */
-    private static void addVariableIfRequired(DataSet data, String var) {
-        List<String> nodes = data.getVariableNames();
-        if (!nodes.contains(var)) {
-            data.addVariable(new ContinuousVariable(var));
+        for (int slot : slots) {
+            columns[slot] = new double[blockSize];
         }
-    }
 
+        for (int from = 0; from < rows; from += blockSize) {
+            int n = Math.min(blockSize, rows - from);
 
-    /**
-     * @return the variables used in the expression.
-     */
-    private static List<String> getContextVariables(Expression exp) {
-        List<String> variables = new ArrayList<>();
-
-        for (Expression sub : exp.getExpressions()) {
-            if (sub instanceof VariableExpression) {
-                variables.add(((VariableExpression) sub).getVariable());
-            } else if (!(sub instanceof ConstantExpression)) {
-                variables.addAll(getContextVariables(sub));
+            for (int slot : slots) {
+                for (int i = 0; i < n; i++) {
+                    columns[slot][i] = data.getDouble(from + i, slot);
+                }
             }
-        }
-
-        return variables;
-    }
-
-    //============================== Inner Class ==============================//
-
-    private static class DataBackedContext implements Context {
-
-
-        /**
-         * The data.
-         */
-        private DataSet data;
 
+            compiled.evaluate(columns, 0, n, values);
 
-        /**
-         * Var -> index mapping.
-         */
-        private Map<String, Integer> indexes = new HashMap<>();
-
-
-        /**
-         * The getModel row.
-         */
-        private int row;
-
-
-        public DataBackedContext(DataSet data, List<String> vars) {
-            this.data = data;
-            for (String v : vars) {
-                Node n = data.getVariable(v);
-                indexes.put(v, data.getColumn(n));
+            for (int i = 0; i < n; i++) {
+                data.setDouble(from + i, column, values[i]);
             }
         }
+    }
 
-        public void setRow(int row) {
-            this.row = row;
-        }
-
-        public Double getValue(String var) {
-            Integer i = indexes.get(var);
-            if (i != null) {
-                return data.getDouble(row, i);
-            }
-            return null;
+    /**
+     * Adds a column for the given varible if required.
+     */
+    private static void addVariableIfRequired(DataSet data, String var) {
+        List<String> nodes = data.getVariableNames();
+        if (!nodes.contains(var)) {
+            data.addVariable(new ContinuousVariable(var));
         }
     }
 }
-
-
-
-
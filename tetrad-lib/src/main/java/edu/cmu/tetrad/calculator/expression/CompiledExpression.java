@@ -0,0 +1,99 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+/**
+ * An expression compiled by ExpressionCompiler. Names in the expression have been resolved to slots, so that it
+ * is evaluated over an array of values, one per slot, rather than through a Context.
+ * <p>
+ * A compiled expression may keep scratch state while it is evaluated, so one should not be evaluated by more
+ * than one thread at a time.
+ *
+ * @author Joseph Ramsey
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * The slots the expression reads, in increasing order.
+     */
+    private final int[] slots;
+
+    /**
+     * The number of slots in the row state.
+     */
+    private final int numSlots;
+
+    /**
+     * The row state used for evaluating a block one row at a time; made on first use.
+     */
+    private double[] row;
+
+    CompiledExpression(int[] slots, int numSlots) {
+        this.slots = slots;
+        this.numSlots = numSlots;
+    }
+
+    /**
+     * Evaluates the expression for one row.
+     *
+     * @param values The value for each slot. Only the slots the expression reads need be set.
+     */
+    public abstract double evaluate(double[] values);
+
+    /**
+     * Evaluates the expression for each of a block of rows, putting the value for row i into out[i - from].
+     * Random values in the expression may be drawn in a different order than if the rows were evaluated one at a
+     * time.
+     *
+     * @param columns The values for each slot, by row. Only the columns for the slots the expression reads need
+     *                be given.
+     * @param from    The first row, inclusive.
+     * @param to      The last row, exclusive.
+     * @param out     The array the values are put into; at least to - from long.
+     */
+    public void evaluate(double[][] columns, int from, int to, double[] out) {
+        if (row == null) row = new double[numSlots];
+
+        for (int i = from; i < to; i++) {
+            for (int slot : slots) {
+                row[slot] = columns[slot][i];
+            }
+
+            out[i - from] = evaluate(row);
+        }
+    }
+
+    /**
+     * @return the slots the expression reads, in increasing order.
+     */
+    public int[] getSlots() {
+        return slots.clone();
+    }
+
+    int[] slots() {
+        return slots;
+    }
+
+    int numSlots() {
+        return numSlots;
+    }
+}
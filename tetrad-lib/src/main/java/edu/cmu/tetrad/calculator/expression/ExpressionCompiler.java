@@ -0,0 +1,642 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+import edu.cmu.tetrad.util.TetradSerializableExcluded;
+import org.apache.commons.math3.distribution.IntegerDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+
+import java.util.*;
+
+/**
+ * Compiles expression trees into CompiledExpressions. Each name in an expression is resolved once, at compile
+ * time: to a constant if it is one of the given constants (such as the parameters of a model), otherwise to a
+ * slot in the row state if it is one of the given slot names, and otherwise to a lookup in the given fallback
+ * context.
+ * <p>
+ * Arithmetic operators and the elementary functions are compiled to evaluators that work directly on the row
+ * state, and have batch forms that work a block of rows at a time; subexpressions over constants only are folded.
+ * Any other operator made by ExpressionManager (the distributions, comparisons and so on) is made again over
+ * its compiled arguments, so that it behaves exactly as before. Expressions of other kinds are evaluated through
+ * a context over the row state.
+ *
+ * @author Joseph Ramsey
+ */
+public final class ExpressionCompiler {
+
+    // Descriptors by the class that made their expressions; the expressions are anonymous classes declared in
+    // the descriptors.
+    private static Map<Class<?>, ExpressionDescriptor> descriptors;
+
+    // A context with no values.
+    private static final Context EMPTY_CONTEXT = new Context() {
+        public Double getValue(String var) {
+            return null;
+        }
+    };
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final int numSlots;
+    private final Map<String, Double> constants;
+    private final Context context;
+
+    /**
+     * Constructs a compiler that resolves the given names to slots 0, 1, ... in order.
+     */
+    public ExpressionCompiler(List<String> slotNames) {
+        this(slotNames, Collections.<String, Double>emptyMap(), null);
+    }
+
+    /**
+     * Constructs a compiler.
+     *
+     * @param slotNames The names to resolve to slots 0, 1, ... in order.
+     * @param constants Names to resolve to constants; these take precedence over slots. Values are read at
+     *                  compile time.
+     * @param context   Looks up names that are neither constants nor slots, when the expression is evaluated;
+     *                  may be null, in which case evaluating such a name throws an exception.
+     */
+    public ExpressionCompiler(List<String> slotNames, Map<String, Double> constants, Context context) {
+        if (slotNames == null) throw new NullPointerException("Slot names were not provided.");
+        if (constants == null) throw new NullPointerException("Constants were not provided.");
+
+        for (int i = 0; i < slotNames.size(); i++) {
+            slots.put(slotNames.get(i), i);
+        }
+
+        this.numSlots = slotNames.size();
+        this.constants = new HashMap<>(constants);
+        this.context = context;
+    }
+
+    /**
+     * Compiles the given expression.
+     */
+    public CompiledExpression compile(Expression expression) {
+        if (expression == null) throw new NullPointerException("Expression was not provided.");
+        return compileNode(expression);
+    }
+
+    /**
+     * @return the slot for the given name, or -1 if the name has no slot.
+     */
+    public int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return the number of slots in the row state.
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private CompiledExpression compileNode(Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            return new Constant(expression.evaluate(EMPTY_CONTEXT), numSlots);
+        }
+
+        if (expression instanceof VariableExpression) {
+            String name = ((VariableExpression) expression).getVariable();
+            Double value = constants.get(name);
+
+            if (value != null) {
+                return new Constant(value, numSlots);
+            }
+
+            Integer slot = slots.get(name);
+
+            if (slot != null) {
+                return new Slot(slot, numSlots);
+            }
+
+            return new Interpreted(expression, new int[0], numSlots, this);
+        }
+
+        ExpressionDescriptor descriptor = getDescriptor(expression);
+
+        if (descriptor == null) {
+            return new Interpreted(expression, slotsOf(expression), numSlots, this);
+        }
+
+        List<Expression> args = expression.getExpressions();
+        CompiledExpression[] children = new CompiledExpression[args.size()];
+        boolean constant = true;
+
+        for (int k = 0; k < args.size(); k++) {
+            children[k] = compileNode(args.get(k));
+            constant &= children[k] instanceof Constant;
+        }
+
+        CompiledExpression node = compileOperator(expression.getToken(), children);
+
+        if (node != null) {
+            return constant ? new Constant(node.evaluate(new double[numSlots]), numSlots) : node;
+        }
+
+        Rebuilt rebuilt = new Rebuilt(children, numSlots);
+        Expression[] deferred = new Expression[children.length];
+
+        for (int k = 0; k < children.length; k++) {
+            deferred[k] = new Deferred(rebuilt, children[k], args.get(k));
+        }
+
+        try {
+            rebuilt.expression = descriptor.createExpression(deferred);
+        } catch (ExpressionInitializationException e) {
+            return new Interpreted(expression, slotsOf(expression), numSlots, this);
+        }
+
+        return rebuilt;
+    }
+
+    // The compiled form of the given operator, or null if it has none.
+    private CompiledExpression compileOperator(String token, CompiledExpression[] children) {
+        int n = children.length;
+
+        switch (token) {
+            case "+":
+                return n == 0 ? null : new Sum(children, numSlots);
+            case "-":
+                if (n == 1) return new Function(Function.NEGATE, children[0], numSlots);
+                if (n == 2) return new Binary(Binary.SUBTRACT, children[0], children[1], numSlots);
+                return null;
+            case "*":
+                return n == 0 ? null : new Product(children, numSlots);
+            case "/":
+                return n == 2 ? new Binary(Binary.DIVIDE, children[0], children[1], numSlots) : null;
+            case "^":
+            case "pow":
+                return n == 2 ? new Binary(Binary.POW, children[0], children[1], numSlots) : null;
+            case "max":
+                return n == 0 ? null : new Extremum(true, children, numSlots);
+            case "min":
+                return n == 0 ? null : new Extremum(false, children, numSlots);
+        }
+
+        int function = Function.forToken(token);
+
+        if (function != -1 && n == 1) {
+            return new Function(function, children[0], numSlots);
+        }
+
+        return null;
+    }
+
+    // The descriptor that made the given expression, or null if it was not made by a descriptor of
+    // ExpressionManager.
+    private static ExpressionDescriptor getDescriptor(Expression expression) {
+        synchronized (ExpressionCompiler.class) {
+            if (descriptors == null) {
+                descriptors = new HashMap<>();
+
+                for (ExpressionDescriptor descriptor : ExpressionManager.getInstance().getDescriptors()) {
+                    descriptors.put(descriptor.getClass(), descriptor);
+                }
+            }
+        }
+
+        Class<?> enclosing = expression.getClass().getEnclosingClass();
+        return enclosing == null ? null : descriptors.get(enclosing);
+    }
+
+    // The slots read by the given expression, in increasing order.
+    private int[] slotsOf(Expression expression) {
+        SortedSet<Integer> found = new TreeSet<>();
+        collectSlots(expression, found);
+
+        int[] _slots = new int[found.size()];
+        int k = 0;
+        for (int slot : found) _slots[k++] = slot;
+        return _slots;
+    }
+
+    private void collectSlots(Expression expression, Set<Integer> found) {
+        if (expression instanceof VariableExpression) {
+            String name = ((VariableExpression) expression).getVariable();
+            Integer slot = slots.get(name);
+
+            if (slot != null && !constants.containsKey(name)) {
+                found.add(slot);
+            }
+        }
+
+        for (Expression sub : expression.getExpressions()) {
+            collectSlots(sub, found);
+        }
+    }
+
+    // The union of the slots of the given expressions, in increasing order.
+    private static int[] union(CompiledExpression... expressions) {
+        SortedSet<Integer> found = new TreeSet<>();
+
+        for (CompiledExpression expression : expressions) {
+            for (int slot : expression.slots()) found.add(slot);
+        }
+
+        int[] _slots = new int[found.size()];
+        int k = 0;
+        for (int slot : found) _slots[k++] = slot;
+        return _slots;
+    }
+
+    // Looks up a name that is neither a constant nor a slot.
+    private Double lookUp(String name) {
+        return context == null ? null : context.getValue(name);
+    }
+
+    //================================CLASSES=============================//
+
+    private static final class Constant extends CompiledExpression {
+        private final double value;
+
+        private Constant(double value, int numSlots) {
+            super(new int[0], numSlots);
+            this.value = value;
+        }
+
+        public double evaluate(double[] values) {
+            return value;
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            Arrays.fill(out, 0, to - from, value);
+        }
+    }
+
+    private static final class Slot extends CompiledExpression {
+        private final int slot;
+
+        private Slot(int slot, int numSlots) {
+            super(new int[]{slot}, numSlots);
+            this.slot = slot;
+        }
+
+        public double evaluate(double[] values) {
+            return values[slot];
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            System.arraycopy(columns[slot], from, out, 0, to - from);
+        }
+    }
+
+    // Addition; as in ExpressionManager, a term that cannot be evaluated counts as zero.
+    private static final class Sum extends CompiledExpression {
+        private final CompiledExpression[] terms;
+        private double[] scratch;
+
+        private Sum(CompiledExpression[] terms, int numSlots) {
+            super(union(terms), numSlots);
+            this.terms = terms;
+        }
+
+        public double evaluate(double[] values) {
+            double value = 0.0;
+
+            for (CompiledExpression term : terms) {
+                try {
+                    value += term.evaluate(values);
+                } catch (RuntimeException e) {
+                    // Counts as zero.
+                }
+            }
+
+            return value;
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            int n = to - from;
+            if (scratch == null || scratch.length < n) scratch = new double[n];
+            Arrays.fill(out, 0, n, 0.0);
+
+            for (CompiledExpression term : terms) {
+                try {
+                    term.evaluate(columns, from, to, scratch);
+                } catch (RuntimeException e) {
+                    super.evaluate(columns, from, to, out);
+                    return;
+                }
+
+                for (int i = 0; i < n; i++) out[i] += scratch[i];
+            }
+        }
+    }
+
+    private static final class Product extends CompiledExpression {
+        private final CompiledExpression[] factors;
+        private double[] scratch;
+
+        private Product(CompiledExpression[] factors, int numSlots) {
+            super(union(factors), numSlots);
+            this.factors = factors;
+        }
+
+        public double evaluate(double[] values) {
+            double value = 1.0;
+
+            for (CompiledExpression factor : factors) {
+                value *= factor.evaluate(values);
+            }
+
+            return value;
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            int n = to - from;
+            if (scratch == null || scratch.length < n) scratch = new double[n];
+            factors[0].evaluate(columns, from, to, out);
+
+            for (int k = 1; k < factors.length; k++) {
+                factors[k].evaluate(columns, from, to, scratch);
+                for (int i = 0; i < n; i++) out[i] *= scratch[i];
+            }
+        }
+    }
+
+    private static final class Extremum extends CompiledExpression {
+        private final boolean max;
+        private final CompiledExpression[] args;
+        private double[] scratch;
+
+        private Extremum(boolean max, CompiledExpression[] args, int numSlots) {
+            super(union(args), numSlots);
+            this.max = max;
+            this.args = args;
+        }
+
+        public double evaluate(double[] values) {
+            double value = args[0].evaluate(values);
+
+            for (int k = 1; k < args.length; k++) {
+                double d = args[k].evaluate(values);
+                if (max ? value < d : d < value) value = d;
+            }
+
+            return value;
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            int n = to - from;
+            if (scratch == null || scratch.length < n) scratch = new double[n];
+            args[0].evaluate(columns, from, to, out);
+
+            for (int k = 1; k < args.length; k++) {
+                args[k].evaluate(columns, from, to, scratch);
+
+                for (int i = 0; i < n; i++) {
+                    if (max ? out[i] < scratch[i] : scratch[i] < out[i]) out[i] = scratch[i];
+                }
+            }
+        }
+    }
+
+    private static final class Binary extends CompiledExpression {
+        private static final int SUBTRACT = 0;
+        private static final int DIVIDE = 1;
+        private static final int POW = 2;
+
+        private final int op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+        private double[] scratch;
+
+        private Binary(int op, CompiledExpression left, CompiledExpression right, int numSlots) {
+            super(union(left, right), numSlots);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        public double evaluate(double[] values) {
+            double a = left.evaluate(values);
+            double b = right.evaluate(values);
+
+            switch (op) {
+                case SUBTRACT:
+                    return a - b;
+                case DIVIDE:
+                    return a / b;
+                default:
+                    return Math.pow(a, b);
+            }
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            int n = to - from;
+            if (scratch == null || scratch.length < n) scratch = new double[n];
+            left.evaluate(columns, from, to, out);
+            right.evaluate(columns, from, to, scratch);
+
+            switch (op) {
+                case SUBTRACT:
+                    for (int i = 0; i < n; i++) out[i] -= scratch[i];
+                    break;
+                case DIVIDE:
+                    for (int i = 0; i < n; i++) out[i] /= scratch[i];
+                    break;
+                default:
+                    for (int i = 0; i < n; i++) out[i] = Math.pow(out[i], scratch[i]);
+            }
+        }
+    }
+
+    private static final class Function extends CompiledExpression {
+        private static final String[] TOKENS = {"ceil", "signum", "cos", "cosh", "acos", "floor", "abs", "log10",
+                "ln", "round", "tan", "tanh", "atan", "logistic", "sqrt", "sin", "sinh", "asin", "exp"};
+
+        private static final int NEGATE = -2;
+
+        private final int function;
+        private final CompiledExpression arg;
+
+        private Function(int function, CompiledExpression arg, int numSlots) {
+            super(arg.slots(), numSlots);
+            this.function = function;
+            this.arg = arg;
+        }
+
+        private static int forToken(String token) {
+            for (int f = 0; f < TOKENS.length; f++) {
+                if (TOKENS[f].equals(token)) return f;
+            }
+
+            return -1;
+        }
+
+        public double evaluate(double[] values) {
+            return apply(function, arg.evaluate(values));
+        }
+
+        public void evaluate(double[][] columns, int from, int to, double[] out) {
+            int n = to - from;
+            arg.evaluate(columns, from, to, out);
+
+            for (int i = 0; i < n; i++) {
+                out[i] = apply(function, out[i]);
+            }
+        }
+
+        private static double apply(int function, double x) {
+            switch (function) {
+                case NEGATE:
+                    return -x;
+                case 0:
+                    return Math.ceil(x);
+                case 1:
+                    return Math.signum(x);
+                case 2:
+                    return Math.cos(x);
+                case 3:
+                    return Math.cosh(x);
+                case 4:
+                    return Math.acos(x);
+                case 5:
+                    return Math.floor(x);
+                case 6:
+                    return Math.abs(x);
+                case 7:
+                    return Math.log10(x);
+                case 8:
+                    return Math.log(x);
+                case 9:
+                    return Math.round(x);
+                case 10:
+                    return Math.tan(x);
+                case 11:
+                    return Math.tanh(x);
+                case 12:
+                    return Math.atan(x);
+                case 13:
+                    return 1.0 / (1.0 + Math.exp(-x));
+                case 14:
+                    return Math.sqrt(x);
+                case 15:
+                    return Math.sin(x);
+                case 16:
+                    return Math.sinh(x);
+                case 17:
+                    return Math.asin(x);
+                default:
+                    return Math.exp(x);
+            }
+        }
+    }
+
+    // An operator of ExpressionManager made again over the compiled forms of its arguments.
+    private static final class Rebuilt extends CompiledExpression {
+        private Expression expression;
+        private double[] values;
+
+        private Rebuilt(CompiledExpression[] args, int numSlots) {
+            super(union(args), numSlots);
+        }
+
+        public double evaluate(double[] values) {
+            double[] _values = this.values;
+            this.values = values;
+
+            try {
+                return expression.evaluate(EMPTY_CONTEXT);
+            } finally {
+                this.values = _values;
+            }
+        }
+    }
+
+    // An argument of a rebuilt operator; evaluates its compiled form over the operator's row state when the
+    // operator asks for its value.
+    private static final class Deferred implements Expression, TetradSerializableExcluded {
+        static final long serialVersionUID = 23L;
+
+        private final Rebuilt owner;
+        private final CompiledExpression compiled;
+        private final Expression source;
+
+        private Deferred(Rebuilt owner, CompiledExpression compiled, Expression source) {
+            this.owner = owner;
+            this.compiled = compiled;
+            this.source = source;
+        }
+
+        public double evaluate(Context context) {
+            return compiled.evaluate(owner.values);
+        }
+
+        public String getToken() {
+            return source.getToken();
+        }
+
+        public ExpressionDescriptor.Position getPosition() {
+            return source.getPosition();
+        }
+
+        public List<Expression> getExpressions() {
+            return source.getExpressions();
+        }
+
+        public RealDistribution getRealDistribution(Context context) {
+            return null;
+        }
+
+        public IntegerDistribution getIntegerDistribution(Context context) {
+            return null;
+        }
+
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    // An expression evaluated as it stands, through a context over the row state.
+    private static final class Interpreted extends CompiledExpression {
+        private final Expression expression;
+        private final ExpressionCompiler compiler;
+        private double[] values;
+
+        private final Context context = new Context() {
+            public Double getValue(String var) {
+                Double value = compiler.constants.get(var);
+                if (value != null) return value;
+
+                Integer slot = compiler.slots.get(var);
+                if (slot != null) return values[slot];
+
+                return compiler.lookUp(var);
+            }
+        };
+
+        private Interpreted(Expression expression, int[] slots, int numSlots, ExpressionCompiler compiler) {
+            super(slots, numSlots);
+            this.expression = expression;
+            this.compiler = compiler;
+        }
+
+        public double evaluate(double[] values) {
+            this.values = values;
+            return expression.evaluate(context);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import java.util.*;
+
+/**
+ * Answers conditional count queries over the discrete columns of a data set, in the manner of an AD tree. For a
+ * set of conditioning variables, the rows are split into leaf lists, one for each attested combination of values;
+ * leaf lists for a set {v1 < ... < vk} are made lazily by splitting the leaf lists for {v1, ..., v(k-1)} by vk, so
+ * sets with common prefixes share work. Leaf lists are kept in a least recently used cache whose size is bounded
+ * by a configurable number of bytes.
+ * <p>
+ * An instance may be used from many threads at once, and may be passed to several scores over the same data
+ * set so that they share their counts. The columns are read when the instance is made; later changes to the data
+ * set are not seen, so statistics should be made again for a data set that has changed. Rows with a missing value
+ * for any of the variables in a query are left out of the counts for that query.
+ *
+ * @author Joseph Ramsey
+ * @see edu.cmu.tetrad.search.AdLeafTree
+ */
+public final class AdTreeStatistics {
+
+    // The coded columns the statistics are made from.
+    private final DiscreteColumns columns;
+
+    // The discrete data, by column; null for columns that are not discrete.
+    private final DiscreteColumns.Column[] data;
+
+    // The number of categories of each discrete column.
+    private final int[] dims;
+
+    // The number of rows.
+    private final int numRows;
+
+    // The leaf lists for the empty conditioning set.
+    private final Leaves root;
+
+    // Leaf lists already made, keyed by sorted variable indices, least recently used first.
+    private final LinkedHashMap<List<Integer>, Leaves> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Estimated number of bytes held in the cache.
+    private long cachedBytes = 0;
+
+    // Maximum number of bytes to hold in the cache.
+    private long maxBytes = 256L * 1024 * 1024;
+
+    /**
+     * Constructs statistics for the discrete columns of the given data set.
+     */
+    public AdTreeStatistics(DataSet dataSet) {
+        this(new DiscreteColumns(dataSet));
+    }
+
+    /**
+     * Constructs statistics for the given coded columns, which may be shared with other counters.
+     */
+    public AdTreeStatistics(DiscreteColumns columns) {
+        if (columns == null) {
+            throw new NullPointerException("Columns were not provided.");
+        }
+
+        this.columns = columns;
+        this.numRows = columns.getNumRows();
+        this.dims = new int[columns.getNumColumns()];
+        this.data = new DiscreteColumns.Column[columns.getNumColumns()];
+
+        for (int j = 0; j < columns.getNumColumns(); j++) {
+            dims[j] = columns.getNumCategories(j);
+            data[j] = columns.getColumn(j);
+        }
+
+        int[] all = new int[numRows];
+        for (int i = 0; i < numRows; i++) all[i] = i;
+        this.root = new Leaves(new int[0], new int[][]{all}, new int[][]{new int[0]});
+    }
+
+    /**
+     * Returns the counts n[j][k] of rows in which the child has value k and the parents have the j'th
+     * combination of values, where combinations are indexed with the first parent varying slowest and the last
+     * parent varying fastest.
+     *
+     * @param child   The index of a discrete column.
+     * @param parents The indices of distinct discrete columns, not including the child.
+     */
+    public int[][] getCounts(int child, int[] parents) {
+        int[] sorted = parents.clone();
+        Arrays.sort(sorted);
+
+        // position of each parent in the sorted order
+        int[] position = new int[parents.length];
+
+        for (int p = 0; p < parents.length; p++) {
+            position[p] = Arrays.binarySearch(sorted, parents[p]);
+        }
+
+        long r = 1;
+
+        for (int parent : parents) {
+            r *= dims[parent];
+
+            if (r > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The parents have too many combinations of values to count.");
+            }
+        }
+
+        int c = dims[child];
+        int[][] counts = new int[(int) r][c];
+        DiscreteColumns.Column childColumn = data[child];
+
+        Leaves leaves = getLeaves(sorted);
+
+        for (int l = 0; l < leaves.rows.length; l++) {
+            int[] values = leaves.values[l];
+            int rowIndex = 0;
+
+            for (int p = 0; p < parents.length; p++) {
+                rowIndex *= dims[parents[p]];
+                rowIndex += values[position[p]];
+            }
+
+            int[] n = counts[rowIndex];
+
+            for (int i : leaves.rows[l]) {
+                int value = childColumn.get(i);
+
+                if (value >= 0 && value < c) {
+                    n[value]++;
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns the stratified contingency tables for x and y given z: for each attested combination of values of
+     * z, the counts n[i][j] of rows in which x has value i and y has value j. Strata are in no particular order.
+     *
+     * @param x The index of a discrete column.
+     * @param y The index of another discrete column.
+     * @param z The indices of distinct discrete columns, not including x or y.
+     */
+    public List<long[][]> getTables(int x, int y, int[] z) {
+        int[] sorted = z.clone();
+        Arrays.sort(sorted);
+
+        DiscreteColumns.Column xColumn = data[x];
+        DiscreteColumns.Column yColumn = data[y];
+        int dx = dims[x];
+        int dy = dims[y];
+
+        Leaves leaves = getLeaves(sorted);
+        List<long[][]> tables = new ArrayList<>(leaves.rows.length);
+
+        for (int[] leaf : leaves.rows) {
+            long[][] table = new long[dx][dy];
+
+            for (int i : leaf) {
+                int xValue = xColumn.get(i);
+                int yValue = yColumn.get(i);
+
+                if (xValue >= 0 && xValue < dx && yValue >= 0 && yValue < dy) {
+                    table[xValue][yValue]++;
+                }
+            }
+
+            tables.add(table);
+        }
+
+        return tables;
+    }
+
+    /**
+     * Returns, for each attested combination of values of z, the counts n[i] of rows in which x has value i.
+     * Strata are in no particular order.
+     *
+     * @param x The index of a discrete column.
+     * @param z The indices of distinct discrete columns, not including x.
+     */
+    public List<long[]> getMargins(int x, int[] z) {
+        int[] sorted = z.clone();
+        Arrays.sort(sorted);
+
+        DiscreteColumns.Column xColumn = data[x];
+        int dx = dims[x];
+
+        Leaves leaves = getLeaves(sorted);
+        List<long[]> margins = new ArrayList<>(leaves.rows.length);
+
+        for (int[] leaf : leaves.rows) {
+            long[] margin = new long[dx];
+
+            for (int i : leaf) {
+                int value = xColumn.get(i);
+                if (value >= 0 && value < dx) margin[value]++;
+            }
+
+            margins.add(margin);
+        }
+
+        return margins;
+    }
+
+    /**
+     * @return the coded columns these statistics are made from, which other counters over the same data set may
+     * share.
+     */
+    public DiscreteColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return true just in case the column at index j contains missing values.
+     */
+    public boolean hasMissingValues(int j) {
+        return data[j] != null && data[j].hasMissingValues();
+    }
+
+    /**
+     * @return the number of categories of the column at index j, or 0 if it is not discrete.
+     */
+    public int getNumCategories(int j) {
+        return dims[j];
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getNumColumns() {
+        return dims.length;
+    }
+
+    /**
+     * @return true if these statistics could have been made from the given data set: it has as many rows and
+     * columns, and each discrete column has as many categories.
+     */
+    public boolean isFor(DataSet dataSet) {
+        return columns.isFor(dataSet);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of leaf lists to keep; the least recently used leaf lists are dropped
+     * first. Default 256 MB.
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Max bytes must be >= 0.");
+
+        synchronized (cache) {
+            this.maxBytes = maxBytes;
+            evict();
+        }
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // The leaf lists for the given sorted variables, made from the leaf lists of the prefix if necessary.
+    private Leaves getLeaves(int[] sorted) {
+        if (sorted.length == 0) return root;
+
+        List<Integer> key = new ArrayList<>(sorted.length);
+        for (int v : sorted) key.add(v);
+
+        synchronized (cache) {
+            Leaves leaves = cache.get(key);
+            if (leaves != null) return leaves;
+        }
+
+        Leaves prefix = getLeaves(Arrays.copyOf(sorted, sorted.length - 1));
+        Leaves leaves = split(prefix, sorted[sorted.length - 1]);
+
+        synchronized (cache) {
+            Leaves existing = cache.get(key);
+            if (existing != null) return existing;
+
+            cache.put(key, leaves);
+            cachedBytes += leaves.bytes;
+            evict();
+        }
+
+        return leaves;
+    }
+
+    // Splits each of the given leaf lists by the values of variable v, dropping rows where v is missing.
+    private Leaves split(Leaves leaves, int v) {
+        DiscreteColumns.Column column = data[v];
+        int d = dims[v];
+        int k = leaves.vars.length;
+
+        List<int[]> rows = new ArrayList<>();
+        List<int[]> values = new ArrayList<>();
+
+        int[] sizes = new int[d];
+
+        for (int l = 0; l < leaves.rows.length; l++) {
+            int[] leaf = leaves.rows[l];
+            Arrays.fill(sizes, 0);
+
+            for (int i : leaf) {
+                int value = column.get(i);
+                if (value >= 0 && value < d) sizes[value]++;
+            }
+
+            int[][] split = new int[d][];
+            for (int c = 0; c < d; c++) split[c] = new int[sizes[c]];
+
+            Arrays.fill(sizes, 0);
+
+            for (int i : leaf) {
+                int value = column.get(i);
+                if (value >= 0 && value < d) split[value][sizes[value]++] = i;
+            }
+
+            for (int c = 0; c < d; c++) {
+                if (split[c].length == 0) continue;
+
+                int[] _values = Arrays.copyOf(leaves.values[l], k + 1);
+                _values[k] = c;
+
+                rows.add(split[c]);
+                values.add(_values);
+            }
+        }
+
+        int[] vars = Arrays.copyOf(leaves.vars, k + 1);
+        vars[k] = v;
+
+        return new Leaves(vars, rows.toArray(new int[rows.size()][]), values.toArray(new int[values.size()][]));
+    }
+
+    // Drops least recently used leaf lists until the cache is within bounds. Call holding the cache lock.
+    private void evict() {
+        Iterator<Map.Entry<List<Integer>, Leaves>> it = cache.entrySet().iterator();
+
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            cachedBytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * The leaf lists for a sorted set of variables: the rows for each attested combination of values, together
+     * with the values.
+     */
+    private static final class Leaves {
+        private final int[] vars;
+        private final int[][] rows;
+        private final int[][] values;
+        private final long bytes;
+
+        private Leaves(int[] vars, int[][] rows, int[][] values) {
+            this.vars = vars;
+            this.rows = rows;
+            this.values = values;
+
+            long bytes = 0;
+
+            for (int l = 0; l < rows.length; l++) {
+                bytes += 4L * (rows[l].length + values[l].length) + 32;
+            }
+
+            this.bytes = bytes;
+        }
+    }
+}
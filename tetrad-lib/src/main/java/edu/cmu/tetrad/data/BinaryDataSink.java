@@ -0,0 +1,141 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a continuous data set in a compact binary form: the number of rows and the number of columns as ints,
+ * the variable names as modified UTF-8 strings, then the values as doubles, row by row, all in the byte order of
+ * DataOutputStream. Use read to load a file so written.
+ *
+ * @author Joseph Ramsey
+ */
+public class BinaryDataSink implements DataSink {
+
+    private final OutputStream out;
+    private final ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+    private int numColumns = -1;
+    private int numRows;
+    private long rowsWritten = 0;
+
+    /**
+     * Writes to the given file.
+     */
+    public BinaryDataSink(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     * Writes to the given stream, which is closed when this sink is.
+     */
+    public BinaryDataSink(OutputStream out) {
+        if (out == null) throw new NullPointerException("Stream was not provided.");
+        this.out = out;
+    }
+
+    /**
+     * Reads a data set written by a BinaryDataSink.
+     */
+    public static DataSet read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                1 << 16))) {
+            int n = in.readInt();
+            int p = in.readInt();
+
+            List<Node> variables = new ArrayList<>();
+
+            for (int j = 0; j < p; j++) {
+                variables.add(new ContinuousVariable(in.readUTF()));
+            }
+
+            double[][] data = new double[p][n];
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < p; j++) {
+                    data[j][i] = in.readDouble();
+                }
+            }
+
+            return new BoxDataSet(new VerticalDoubleDataBox(data), variables);
+        }
+    }
+
+    @Override
+    public void start(List<Node> variables, int numRows) throws IOException {
+        if (numColumns != -1) throw new IllegalStateException("Already started.");
+
+        this.numColumns = variables.size();
+        this.numRows = numRows;
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream _header = new DataOutputStream(header);
+
+        _header.writeInt(numRows);
+        _header.writeInt(numColumns);
+
+        for (Node variable : variables) {
+            _header.writeUTF(variable.getName());
+        }
+
+        _header.flush();
+        header.writeTo(out);
+    }
+
+    @Override
+    public void write(double[][] columns, int numRows) throws IOException {
+        if (numColumns == -1) throw new IllegalStateException("Not started.");
+        if (columns.length != numColumns) throw new IllegalArgumentException("Expecting " + numColumns + " columns.");
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (bytes.remaining() < 8) flush();
+                bytes.putDouble(columns[j][i]);
+            }
+        }
+
+        rowsWritten += numRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+
+            if (numColumns != -1 && rowsWritten != numRows) {
+                throw new IOException("Expected " + numRows + " rows but " + rowsWritten + " were written.");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+}
@@ -0,0 +1,413 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts cells of stratified contingency tables for a discrete data set using row bitmaps. For each column and
+ * each category, the rows taking that category are stored as a bitmap; the strata for a conditioning set are
+ * found by intersecting the bitmaps of its categories, and counts are then taken either by intersecting and
+ * counting bits or, for small strata, by visiting the rows of the stratum directly. A stratum with fewer rows
+ * than twice the words of a bitmap is kept as a list of its rows rather than as a bitmap, so that the strata of
+ * a conditioning set take space in proportion to the number of rows however many strata there are. Rows with a
+ * missing value for any of the variables involved are left out, as in CellTable.
+ * <p>
+ * Unlike CellTable, no state is kept between calls other than a bounded cache of strata, so one instance can be
+ * used from many threads at once, and the strata for a conditioning set are reused across the x, y pairs tested
+ * against it.
+ *
+ * @author Joseph Ramsey
+ * @see CellTable
+ */
+public final class BitmapCellCounts {
+
+    // The data, by column.
+    private final DiscreteColumns.Column[] data;
+
+    // The number of categories of each variable.
+    private final int[] dims;
+
+    // bitmaps[j][c] has bit i set just in case row i has value c for variable j.
+    private final long[][][] bitmaps;
+
+    // The number of rows.
+    private final int numRows;
+
+    // The number of words in each bitmap.
+    private final int numWords;
+
+    // Nonempty strata for conditioning sets already seen, keyed by the sorted conditioning set.
+    private final ConcurrentMap<List<Integer>, Stratum[]> strata = new ConcurrentHashMap<>();
+
+    // The number of words held in the strata cache.
+    private final AtomicLong cachedWords = new AtomicLong();
+
+    // The maximum number of words to hold in the strata cache; when it is exceeded, the cache is cleared.
+    private long maxCachedWords = 1L << 24;
+
+    /**
+     * Constructs counts for the given data set, all of whose columns must be discrete.
+     */
+    public BitmapCellCounts(DataSet dataSet) {
+        this(new DiscreteColumns(dataSet));
+    }
+
+    /**
+     * Constructs counts for the given coded columns, all of which must be discrete; they may be shared with other
+     * counters.
+     */
+    public BitmapCellCounts(DiscreteColumns columns) {
+        if (columns == null) {
+            throw new NullPointerException("Columns were not provided.");
+        }
+
+        this.numRows = columns.getNumRows();
+        this.numWords = (numRows + 63) / 64;
+        this.data = new DiscreteColumns.Column[columns.getNumColumns()];
+        this.dims = new int[columns.getNumColumns()];
+        this.bitmaps = new long[columns.getNumColumns()][][];
+
+        for (int j = 0; j < columns.getNumColumns(); j++) {
+            if (!columns.isDiscrete(j)) {
+                throw new IllegalArgumentException("Column " + j + " is not discrete.");
+            }
+
+            data[j] = columns.getColumn(j);
+            dims[j] = columns.getNumCategories(j);
+            bitmaps[j] = new long[dims[j]][numWords];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = data[j].get(i);
+
+                if (value != DiscreteColumns.MISSING) {
+                    bitmaps[j][value][i >> 6] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of categories of the variable at index j.
+     */
+    public int getNumCategories(int j) {
+        return dims[j];
+    }
+
+    /**
+     * Returns the nonempty strata of the given conditioning set. For an empty conditioning set there is a single
+     * stratum of all rows.
+     */
+    public Stratum[] getStrata(int[] z) {
+        int[] _z = z.clone();
+        Arrays.sort(_z);
+
+        List<Integer> key = new ArrayList<>();
+        for (int v : _z) key.add(v);
+
+        Stratum[] _strata = strata.get(key);
+
+        if (_strata == null) {
+            _strata = stratify(_z);
+
+            long words = 0;
+            for (Stratum stratum : _strata) words += stratum.words();
+
+            // Strata larger than the whole cache are not kept.
+            if (words > maxCachedWords) {
+                return _strata;
+            }
+
+            if (cachedWords.addAndGet(words) > maxCachedWords) {
+                strata.clear();
+                cachedWords.set(words);
+            }
+
+            strata.put(key, _strata);
+        }
+
+        return _strata;
+    }
+
+    /**
+     * Returns the counts n[i][j] of rows in the given stratum for which variable x has value i and variable y
+     * has value j.
+     */
+    public long[][] countTable(Stratum stratum, int x, int y) {
+        int rx = dims[x];
+        int ry = dims[y];
+        long[][] counts = new long[rx][ry];
+
+        DiscreteColumns.Column _x = data[x];
+        DiscreteColumns.Column _y = data[y];
+
+        if (stratum.rows != null) {
+            for (int row : stratum.rows) {
+                int i = _x.get(row);
+                int j = _y.get(row);
+
+                if (i != DiscreteColumns.MISSING && j != DiscreteColumns.MISSING) {
+                    counts[i][j]++;
+                }
+            }
+        } else if (stratum.size * 4L < (long) numWords * (rx + rx * ry)) {
+            for (int w = 0; w < numWords; w++) {
+                long word = stratum.bits[w];
+
+                while (word != 0) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    int i = _x.get(row);
+                    int j = _y.get(row);
+
+                    if (i != DiscreteColumns.MISSING && j != DiscreteColumns.MISSING) {
+                        counts[i][j]++;
+                    }
+                }
+            }
+        } else {
+            long[] bits = stratum.bits;
+            long[] sx = new long[numWords];
+
+            for (int i = 0; i < rx; i++) {
+                long[] bx = bitmaps[x][i];
+
+                for (int w = 0; w < numWords; w++) {
+                    sx[w] = bits[w] & bx[w];
+                }
+
+                for (int j = 0; j < ry; j++) {
+                    long[] by = bitmaps[y][j];
+                    long n = 0;
+
+                    for (int w = 0; w < numWords; w++) {
+                        n += Long.bitCount(sx[w] & by[w]);
+                    }
+
+                    counts[i][j] = n;
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns the counts n[i] of rows in the given stratum for which variable x has value i.
+     */
+    public long[] countMargin(Stratum stratum, int x) {
+        long[] counts = new long[dims[x]];
+
+        if (stratum.rows != null) {
+            DiscreteColumns.Column _x = data[x];
+
+            for (int row : stratum.rows) {
+                int i = _x.get(row);
+                if (i != DiscreteColumns.MISSING) counts[i]++;
+            }
+
+            return counts;
+        }
+
+        for (int i = 0; i < dims[x]; i++) {
+            long[] bx = bitmaps[x][i];
+            long n = 0;
+
+            for (int w = 0; w < numWords; w++) {
+                n += Long.bitCount(stratum.bits[w] & bx[w]);
+            }
+
+            counts[i] = n;
+        }
+
+        return counts;
+    }
+
+    /**
+     * Sets the maximum number of 64-bit words to hold in the cache of strata. Default 2^24 (128 MB).
+     */
+    public void setMaxCachedWords(long maxCachedWords) {
+        this.maxCachedWords = maxCachedWords;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Splits the rows into the nonempty strata of the given variables by successive intersection. Each
+    // intersection is counted before it is stored, and only strata with at least twice as many rows as a bitmap
+    // has words are stored as bitmaps; there are at most 32 of those, and the rest are stored as row lists.
+    private Stratum[] stratify(int[] z) {
+        long[] all = new long[numWords];
+        Arrays.fill(all, -1L);
+
+        if (numRows % 64 != 0) {
+            all[numWords - 1] = (1L << (numRows % 64)) - 1;
+        }
+
+        List<Stratum> current = new ArrayList<>();
+        current.add(new Stratum(all, numRows));
+
+        for (int v : z) {
+            List<Stratum> next = new ArrayList<>();
+
+            for (Stratum stratum : current) {
+                if (stratum.rows != null) {
+                    splitRows(stratum.rows, v, next);
+                } else {
+                    splitBits(stratum.bits, v, next);
+                }
+            }
+
+            current = next;
+        }
+
+        return current.toArray(new Stratum[current.size()]);
+    }
+
+    // Adds the nonempty intersections of the given bitmap with the categories of variable v.
+    private void splitBits(long[] stratum, int v, List<Stratum> next) {
+        for (int c = 0; c < dims[v]; c++) {
+            long[] b = bitmaps[v][c];
+            int size = 0;
+
+            for (int w = 0; w < numWords; w++) {
+                size += Long.bitCount(stratum[w] & b[w]);
+            }
+
+            if (size == 0) continue;
+
+            if (size < 2L * numWords) {
+                int[] rows = new int[size];
+                int k = 0;
+
+                for (int w = 0; w < numWords; w++) {
+                    long word = stratum[w] & b[w];
+
+                    while (word != 0) {
+                        rows[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+
+                next.add(new Stratum(rows));
+            } else {
+                long[] s = new long[numWords];
+
+                for (int w = 0; w < numWords; w++) {
+                    s[w] = stratum[w] & b[w];
+                }
+
+                next.add(new Stratum(s, size));
+            }
+        }
+    }
+
+    // Adds the nonempty parts of the given rows by the category of variable v, rows in order.
+    private void splitRows(int[] stratum, int v, List<Stratum> next) {
+        DiscreteColumns.Column column = data[v];
+        int[] sizes = new int[dims[v]];
+
+        for (int row : stratum) {
+            int c = column.get(row);
+            if (c != DiscreteColumns.MISSING) sizes[c]++;
+        }
+
+        int[][] parts = new int[dims[v]][];
+        int[] filled = new int[dims[v]];
+
+        for (int c = 0; c < dims[v]; c++) {
+            if (sizes[c] > 0) parts[c] = new int[sizes[c]];
+        }
+
+        for (int row : stratum) {
+            int c = column.get(row);
+            if (c != DiscreteColumns.MISSING) parts[c][filled[c]++] = row;
+        }
+
+        for (int[] part : parts) {
+            if (part != null) next.add(new Stratum(part));
+        }
+    }
+
+    /**
+     * A nonempty stratum of rows, stored as a row bitmap or, if it has few rows, as a list of its rows.
+     */
+    public static final class Stratum {
+
+        // Exactly one of these is non-null.
+        private final long[] bits;
+        private final int[] rows;
+
+        // The number of rows.
+        private final int size;
+
+        private Stratum(long[] bits, int size) {
+            this.bits = bits;
+            this.rows = null;
+            this.size = size;
+        }
+
+        private Stratum(int[] rows) {
+            this.bits = null;
+            this.rows = rows;
+            this.size = rows.length;
+        }
+
+        /**
+         * @return the number of rows in the stratum.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the rows in the stratum, in increasing order.
+         */
+        public int[] getRows() {
+            if (rows != null) return rows;
+
+            int[] _rows = new int[size];
+            int k = 0;
+
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+
+                while (word != 0) {
+                    _rows[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+
+            return _rows;
+        }
+
+        // The number of 64-bit words the stratum takes.
+        private long words() {
+            return rows != null ? (rows.length + 1) / 2 : bits.length;
+        }
+    }
+}
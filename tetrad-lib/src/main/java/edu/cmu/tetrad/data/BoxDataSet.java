@@ -1526,7 +1526,15 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
         return nf;
     }
 
+    /**
+     * @return the data box holding the data. If the data are to be loaded lazily, they are loaded, and the data box
+     * they were loaded into is returned.
+     */
     public DataBox getDataBox() {
+        if (dataBox instanceof LazyDataBox) {
+            return ((LazyDataBox) dataBox).getDelegate();
+        }
+
         return dataBox;
     }
 }
@@ -152,7 +152,23 @@ public class ByteDataBox implements DataBox {
 
         return _dataBox;
     }
-}
 
+    /**
+     * @return a read-only view of the column at the given index.
+     */
+    public DiscreteColumnView getColumnView(final int col) {
+        if (col < 0 || col >= numCols()) {
+            throw new IllegalArgumentException("Column out of range: " + col);
+        }
 
+        return new DiscreteColumnView() {
+            public int size() {
+                return data.length;
+            }
 
+            public int get(int row) {
+                return data[row][col];
+            }
+        };
+    }
+}
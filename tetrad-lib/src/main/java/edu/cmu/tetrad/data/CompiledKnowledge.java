@@ -0,0 +1,357 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.OrderedPair;
+
+import java.util.*;
+
+/**
+ * An index-based form of a knowledge object over a fixed list of variables, for the forbidden and required
+ * checks a search makes for every candidate edge. Checks by index take constant time.
+ * <p>
+ * For Knowledge2, each variable gets two signatures: the set of rules it appears in as a cause, and the set it
+ * appears in as an effect. Variables with the same signatures fall into the same class, and a bit matrix over
+ * classes records which pairs of classes share a rule. Tiered knowledge, whose rules are stated over whole tiers,
+ * therefore compiles to about one class per tier, however many variables the tiers hold. For other kinds of
+ * knowledge, a bit matrix over variables is filled in by asking the knowledge about each pair.
+ * <p>
+ * The knowledge is read once, on construction; changes made to it afterward are not seen, but isFor tells
+ * whether a Knowledge2 has been changed since, so that it can be compiled again.
+ *
+ * @author Joseph Ramsey
+ */
+public final class CompiledKnowledge {
+
+    // The knowledge compiled; asked directly about variables not in the list.
+    private final IKnowledge knowledge;
+
+    // The variables, in index order.
+    private final List<Node> variables;
+
+    // Indices of the variables, by name.
+    private final Map<String, Integer> indices;
+
+    // The index of each variable, by identity, so that searches can look up their own nodes without hashing names.
+    private final Map<Node, Integer> nodeIndices = new IdentityHashMap<>();
+
+    // True if nothing is forbidden or required.
+    private final boolean empty;
+
+    // The forbidden and required relations over variable indices; null if the knowledge is empty.
+    private final Relation forbidden;
+    private final Relation required;
+
+    // The first tier of each variable, or -1 if it is in no tier.
+    private final int[] tiers;
+
+    // The version of the knowledge when it was compiled, if it is a Knowledge2.
+    private final int version;
+
+    /**
+     * Compiles the given knowledge for the given variables.
+     */
+    public CompiledKnowledge(IKnowledge knowledge, List<Node> variables) {
+        if (knowledge == null) throw new NullPointerException("Knowledge was not provided.");
+        if (variables == null) throw new NullPointerException("Variables were not provided.");
+
+        this.knowledge = knowledge;
+        this.version = knowledge instanceof Knowledge2 ? ((Knowledge2) knowledge).getVersion() : 0;
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i).getName(), i);
+            nodeIndices.put(variables.get(i), i);
+        }
+
+        this.tiers = new int[variables.size()];
+        Arrays.fill(tiers, -1);
+
+        for (int t = 0; t < knowledge.getNumTiers(); t++) {
+            for (String name : knowledge.getTier(t)) {
+                Integer i = indices.get(name);
+                if (i != null && tiers[i] == -1) tiers[i] = t;
+            }
+        }
+
+        this.empty = knowledge.isEmpty();
+
+        if (empty) {
+            this.forbidden = null;
+            this.required = null;
+        } else if (knowledge instanceof Knowledge2) {
+            this.forbidden = compileRules(((Knowledge2) knowledge).getForbiddenRules());
+            this.required = compileRules(((Knowledge2) knowledge).getRequiredRules());
+        } else {
+            this.forbidden = compilePairs(true);
+            this.required = compilePairs(false);
+        }
+    }
+
+    /**
+     * @return true if the edge from the variable at index i to the variable at index j is forbidden.
+     */
+    public boolean isForbidden(int i, int j) {
+        return !empty && i != j && forbidden.contains(i, j);
+    }
+
+    /**
+     * @return true if the edge from the variable at index i to the variable at index j is required.
+     */
+    public boolean isRequired(int i, int j) {
+        return !empty && i != j && required.contains(i, j);
+    }
+
+    /**
+     * @return true iff no edge between the variables at indices i and j is required.
+     */
+    public boolean noEdgeRequired(int i, int j) {
+        return !(isRequired(i, j) || isRequired(j, i));
+    }
+
+    /**
+     * @return true if the edge x --> y is forbidden.
+     */
+    public boolean isForbidden(Node x, Node y) {
+        int i = getIndex(x);
+        int j = getIndex(y);
+
+        if (i == -1 || j == -1) {
+            return !empty && knowledge.isForbidden(x.getName(), y.getName());
+        }
+
+        return isForbidden(i, j);
+    }
+
+    /**
+     * @return true if the edge x --> y is required.
+     */
+    public boolean isRequired(Node x, Node y) {
+        int i = getIndex(x);
+        int j = getIndex(y);
+
+        if (i == -1 || j == -1) {
+            return !empty && knowledge.isRequired(x.getName(), y.getName());
+        }
+
+        return isRequired(i, j);
+    }
+
+    /**
+     * @return true iff no edge between x and y is required.
+     */
+    public boolean noEdgeRequired(Node x, Node y) {
+        return !(isRequired(x, y) || isRequired(y, x));
+    }
+
+    /**
+     * @return true if the edge x --> y is forbidden, for variables given by name.
+     */
+    public boolean isForbidden(String x, String y) {
+        if (empty) return false;
+
+        Integer i = indices.get(x);
+        Integer j = indices.get(y);
+
+        if (i == null || j == null) {
+            return knowledge.isForbidden(x, y);
+        }
+
+        return isForbidden((int) i, (int) j);
+    }
+
+    /**
+     * @return true if the edge x --> y is required, for variables given by name.
+     */
+    public boolean isRequired(String x, String y) {
+        if (empty) return false;
+
+        Integer i = indices.get(x);
+        Integer j = indices.get(y);
+
+        if (i == null || j == null) {
+            return knowledge.isRequired(x, y);
+        }
+
+        return isRequired((int) i, (int) j);
+    }
+
+    /**
+     * @return the index of the given variable, or -1 if it is not one of the variables.
+     */
+    public int getIndex(Node x) {
+        Integer i = nodeIndices.get(x);
+        if (i == null) i = indices.get(x.getName());
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the first tier the variable at index i is in, or -1 if it is in none.
+     */
+    public int getTier(int i) {
+        return tiers[i];
+    }
+
+    /**
+     * @return true if this was compiled from the given knowledge and, as far as can be told, the knowledge has not
+     * been changed since. Changes are seen for Knowledge2; other knowledge should be compiled again when changed.
+     */
+    public boolean isFor(IKnowledge knowledge) {
+        if (knowledge != this.knowledge) return false;
+        return !(knowledge instanceof Knowledge2) || ((Knowledge2) knowledge).getVersion() == version;
+    }
+
+    /**
+     * @return true if nothing is forbidden or required.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the knowledge that was compiled.
+     */
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    /**
+     * @return the variables, in index order.
+     */
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private Relation compileRules(List<OrderedPair<Set<Knowledge2.MyNode>>> rules) {
+        int p = variables.size();
+
+        BitSet[] causes = new BitSet[p];
+        BitSet[] effects = new BitSet[p];
+
+        for (int i = 0; i < p; i++) {
+            causes[i] = new BitSet();
+            effects[i] = new BitSet();
+        }
+
+        for (int r = 0; r < rules.size(); r++) {
+            for (Knowledge2.MyNode node : rules.get(r).getFirst()) {
+                Integer i = indices.get(node.getName());
+                if (i != null) causes[i].set(r);
+            }
+
+            for (Knowledge2.MyNode node : rules.get(r).getSecond()) {
+                Integer i = indices.get(node.getName());
+                if (i != null) effects[i].set(r);
+            }
+        }
+
+        List<BitSet> causeClasses = new ArrayList<>();
+        List<BitSet> effectClasses = new ArrayList<>();
+
+        int[] causeClass = classify(causes, causeClasses);
+        int[] effectClass = classify(effects, effectClasses);
+
+        Relation relation = new Relation(causeClass, effectClass, causeClasses.size(), effectClasses.size());
+
+        for (int c = 0; c < causeClasses.size(); c++) {
+            for (int e = 0; e < effectClasses.size(); e++) {
+                if (causeClasses.get(c).intersects(effectClasses.get(e))) {
+                    relation.set(c, e);
+                }
+            }
+        }
+
+        return relation;
+    }
+
+    private Relation compilePairs(boolean forbidden) {
+        int p = variables.size();
+        int[] identity = new int[p];
+        for (int i = 0; i < p; i++) identity[i] = i;
+
+        Relation relation = new Relation(identity, identity, p, p);
+
+        for (int i = 0; i < p; i++) {
+            String x = variables.get(i).getName();
+
+            for (int j = 0; j < p; j++) {
+                if (i == j) continue;
+
+                String y = variables.get(j).getName();
+
+                if (forbidden ? knowledge.isForbidden(x, y) : knowledge.isRequired(x, y)) {
+                    relation.set(i, j);
+                }
+            }
+        }
+
+        return relation;
+    }
+
+    // Assigns each signature a class, with one class for each distinct signature.
+    private static int[] classify(BitSet[] signatures, List<BitSet> classes) {
+        Map<BitSet, Integer> seen = new HashMap<>();
+        int[] classOf = new int[signatures.length];
+
+        for (int i = 0; i < signatures.length; i++) {
+            Integer c = seen.get(signatures[i]);
+
+            if (c == null) {
+                c = classes.size();
+                classes.add(signatures[i]);
+                seen.put(signatures[i], c);
+            }
+
+            classOf[i] = c;
+        }
+
+        return classOf;
+    }
+
+    /**
+     * A relation over variable indices, stored as a bit matrix over classes of variables.
+     */
+    private static final class Relation {
+        private final int[] fromClass;
+        private final int[] toClass;
+        private final long[][] matrix;
+
+        private Relation(int[] fromClass, int[] toClass, int numFromClasses, int numToClasses) {
+            this.fromClass = fromClass;
+            this.toClass = toClass;
+            this.matrix = new long[numFromClasses][(numToClasses + 63) / 64];
+        }
+
+        private void set(int from, int to) {
+            matrix[from][to >> 6] |= 1L << to;
+        }
+
+        private boolean contains(int i, int j) {
+            int to = toClass[j];
+            return (matrix[fromClass[i]][to >> 6] & (1L << to)) != 0;
+        }
+    }
+}
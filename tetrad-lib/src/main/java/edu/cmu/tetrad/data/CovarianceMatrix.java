@@ -108,6 +108,16 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
 
+        // Lagged time series data can be done in one pass over the series per lag difference.
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof LagViewDataBox) {
+            TetradMatrix lagged = ((LagViewDataBox) ((BoxDataSet) dataSet).getDataBox()).getCovarianceMatrix();
+
+            if (lagged != null) {
+                this.matrix = lagged;
+                return;
+            }
+        }
+
         if (dataSet instanceof BoxDataSet) {
 
             DataBox box = ((BoxDataSet) dataSet).getDataBox().copy();
@@ -833,176 +833,12 @@ public final class DataReader implements IDataReader {
     }
 
     /**
-     * Reads a knowledge file in tetrad2 format (almost--only does temporal
-     * tiers currently). Format is:
-     * <pre>
-     * /knowledge
-     * addtemporal
-     * 0 x1 x2
-     * 1 x3 x4
-     * 4 x5
-     * </pre>
+     * Reads a knowledge section in tetrad2 format; see KnowledgeReader.
      */
     private IKnowledge parseKnowledge(Lineizer lineizer, Pattern delimiter) {
-        IKnowledge knowledge = new Knowledge2();
-
-        String line = lineizer.nextLine();
-        String firstLine = line;
-
-        if (line == null) {
-            return new Knowledge2();
-        }
-
-        if (line.startsWith("/knowledge")) {
-            line = lineizer.nextLine();
-            firstLine = line;
-        }
-
-        this.logger.log("info", "\nLoading knowledge.");
-
-        SECTIONS:
-        while (lineizer.hasMoreLines()) {
-            if (firstLine == null) {
-                line = lineizer.nextLine();
-            } else {
-                line = firstLine;
-            }
-
-            // "addtemp" is the original in Tetrad 2.
-            if ("addtemporal".equalsIgnoreCase(line.trim())) {
-                while (lineizer.hasMoreLines()) {
-                    line = lineizer.nextLine();
-
-                    if (line.startsWith("forbiddirect")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    if (line.startsWith("requiredirect")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    int tier = -1;
-
-                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
-                    if (st.hasMoreTokens()) {
-                        String token = st.nextToken();
-                        boolean forbiddenWithin = false;
-                        if (token.endsWith("*")) {
-                            forbiddenWithin = true;
-                            token = token.substring(0, token.length() - 1);
-                        }
-
-                        tier = Integer.parseInt(token);
-                        if (tier < 1) {
-                            throw new IllegalArgumentException(
-                                    lineizer.getLineNumber() + ": Tiers must be 1, 2...");
-                        }
-                        if (forbiddenWithin) {
-                            knowledge.setTierForbiddenWithin(tier - 1, true);
-                        }
-                    }
-
-                    while (st.hasMoreTokens()) {
-                        String token = st.nextToken();
-                        token = token.trim();
-
-                        if (token.length() == 0) {
-                            continue;
-                        }
-
-                        String name = substitutePeriodsForSpaces(token);
-                        knowledge.addToTier(tier - 1, name);
-
-                        this.logger.log("info", "Adding to tier " + (tier - 1) + " " + name);
-                    }
-                }
-            } else if ("forbiddirect".equalsIgnoreCase(line.trim())) {
-                while (lineizer.hasMoreLines()) {
-                    line = lineizer.nextLine();
-
-                    if (line.startsWith("addtemporal")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    if (line.startsWith("requiredirect")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
-                    String from = null, to = null;
-
-                    if (st.hasMoreTokens()) {
-                        from = st.nextToken();
-                    }
-
-                    if (st.hasMoreTokens()) {
-                        to = st.nextToken();
-                    }
-
-                    if (st.hasMoreTokens()) {
-                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
-                                + ": Lines contains more than two elements.");
-                    }
-
-                    if (from == null || to == null) {
-                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
-                                + ": Line contains fewer than two elements.");
-                    }
-
-                    knowledge.setForbidden(from, to);
-                }
-            } else if ("requiredirect".equalsIgnoreCase(line.trim())) {
-                while (lineizer.hasMoreLines()) {
-                    line = lineizer.nextLine();
-
-                    if (line.startsWith("forbiddirect")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    if (line.startsWith("addtemporal")) {
-                        firstLine = line;
-                        continue SECTIONS;
-                    }
-
-                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
-                    String from = null, to = null;
-
-                    if (st.hasMoreTokens()) {
-                        from = st.nextToken();
-                    }
-
-                    if (st.hasMoreTokens()) {
-                        to = st.nextToken();
-                    }
-
-                    if (st.hasMoreTokens()) {
-                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
-                                + ": Lines contains more than two elements.");
-                    }
-
-                    if (from == null || to == null) {
-                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
-                                + ": Line contains fewer than two elements.");
-                    }
-
-                    knowledge.setRequired(from, to);
-                }
-            } else {
-                throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
-                        + ": Expecting 'addtemporal', 'forbiddirect' or 'requiredirect'.");
-            }
-        }
-
-        return knowledge;
-    }
-
-    private static String substitutePeriodsForSpaces(String s) {
-        return s.replaceAll(" ", ".");
+        KnowledgeReader reader = new KnowledgeReader();
+        reader.setQuoteChar(quoteChar);
+        return reader.parseKnowledge(lineizer, delimiter);
     }
 
     public void setReadVariablesLowercase(boolean readVariablesLowercase) {
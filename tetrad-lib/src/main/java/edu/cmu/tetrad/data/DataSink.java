@@ -0,0 +1,56 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives a continuous data set a block of rows at a time, so that data sets too large for memory can be
+ * simulated straight to disk. Start is called once, then write once for each block, in order, then close.
+ *
+ * @author Joseph Ramsey
+ * @see TabularDataSink
+ * @see BinaryDataSink
+ */
+public interface DataSink extends Closeable {
+
+    /**
+     * Begins a data set.
+     *
+     * @param variables The variables, in column order.
+     * @param numRows   The number of rows that will be written.
+     */
+    void start(List<Node> variables, int numRows) throws IOException;
+
+    /**
+     * Writes the next block of rows.
+     *
+     * @param columns columns[j][i] is the value of variable j in row i of the block, NaN if missing. The arrays
+     *                may be longer than the block; they are not kept.
+     * @param numRows The number of rows in the block.
+     */
+    void write(double[][] columns, int numRows) throws IOException;
+}
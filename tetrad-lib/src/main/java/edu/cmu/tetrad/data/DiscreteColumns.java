@@ -0,0 +1,255 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+/**
+ * The discrete columns of a data set, coded compactly for the discrete scores and tests. Each column is stored as
+ * an array of bytes if its variable has fewer than 128 categories, of shorts if it has fewer than 32768, and of
+ * ints otherwise, so that a typical discrete data set takes a quarter of the memory of an int copy and is read
+ * with better cache behavior. Values are category indices; missing values are stored as -1.
+ * <p>
+ * An instance may be used from many threads at once, and may be passed to several counters over the same data set
+ * (see AdTreeStatistics and BitmapCellCounts) so that they share one copy. For a BoxDataSet whose box stores its
+ * values as primitive arrays (VerticalIntDataBox, MixedDataBox, ByteDataBox, ShortDataBox), the columns are read
+ * from those arrays directly. The values are copied when the instance is made; later changes to the data set are
+ * not seen.
+ *
+ * @author Joseph Ramsey
+ */
+public final class DiscreteColumns {
+
+    /**
+     * The code for a missing value.
+     */
+    public static final int MISSING = -1;
+
+    // The columns; null for columns that are not discrete.
+    private final Column[] columns;
+
+    // The number of categories of each discrete column, 0 for others.
+    private final int[] dims;
+
+    // The number of rows.
+    private final int numRows;
+
+    /**
+     * Codes the discrete columns of the given data set.
+     */
+    public DiscreteColumns(DataSet dataSet) {
+        if (dataSet == null) {
+            throw new NullPointerException("Data was not provided.");
+        }
+
+        int numCols = dataSet.getNumColumns();
+
+        this.numRows = dataSet.getNumRows();
+        this.columns = new Column[numCols];
+        this.dims = new int[numCols];
+
+        DataBox box = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+
+        for (int j = 0; j < numCols; j++) {
+            Node variable = dataSet.getVariable(j);
+
+            if (!(variable instanceof DiscreteVariable)) {
+                continue;
+            }
+
+            int d = ((DiscreteVariable) variable).getNumCategories();
+            dims[j] = d;
+
+            Column column = new Column(numRows, d);
+
+            DiscreteColumnView view = getColumnView(box, j);
+
+            if (view != null) {
+                for (int i = 0; i < numRows; i++) column.set(i, view.get(i));
+            } else {
+                for (int i = 0; i < numRows; i++) column.set(i, dataSet.getInt(i, j));
+            }
+
+            columns[j] = column;
+        }
+    }
+
+    /**
+     * @return the column at index j, or null if it is not discrete.
+     */
+    public Column getColumn(int j) {
+        return columns[j];
+    }
+
+    /**
+     * @return the category index at the given row and column, or MISSING.
+     */
+    public int get(int row, int col) {
+        return columns[col].get(row);
+    }
+
+    /**
+     * @return true if the column at index j is discrete.
+     */
+    public boolean isDiscrete(int j) {
+        return columns[j] != null;
+    }
+
+    /**
+     * @return the number of categories of the column at index j, or 0 if it is not discrete.
+     */
+    public int getNumCategories(int j) {
+        return dims[j];
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns, discrete or not.
+     */
+    public int getNumColumns() {
+        return columns.length;
+    }
+
+    /**
+     * @return true if these columns could have been coded from the given data set: it has as many rows and
+     * columns, and each discrete column has as many categories.
+     */
+    public boolean isFor(DataSet dataSet) {
+        if (dataSet.getNumRows() != numRows || dataSet.getNumColumns() != columns.length) {
+            return false;
+        }
+
+        for (int j = 0; j < columns.length; j++) {
+            Node variable = dataSet.getVariable(j);
+            int categories = variable instanceof DiscreteVariable
+                    ? ((DiscreteVariable) variable).getNumCategories() : 0;
+
+            if (columns[j] != null && categories != dims[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // A read-only view of the stored values of column j of the given box, or null if the box offers none.
+    private static DiscreteColumnView getColumnView(DataBox box, int j) {
+        if (box instanceof VerticalIntDataBox) {
+            return ((VerticalIntDataBox) box).getColumnView(j);
+        } else if (box instanceof MixedDataBox) {
+            return ((MixedDataBox) box).getColumnView(j);
+        } else if (box instanceof ByteDataBox) {
+            return ((ByteDataBox) box).getColumnView(j);
+        } else if (box instanceof ShortDataBox) {
+            return ((ShortDataBox) box).getColumnView(j);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * A read-only view of one coded column.
+     */
+    public static final class Column {
+
+        // The number of categories.
+        private final int numCategories;
+
+        // Exactly one of these is non-null, the narrowest that holds the categories.
+        private final byte[] bytes;
+        private final short[] shorts;
+        private final int[] ints;
+
+        // Whether some value is missing.
+        private boolean missing = false;
+
+        private Column(int numRows, int numCategories) {
+            this.numCategories = numCategories;
+
+            if (numCategories <= Byte.MAX_VALUE) {
+                bytes = new byte[numRows];
+                shorts = null;
+                ints = null;
+            } else if (numCategories <= Short.MAX_VALUE) {
+                bytes = null;
+                shorts = new short[numRows];
+                ints = null;
+            } else {
+                bytes = null;
+                shorts = null;
+                ints = new int[numRows];
+            }
+        }
+
+        /**
+         * @return the category index at the given row, or MISSING.
+         */
+        public int get(int row) {
+            if (bytes != null) return bytes[row];
+            if (shorts != null) return shorts[row];
+            return ints[row];
+        }
+
+        /**
+         * @return the number of rows.
+         */
+        public int size() {
+            if (bytes != null) return bytes.length;
+            if (shorts != null) return shorts.length;
+            return ints.length;
+        }
+
+        /**
+         * @return the number of categories.
+         */
+        public int getNumCategories() {
+            return numCategories;
+        }
+
+        /**
+         * @return true if some value in the column is missing.
+         */
+        public boolean hasMissingValues() {
+            return missing;
+        }
+
+        // Stores a category index, or MISSING for any value out of range.
+        private void set(int row, int value) {
+            if (value < 0 || value >= numCategories) {
+                value = MISSING;
+                missing = true;
+            }
+
+            if (bytes != null) bytes[row] = (byte) value;
+            else if (shorts != null) shorts[row] = (short) value;
+            else ints[row] = value;
+        }
+    }
+}
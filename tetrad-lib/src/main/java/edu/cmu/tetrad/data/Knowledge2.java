@@ -67,6 +67,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     private Map<String, MyNode> namesToVars = new HashMap<>();
 
+    // Changed whenever the knowledge is changed, so that compiled copies can tell they are out of date.
+    private transient int version = 0;
+
     // Wraps a variable name so that it has object identity. For speed.
     public static class MyNode implements Comparable, TetradSerializable {
 
@@ -168,6 +171,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * is a non-negative integer.
      */
     public final void addToTier(int tier, String spec) {
+        version++;
         addVariable(spec);
 
         if (tier < 0) {
@@ -196,6 +200,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * i.
      */
     public final void addToTiersByVarNames(List<String> myNodes) {
+        version++;
         if (!this.myNodes.containsAll(myNodes)) {
             for (String variable : myNodes) {
                 if (!checkVarName(variable)) {
@@ -227,6 +232,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the knowledge group at the given index.
      */
     public void removeKnowledgeGroup(int index) {
+        version++;
         OrderedPair<Set<MyNode>> old = knowledgeGroupRules.get(knowledgeGroups.get(index));
 
         forbiddenRulesSpecs.remove(old);
@@ -240,6 +246,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * setRequired with patterns. Needed for the interface.
      */
     public void addKnowledgeGroup(KnowledgeGroup group) {
+        version++;
         this.knowledgeGroups.add(group);
 
         OrderedPair<Set<MyNode>> o = getGroupRule(group);
@@ -256,6 +263,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Legacy, do not use.
      */
     public void setKnowledgeGroup(int index, KnowledgeGroup group) {
+        version++;
         OrderedPair<Set<MyNode>> o = getGroupRule(group);
         OrderedPair<Set<MyNode>> old = knowledgeGroupRules.get(knowledgeGroups.get(index));
 
@@ -712,6 +720,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void setForbidden(String spec1, String spec2) {
+        version++;
         addVariable(spec1);
         addVariable(spec2);
 
@@ -733,6 +742,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void removeForbidden(String spec1, String spec2) {
+        version++;
         spec1 = checkSpec(spec1);
         spec2 = checkSpec(spec2);
 
@@ -752,6 +762,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void setRequired(String spec1, String spec2) {
+        version++;
         addVariable(spec1);
         addVariable(spec2);
 
@@ -784,6 +795,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Marks the edge var1 --> var2 as not required.
      */
     public final void removeRequired(String spec1, String spec2) {
+        version++;
         spec1 = checkSpec(spec1);
         spec2 = checkSpec(spec2);
 
@@ -799,6 +811,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the given variable from all tiers.
      */
     public final void removeFromTiers(String spec) {
+        version++;
         for (Set<MyNode> tier : tierSpecs) {
             tier.remove(getVar(spec));
         }
@@ -809,6 +822,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * given tier, or cancels this forbidding.
      */
     public final void setTierForbiddenWithin(int tier, boolean forbidden) {
+        version++;
         ensureTiers(tier);
         Set<MyNode> _tier = tierSpecs.get(tier);
         OrderedPair<Set<MyNode>> o = new OrderedPair<>(_tier, _tier);
@@ -867,6 +881,13 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         this.defaultToKnowledgeLayout = defaultToKnowledgeLayout;
     }
 
+    /**
+     * @return a number that changes whenever this knowledge is changed.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     public final boolean isDefaultToKnowledgeLayout() {
         return defaultToKnowledgeLayout;
     }
@@ -875,6 +896,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes explicit knowledge and tier information.
      */
     public final void clear() {
+        version++;
         this.forbiddenRulesSpecs = new ArrayList<>();
         this.requiredRulesSpecs = new ArrayList<>();
         this.tierSpecs = new ArrayList<>();
@@ -953,6 +975,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Sets the variable in a given tier to the specified list.
      */
     public void setTier(int tier, List<String> vars) {
+        version++;
         ensureTiers(tier);
         Set<MyNode> _tier = tierSpecs.get(tier);
         if (_tier != null) {
@@ -968,6 +991,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Adds the given variable name to knowledge. Duplicates are ignored.
      */
     public void addVariable(String varName) {
+        version++;
         if (!namesToVars.containsKey(varName) && checkVarName(varName)) {
             MyNode e = new MyNode(varName);
             myNodes.add(e);
@@ -979,6 +1003,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the given variable from the list of myNodes and all rules.
      */
     public void removeVariable(String name) {
+        version++;
         if (!checkVarName(name)) {
             throw new IllegalArgumentException("Bad variable name: " + name);
         }
@@ -1100,6 +1125,20 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         return rules;
     }
 
+    /**
+     * The forbidden rules, including those for tiers and knowledge groups; for compiling.
+     */
+    List<OrderedPair<Set<MyNode>>> getForbiddenRules() {
+        return forbiddenRulesSpecs;
+    }
+
+    /**
+     * The required rules, including those for knowledge groups; for compiling.
+     */
+    List<OrderedPair<Set<MyNode>>> getRequiredRules() {
+        return requiredRulesSpecs;
+    }
+
     /**
      * Returns the index of the tier of node if it's in a tier, otherwise -1.
      */
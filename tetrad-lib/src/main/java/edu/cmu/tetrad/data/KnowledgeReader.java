@@ -0,0 +1,292 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.TetradLogger;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Parses knowledge in tetrad2 format, either from a file holding only knowledge
+ * or from a /knowledge section handed over by another reader.
+ *
+ * @author Joseph Ramsey
+ */
+public final class KnowledgeReader {
+
+    /**
+     * A set of characters that in any combination makes up a delimiter.
+     */
+    private DelimiterType delimiterType = DelimiterType.WHITESPACE;
+
+    /**
+     * The initial segment of a line that is to be considered a comment line.
+     */
+    private String commentMarker = "//";
+
+    /**
+     * A character that sets off quoted strings.
+     */
+    private char quoteChar = '"';
+
+    /**
+     * The tetrad logger.
+     */
+    private final TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * Constructs a new knowledge reader.
+     */
+    public KnowledgeReader() {
+    }
+
+    /**
+     * Loads knowledge from a file. Assumes knowledge is the only thing in the
+     * file.
+     */
+    public IKnowledge parseKnowledge(File file) throws IOException {
+        try (FileReader reader = new FileReader(file)) {
+            Lineizer lineizer = new Lineizer(reader, commentMarker);
+            IKnowledge knowledge = parseKnowledge(lineizer, delimiterType.getPattern());
+            this.logger.reset();
+            return knowledge;
+        }
+    }
+
+    /**
+     * Parses knowledge from the char array, assuming that's all there is in the
+     * char array.
+     */
+    public IKnowledge parseKnowledge(char[] chars) {
+        CharArrayReader reader = new CharArrayReader(chars);
+        Lineizer lineizer = new Lineizer(reader, commentMarker);
+        IKnowledge knowledge = parseKnowledge(lineizer, delimiterType.getPattern());
+        this.logger.reset();
+        return knowledge;
+    }
+
+    /**
+     * Sets the delimiter between tokens of a line.
+     */
+    public void setDelimiter(DelimiterType delimiterType) {
+        if (delimiterType == null) {
+            throw new NullPointerException("Cannot be null.");
+        }
+
+        this.delimiterType = delimiterType;
+    }
+
+    /**
+     * Sets the initial segment of a line that marks it as a comment.
+     */
+    public void setCommentMarker(String commentMarker) {
+        if (commentMarker == null) {
+            throw new NullPointerException("Cannot be null.");
+        }
+
+        this.commentMarker = commentMarker;
+    }
+
+    /**
+     * Sets the character that sets off quoted strings.
+     */
+    public void setQuoteChar(char quoteChar) {
+        this.quoteChar = quoteChar;
+    }
+
+    //============================PACKAGE METHODS========================//
+
+    /**
+     * Reads a knowledge file in tetrad2 format (almost--only does temporal
+     * tiers currently). Format is:
+     * <pre>
+     * /knowledge
+     * addtemporal
+     * 0 x1 x2
+     * 1 x3 x4
+     * 4 x5
+     * </pre>
+     */
+    IKnowledge parseKnowledge(Lineizer lineizer, Pattern delimiter) {
+        IKnowledge knowledge = new Knowledge2();
+
+        String line = lineizer.nextLine();
+        String firstLine = line;
+
+        if (line == null) {
+            return new Knowledge2();
+        }
+
+        if (line.startsWith("/knowledge")) {
+            line = lineizer.nextLine();
+            firstLine = line;
+        }
+
+        this.logger.log("info", "\nLoading knowledge.");
+
+        SECTIONS:
+        while (lineizer.hasMoreLines()) {
+            if (firstLine == null) {
+                line = lineizer.nextLine();
+            } else {
+                line = firstLine;
+            }
+
+            // "addtemp" is the original in Tetrad 2.
+            if ("addtemporal".equalsIgnoreCase(line.trim())) {
+                while (lineizer.hasMoreLines()) {
+                    line = lineizer.nextLine();
+
+                    if (line.startsWith("forbiddirect")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    if (line.startsWith("requiredirect")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    int tier = -1;
+
+                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
+                    if (st.hasMoreTokens()) {
+                        String token = st.nextToken();
+                        boolean forbiddenWithin = false;
+                        if (token.endsWith("*")) {
+                            forbiddenWithin = true;
+                            token = token.substring(0, token.length() - 1);
+                        }
+
+                        tier = Integer.parseInt(token);
+                        if (tier < 1) {
+                            throw new IllegalArgumentException(
+                                    lineizer.getLineNumber() + ": Tiers must be 1, 2...");
+                        }
+                        if (forbiddenWithin) {
+                            knowledge.setTierForbiddenWithin(tier - 1, true);
+                        }
+                    }
+
+                    while (st.hasMoreTokens()) {
+                        String token = st.nextToken();
+                        token = token.trim();
+
+                        if (token.length() == 0) {
+                            continue;
+                        }
+
+                        String name = substitutePeriodsForSpaces(token);
+                        knowledge.addToTier(tier - 1, name);
+
+                        this.logger.log("info", "Adding to tier " + (tier - 1) + " " + name);
+                    }
+                }
+            } else if ("forbiddirect".equalsIgnoreCase(line.trim())) {
+                while (lineizer.hasMoreLines()) {
+                    line = lineizer.nextLine();
+
+                    if (line.startsWith("addtemporal")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    if (line.startsWith("requiredirect")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
+                    String from = null, to = null;
+
+                    if (st.hasMoreTokens()) {
+                        from = st.nextToken();
+                    }
+
+                    if (st.hasMoreTokens()) {
+                        to = st.nextToken();
+                    }
+
+                    if (st.hasMoreTokens()) {
+                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                                + ": Lines contains more than two elements.");
+                    }
+
+                    if (from == null || to == null) {
+                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                                + ": Line contains fewer than two elements.");
+                    }
+
+                    knowledge.setForbidden(from, to);
+                }
+            } else if ("requiredirect".equalsIgnoreCase(line.trim())) {
+                while (lineizer.hasMoreLines()) {
+                    line = lineizer.nextLine();
+
+                    if (line.startsWith("forbiddirect")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    if (line.startsWith("addtemporal")) {
+                        firstLine = line;
+                        continue SECTIONS;
+                    }
+
+                    RegexTokenizer st = new RegexTokenizer(line, delimiter, quoteChar);
+                    String from = null, to = null;
+
+                    if (st.hasMoreTokens()) {
+                        from = st.nextToken();
+                    }
+
+                    if (st.hasMoreTokens()) {
+                        to = st.nextToken();
+                    }
+
+                    if (st.hasMoreTokens()) {
+                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                                + ": Lines contains more than two elements.");
+                    }
+
+                    if (from == null || to == null) {
+                        throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                                + ": Line contains fewer than two elements.");
+                    }
+
+                    knowledge.setRequired(from, to);
+                }
+            } else {
+                throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                        + ": Expecting 'addtemporal', 'forbiddirect' or 'requiredirect'.");
+            }
+        }
+
+        return knowledge;
+    }
+
+    private static String substitutePeriodsForSpaces(String s) {
+        return s.replaceAll(" ", ".");
+    }
+}
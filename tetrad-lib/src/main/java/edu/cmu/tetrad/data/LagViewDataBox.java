@@ -0,0 +1,359 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Presents the lagged columns of a time series as views over a single copy of the series, without copying each lag.
+ * For a series with p variables, N rows and L lags, there are N - L rows and p(L + 1) columns; column lag * p + j is
+ * variable j shifted back by lag, so that row r of it is row r + L - lag of the series. This is the layout made by
+ * TimeSeriesUtils.createLagData.
+ * <p>
+ * The series is copied when the view is made, so later changes to it are not seen through the view. The first call
+ * to set copies the view into a MixedDataBox, which is used thereafter, so the series is never changed through the
+ * view.
+ * <p>
+ * Since the lagged columns are shifts of the same series, sums of products between columns whose lags differ by
+ * the same amount are sums over windows of the same sequence; getCovarianceMatrix uses this to compute the sample
+ * covariance matrix of the lagged columns from one pass over the series for each lag difference.
+ *
+ * @author Joseph Ramsey
+ */
+public class LagViewDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * A copy of the time series, shared by copies of this view.
+     */
+    private final DataSet series;
+
+    /**
+     * The lagged variables, in column order.
+     */
+    private final List<Node> variables;
+
+    /**
+     * The number of lags.
+     */
+    private final int numLags;
+
+    /**
+     * The number of variables in the series.
+     */
+    private final int numVars;
+
+    /**
+     * True for columns of the series that are discrete.
+     */
+    private final boolean[] discrete;
+
+    /**
+     * A copy of the view, made when the view is first written to; null until then.
+     */
+    private DataBox copy = null;
+
+    /**
+     * Constructs a view of the given series with the given number of lags.
+     *
+     * @param series    The time series, one row per time step.
+     * @param variables The lagged variables, p(L + 1) of them, in column order.
+     * @param numLags   The number of lags L.
+     */
+    public LagViewDataBox(DataSet series, List<Node> variables, int numLags) {
+        this(series.copy(), variables, numLags, true);
+    }
+
+    // Makes a view of a series that is already a private copy.
+    private LagViewDataBox(DataSet series, List<Node> variables, int numLags, boolean copied) {
+        if (numLags < 0 || numLags >= series.getNumRows()) {
+            throw new IllegalArgumentException("Number of lags must be at least 0 and less than the number of rows.");
+        }
+
+        if (variables.size() != series.getNumColumns() * (numLags + 1)) {
+            throw new IllegalArgumentException("Expecting " + series.getNumColumns() * (numLags + 1)
+                    + " lagged variables.");
+        }
+
+        this.series = series;
+        this.variables = variables;
+        this.numLags = numLags;
+        this.numVars = series.getNumColumns();
+        this.discrete = new boolean[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            discrete[j] = series.getVariable(j) instanceof DiscreteVariable;
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> seriesVariables = new ArrayList<>();
+        seriesVariables.add(new ContinuousVariable("X"));
+
+        List<Node> laggedVariables = new ArrayList<>();
+        laggedVariables.add(new ContinuousVariable("X"));
+        laggedVariables.add(new ContinuousVariable("X:1"));
+
+        DataSet series = new BoxDataSet(new DoubleDataBox(4, 1), seriesVariables);
+        return new BoxDataSet(new LagViewDataBox(series, laggedVariables, 1), laggedVariables);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    @Override
+    public int numRows() {
+        return series.getNumRows() - numLags;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    @Override
+    public int numCols() {
+        return variables.size();
+    }
+
+    /**
+     * Sets the value at the given row/column, first copying the view if that has not been done already.
+     */
+    @Override
+    public void set(int row, int col, Number value) throws IllegalArgumentException {
+        if (copy == null) {
+            copy = copyOf(allRows(), allCols());
+        }
+
+        copy.set(row, col, value);
+    }
+
+    /**
+     * @return the Number value at the given row and column, or null if it is missing.
+     */
+    @Override
+    public Number get(int row, int col) {
+        if (copy != null) {
+            return copy.get(row, col);
+        }
+
+        int j = col % numVars;
+        int r = row + numLags - col / numVars;
+
+        if (discrete[j]) {
+            int value = series.getInt(r, j);
+            return value == DiscreteVariable.MISSING_VALUE ? null : value;
+        } else {
+            return series.getDouble(r, j);
+        }
+    }
+
+    /**
+     * @return a copy of this data box; if it has not been written to, the copy is another view of the same copy of
+     * the series, which is never written to.
+     */
+    @Override
+    public DataBox copy() {
+        if (copy != null) {
+            return copy.copy();
+        }
+
+        return new LagViewDataBox(series, variables, numLags, true);
+    }
+
+    /**
+     * @return a copy of the given rows and columns.
+     */
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        return copyOf(rows, cols);
+    }
+
+    /**
+     * @return an empty data box with the same dimensions as this one.
+     */
+    @Override
+    public DataBox like() {
+        return new MixedDataBox(new ArrayList<>(variables), numRows());
+    }
+
+    /**
+     * Returns the sample covariance matrix of the columns, or null if some column is discrete or has missing
+     * values, or if the view has been written to. For each pair of series variables and each lag difference k, the
+     * running sums of products of the two variables k steps apart are taken once over the series; the sum of
+     * products for any two lagged columns with that lag difference is then the difference of two running sums.
+     * This takes time proportional to p^2 (L + 1) N rather than p^2 (L + 1)^2 (N - L).
+     */
+    public TetradMatrix getCovarianceMatrix() {
+        if (copy != null) return null;
+
+        final int N = series.getNumRows();
+        final int n = numRows();
+        final int L = numLags;
+        final int p = numVars;
+
+        // The series, centered by the means over all rows; covariances are unaffected.
+        final double[][] x = new double[p][N];
+
+        for (int j = 0; j < p; j++) {
+            if (discrete[j]) return null;
+
+            double sum = 0.0;
+
+            for (int t = 0; t < N; t++) {
+                double value = series.getDouble(t, j);
+                if (Double.isNaN(value)) return null;
+                x[j][t] = value;
+                sum += value;
+            }
+
+            double mean = sum / N;
+
+            for (int t = 0; t < N; t++) {
+                x[j][t] -= mean;
+            }
+        }
+
+        // means[lag][j] is the mean of column lag * p + j, which covers rows L - lag to N - 1 - lag.
+        final double[][] means = new double[L + 1][p];
+
+        for (int j = 0; j < p; j++) {
+            double[] running = new double[N + 1];
+
+            for (int t = 0; t < N; t++) {
+                running[t + 1] = running[t] + x[j][t];
+            }
+
+            for (int lag = 0; lag <= L; lag++) {
+                means[lag][j] = (running[N - lag] - running[L - lag]) / n;
+            }
+        }
+
+        final TetradMatrix cov = new TetradMatrix(p * (L + 1), p * (L + 1));
+
+        class CovarianceTask extends RecursiveTask<Boolean> {
+            private final int chunk;
+            private final int from;
+            private final int to;
+
+            private CovarianceTask(int chunk, int from, int to) {
+                this.chunk = chunk;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    double[] running = new double[N + 1];
+
+                    for (int i = from; i < to; i++) {
+                        for (int k = 0; k <= L; k++) {
+                            for (int j = 0; j < p; j++) {
+
+                                // Running sums of x_i(t) * x_j(t + k).
+                                for (int t = 0; t < N - k; t++) {
+                                    running[t + 1] = running[t] + x[i][t] * x[j][t + k];
+                                }
+
+                                // Column a * p + i against column b * p + j, where a = b + k; this covers
+                                // t = L - a to N - 1 - a.
+                                for (int b = 0; b + k <= L; b++) {
+                                    int a = b + k;
+                                    double s = running[N - a] - running[L - a];
+                                    double c = (s - n * means[a][i] * means[b][j]) / (n - 1);
+
+                                    cov.set(a * p + i, b * p + j, c);
+                                    cov.set(b * p + j, a * p + i, c);
+                                }
+                            }
+                        }
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    CovarianceTask left = new CovarianceTask(chunk, from, mid);
+                    CovarianceTask right = new CovarianceTask(chunk, mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        int chunk = p / (Runtime.getRuntime().availableProcessors() * 4) + 1;
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new CovarianceTask(chunk, 0, p));
+
+        return cov;
+    }
+
+    /**
+     * @return the number of lags.
+     */
+    public int getNumLags() {
+        return numLags;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private DataBox copyOf(int[] rows, int[] cols) {
+        List<Node> _variables = new ArrayList<>();
+
+        for (int c : cols) {
+            _variables.add(variables.get(c));
+        }
+
+        MixedDataBox box = new MixedDataBox(_variables, rows.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                box.set(i, j, get(rows[i], cols[j]));
+            }
+        }
+
+        return box;
+    }
+
+    private int[] allRows() {
+        int[] rows = new int[numRows()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        return rows;
+    }
+
+    private int[] allCols() {
+        int[] cols = new int[numCols()];
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
+        return cols;
+    }
+}
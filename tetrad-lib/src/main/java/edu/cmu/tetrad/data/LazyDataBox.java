@@ -0,0 +1,195 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * A data box whose contents are loaded from somewhere else (for instance, a saved session) the first time they are
+ * needed. The dimensions are known without loading. BoxDataSet.getDataBox returns the loaded data box rather than
+ * this one, so that code that checks for particular kinds of data boxes still works.
+ * <p>
+ * When serialized, the contents are loaded first and written with it, so that a copy made by serialization does
+ * not depend on the source.
+ *
+ * @author Joseph Ramsey
+ */
+public final class LazyDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * Loads the contents of a lazy data box.
+     */
+    public interface Loader {
+
+        /**
+         * @return the contents, a data box with the dimensions the lazy data box was given.
+         */
+        DataBox load() throws IOException;
+    }
+
+    /**
+     * The number of rows.
+     */
+    private final int numRows;
+
+    /**
+     * The number of columns.
+     */
+    private final int numCols;
+
+    /**
+     * Loads the contents; null if they were given directly.
+     */
+    private transient Loader loader;
+
+    /**
+     * The contents, or null if they have not been loaded yet.
+     */
+    private volatile DataBox delegate = null;
+
+    /**
+     * Constructs a data box with the given dimensions whose contents will be taken from the given loader when they
+     * are first needed.
+     */
+    public LazyDataBox(int numRows, int numCols, Loader loader) {
+        if (numRows < 0 || numCols < 0) {
+            throw new IllegalArgumentException("Dimensions must be >= 0.");
+        }
+
+        if (loader == null) {
+            throw new NullPointerException("Loader was not provided.");
+        }
+
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.loader = loader;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static LazyDataBox serializableInstance() {
+        return new LazyDataBox(4, 4, new Loader() {
+            public DataBox load() {
+                return new DoubleDataBox(4, 4);
+            }
+        });
+    }
+
+    /**
+     * @return the number of rows, without loading.
+     */
+    @Override
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns, without loading.
+     */
+    @Override
+    public int numCols() {
+        return numCols;
+    }
+
+    @Override
+    public void set(int row, int col, Number value) throws IllegalArgumentException {
+        getDelegate().set(row, col, value);
+    }
+
+    @Override
+    public Number get(int row, int col) {
+        return getDelegate().get(row, col);
+    }
+
+    /**
+     * @return a copy of the contents.
+     */
+    @Override
+    public DataBox copy() {
+        return getDelegate().copy();
+    }
+
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        return getDelegate().viewSelection(rows, cols);
+    }
+
+    @Override
+    public DataBox like() {
+        return getDelegate().like();
+    }
+
+    /**
+     * @return the contents, loading them if necessary.
+     * @throws IllegalStateException if they cannot be loaded.
+     */
+    public DataBox getDelegate() {
+        DataBox box = delegate;
+
+        if (box == null) {
+            synchronized (this) {
+                box = delegate;
+
+                if (box == null) {
+                    try {
+                        box = loader.load();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not load data: " + e.getMessage(), e);
+                    }
+
+                    if (box.numRows() != numRows || box.numCols() != numCols) {
+                        throw new IllegalStateException("Expecting " + numRows + " x " + numCols
+                                + " data; loaded " + box.numRows() + " x " + box.numCols() + ".");
+                    }
+
+                    delegate = box;
+                }
+            }
+        }
+
+        return box;
+    }
+
+    /**
+     * @return true if the contents have been loaded.
+     */
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    /**
+     * @return the loader, or null if the contents were given directly.
+     */
+    public Loader getLoader() {
+        return loader;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getDelegate();
+        out.defaultWriteObject();
+    }
+}
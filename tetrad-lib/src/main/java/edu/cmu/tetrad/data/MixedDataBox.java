@@ -261,4 +261,24 @@ public class MixedDataBox implements DataBox {
         return _dataBox;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return a read-only view of the column at the given index, or null if it is not discrete.
+     */
+    public DiscreteColumnView getColumnView(int col) {
+        final int[] column = discreteData[col];
+
+        if (column == null) {
+            return null;
+        }
+
+        return new DiscreteColumnView() {
+            public int size() {
+                return column.length;
+            }
+
+            public int get(int row) {
+                return column[row];
+            }
+        };
+    }
+}
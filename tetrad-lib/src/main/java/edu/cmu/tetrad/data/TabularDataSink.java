@@ -0,0 +1,198 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a data set as delimited text, in the layout of DataWriter.writeRectangularData: a row of variable names,
+ * then one line per row, with * for missing values. Values are written with a fixed number of decimal places,
+ * by default that of the preferred number format; they are formatted directly into a character buffer rather
+ * than through NumberFormat, which is much slower. Values too large to write that way are written as
+ * Double.toString does.
+ *
+ * @author Joseph Ramsey
+ */
+public class TabularDataSink implements DataSink {
+
+    // Powers of ten up to the most decimal places allowed.
+    private static final long[] POWERS = new long[10];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) POWERS[i] = POWERS[i - 1] * 10;
+    }
+
+    private final Writer out;
+    private final char delimiter;
+    private int decimals;
+    private int numColumns = -1;
+
+    // Characters waiting to be written.
+    private final char[] buffer = new char[1 << 16];
+    private int position = 0;
+
+    /**
+     * Writes to the given file, with the given delimiter.
+     */
+    public TabularDataSink(File file, char delimiter) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), delimiter);
+    }
+
+    /**
+     * Writes to the given writer, with the given delimiter. The writer is closed when this sink is.
+     */
+    public TabularDataSink(Writer out, char delimiter) {
+        if (out == null) throw new NullPointerException("Writer was not provided.");
+
+        this.out = out;
+        this.delimiter = delimiter;
+        this.decimals = Math.min(POWERS.length - 1,
+                NumberFormatUtil.getInstance().getNumberFormat().getMaximumFractionDigits());
+    }
+
+    @Override
+    public void start(List<Node> variables, int numRows) throws IOException {
+        if (numColumns != -1) throw new IllegalStateException("Already started.");
+
+        numColumns = variables.size();
+
+        for (int j = 0; j < variables.size(); j++) {
+            String name = variables.get(j).getName();
+
+            if (name.trim().equals("")) {
+                name = "C" + (j - 1);
+            }
+
+            if (j > 0) put(delimiter);
+            put(name);
+        }
+
+        put('\n');
+    }
+
+    @Override
+    public void write(double[][] columns, int numRows) throws IOException {
+        if (numColumns == -1) throw new IllegalStateException("Not started.");
+        if (columns.length != numColumns) throw new IllegalArgumentException("Expecting " + numColumns + " columns.");
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (j > 0) put(delimiter);
+                put(columns[j][i]);
+            }
+
+            put('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * @return the number of decimal places written.
+     */
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * Sets the number of decimal places, from 0 to 9.
+     */
+    public void setDecimals(int decimals) {
+        if (decimals < 0 || decimals >= POWERS.length) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + (POWERS.length - 1));
+        }
+
+        this.decimals = decimals;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Formats a value, rounded to the nearest multiple of 10^-decimals.
+    private void put(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            put('*');
+            return;
+        }
+
+        long scale = POWERS[decimals];
+        double scaled = Math.abs(value) * scale;
+
+        if (!(scaled < 1e17)) {
+            put(Double.toString(value));
+            return;
+        }
+
+        long units = Math.round(scaled);
+
+        if (position + 40 > buffer.length) flush();
+
+        if (value < 0 && units != 0) buffer[position++] = '-';
+
+        long whole = units / scale;
+        long fraction = units % scale;
+
+        position = putDigits(whole, position, 1);
+
+        if (decimals > 0) {
+            buffer[position++] = '.';
+            position = putDigits(fraction, position, decimals);
+        }
+    }
+
+    // Writes the digits of a nonnegative number, padded with zeros to at least the given width.
+    private int putDigits(long n, int at, int width) {
+        int length = 1;
+        for (long m = n / 10; m > 0; m /= 10) length++;
+        length = Math.max(length, width);
+
+        for (int k = at + length - 1; k >= at; k--) {
+            buffer[k] = (char) ('0' + n % 10);
+            n /= 10;
+        }
+
+        return at + length;
+    }
+
+    private void put(char c) throws IOException {
+        if (position == buffer.length) flush();
+        buffer[position++] = c;
+    }
+
+    private void put(String s) throws IOException {
+        for (int k = 0; k < s.length(); k++) put(s.charAt(k));
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
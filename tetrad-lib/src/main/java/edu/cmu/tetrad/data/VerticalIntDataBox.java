@@ -129,6 +129,23 @@ public class VerticalIntDataBox implements DataBox {
         return data;
     }
 
+    /**
+     * @return a read-only view of the column at the given index.
+     */
+    public DiscreteColumnView getColumnView(int col) {
+        final int[] column = data[col];
+
+        return new DiscreteColumnView() {
+            public int size() {
+                return column.length;
+            }
+
+            public int get(int row) {
+                return column[row];
+            }
+        };
+    }
+
     /**
      * @return a copy of this data box.
      */
@@ -0,0 +1,617 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lays out a graph with the forces of the Fruchterman-Reingold layout--repulsion between all nodes and attraction
+ * between adjacent nodes--but finds the repulsive forces using the Barnes-Hut approximation, so that each step
+ * takes time proportional to n log n rather than n^2. Each step, the node positions are put into a quadtree whose
+ * cells record the number of nodes in them and their center of mass; a cell whose width divided by its distance
+ * from a node is less than theta repels that node as a single body at its center of mass. The repulsive forces on
+ * the nodes are found in parallel.
+ * <p>
+ * Coordinates are kept in primitive arrays. The most a node may move in a step (the temperature) is cooled
+ * geometrically, and the layout of a component stops once the average distance moved by its nodes in a step falls
+ * below a tolerance, or after a maximum number of steps. Connected components are laid out separately, largest
+ * first, from left to right, and the results are written back with the node center setters.
+ *
+ * @author Joseph Ramsey
+ * @see FruchtermanReingoldLayout
+ */
+public final class BarnesHutLayout {
+
+    /**
+     * Cells deeper than this hold all of the nodes that fall into them, which keeps nodes at the same position
+     * from dividing the tree without end.
+     */
+    private static final int MAX_DEPTH = 48;
+
+    /**
+     * The graph being laid out.
+     */
+    private Graph graph;
+
+    /**
+     * The ratio of cell width to distance below which a cell is treated as a single body. 0 gives the exact
+     * forces.
+     */
+    private double theta = 0.8;
+
+    /**
+     * Optimal distance between vertices; if not positive, it is chosen from the average degree.
+     */
+    private double optimalDistance = -1;
+
+    /**
+     * The maximum number of steps for each component.
+     */
+    private int maxIterations = 500;
+
+    /**
+     * The layout of a component stops once the average distance moved by its nodes in a step is below this.
+     */
+    private double tolerance = 0.5;
+
+    /**
+     * The factor by which the temperature is multiplied after each step.
+     */
+    private double cooling = 0.95;
+
+    /**
+     * The total number of steps taken in the last layout.
+     */
+    private int numIterations = 0;
+
+    /**
+     * Leftmost x position to help layout components left to right.
+     */
+    private double leftmostX = -50.;
+
+    //==============================CONSTRUCTORS===========================//
+
+    public BarnesHutLayout(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException();
+        }
+
+        this.graph = graph;
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    public void doLayout() {
+        final List<Node> nodes = graph.getNodes();
+        final int n = nodes.size();
+
+        leftmostX = -50.;
+        numIterations = 0;
+
+        if (n == 0) return;
+
+        Map<Node, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        // Edges by index, without self-loops.
+        List<int[]> edges = new ArrayList<>();
+
+        for (Edge edge : graph.getEdges()) {
+            Integer u = indices.get(edge.getNode1());
+            Integer v = indices.get(edge.getNode2());
+
+            if (u == null || v == null || u.equals(v)) continue;
+
+            edges.add(new int[]{u, v});
+        }
+
+        double distance = optimalDistance;
+
+        if (distance <= 0) {
+            double avgDegree = 2.0 * edges.size() / n;
+            distance = 20.0 + 20.0 * avgDegree;
+        }
+
+        // Connected components, by union-find.
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = i;
+
+        for (int[] edge : edges) {
+            int a = find(parent, edge[0]);
+            int b = find(parent, edge[1]);
+            if (a != b) parent[a] = b;
+        }
+
+        Map<Integer, List<Integer>> byRoot = new LinkedHashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            int root = find(parent, i);
+            List<Integer> component = byRoot.get(root);
+
+            if (component == null) {
+                component = new ArrayList<>();
+                byRoot.put(root, component);
+            }
+
+            component.add(i);
+        }
+
+        Map<Integer, List<int[]>> edgesByRoot = new HashMap<>();
+
+        for (int[] edge : edges) {
+            int root = find(parent, edge[0]);
+            List<int[]> _edges = edgesByRoot.get(root);
+
+            if (_edges == null) {
+                _edges = new ArrayList<>();
+                edgesByRoot.put(root, _edges);
+            }
+
+            _edges.add(edge);
+        }
+
+        List<Integer> roots = new ArrayList<>(byRoot.keySet());
+        final Map<Integer, List<Integer>> _byRoot = byRoot;
+
+        Collections.sort(roots, new Comparator<Integer>() {
+            public int compare(Integer r1, Integer r2) {
+                return Integer.compare(_byRoot.get(r2).size(), _byRoot.get(r1).size());
+            }
+        });
+
+        int[] position = new int[n];
+
+        for (int root : roots) {
+            List<Integer> component = byRoot.get(root);
+
+            for (int i = 0; i < component.size(); i++) {
+                position[component.get(i)] = i;
+            }
+
+            List<int[]> componentEdges = edgesByRoot.get(root);
+            int[][] _edges = new int[componentEdges == null ? 0 : componentEdges.size()][];
+
+            for (int e = 0; e < _edges.length; e++) {
+                int[] edge = componentEdges.get(e);
+                _edges[e] = new int[]{position[edge[0]], position[edge[1]]};
+            }
+
+            List<Node> componentNodes = new ArrayList<>();
+
+            for (int i : component) {
+                componentNodes.add(nodes.get(i));
+            }
+
+            layoutComponent(componentNodes, _edges, distance);
+        }
+    }
+
+    /**
+     * The ratio of cell width to distance below which a cell is treated as a single body. Default 0.8; 0 gives
+     * the exact forces.
+     */
+    public void setTheta(double theta) {
+        if (theta < 0) throw new IllegalArgumentException("Theta must be >= 0.");
+        this.theta = theta;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Sets the optimal distance between adjacent nodes; if not positive (the default), it is chosen from the
+     * average degree, as in the Fruchterman-Reingold layout.
+     */
+    public void setOptimalDistance(double optimalDistance) {
+        this.optimalDistance = optimalDistance;
+    }
+
+    public double getOptimalDistance() {
+        return optimalDistance;
+    }
+
+    /**
+     * Sets the maximum number of steps for each component. Default 500.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 0) throw new IllegalArgumentException("Max iterations must be >= 0.");
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the average distance moved per node per step below which the layout of a component stops. Default
+     * 0.5.
+     */
+    public void setTolerance(double tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("Tolerance must be >= 0.");
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the factor, strictly between 0 and 1, by which the temperature is multiplied after each step. Default
+     * 0.95.
+     */
+    public void setCooling(double cooling) {
+        if (cooling <= 0 || cooling >= 1) throw new IllegalArgumentException("Cooling must be in (0, 1).");
+        this.cooling = cooling;
+    }
+
+    public double getCooling() {
+        return cooling;
+    }
+
+    /**
+     * @return the total number of steps taken over all components in the last layout.
+     */
+    public int getNumIterations() {
+        return numIterations;
+    }
+
+    //============================PRIVATE METHODS=========================//
+
+    private void layoutComponent(List<Node> nodes, int[][] edges, double distance) {
+        final int n = nodes.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        final double[] dispX = new double[n];
+        final double[] dispY = new double[n];
+
+        // Start on a circle whose area grows with the number of nodes.
+        double radius = Math.max(200.0, distance * Math.sqrt(n) / 2.0);
+        double rad = 6.28 / n;
+        double phi = .75 * 6.28;
+
+        for (int i = 0; i < n; i++) {
+            x[i] = 300 + radius * Math.cos(phi);
+            y[i] = 300 + radius * Math.sin(phi);
+            phi += rad;
+        }
+
+        final double k2 = distance * distance;
+        double temperature = radius / 10.0;
+        int chunk = n / (Runtime.getRuntime().availableProcessors() * 4) + 1;
+
+        for (int iteration = 0; iteration < maxIterations && n > 1; iteration++) {
+            numIterations++;
+
+            final QuadTree tree = new QuadTree(x, y);
+
+            class RepulsionTask extends RecursiveTask<Boolean> {
+                private final int chunk;
+                private final int from;
+                private final int to;
+
+                private RepulsionTask(int chunk, int from, int to) {
+                    this.chunk = chunk;
+                    this.from = from;
+                    this.to = to;
+                }
+
+                @Override
+                protected Boolean compute() {
+                    if (to - from <= chunk) {
+                        int[] stack = new int[4 * (MAX_DEPTH + 2)];
+                        double[] force = new double[2];
+
+                        for (int i = from; i < to; i++) {
+                            tree.repulsion(i, k2, theta, stack, force);
+                            dispX[i] = force[0];
+                            dispY[i] = force[1];
+                        }
+
+                        return true;
+                    } else {
+                        int mid = (to + from) / 2;
+
+                        RepulsionTask left = new RepulsionTask(chunk, from, mid);
+                        RepulsionTask right = new RepulsionTask(chunk, mid, to);
+
+                        left.fork();
+                        right.compute();
+                        left.join();
+
+                        return true;
+                    }
+                }
+            }
+
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new RepulsionTask(chunk, 0, n));
+
+            // Attractive forces.
+            for (int[] edge : edges) {
+                int u = edge[0];
+                int v = edge[1];
+
+                double deltaX = x[v] - x[u];
+                double deltaY = y[v] - y[u];
+                double norm = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+
+                if (norm == 0.0) continue;
+
+                // (delta / norm) * fa(norm), where fa(d) = d^2 / k.
+                double attractX = deltaX * norm / distance;
+                double attractY = deltaY * norm / distance;
+
+                dispX[v] -= attractX;
+                dispY[v] -= attractY;
+                dispX[u] += attractX;
+                dispY[u] += attractY;
+            }
+
+            double moved = 0.0;
+
+            for (int v = 0; v < n; v++) {
+                double norm = Math.sqrt(dispX[v] * dispX[v] + dispY[v] * dispY[v]);
+
+                if (norm == 0.0) continue;
+
+                double step = Math.min(norm, temperature);
+
+                x[v] += (dispX[v] / norm) * step;
+                y[v] += (dispY[v] / norm) * step;
+                moved += step;
+
+                if (Double.isNaN(x[v]) || Double.isNaN(y[v])) {
+                    throw new IllegalStateException("Undefined position.");
+                }
+            }
+
+            if (moved / n < tolerance) {
+                break;
+            }
+
+            temperature *= cooling;
+        }
+
+        shiftComponentToRight(nodes, x, y);
+    }
+
+    private void shiftComponentToRight(List<Node> componentNodes, double[] x, double[] y) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+
+        for (int i = 0; i < componentNodes.size(); i++) {
+            if (x[i] < minX) minX = x[i];
+            if (y[i] < minY) minY = y[i];
+        }
+
+        leftmostX = leftmostX + 100.;
+
+        for (int i = 0; i < componentNodes.size(); i++) {
+            x[i] += leftmostX - minX;
+            y[i] += 40.0 - minY;
+        }
+
+        for (int i = 0; i < componentNodes.size(); i++) {
+            if (x[i] > leftmostX) leftmostX = x[i];
+        }
+
+        for (int i = 0; i < componentNodes.size(); i++) {
+            Node node = componentNodes.get(i);
+            node.setCenterX((int) x[i]);
+            node.setCenterY((int) y[i]);
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * A quadtree over points given by coordinate arrays, with cells stored in parallel arrays. Each cell records
+     * the number of points in it and the sums of their coordinates.
+     */
+    private static final class QuadTree {
+        private static final int EMPTY = -1;
+        private static final int INTERNAL = -2;
+
+        private final double[] x;
+        private final double[] y;
+
+        // The point in each leaf cell, or EMPTY, or INTERNAL for cells with children.
+        private int[] point;
+
+        // The four children of each cell, at 4 * cell + quadrant; 0 for none, since the root is no one's child.
+        private int[] children;
+
+        // The lower left corner and width of each cell.
+        private double[] left;
+        private double[] bottom;
+        private double[] width;
+
+        // The number of points in each cell and the sums of their coordinates.
+        private double[] mass;
+        private double[] sumX;
+        private double[] sumY;
+
+        private int numCells = 0;
+
+        private QuadTree(double[] x, double[] y) {
+            this.x = x;
+            this.y = y;
+
+            int n = x.length;
+            int capacity = 2 * n + 1;
+
+            point = new int[capacity];
+            children = new int[4 * capacity];
+            left = new double[capacity];
+            bottom = new double[capacity];
+            width = new double[capacity];
+            mass = new double[capacity];
+            sumX = new double[capacity];
+            sumY = new double[capacity];
+
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+
+            newCell(minX, minY, Math.max(maxX - minX, maxY - minY) + 1.0);
+
+            for (int i = 0; i < n; i++) {
+                insert(i);
+            }
+        }
+
+        private void insert(int i) {
+            int cell = 0;
+
+            for (int depth = 0; ; depth++) {
+                int p = point[cell];
+
+                if (p == EMPTY) {
+                    point[cell] = i;
+                    add(cell, i);
+                    return;
+                }
+
+                if (p == INTERNAL) {
+                    add(cell, i);
+                    cell = child(cell, i);
+                    continue;
+                }
+
+                if (depth >= MAX_DEPTH) {
+                    add(cell, i);
+                    return;
+                }
+
+                // Split the leaf, moving its point down.
+                point[cell] = INTERNAL;
+                int c = child(cell, p);
+                point[c] = p;
+                add(c, p);
+
+                add(cell, i);
+                cell = child(cell, i);
+            }
+        }
+
+        private void add(int cell, int i) {
+            mass[cell] += 1;
+            sumX[cell] += x[i];
+            sumY[cell] += y[i];
+        }
+
+        // The child of the cell containing point i, made if necessary.
+        private int child(int cell, int i) {
+            double half = width[cell] / 2.0;
+            int east = x[i] >= left[cell] + half ? 1 : 0;
+            int north = y[i] >= bottom[cell] + half ? 1 : 0;
+            int slot = 4 * cell + 2 * north + east;
+
+            if (children[slot] == 0) {
+                int c = newCell(left[cell] + east * half, bottom[cell] + north * half, half);
+                children[slot] = c;
+            }
+
+            return children[slot];
+        }
+
+        private int newCell(double left, double bottom, double width) {
+            if (numCells == point.length) {
+                int capacity = 2 * point.length;
+                point = Arrays.copyOf(point, capacity);
+                children = Arrays.copyOf(children, 4 * capacity);
+                this.left = Arrays.copyOf(this.left, capacity);
+                this.bottom = Arrays.copyOf(this.bottom, capacity);
+                this.width = Arrays.copyOf(this.width, capacity);
+                mass = Arrays.copyOf(mass, capacity);
+                sumX = Arrays.copyOf(sumX, capacity);
+                sumY = Arrays.copyOf(sumY, capacity);
+            }
+
+            int cell = numCells++;
+            point[cell] = EMPTY;
+            this.left[cell] = left;
+            this.bottom[cell] = bottom;
+            this.width[cell] = width;
+            return cell;
+        }
+
+        /**
+         * Puts into force the sum over cells of (delta / d) * fr(d) * mass, where delta is the displacement from
+         * point i to the center of mass of the cell, d its length, and fr(d) = -k^2 / d.
+         */
+        private void repulsion(int i, double k2, double theta, int[] stack, double[] force) {
+            double fx = 0.0;
+            double fy = 0.0;
+            int top = 0;
+            stack[top++] = 0;
+
+            while (top > 0) {
+                int cell = stack[--top];
+                double m = mass[cell];
+
+                if (m == 0) continue;
+
+                double deltaX = sumX[cell] / m - x[i];
+                double deltaY = sumY[cell] / m - y[i];
+                double d2 = deltaX * deltaX + deltaY * deltaY;
+
+                if (point[cell] != INTERNAL || width[cell] * width[cell] < theta * theta * d2) {
+
+                    // Points at the same position as i, including i itself, exert no force.
+                    if (d2 == 0.0) continue;
+
+                    // (delta / d) * (-k^2 / d) * m
+                    double f = -k2 * m / d2;
+                    fx += deltaX * f;
+                    fy += deltaY * f;
+                } else {
+                    for (int q = 0; q < 4; q++) {
+                        int c = children[4 * cell + q];
+                        if (c != 0) stack[top++] = c;
+                    }
+                }
+            }
+
+            force[0] = fx;
+            force[1] = fy;
+        }
+    }
+}
@@ -128,6 +128,18 @@ public final class GraphUtils {
         layout.doLayout();
     }
 
+    /**
+     * Lays out the graph with Fruchterman-Reingold forces, approximating the repulsive forces with a quadtree. Each
+     * step takes time proportional to n log n rather than n^2, so this suits graphs too large for the
+     * Fruchterman-Reingold and Kamada-Kawai layouts.
+     *
+     * @see BarnesHutLayout
+     */
+    public static void barnesHutLayout(Graph graph) {
+        BarnesHutLayout layout = new BarnesHutLayout(graph);
+        layout.doLayout();
+    }
+
     /**
      * Decompose a latent variable graph into its measurement model
      */
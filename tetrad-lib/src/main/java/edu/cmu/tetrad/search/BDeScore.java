@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteColumns;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ProbUtils;
@@ -34,7 +35,18 @@ import java.util.List;
 public class BDeScore implements LocalDiscreteScore {
     private DataSet dataSet;
 
+    // The columns of the data, coded compactly; may be shared with other discrete scores and tests.
+    private final DiscreteColumns columns;
+
     public BDeScore(DataSet dataSet) {
+        this(dataSet, dataSet == null ? null : new DiscreteColumns(dataSet));
+    }
+
+    /**
+     * Scores the given data set, reading from the given coded columns, which must have been made from it, for
+     * example those of the AdTreeStatistics shared by the other scores and tests of a search.
+     */
+    public BDeScore(DataSet dataSet, DiscreteColumns columns) {
         if (dataSet == null) {
             throw new NullPointerException();
         }
@@ -43,7 +55,16 @@ public class BDeScore implements LocalDiscreteScore {
             throw new IllegalArgumentException("Need a discrete data set.");
         }
 
+        if (columns == null) {
+            throw new NullPointerException("Columns were not provided.");
+        }
+
+        if (!columns.isFor(dataSet)) {
+            throw new IllegalArgumentException("The columns were not made from this data set.");
+        }
+
         this.dataSet = dataSet;
+        this.columns = columns;
     }
 
     public double localScore(int i, int parents[]) {
@@ -72,9 +93,9 @@ public class BDeScore implements LocalDiscreteScore {
 
         for (int n = 0; n < sampleSize(); n++) {
             for (int p = 0; p < parents.length; p++) {
-                int parentValue = dataSet().getInt(n, parents[p]);
+                int parentValue = columns.get(n, parents[p]);
 
-                if (parentValue == -99) {
+                if (parentValue == DiscreteColumns.MISSING) {
                     throw new IllegalStateException("Please remove or impute " +
                             "missing values.");
                 }
@@ -82,9 +103,9 @@ public class BDeScore implements LocalDiscreteScore {
                 values[p] = parentValue;
             }
 
-            int childValue = dataSet().getInt(n, i);
+            int childValue = columns.get(n, i);
 
-            if (childValue == -99) {
+            if (childValue == DiscreteColumns.MISSING) {
                 throw new IllegalStateException("Please remove or impute missing " +
                         "values (record " + n + " column " + i + ")");
 
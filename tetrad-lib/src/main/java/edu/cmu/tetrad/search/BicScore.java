@@ -33,46 +33,40 @@ import static edu.cmu.tetrad.search.XdslXmlConstants.ROW;
  */
 public class BicScore implements LocalDiscreteScore, IBDeuScore {
     private List<Node> variables;
-    private int[][] data;
     private int sampleSize;
 
+    // Conditional counts, which may be shared with other scores over the same data.
+    private final AdTreeStatistics statistics;
+
     private double penaltyDiscount = 1;
 
     private int[] numCategories;
 
     public BicScore(DataSet dataSet) {
+        this(dataSet, new AdTreeStatistics(dataSet));
+    }
+
+    /**
+     * Scores the given data set, counting from the given statistics, which must have been made from it. Scores
+     * given the same statistics share their counts.
+     */
+    public BicScore(DataSet dataSet, AdTreeStatistics statistics) {
         if (dataSet == null) {
             throw new NullPointerException();
         }
 
-        if (dataSet instanceof BoxDataSet) {
-            DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
-
-            this.variables = dataSet.getVariables();
-
-            if (!(((BoxDataSet) dataSet).getDataBox() instanceof VerticalIntDataBox)) {
-                throw new IllegalArgumentException();
-            }
-
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
-
-            data = box.getVariableVectors();
-            this.sampleSize = dataSet.getNumRows();
-        } else {
-            data = new int[dataSet.getNumColumns()][];
-            this.variables = dataSet.getVariables();
-
-            for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
-
-                for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
-                }
-            }
+        if (statistics == null) {
+            throw new NullPointerException("Statistics were not provided.");
+        }
 
-            this.sampleSize = dataSet.getNumRows();
+        if (!statistics.isFor(dataSet)) {
+            throw new IllegalArgumentException("The statistics were not made from this data set.");
         }
 
+        // The discrete columns are read from the statistics, which code them compactly.
+        this.variables = dataSet.getVariables();
+        this.sampleSize = dataSet.getNumRows();
+
         final List<Node> variables = dataSet.getVariables();
         numCategories = new int[variables.size()];
         for (int i = 0; i < variables.size(); i++) {
@@ -82,6 +76,8 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
                 numCategories[i] = variable.getNumCategories();
             }
         }
+
+        this.statistics = statistics;
     }
 
     private DiscreteVariable getVariable(int i) {
@@ -123,37 +119,13 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         }
 
         // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
+        int n_jk[][] = statistics.getCounts(node, parents);
         int n_j[] = new int[r];
 
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
-
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue ROW;
-//                throw new IllegalStateException("Please remove or impute missing " +
-//                        "values (record " + i + " column " + i + ")");
+        for (int j = 0; j < r; j++) {
+            for (int k = 0; k < c; k++) {
+                n_j[j] += n_jk[j][k];
             }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
         }
 
         //Finally, compute the score
@@ -177,7 +149,7 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
 
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = variables.size() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -229,15 +201,6 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         throw new UnsupportedOperationException();
@@ -0,0 +1,511 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The graphical lasso of Friedman, Hastie and Tibshirani (2008), on primitive arrays, with exact covariance
+ * thresholding. For a penalty rho, the connected components of the graph with an edge i--j wherever
+ * |S(i, j)| > rho are exactly the blocks of the glasso solution (Witten, Friedman and Simon 2011; Mazumder and
+ * Hastie 2012), so each block is solved by coordinate descent on its own, blocks in parallel, and variables in no
+ * block are solved in closed form. Only the blocks are stored, so a solution for many variables that splits into
+ * small blocks takes little memory.
+ * <p>
+ * A decreasing sequence of penalties may be solved with path, each penalty being warm started from the solution
+ * for the one before it; blocks only merge as the penalty decreases, so the previous solution restricted to a new
+ * block is a good place to start.
+ *
+ * @author Joseph Ramsey
+ */
+public class BlockGlasso {
+
+    // Blocks with fewer variables than this are solved together in a single task.
+    private static final int SMALL = 64;
+
+    /**
+     * Data covariance matrix.
+     */
+    private final double[][] ss;
+
+    /**
+     * Convergence threshold: iterations stop when the average absolute change in the off-diagonal of the
+     * covariance estimate over a sweep is less than thr times the average absolute off-diagonal of ss.
+     */
+    private double thr = 1.0e-4;
+
+    /**
+     * Maximum number of sweeps over the variables of a block.
+     */
+    private int maxit = 10000;
+
+    /**
+     * True if the diagonal is penalized.
+     */
+    private boolean penalizeDiagonal = false;
+
+    /**
+     * The solution for a single penalty. The covariance and precision estimates are zero off the blocks.
+     */
+    public static class Result {
+        private final double rho;
+        private final int[][] blocks;
+        private final double[][][] ww;
+        private final double[][][] wwi;
+        private final int[] blockOf;
+        private final int[] position;
+        private final int niter;
+
+        private Result(double rho, int[][] blocks, double[][][] ww, double[][][] wwi, int p, int niter) {
+            this.rho = rho;
+            this.blocks = blocks;
+            this.ww = ww;
+            this.wwi = wwi;
+            this.blockOf = new int[p];
+            this.position = new int[p];
+            this.niter = niter;
+
+            for (int b = 0; b < blocks.length; b++) {
+                for (int k = 0; k < blocks[b].length; k++) {
+                    blockOf[blocks[b][k]] = b;
+                    position[blocks[b][k]] = k;
+                }
+            }
+        }
+
+        /**
+         * @return the penalty.
+         */
+        public double getRho() {
+            return rho;
+        }
+
+        /**
+         * @return the blocks, as arrays of variable indices in increasing order.
+         */
+        public int[][] getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @return the estimated covariance of variables i and j.
+         */
+        public double getWw(int i, int j) {
+            return blockOf[i] == blockOf[j] ? ww[blockOf[i]][position[i]][position[j]] : 0.0;
+        }
+
+        /**
+         * @return the estimated (i, j) entry of the inverse covariance matrix.
+         */
+        public double getWwi(int i, int j) {
+            return blockOf[i] == blockOf[j] ? wwi[blockOf[i]][position[i]][position[j]] : 0.0;
+        }
+
+        /**
+         * @return the estimated covariance matrix, in full.
+         */
+        public double[][] getWw() {
+            return toArray(ww);
+        }
+
+        /**
+         * @return the estimated inverse covariance matrix, in full.
+         */
+        public double[][] getWwi() {
+            return toArray(wwi);
+        }
+
+        /**
+         * @return the largest number of sweeps taken for any block.
+         */
+        public int getNiter() {
+            return niter;
+        }
+
+        private double[][] toArray(double[][][] values) {
+            double[][] m = new double[blockOf.length][blockOf.length];
+
+            for (int b = 0; b < blocks.length; b++) {
+                for (int k = 0; k < blocks[b].length; k++) {
+                    for (int l = 0; l < blocks[b].length; l++) {
+                        m[blocks[b][k]][blocks[b][l]] = values[b][k][l];
+                    }
+                }
+            }
+
+            return m;
+        }
+    }
+
+    /**
+     * @param cov The data covariance matrix, square and symmetric. It is not copied.
+     */
+    public BlockGlasso(double[][] cov) {
+        for (double[] row : cov) {
+            if (row.length != cov.length) throw new IllegalArgumentException("Covariance matrix not square.");
+        }
+
+        this.ss = cov;
+    }
+
+    /**
+     * Solves for the given penalty, from a cold start.
+     */
+    public Result search(double rho) {
+        return search(rho, null);
+    }
+
+    /**
+     * Solves for the given penalty, warm started from the given solution, or cold if it is null.
+     */
+    public Result search(double rho, Result start) {
+        if (rho < 0) throw new IllegalArgumentException("Rho must be >= 0: " + rho);
+
+        final int[][] blocks = getBlocks(rho);
+        final double[][][] ww = new double[blocks.length][][];
+        final double[][][] wwi = new double[blocks.length][][];
+        final int[] niter = new int[blocks.length];
+
+        List<Integer> large = new ArrayList<>();
+        List<Integer> small = new ArrayList<>();
+
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b].length >= SMALL) large.add(b);
+            else small.add(b);
+        }
+
+        // Largest first, so that the longest tasks are not left to the end.
+        Collections.sort(large, new Comparator<Integer>() {
+            public int compare(Integer b1, Integer b2) {
+                return Integer.compare(blocks[b2].length, blocks[b1].length);
+            }
+        });
+
+        List<int[]> groups = new ArrayList<>();
+
+        for (int b : large) {
+            groups.add(new int[]{b});
+        }
+
+        for (int from = 0; from < small.size(); from += SMALL) {
+            int[] group = new int[Math.min(SMALL, small.size() - from)];
+            for (int k = 0; k < group.length; k++) group[k] = small.get(from + k);
+            groups.add(group);
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(
+                new BlockTask(groups, 0, groups.size(), rho, start, blocks, ww, wwi, niter));
+
+        int max = 0;
+        for (int n : niter) max = Math.max(max, n);
+
+        return new Result(rho, blocks, ww, wwi, ss.length, max);
+    }
+
+    /**
+     * Solves for each of the given penalties, largest first, warm starting each from the solution for the one
+     * before it.
+     *
+     * @return the solutions, in order of decreasing penalty.
+     */
+    public List<Result> path(double[] rhos) {
+        double[] sorted = Arrays.copyOf(rhos, rhos.length);
+        Arrays.sort(sorted);
+
+        List<Result> results = new ArrayList<>();
+        Result previous = null;
+
+        for (int k = sorted.length - 1; k >= 0; k--) {
+            previous = search(sorted[k], previous);
+            results.add(previous);
+        }
+
+        return results;
+    }
+
+    /**
+     * @return the blocks of the solution for the given penalty: the connected components of the graph with an
+     * edge i--j wherever |S(i, j)| > rho, as arrays of variable indices in increasing order, ordered by their
+     * first variable.
+     */
+    public int[][] getBlocks(double rho) {
+        int p = ss.length;
+        int[] parent = new int[p];
+        for (int i = 0; i < p; i++) parent[i] = i;
+
+        for (int i = 0; i < p; i++) {
+            double[] row = ss[i];
+
+            for (int j = i + 1; j < p; j++) {
+                if (Math.abs(row[j]) > rho) {
+                    int ri = find(parent, i);
+                    int rj = find(parent, j);
+                    if (ri != rj) parent[Math.max(ri, rj)] = Math.min(ri, rj);
+                }
+            }
+        }
+
+        int[] size = new int[p];
+        for (int i = 0; i < p; i++) size[find(parent, i)]++;
+
+        int[][] members = new int[p][];
+        int[] filled = new int[p];
+        int numBlocks = 0;
+
+        for (int i = 0; i < p; i++) {
+            int r = find(parent, i);
+            if (r == i) numBlocks++;
+            if (members[r] == null) members[r] = new int[size[r]];
+            members[r][filled[r]++] = i;
+        }
+
+        int[][] blocks = new int[numBlocks][];
+        int b = 0;
+
+        for (int i = 0; i < p; i++) {
+            if (members[i] != null) blocks[b++] = members[i];
+        }
+
+        return blocks;
+    }
+
+    public double getThr() {
+        return thr;
+    }
+
+    public void setThr(double thr) {
+        if (thr < 0) throw new IllegalArgumentException("Threshold must be >= 0: " + thr);
+        this.thr = thr;
+    }
+
+    public int getMaxit() {
+        return maxit;
+    }
+
+    public void setMaxit(int maxit) {
+        if (maxit <= 0) throw new IllegalArgumentException("Max iterations must be > 0: " + maxit);
+        this.maxit = maxit;
+    }
+
+    public boolean isPenalizeDiagonal() {
+        return penalizeDiagonal;
+    }
+
+    public void setPenalizeDiagonal(boolean penalizeDiagonal) {
+        this.penalizeDiagonal = penalizeDiagonal;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    private class BlockTask extends RecursiveAction {
+        private final List<int[]> groups;
+        private final int from;
+        private final int to;
+        private final double rho;
+        private final Result start;
+        private final int[][] blocks;
+        private final double[][][] ww;
+        private final double[][][] wwi;
+        private final int[] niter;
+
+        BlockTask(List<int[]> groups, int from, int to, double rho, Result start, int[][] blocks,
+                  double[][][] ww, double[][][] wwi, int[] niter) {
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+            this.rho = rho;
+            this.start = start;
+            this.blocks = blocks;
+            this.ww = ww;
+            this.wwi = wwi;
+            this.niter = niter;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                for (int b : groups.get(from)) {
+                    solve(blocks[b], rho, start, b, ww, wwi, niter);
+                }
+            } else {
+                int mid = (from + to) / 2;
+                invokeAll(new BlockTask(groups, from, mid, rho, start, blocks, ww, wwi, niter),
+                        new BlockTask(groups, mid, to, rho, start, blocks, ww, wwi, niter));
+            }
+        }
+    }
+
+    // Solves a single block by coordinate descent, storing its covariance and precision estimates.
+    private void solve(int[] block, double rho, Result start, int b, double[][][] ww, double[][][] wwi,
+                       int[] niter) {
+        int k = block.length;
+        double[][] w = new double[k][k];
+        double[][] s = new double[k][k];
+
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                s[i][j] = ss[block[i]][block[j]];
+            }
+        }
+
+        double diagonalPenalty = penalizeDiagonal ? rho : 0.0;
+
+        if (k == 1) {
+            w[0][0] = s[0][0] + diagonalPenalty;
+            ww[b] = w;
+            wwi[b] = new double[][]{{1.0 / w[0][0]}};
+            return;
+        }
+
+        // beta[j] holds the lasso coefficients for column j, with beta[j][j] unused.
+        double[][] beta = new double[k][k];
+
+        for (int i = 0; i < k; i++) {
+            System.arraycopy(s[i], 0, w[i], 0, k);
+        }
+
+        if (start != null) {
+            for (int j = 0; j < k; j++) {
+                double tjj = start.getWwi(block[j], block[j]);
+
+                for (int i = 0; i < k; i++) {
+                    if (i == j) continue;
+                    w[i][j] = start.getWw(block[i], block[j]);
+                    beta[j][i] = -start.getWwi(block[i], block[j]) / tjj;
+                }
+            }
+        }
+
+        for (int j = 0; j < k; j++) {
+            w[j][j] = s[j][j] + diagonalPenalty;
+        }
+
+        double shr = 0.0;
+
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                if (i != j) shr += Math.abs(s[i][j]);
+            }
+        }
+
+        shr = thr * shr / (k * (k - 1));
+
+        double[] wb = new double[k];
+        int iter = 0;
+
+        while (iter < maxit) {
+            iter++;
+            double change = 0.0;
+
+            for (int j = 0; j < k; j++) {
+                lasso(j, w, s, beta[j], wb, rho, shr, maxit);
+
+                for (int i = 0; i < k; i++) {
+                    if (i == j) continue;
+                    change += Math.abs(w[i][j] - wb[i]);
+                    w[i][j] = wb[i];
+                    w[j][i] = wb[i];
+                }
+            }
+
+            if (change / (k * (k - 1)) < shr) break;
+        }
+
+        double[][] theta = new double[k][k];
+
+        for (int j = 0; j < k; j++) {
+            double dot = 0.0;
+
+            for (int i = 0; i < k; i++) {
+                if (i != j) dot += w[i][j] * beta[j][i];
+            }
+
+            theta[j][j] = 1.0 / (w[j][j] - dot);
+
+            for (int i = 0; i < k; i++) {
+                if (i != j) theta[i][j] = -beta[j][i] * theta[j][j];
+            }
+        }
+
+        ww[b] = w;
+        wwi[b] = theta;
+        niter[b] = iter;
+    }
+
+    // Solves the lasso for column j, min 1/2 x'W11 x - x's12 + rho |x|_1, by coordinate descent starting from x,
+    // leaving W11 x in wb. W is symmetric, so its rows are read in place of its columns.
+    private static void lasso(int j, double[][] w, double[][] s, double[] x, double[] wb, double rho,
+                              double shr, int maxit) {
+        int k = w.length;
+        Arrays.fill(wb, 0.0);
+
+        for (int m = 0; m < k; m++) {
+            if (m == j || x[m] == 0.0) continue;
+            double[] wm = w[m];
+            double xm = x[m];
+
+            for (int i = 0; i < k; i++) {
+                wb[i] += wm[i] * xm;
+            }
+        }
+
+        for (int iter = 0; iter < maxit; iter++) {
+            double dlx = 0.0;
+
+            for (int m = 0; m < k; m++) {
+                if (m == j) continue;
+
+                double[] wm = w[m];
+                double old = x[m];
+                double t = s[m][j] - wb[m] + wm[m] * old;
+                double a = Math.abs(t) - rho;
+                double updated = a > 0.0 ? Math.signum(t) * a / wm[m] : 0.0;
+
+                if (updated == old) continue;
+
+                double del = updated - old;
+                x[m] = updated;
+                dlx = Math.max(dlx, Math.abs(del) * wm[m]);
+
+                for (int i = 0; i < k; i++) {
+                    wb[i] += del * wm[i];
+                }
+            }
+
+            if (dlx < shr) break;
+        }
+
+        wb[j] = w[j][j];
+    }
+}
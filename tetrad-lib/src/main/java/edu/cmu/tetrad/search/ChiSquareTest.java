@@ -21,10 +21,10 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.CellTable;
+import edu.cmu.tetrad.data.AdTreeStatistics;
+import edu.cmu.tetrad.data.BitmapCellCounts;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
-import edu.cmu.tetrad.util.CombinationIterator;
 import edu.cmu.tetrad.util.ProbUtils;
 
 import java.util.ArrayList;
@@ -50,9 +50,15 @@ public class ChiSquareTest {
     private int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * Counts cells of the stratified tables for each test; safe to use from many threads. Null if the tables are
+     * counted from shared statistics.
      */
-    private CellTable cellTable;
+    private BitmapCellCounts cellCounts;
+
+    /**
+     * Statistics shared with the scores and estimators over the same data set, or null.
+     */
+    private AdTreeStatistics statistics;
 
     /**
      * The significance level of the test.
@@ -68,6 +74,22 @@ public class ChiSquareTest {
      * @param alpha   The significance level, usually 0.05.
      */
     public ChiSquareTest(DataSet dataSet, double alpha) {
+        this(dataSet, alpha, null);
+    }
+
+    /**
+     * Constructs a test using the given data set and significance level, counting from the given statistics,
+     * which must have been made from the data set. If the statistics are null, the test counts for itself.
+     *
+     * @param dataSet    A data set consisting entirely of discrete variables.
+     * @param alpha      The significance level, usually 0.05.
+     * @param statistics Statistics for the data set, shared with other scores and tests over it, or null.
+     */
+    public ChiSquareTest(DataSet dataSet, double alpha, AdTreeStatistics statistics) {
+        if (statistics != null && !statistics.isFor(dataSet)) {
+            throw new IllegalArgumentException("The statistics were not made from this data set.");
+        }
+
         if (alpha < 0.0 || alpha > 1.0) {
             throw new IllegalArgumentException("Significance level must be in " +
                     "[0, 1]: " + alpha);
@@ -83,8 +105,11 @@ public class ChiSquareTest {
 
         this.dataSet = dataSet;
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
+        this.statistics = statistics;
+
+        if (statistics == null) {
+            this.cellCounts = new BitmapCellCounts(dataSet);
+        }
     }
 
     /**
@@ -92,114 +117,10 @@ public class ChiSquareTest {
      * by summing up chi square and degrees of freedom for each conditional table in turn, where rows or columns that
      * consist entirely of zeros have been removed.
      */
-    public synchronized ChiSquareTest.Result calcChiSquare(int[] testIndices) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
-
-        double xSquare = 0.0;
-        int df = 0;
-
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
-
-        boolean[] attestedRows = new boolean[numRows];
-        boolean[] attestedCols = new boolean[numCols];
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
-
-            long total = 0;// this.getCellTable().calcMargin(coords, bothVars);
-
-            double _xSquare = 0.0;
-
-            List<Double> e = new ArrayList<>();
-            List<Long> o = new ArrayList<>();
-
-            for (int i = 0; i < numRows; i++) {
-                for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
-
-                    boolean skip = false;
-
-                    if (sumRow == 0) {
-                        attestedRows[i] = false;
-                        skip = true;
-                    }
-
-                    if (sumCol == 0) {
-                        attestedCols[j] = false;
-                        skip = true;
-                    }
-
-                    if (skip) {
-                        continue;
-                    }
-
-                    total += observed;
-
-                    e.add((double) sumCol * sumRow);
-                    o.add(observed);
-                }
-            }
-
-            for (int i = 0; i < o.size(); i++) {
-                double expected = e.get(i) / (double) total;
-                _xSquare += Math.pow(o.get(i) - expected, 2.0) / expected;
-            }
-
-            if (total == 0) {
-                continue;
-            }
-
-            int numAttestedRows = 0;
-            int numAttestedCols = 0;
-
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
-                }
-            }
-
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
-            }
-
-            int _df = (numAttestedRows - 1) * (numAttestedCols - 1);
-
-            if (_df > 0) {
-                xSquare += _xSquare;
-                df += _df;
-            }
-        }
+    public ChiSquareTest.Result calcChiSquare(int[] testIndices) {
+        double[] sums = sumOverStrata(testIndices);
+        double xSquare = sums[0];
+        int df = (int) sums[1];
 
         // If df == 0, return indep.
         // Actually if you don't know one way or the other, you should return dependent. jdramsey 12/22/2015
@@ -220,32 +141,11 @@ public class ChiSquareTest {
      * @return True if the variable at index 0 is determined by the variables at the other indices.
      */
     public boolean isDetermined(int[] testIndices, double p) {
+        int[] z = Arrays.copyOfRange(testIndices, 1, testIndices.length);
 
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-
-        int[] condDims = new int[testIndices.length - 1];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 1, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numValues = this.getCellTable().getNumValues(0);
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-            System.arraycopy(combination, 0, coords, 1, combination.length);
-
-            long total = this.getCellTable().calcMargin(coords, firstVar);
+        for (long[] margin : margins(testIndices[0], z)) {
+            long total = 0;
+            for (long n : margin) total += n;
 
             if (total == 0) {
                 continue;
@@ -253,11 +153,7 @@ public class ChiSquareTest {
 
             boolean dominates = false;
 
-            for (int i = 0; i < numValues; i++) {
-                coords[0] = i;
-
-                long numi = this.getCellTable().getValue(coords);
-
+            for (long numi : margin) {
                 if ((double) numi / total >= p) {
                     dominates = true;
                 }
@@ -371,6 +267,101 @@ public class ChiSquareTest {
 
     //================================PRIVATE==============================//
 
+    /**
+     * Sums chi square and degrees of freedom for the crosstabulation of 0 and 1 over the nonempty strata of
+     * 2, 3, ..., where rows or columns that consist entirely of zeros have been removed.
+     *
+     * @return {chi square, df}.
+     */
+    final double[] sumOverStrata(int[] testIndices) {
+        int x = testIndices[0];
+        int y = testIndices[1];
+        int[] z = Arrays.copyOfRange(testIndices, 2, testIndices.length);
+
+        double xSquare = 0.0;
+        int df = 0;
+
+        for (long[][] table : tables(x, y, z)) {
+            int numRows = table.length;
+            int numCols = table[0].length;
+
+            long[] rowSums = new long[numRows];
+            long[] colSums = new long[numCols];
+            long total = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++) {
+                    rowSums[i] += table[i][j];
+                    colSums[j] += table[i][j];
+                    total += table[i][j];
+                }
+            }
+
+            if (total == 0) {
+                continue;
+            }
+
+            double _xSquare = 0.0;
+            int numAttestedRows = 0;
+            int numAttestedCols = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                if (rowSums[i] == 0) continue;
+                numAttestedRows++;
+
+                for (int j = 0; j < numCols; j++) {
+                    if (colSums[j] == 0) continue;
+
+                    double expected = (double) colSums[j] * rowSums[i] / (double) total;
+                    _xSquare += Math.pow(table[i][j] - expected, 2.0) / expected;
+                }
+            }
+
+            for (long colSum : colSums) {
+                if (colSum > 0) numAttestedCols++;
+            }
+
+            int _df = (numAttestedRows - 1) * (numAttestedCols - 1);
+
+            if (_df > 0) {
+                xSquare += _xSquare;
+                df += _df;
+            }
+        }
+
+        return new double[]{xSquare, df};
+    }
+
+    // The x by y table for each stratum of z.
+    private List<long[][]> tables(int x, int y, int[] z) {
+        if (statistics != null) {
+            return statistics.getTables(x, y, z);
+        }
+
+        List<long[][]> tables = new ArrayList<>();
+
+        for (BitmapCellCounts.Stratum stratum : cellCounts.getStrata(z)) {
+            tables.add(cellCounts.countTable(stratum, x, y));
+        }
+
+        return tables;
+    }
+
+    // The margin of x for each stratum of z.
+    private List<long[]> margins(int x, int[] z) {
+        if (statistics != null) {
+            return statistics.getMargins(x, z);
+        }
+
+        List<long[]> margins = new ArrayList<>();
+
+        for (BitmapCellCounts.Stratum stratum : cellCounts.getStrata(z)) {
+            margins.add(cellCounts.countMargin(stratum, x));
+        }
+
+        return margins;
+    }
+
     public int[] selectFromArray(int[] arr, int[] indices) {
         int[] retArr = new int[indices.length];
 
@@ -389,10 +380,6 @@ public class ChiSquareTest {
         return dims;
     }
 
-    public CellTable getCellTable() {
-        return cellTable;
-    }
-
     //===============================CLASSES==============================//
 
     /**
@@ -0,0 +1,204 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodePair;
+import edu.cmu.tetrad.graph.Triple;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helps classify the unshielded triples x - y - z of a graph as colliders, noncolliders or ambiguous by the
+ * conservative (CPC) or majority rules, which look at all of the sets S taken from adj(x) or adj(z) for which
+ * x _||_ z | S. Those sets depend only on the endpoints x and z, so they are found once for each pair of endpoints,
+ * the pairs being done in parallel, and then looked up for each triple with those endpoints. The triples are then
+ * classified and oriented one at a time, in the order the searches have always used, so that the outcome does not
+ * depend on how the work was scheduled.
+ *
+ * @author Joseph Ramsey
+ */
+public final class ColliderClassification {
+
+    // Pairs are handed out to tasks in chunks of this many.
+    private static final int CHUNK = 4;
+
+    /**
+     * Finds the separating sets for a pair of endpoints. This is called from many threads at once, while the graph
+     * is not being changed, and should return the sets in an order that depends only on the graph and the test.
+     */
+    public interface PairSepsets {
+        List<List<Node>> getSepsets(Node x, Node z);
+    }
+
+    /**
+     * A source of separating sets that also knows how it classifies a triple given them.
+     */
+    public interface Classifier extends PairSepsets {
+
+        /**
+         * True iff x - y - z is a collider, given the separating sets found for x and z.
+         */
+        boolean isCollider(Node y, List<List<Node>> sepsets);
+
+        /**
+         * True iff x - y - z is a noncollider, given the separating sets found for x and z.
+         */
+        boolean isNoncollider(Node y, List<List<Node>> sepsets);
+    }
+
+    private ColliderClassification() {
+    }
+
+    /**
+     * @return the unshielded triples of the graph, in the order the orientation loops visit them: for each node y,
+     * for each pair of its adjacents x and z, in the order of ChoiceGenerator.
+     */
+    public static List<Triple> getUnshieldedTriples(Graph graph) {
+        List<Triple> triples = new ArrayList<>();
+
+        for (Node y : graph.getNodes()) {
+            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
+
+            if (adjacentNodes.size() < 2) {
+                continue;
+            }
+
+            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
+            int[] combination;
+
+            while ((combination = cg.next()) != null) {
+                Node x = adjacentNodes.get(combination[0]);
+                Node z = adjacentNodes.get(combination[1]);
+
+                if (graph.isAdjacentTo(x, z)) {
+                    continue;
+                }
+
+                triples.add(new Triple(x, y, z));
+            }
+        }
+
+        return triples;
+    }
+
+    /**
+     * Finds the separating sets for the endpoints of each of the given triples, once for each pair of endpoints,
+     * in parallel.
+     *
+     * @return the separating sets, by pair of endpoints.
+     */
+    public static Map<NodePair, List<List<Node>>> getSepsets(List<Triple> triples, final PairSepsets sepsets) {
+        Set<NodePair> _pairs = new LinkedHashSet<>();
+
+        for (Triple triple : triples) {
+            _pairs.add(new NodePair(triple.getX(), triple.getZ()));
+        }
+
+        final List<NodePair> pairs = new ArrayList<>(_pairs);
+        final List<List<List<Node>>> found = new ArrayList<>(Collections.<List<List<Node>>>nCopies(pairs.size(),
+                null));
+
+        class PairTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private PairTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= CHUNK) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            break;
+                        }
+
+                        NodePair pair = pairs.get(i);
+                        found.set(i, sepsets.getSepsets(pair.getFirst(), pair.getSecond()));
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new PairTask(from, mid), new PairTask(mid, to));
+                }
+            }
+        }
+
+        if (!pairs.isEmpty()) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new PairTask(0, pairs.size()));
+        }
+
+        Map<NodePair, List<List<Node>>> map = new HashMap<>();
+
+        for (int i = 0; i < pairs.size(); i++) {
+            List<List<Node>> sepsetsxz = found.get(i);
+            map.put(pairs.get(i), sepsetsxz == null ? new ArrayList<List<Node>>() : sepsetsxz);
+        }
+
+        return map;
+    }
+
+    /**
+     * The conservative rule of CPC: x - y - z is a collider iff some set separates x and z and none contains y.
+     */
+    public static boolean isColliderSepset(Node y, List<List<Node>> sepsets) {
+        if (sepsets.isEmpty()) return false;
+
+        for (List<Node> sepset : sepsets) {
+            if (sepset.contains(y)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The conservative rule of CPC: x - y - z is a noncollider iff some set separates x and z and all contain y.
+     */
+    public static boolean isNoncolliderSepset(Node y, List<List<Node>> sepsets) {
+        if (sepsets.isEmpty()) return false;
+
+        for (List<Node> sepset : sepsets) {
+            if (!sepset.contains(y)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of the given sets that contain y.
+     */
+    public static int countContaining(Node y, List<List<Node>> sepsets) {
+        int count = 0;
+
+        for (List<Node> sepset : sepsets) {
+            if (sepset.contains(y)) count++;
+        }
+
+        return count;
+    }
+}
@@ -23,10 +23,6 @@
 
         import edu.cmu.tetrad.data.*;
         import edu.cmu.tetrad.graph.Node;
-        import edu.cmu.tetrad.util.TetradMatrix;
-        import org.apache.commons.math3.linear.RealMatrix;
-        import org.apache.commons.math3.stat.correlation.Covariance;
-        import org.apache.commons.math3.util.FastMath;
 
         import java.util.*;
 
@@ -60,15 +56,12 @@ public class ConditionalGaussianLikelihood {
     // Continuous data only.
     private double[][] continuousData;
 
-    // The AD Tree used to count discrete cells.
-    private AdLeafTree adTree;
+    // Cached cells and per-cell sufficient statistics.
+    private ConditionalGaussianSuffStats suffStats;
 
     // Multiplier on degrees of freedom for the continuous portion of those degrees.
     private double penaltyDiscount = 1;
 
-    // "Cell" consisting of all rows.
-    private final ArrayList<Integer> all;
-
     // Discretize the parents
     private boolean discretize = false;
 
@@ -136,11 +129,7 @@ public class ConditionalGaussianLikelihood {
         }
 
         this.dataSet = useErsatzVariables();
-        this.adTree = new AdLeafTree(this.dataSet);
-
-        all = new ArrayList<>();
-        for (int i = 0; i < dataSet.getNumRows(); i++) all.add(i);
-
+        this.suffStats = new ConditionalGaussianSuffStats(continuousData, this.dataSet);
     }
 
     private DataSet useErsatzVariables() {
@@ -266,10 +255,9 @@ public class ConditionalGaussianLikelihood {
 
         double c1 = 0, c2 = 0;
 
-        List<List<Integer>> cells = adTree.getCellLeaves(A);
-        //List<List<Integer>> cells = partition(A);
+        ConditionalGaussianSuffStats.Cell[] cells = suffStats.getCells(A);
 
-        for (List<Integer> cell : cells) {
+        for (ConditionalGaussianSuffStats.Cell cell : cells) {
             int a = cell.size();
             if (a == 0) continue;
 
@@ -278,18 +266,15 @@ public class ConditionalGaussianLikelihood {
             }
 
             if (X.size() > 0) {
-                try {
-
-                    // Determinant will be zero if data are linearly dependent.
-                    if (a > continuousCols.length + 5) {
-                        TetradMatrix cov = cov(getSubsample(continuousCols, cell));
-                        c2 += a * gaussianLikelihood(k, cov);
-                    } else {
-                        TetradMatrix cov = cov(getSubsample(continuousCols, all));
-                        c2 += a * gaussianLikelihood(k, cov);
-                    }
-                } catch (Exception e) {
-                    // No contribution.
+
+                // Determinant will be zero if data are linearly dependent.
+                double logdet = a > continuousCols.length + 5
+                        ? suffStats.logdetCov(cell, continuousCols)
+                        : suffStats.logdetCov(suffStats.getAll(), continuousCols);
+
+                // No contribution if the covariance matrix is singular.
+                if (!Double.isNaN(logdet)) {
+                    c2 += a * gaussianLikelihood(k, logdet);
                 }
             }
         }
@@ -304,39 +289,8 @@ public class ConditionalGaussianLikelihood {
     }
 
     // One record.
-    private double gaussianLikelihood(int k, TetradMatrix sigma) {
-        return -0.5 * logdet(sigma) - 0.5 * k * (1 + LOG2PI);
-    }
-
-    private double logdet(TetradMatrix m) {
-        RealMatrix M = m.getRealMatrix();
-        final double tol = 1e-9;
-        RealMatrix LT = new org.apache.commons.math3.linear.CholeskyDecomposition(M, tol, tol).getLT();
-
-        double sum = 0.0;
-
-        for (int i = 0; i < LT.getRowDimension(); i++) {
-            sum += FastMath.log(LT.getEntry(i, i));
-        }
-
-        return 2.0 * sum;
-    }
-
-    private TetradMatrix cov(TetradMatrix x) {
-        return new TetradMatrix(new Covariance(x.getRealMatrix(), true).getCovarianceMatrix());
-    }
-
-    // Subsample of the continuous mixedVariables conditioning on the given cell.
-    private TetradMatrix getSubsample(int[] continuousCols, List<Integer> cell) {
-        TetradMatrix subset = new TetradMatrix(cell.size(), continuousCols.length);
-
-        for (int i = 0; i < cell.size(); i++) {
-            for (int j = 0; j < continuousCols.length; j++) {
-                subset.set(i, j, continuousData[continuousCols[j]][cell.get(i)]);
-            }
-        }
-
-        return subset;
+    private double gaussianLikelihood(int k, double logdet) {
+        return -0.5 * logdet - 0.5 * k * (1 + LOG2PI);
     }
 
     // Degrees of freedom for a discrete distribution is the product of the number of categories for each
@@ -0,0 +1,303 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * Caches sufficient statistics for the cells of a conditional Gaussian model. Cells (the row sets picked out
+ * by a configuration of discrete variables) are taken from an AD leaf tree once and stored as int arrays;
+ * for each cell, column sums and cross-products of the continuous columns are computed lazily the first time
+ * they are asked for and kept thereafter, so that the covariance matrix over any subset of the continuous
+ * columns can be had for a cell without revisiting its rows. Log determinants are taken by Cholesky
+ * decomposition in a per-thread buffer.
+ * <p>
+ * The continuous columns are centered by their sample means up front, which keeps the cross-products
+ * well-conditioned; covariances are unaffected by the shift.
+ *
+ * @author Joseph Ramsey
+ */
+public class ConditionalGaussianSuffStats {
+
+    // The continuous columns, centered; null for discrete columns.
+    private final double[][] continuousData;
+
+    // The AD tree used to find cells; not thread safe, so calls to it are synchronized.
+    private final AdLeafTree adTree;
+
+    // Column indices of the variables in the (discretized) data set the AD tree was built over.
+    private final Map<Node, Integer> nodesHash;
+
+    // The cell consisting of all rows.
+    private final Cell all;
+
+    // Cell partitions already retrieved, keyed by sorted discrete column indices; least recently used first.
+    private final Map<List<Integer>, Cell[]> partitions;
+
+    // Maximum number of cell partitions to cache.
+    private int maxCachedPartitions = 1000;
+
+    // Working space for Cholesky decompositions.
+    private final ThreadLocal<double[]> buffers = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[0];
+        }
+    };
+
+    /**
+     * @param continuousData The continuous data, by column; null for columns that are not continuous.
+     * @param discreteData   A data set with the same columns, in which every column the cells are to be
+     *                       taken over is discrete.
+     */
+    public ConditionalGaussianSuffStats(double[][] continuousData, DataSet discreteData) {
+        if (continuousData == null) throw new NullPointerException("Continuous data null.");
+        if (discreteData == null) throw new NullPointerException("Discrete data null.");
+
+        int N = discreteData.getNumRows();
+
+        this.continuousData = new double[continuousData.length][];
+
+        for (int j = 0; j < continuousData.length; j++) {
+            if (continuousData[j] == null) continue;
+
+            double mean = 0.0;
+            for (int i = 0; i < N; i++) mean += continuousData[j][i];
+            mean /= N;
+
+            double[] col = new double[N];
+            for (int i = 0; i < N; i++) col[i] = continuousData[j][i] - mean;
+            this.continuousData[j] = col;
+        }
+
+        this.adTree = new AdLeafTree(discreteData);
+        this.nodesHash = new HashMap<>();
+
+        for (int j = 0; j < discreteData.getNumColumns(); j++) {
+            nodesHash.put(discreteData.getVariable(j), j);
+        }
+
+        int[] allRows = new int[N];
+        for (int i = 0; i < N; i++) allRows[i] = i;
+        this.all = new Cell(allRows);
+
+        this.partitions = new LinkedHashMap<List<Integer>, Cell[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Integer>, Cell[]> eldest) {
+                return size() > maxCachedPartitions;
+            }
+        };
+    }
+
+    /**
+     * @return The cells for the given discrete variables, one for each combination of their categories,
+     * in the order given by the AD leaf tree.
+     */
+    public Cell[] getCells(List<DiscreteVariable> A) {
+        List<Integer> key = new ArrayList<>();
+        for (DiscreteVariable v : A) key.add(nodesHash.get(v));
+        Collections.sort(key);
+
+        synchronized (partitions) {
+            Cell[] cells = partitions.get(key);
+            if (cells != null) return cells;
+        }
+
+        List<List<Integer>> leaves;
+
+        synchronized (adTree) {
+            leaves = adTree.getCellLeaves(new ArrayList<>(A));
+        }
+
+        Cell[] cells = new Cell[leaves.size()];
+
+        for (int c = 0; c < leaves.size(); c++) {
+            List<Integer> leaf = leaves.get(c);
+            int[] rows = new int[leaf.size()];
+            for (int i = 0; i < rows.length; i++) rows[i] = leaf.get(i);
+            cells[c] = new Cell(rows);
+        }
+
+        synchronized (partitions) {
+            Cell[] existing = partitions.get(key);
+            if (existing != null) return existing;
+            partitions.put(key, cells);
+        }
+
+        return cells;
+    }
+
+    /**
+     * @return The cell consisting of all rows.
+     */
+    public Cell getAll() {
+        return all;
+    }
+
+    /**
+     * Returns the log determinant of the covariance matrix of the given continuous columns over the rows of
+     * the given cell, or NaN if that matrix is not positive definite.
+     */
+    public double logdetCov(Cell cell, int[] cols) {
+        int k = cols.length;
+        int n = cell.size();
+
+        if (n < 2) return Double.NaN;
+
+        double[] a = buffers.get();
+
+        if (a.length < k * k) {
+            a = new double[k * k];
+            buffers.set(a);
+        }
+
+        for (int i = 0; i < k; i++) {
+            double si = cell.sum(cols[i]);
+
+            for (int j = 0; j <= i; j++) {
+                double sj = cell.sum(cols[j]);
+                a[i * k + j] = (cell.crossProduct(cols[i], cols[j]) - si * sj / n) / (n - 1);
+            }
+        }
+
+        return choleskyLogdet(a, k);
+    }
+
+    public int getMaxCachedPartitions() {
+        return maxCachedPartitions;
+    }
+
+    /**
+     * @param maxCachedPartitions The maximum number of cell partitions to keep; the least recently used
+     *                            partitions are dropped first.
+     */
+    public void setMaxCachedPartitions(int maxCachedPartitions) {
+        if (maxCachedPartitions < 1) throw new IllegalArgumentException("Must cache at least one partition.");
+        this.maxCachedPartitions = maxCachedPartitions;
+    }
+
+    // In-place Cholesky decomposition of the lower triangle of the k x k matrix in a. Returns NaN if some
+    // pivot is not positive, as for a singular matrix.
+    private static double choleskyLogdet(double[] a, int k) {
+        final double tol = 1e-9;
+        double sum = 0.0;
+
+        for (int j = 0; j < k; j++) {
+            double d = a[j * k + j];
+
+            for (int p = 0; p < j; p++) {
+                d -= a[j * k + p] * a[j * k + p];
+            }
+
+            if (d <= tol) return Double.NaN;
+
+            double l = Math.sqrt(d);
+            a[j * k + j] = l;
+            sum += Math.log(l);
+
+            for (int i = j + 1; i < k; i++) {
+                double s = a[i * k + j];
+
+                for (int p = 0; p < j; p++) {
+                    s -= a[i * k + p] * a[j * k + p];
+                }
+
+                a[i * k + j] = s / l;
+            }
+        }
+
+        return 2.0 * sum;
+    }
+
+    /**
+     * The rows for one configuration of the discrete variables, with lazily computed sums and cross-products
+     * of the continuous columns over those rows.
+     */
+    public class Cell {
+        private final int[] rows;
+        private final double[] sums;
+        private final double[][] crossProducts;
+
+        private Cell(int[] rows) {
+            this.rows = rows;
+            this.sums = new double[continuousData.length];
+            this.crossProducts = new double[continuousData.length][];
+            Arrays.fill(sums, Double.NaN);
+        }
+
+        public int size() {
+            return rows.length;
+        }
+
+        public int[] getRows() {
+            return rows;
+        }
+
+        /**
+         * @return The sum of the (centered) values of continuous column j over the rows of this cell.
+         */
+        public synchronized double sum(int j) {
+            if (Double.isNaN(sums[j])) {
+                double[] col = continuousData[j];
+                double s = 0.0;
+                for (int i : rows) s += col[i];
+                sums[j] = s;
+            }
+
+            return sums[j];
+        }
+
+        /**
+         * @return The sum of products of the (centered) values of continuous columns i and j over the rows of
+         * this cell.
+         */
+        public synchronized double crossProduct(int i, int j) {
+            if (j > i) {
+                int t = i;
+                i = j;
+                j = t;
+            }
+
+            double[] row = crossProducts[i];
+
+            if (row == null) {
+                row = new double[i + 1];
+                Arrays.fill(row, Double.NaN);
+                crossProducts[i] = row;
+            }
+
+            if (Double.isNaN(row[j])) {
+                double[] ci = continuousData[i];
+                double[] cj = continuousData[j];
+                double s = 0.0;
+                for (int r : rows) s += ci[r] * cj[r];
+                row[j] = s;
+            }
+
+            return row[j];
+        }
+    }
+}
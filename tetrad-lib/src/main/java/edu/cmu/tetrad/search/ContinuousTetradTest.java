@@ -31,6 +31,7 @@ import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -618,14 +619,15 @@ public final class ContinuousTetradTest implements TetradTest {
         Node ck = getVariables().get(k);
         Node cl = getVariables().get(l);
 
-        deltaTest.calcChiSquare(new Tetrad(ci, cj, ck, cl));
-        prob[0] = deltaTest.getPValue();
-
-        deltaTest.calcChiSquare(new Tetrad(ci, cj, cl, ck));
-        prob[1] = deltaTest.getPValue();
+        List<Tetrad[]> tetrads = new ArrayList<>();
+        tetrads.add(new Tetrad[]{new Tetrad(ci, cj, ck, cl)});
+        tetrads.add(new Tetrad[]{new Tetrad(ci, cj, cl, ck)});
+        tetrads.add(new Tetrad[]{new Tetrad(ci, ck, cl, cj)});
 
-        deltaTest.calcChiSquare(new Tetrad(ci, ck, cl, cj));
-        prob[2] = deltaTest.getPValue();
+        double[] p = deltaTest.getPValues(tetrads);
+        prob[0] = p[0];
+        prob[1] = p[1];
+        prob[2] = p[2];
     }
 
 
@@ -30,6 +30,7 @@ import edu.cmu.tetrad.util.TetradLogger;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -398,53 +399,40 @@ public final class Cpc implements GraphSearch {
         colliderTriples = new HashSet<>();
         noncolliderTriples = new HashSet<>();
         ambiguousTriples = new HashSet<>();
-        List<Node> nodes = graph.getNodes();
-
-        for (Node y : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
-
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
-
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
-
-            while ((combination = cg.next()) != null) {
-                Node x = adjacentNodes.get(combination[0]);
-                Node z = adjacentNodes.get(combination[1]);
-
-                if (this.graph.isAdjacentTo(x, z)) {
-                    continue;
-                }
-
-                List<List<Node>> sepsetsxz = getSepsets(x, z, graph);
-
-                if (isColliderSepset(y, sepsetsxz)) {
-                    if (colliderAllowed(x, y, z, knowledge)) {
-                        graph.removeEdge(x, y);
-                        graph.removeEdge(z, y);
-                        graph.addDirectedEdge(x, y);
-                        graph.addDirectedEdge(z, y);
+        List<Triple> triples = ColliderClassification.getUnshieldedTriples(graph);
+        Map<NodePair, List<List<Node>>> sepsetsByPair = ColliderClassification.getSepsets(triples,
+                new ColliderClassification.PairSepsets() {
+                    public List<List<Node>> getSepsets(Node x, Node z) {
+                        return Cpc.this.getSepsets(x, z, graph);
+                    }
+                });
 
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
 
-//                        graph.setEndpoint(x, y, Endpoint.ARROW);
-//                        graph.setEndpoint(z, y, Endpoint.ARROW);
+            List<List<Node>> sepsetsxz = sepsetsByPair.get(new NodePair(x, z));
 
-                        TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
-                    }
+            if (ColliderClassification.isColliderSepset(y, sepsetsxz)) {
+                if (colliderAllowed(x, y, z, knowledge)) {
+                    graph.removeEdge(x, y);
+                    graph.removeEdge(z, y);
+                    graph.addDirectedEdge(x, y);
+                    graph.addDirectedEdge(z, y);
 
-                    colliderTriples.add(new Triple(x, y, z));
-                } else if (isNoncolliderSepset(y, sepsetsxz)) {
-                    noncolliderTriples.add(new Triple(x, y, z));
-                } else {
-                    Triple triple = new Triple(x, y, z);
-                    ambiguousTriples.add(triple);
-                    graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+                    TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
                 }
 
-                getAllTriples().add(new Triple(x, y, z));
+                colliderTriples.add(triple);
+            } else if (ColliderClassification.isNoncolliderSepset(y, sepsetsxz)) {
+                noncolliderTriples.add(triple);
+            } else {
+                ambiguousTriples.add(triple);
+                graph.addAmbiguousTriple(x, y, z);
             }
+
+            getAllTriples().add(triple);
         }
 
         TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
@@ -541,26 +529,6 @@ public final class Cpc implements GraphSearch {
         return sepsets;
     }
 
-    private boolean isColliderSepset(Node j, List<List<Node>> sepsets) {
-        if (sepsets.isEmpty()) return false;
-
-        for (List<Node> sepset : sepsets) {
-            if (sepset.contains(j)) return false;
-        }
-
-        return true;
-    }
-
-    private boolean isNoncolliderSepset(Node j, List<List<Node>> sepsets) {
-        if (sepsets.isEmpty()) return false;
-
-        for (List<Node> sepset : sepsets) {
-            if (!sepset.contains(j)) return false;
-        }
-
-        return true;
-    }
-
 //    private void orientUnshieldedTriplesConcurrent(final IKnowledge knowledge,
 //                                                   final IndependenceTest test, final int depth) {
 //        ExecutorService executor = Executors.newFixedThreadPool(NTHREDS);
@@ -31,6 +31,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -284,42 +285,33 @@ public final class CpcStable implements GraphSearch {
     private void orientUnshieldedTriples(IKnowledge knowledge) {
         TetradLogger.getInstance().log("info", "Starting Collider Orientation:");
 
-        List<Node> nodes = graph.getNodes();
-
-        for (Node y : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
-
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
-
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
-
-            while ((combination = cg.next()) != null) {
-                Node x = adjacentNodes.get(combination[0]);
-                Node z = adjacentNodes.get(combination[1]);
+        List<Triple> triples = ColliderClassification.getUnshieldedTriples(graph);
+        Map<NodePair, List<List<Node>>> sepsetsByPair = ColliderClassification.getSepsets(triples,
+                new ColliderClassification.PairSepsets() {
+                    public List<List<Node>> getSepsets(Node x, Node z) {
+                        return CpcStable.this.getSepsets(x, z, graph);
+                    }
+                });
 
-                if (this.graph.isAdjacentTo(x, z)) {
-                    continue;
-                }
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
 
-                List<List<Node>> sepsetsxz = getSepsets(x, z, graph);
+            List<List<Node>> sepsetsxz = sepsetsByPair.get(new NodePair(x, z));
 
-                if (isColliderSepset(y, sepsetsxz)) {
-                    if (colliderAllowed(x, y, z, knowledge)) {
-                        graph.setEndpoint(x, y, Endpoint.ARROW);
-                        graph.setEndpoint(z, y, Endpoint.ARROW);
+            if (ColliderClassification.isColliderSepset(y, sepsetsxz)) {
+                if (colliderAllowed(x, y, z, knowledge)) {
+                    graph.setEndpoint(x, y, Endpoint.ARROW);
+                    graph.setEndpoint(z, y, Endpoint.ARROW);
 
-                        TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
-                    }
-                } else {
-                    Triple triple = new Triple(x, y, z);
-                    graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+                    TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
                 }
-
-                getAllTriples().add(new Triple(x, y, z));
+            } else {
+                graph.addAmbiguousTriple(x, y, z);
             }
+
+            getAllTriples().add(triple);
         }
 
         TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
@@ -356,16 +348,6 @@ public final class CpcStable implements GraphSearch {
     }
 
 
-    private boolean isColliderSepset(Node j, List<List<Node>> sepsets) {
-        if (sepsets.isEmpty()) return false;
-
-        for (List<Node> sepset : sepsets) {
-            if (sepset.contains(j)) return false;
-        }
-
-        return true;
-    }
-
 
 //    private void orientUnshieldedTriplesConcurrent(final IKnowledge knowledge,
 //                                                   final IndependenceTest test, final int depth) {
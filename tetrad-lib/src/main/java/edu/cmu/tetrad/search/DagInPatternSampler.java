@@ -0,0 +1,664 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the DAGs in a pattern and draws them uniformly at random, without listing them. The DAGs in a pattern
+ * are found by orienting each of its chain components (the components of its undirected edges) acyclically and
+ * without new colliders, independently of one another, so the number of DAGs is the product over chain
+ * components of the number of such orientations.
+ * <p>
+ * The orientations of a chain component are counted by clique picking (Wienobst, Bannach and Liskiewicz,
+ * "Polynomial-Time Algorithms for Counting and Sampling Markov Equivalent DAGs," AAAI 2021): each orientation
+ * has a unique first maximal clique in the clique tree of the component, and the orientations that start with a
+ * given clique are counted as the permutations of that clique not already counted for an earlier clique, times
+ * the numbers of orientations of the undirected components that remain once edges out of the clique are
+ * oriented and Meek's rules applied. Counts are remembered by vertex set, so the time taken is polynomial in the
+ * size of the pattern.
+ * <p>
+ * Given the counts, the DAGs are numbered from 0 to getNumDags() - 1 by the choice of the source of each chain
+ * component and, recursively, the numbers of the orientations of the components that remain. getDag(index) makes
+ * the DAG with a given number; sample() makes the DAG for a uniformly chosen number, and iterator() makes them all
+ * in turn, one at a time. The pattern must be a pattern (CPDAG)--directed and undirected edges only, with chordal
+ * chain components.
+ *
+ * @author Joseph Ramsey
+ * @see DagInPatternIterator
+ */
+public class DagInPatternSampler {
+
+    /**
+     * The pattern.
+     */
+    private final Graph pattern;
+
+    /**
+     * The nodes of the pattern, in index order.
+     */
+    private final List<Node> nodes;
+
+    /**
+     * The undirected adjacencies of the pattern, by node index.
+     */
+    private final BitSet[] adj;
+
+    /**
+     * The chain components of the pattern with more than one node.
+     */
+    private final List<BitSet> components = new ArrayList<>();
+
+    /**
+     * Numbers of orientations of the connected chordal subgraphs counted so far, by vertex set.
+     */
+    private final Map<BitSet, BigInteger> counts = new ConcurrentHashMap<>();
+
+    /**
+     * The number of DAGs in the pattern.
+     */
+    private final BigInteger numDags;
+
+    /**
+     * Constructs a sampler for the given pattern.
+     *
+     * @throws IllegalArgumentException if the pattern has an edge that is neither directed nor undirected, or if
+     *                                  one of its chain components is not chordal.
+     */
+    public DagInPatternSampler(Graph pattern) {
+        if (pattern == null) {
+            throw new NullPointerException("Pattern was not provided.");
+        }
+
+        this.pattern = pattern;
+        this.nodes = pattern.getNodes();
+        this.adj = new BitSet[nodes.size()];
+
+        Map<Node, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+            adj[i] = new BitSet();
+        }
+
+        for (Edge edge : pattern.getEdges()) {
+            if (Edges.isUndirectedEdge(edge)) {
+                int i = indices.get(edge.getNode1());
+                int j = indices.get(edge.getNode2());
+                adj[i].set(j);
+                adj[j].set(i);
+            } else if (!Edges.isDirectedEdge(edge)) {
+                throw new IllegalArgumentException("Expecting only directed and undirected edges in a pattern: "
+                        + edge);
+            }
+        }
+
+        BitSet all = new BitSet();
+        all.set(0, nodes.size());
+
+        for (BitSet component : undirectedComponents(all, adj)) {
+            if (mcsOrder(component) == null) {
+                throw new IllegalArgumentException("Expecting the chain components of a pattern to be chordal: "
+                        + names(component));
+            }
+
+            components.add(component);
+        }
+
+        BigInteger numDags = BigInteger.ONE;
+
+        for (BitSet component : components) {
+            numDags = numDags.multiply(count(component));
+        }
+
+        this.numDags = numDags;
+    }
+
+    /**
+     * @return the number of DAGs in the pattern.
+     */
+    public BigInteger getNumDags() {
+        return numDags;
+    }
+
+    /**
+     * @return the DAG with the given number, between 0 and getNumDags() - 1.
+     */
+    public Graph getDag(BigInteger index) {
+        if (index.signum() < 0 || index.compareTo(numDags) >= 0) {
+            throw new IllegalArgumentException("Expecting an index from 0 to " + numDags.subtract(BigInteger.ONE)
+                    + ": " + index);
+        }
+
+        List<int[]> arcs = new ArrayList<>();
+
+        for (BitSet component : components) {
+            BigInteger[] qr = index.divideAndRemainder(count(component));
+            unrank(component, qr[1], arcs);
+            index = qr[0];
+        }
+
+        Graph dag = new EdgeListGraph(pattern);
+
+        for (int[] arc : arcs) {
+            Node x = nodes.get(arc[0]);
+            Node y = nodes.get(arc[1]);
+            dag.removeEdge(x, y);
+            dag.addDirectedEdge(x, y);
+        }
+
+        return dag;
+    }
+
+    /**
+     * @return a DAG drawn uniformly at random from the DAGs in the pattern.
+     */
+    public Graph sample() {
+        return getDag(randomIndex());
+    }
+
+    /**
+     * @return n DAGs drawn independently and uniformly at random from the DAGs in the pattern.
+     */
+    public List<Graph> sample(int n) {
+        if (n < 0) throw new IllegalArgumentException("Number of samples must be >= 0: " + n);
+
+        List<Graph> dags = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            dags.add(sample());
+        }
+
+        return dags;
+    }
+
+    /**
+     * @return an iterator over the DAGs in the pattern, in order of number. Each DAG is made when it is asked for,
+     * so only one is held at a time.
+     */
+    public Iterator<Graph> iterator() {
+        return new Iterator<Graph>() {
+            private BigInteger index = BigInteger.ZERO;
+
+            @Override
+            public boolean hasNext() {
+                return index.compareTo(numDags) < 0;
+            }
+
+            @Override
+            public Graph next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Graph dag = getDag(index);
+                index = index.add(BigInteger.ONE);
+                return dag;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return the pattern.
+     */
+    public Graph getPattern() {
+        return pattern;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // The number of acyclic orientations without new colliders of the connected chordal subgraph on the given
+    // vertices, by clique picking.
+    private BigInteger count(BitSet vertices) {
+        int n = vertices.cardinality();
+
+        if (n <= 2) {
+            return BigInteger.valueOf(n);
+        }
+
+        BigInteger count = counts.get(vertices);
+        if (count != null) return count;
+
+        List<BitSet> cliques = maximalCliques(vertices);
+
+        if (cliques.size() == 1) {
+            count = factorial(n);
+        } else {
+            count = BigInteger.ZERO;
+
+            // Prim's algorithm over the clique graph, weighted by the sizes of intersections, gives a clique tree;
+            // separators[k] are the intersections along the tree path from the first clique to clique k.
+            int m = cliques.size();
+            List<List<BitSet>> separators = new ArrayList<>();
+            for (int k = 0; k < m; k++) separators.add(null);
+            separators.set(0, new ArrayList<BitSet>());
+
+            int[] best = new int[m];
+            int[] bestFrom = new int[m];
+            Arrays.fill(best, -1);
+            int added = 0;
+
+            for (int k = 0; k < m; k++) {
+                if (k > 0) {
+                    int next = -1;
+
+                    for (int l = 0; l < m; l++) {
+                        if (separators.get(l) == null && (next == -1 || best[l] > best[next])) {
+                            next = l;
+                        }
+                    }
+
+                    BitSet separator = (BitSet) cliques.get(next).clone();
+                    separator.and(cliques.get(bestFrom[next]));
+
+                    List<BitSet> path = new ArrayList<>(separators.get(bestFrom[next]));
+                    path.add(separator);
+                    separators.set(next, path);
+                    added = next;
+                }
+
+                for (int l = 0; l < m; l++) {
+                    if (separators.get(l) != null) continue;
+
+                    BitSet intersection = (BitSet) cliques.get(l).clone();
+                    intersection.and(cliques.get(added));
+
+                    if (intersection.cardinality() > best[l]) {
+                        best[l] = intersection.cardinality();
+                        bestFrom[l] = added;
+                    }
+                }
+
+                BitSet clique = cliques.get(added);
+                BigInteger product = phi(clique, separators.get(added), new HashMap<BitSet, BigInteger>());
+
+                for (BitSet component : root(vertices, clique).components) {
+                    product = product.multiply(count(component));
+                }
+
+                count = count.add(product);
+            }
+        }
+
+        counts.put(vertices, count);
+        return count;
+    }
+
+    // The number of orderings of the given clique no prefix of which is one of the given separators.
+    private BigInteger phi(BitSet clique, List<BitSet> separators, Map<BitSet, BigInteger> memo) {
+        BigInteger phi = memo.get(clique);
+        if (phi != null) return phi;
+
+        int size = clique.cardinality();
+        phi = factorial(size);
+        Set<BitSet> seen = new HashSet<>();
+
+        for (BitSet separator : separators) {
+            if (!seen.add(separator)) continue;
+
+            int _size = separator.cardinality();
+            if (_size >= size || !isSubset(separator, clique)) continue;
+
+            phi = phi.subtract(factorial(size - _size).multiply(phi(separator, separators, memo)));
+        }
+
+        memo.put(clique, phi);
+        return phi;
+    }
+
+    // Adds to arcs the arcs of the orientation with the given number of the connected chordal subgraph on the
+    // given vertices. Orientations are numbered first by source, in order of index, then by the numbers of the
+    // orientations of the components that remain once that source is chosen.
+    private void unrank(BitSet vertices, BigInteger index, List<int[]> arcs) {
+        if (vertices.cardinality() == 1) return;
+
+        for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+            BitSet source = new BitSet();
+            source.set(v);
+
+            Rooting rooting = root(vertices, source);
+            BigInteger count = BigInteger.ONE;
+
+            for (BitSet component : rooting.components) {
+                count = count.multiply(count(component));
+            }
+
+            if (index.compareTo(count) >= 0) {
+                index = index.subtract(count);
+                continue;
+            }
+
+            for (int a = vertices.nextSetBit(0); a >= 0; a = vertices.nextSetBit(a + 1)) {
+                for (int b = rooting.out[a].nextSetBit(0); b >= 0; b = rooting.out[a].nextSetBit(b + 1)) {
+                    arcs.add(new int[]{a, b});
+                }
+            }
+
+            for (BitSet component : rooting.components) {
+                BigInteger[] qr = index.divideAndRemainder(count(component));
+                unrank(component, qr[1], arcs);
+                index = qr[0];
+            }
+
+            return;
+        }
+
+        throw new IllegalStateException("Orientation counts are inconsistent for " + names(vertices));
+    }
+
+    // Orients the edges of the subgraph on the given vertices that are implied when the given clique comes first,
+    // and returns the orientation together with the undirected components that remain.
+    private Rooting root(BitSet vertices, BitSet clique) {
+        BitSet[] out = new BitSet[adj.length];
+        BitSet[] in = new BitSet[adj.length];
+
+        for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+            out[v] = new BitSet();
+            in[v] = new BitSet();
+        }
+
+        for (int a = clique.nextSetBit(0); a >= 0; a = clique.nextSetBit(a + 1)) {
+            BitSet neighbors = (BitSet) adj[a].clone();
+            neighbors.and(vertices);
+
+            for (int b = neighbors.nextSetBit(0); b >= 0; b = neighbors.nextSetBit(b + 1)) {
+                if (!clique.get(b) || a < b) {
+                    out[a].set(b);
+                    in[b].set(a);
+                }
+            }
+        }
+
+        // Meek's rules R1 to R3, applied until nothing changes. Whether b --- c is implied depends only on the
+        // edges at b and c, so only the undirected edges at vertices whose edges have changed are looked at again.
+        LinkedList<Integer> queue = new LinkedList<>();
+        BitSet queued = new BitSet();
+
+        for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+            if (!out[v].isEmpty() || !in[v].isEmpty()) {
+                queue.add(v);
+                queued.set(v);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int b = queue.removeFirst();
+            queued.clear(b);
+
+            BitSet undirected = undirected(b, vertices, out, in);
+
+            for (int c = undirected.nextSetBit(0); c >= 0; c = undirected.nextSetBit(c + 1)) {
+                int from = b, to = c;
+
+                if (!implied(b, c, vertices, out, in)) {
+                    if (!implied(c, b, vertices, out, in)) continue;
+                    from = c;
+                    to = b;
+                }
+
+                out[from].set(to);
+                in[to].set(from);
+
+                if (!queued.get(c)) {
+                    queue.add(c);
+                    queued.set(c);
+                }
+
+                if (!queued.get(b)) {
+                    queue.add(b);
+                    queued.set(b);
+                }
+            }
+        }
+
+        List<BitSet> components = new ArrayList<>();
+        BitSet rest = (BitSet) vertices.clone();
+        rest.andNot(clique);
+
+        BitSet[] remaining = new BitSet[adj.length];
+
+        for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
+            remaining[v] = undirected(v, vertices, out, in);
+        }
+
+        for (BitSet component : undirectedComponents(rest, remaining)) {
+            components.add(component);
+        }
+
+        return new Rooting(out, components);
+    }
+
+    // True if b --- c should be oriented b --> c by one of Meek's rules R1 to R3.
+    private boolean implied(int b, int c, BitSet vertices, BitSet[] out, BitSet[] in) {
+
+        // R1: a --> b, a not adjacent to c.
+        BitSet r1 = (BitSet) in[b].clone();
+        r1.andNot(adj[c]);
+        r1.clear(c);
+        if (!r1.isEmpty()) return true;
+
+        // R2: b --> a --> c.
+        if (out[b].intersects(in[c])) return true;
+
+        // R3: b --- a --> c and b --- d --> c, a not adjacent to d.
+        BitSet r3 = undirected(b, vertices, out, in);
+        r3.and(in[c]);
+
+        for (int a = r3.nextSetBit(0); a >= 0; a = r3.nextSetBit(a + 1)) {
+            BitSet others = (BitSet) r3.clone();
+            others.andNot(adj[a]);
+            others.clear(a);
+            if (!others.isEmpty()) return true;
+        }
+
+        return false;
+    }
+
+    // The neighbors of v among the given vertices joined to it by edges not yet oriented.
+    private BitSet undirected(int v, BitSet vertices, BitSet[] out, BitSet[] in) {
+        BitSet undirected = (BitSet) adj[v].clone();
+        undirected.and(vertices);
+        undirected.andNot(out[v]);
+        undirected.andNot(in[v]);
+        return undirected;
+    }
+
+    // The maximal cliques of the chordal subgraph on the given vertices: each vertex together with its neighbors
+    // earlier in a maximum cardinality search order is a clique, and every maximal clique is one of these.
+    private List<BitSet> maximalCliques(BitSet vertices) {
+        int[] order = mcsOrder(vertices);
+        assert order != null;
+
+        BitSet earlier = new BitSet();
+        List<BitSet> candidates = new ArrayList<>();
+
+        for (int v : order) {
+            BitSet candidate = (BitSet) adj[v].clone();
+            candidate.and(earlier);
+            candidate.set(v);
+            candidates.add(candidate);
+            earlier.set(v);
+        }
+
+        List<BitSet> cliques = new ArrayList<>();
+
+        for (int i = 0; i < candidates.size(); i++) {
+            BitSet candidate = candidates.get(i);
+            boolean maximal = true;
+
+            for (int j = 0; j < candidates.size(); j++) {
+                if (i == j) continue;
+
+                BitSet other = candidates.get(j);
+
+                if (isSubset(candidate, other)
+                        && (other.cardinality() > candidate.cardinality() || j < i)) {
+                    maximal = false;
+                    break;
+                }
+            }
+
+            if (maximal) cliques.add(candidate);
+        }
+
+        return cliques;
+    }
+
+    // A maximum cardinality search order of the subgraph on the given vertices, or null if that subgraph is not
+    // chordal, which is so just in case the earlier neighbors of some vertex in the order are not a clique.
+    private int[] mcsOrder(BitSet vertices) {
+        int[] order = new int[vertices.cardinality()];
+        int[] weight = new int[adj.length];
+        BitSet unnumbered = (BitSet) vertices.clone();
+        BitSet earlier = new BitSet();
+
+        for (int k = 0; k < order.length; k++) {
+            int v = -1;
+
+            for (int w = unnumbered.nextSetBit(0); w >= 0; w = unnumbered.nextSetBit(w + 1)) {
+                if (v == -1 || weight[w] > weight[v]) v = w;
+            }
+
+            BitSet previous = (BitSet) adj[v].clone();
+            previous.and(earlier);
+
+            for (int a = previous.nextSetBit(0); a >= 0; a = previous.nextSetBit(a + 1)) {
+                BitSet others = (BitSet) previous.clone();
+                others.clear(a);
+                if (!isSubset(others, adj[a])) return null;
+            }
+
+            order[k] = v;
+            unnumbered.clear(v);
+            earlier.set(v);
+
+            BitSet neighbors = (BitSet) adj[v].clone();
+            neighbors.and(unnumbered);
+
+            for (int w = neighbors.nextSetBit(0); w >= 0; w = neighbors.nextSetBit(w + 1)) {
+                weight[w]++;
+            }
+        }
+
+        return order;
+    }
+
+    // The connected components with more than one vertex of the graph on the given vertices with the given
+    // adjacencies.
+    private static List<BitSet> undirectedComponents(BitSet vertices, BitSet[] adjacencies) {
+        List<BitSet> components = new ArrayList<>();
+        BitSet unvisited = (BitSet) vertices.clone();
+
+        while (!unvisited.isEmpty()) {
+            int start = unvisited.nextSetBit(0);
+            BitSet component = new BitSet();
+            LinkedList<Integer> queue = new LinkedList<>();
+            queue.add(start);
+            unvisited.clear(start);
+
+            while (!queue.isEmpty()) {
+                int v = queue.removeFirst();
+                component.set(v);
+
+                BitSet neighbors = (BitSet) adjacencies[v].clone();
+                neighbors.and(unvisited);
+
+                for (int w = neighbors.nextSetBit(0); w >= 0; w = neighbors.nextSetBit(w + 1)) {
+                    queue.add(w);
+                    unvisited.clear(w);
+                }
+            }
+
+            if (component.cardinality() > 1) {
+                components.add(component);
+            }
+        }
+
+        return components;
+    }
+
+    private BigInteger randomIndex() {
+        int bits = numDags.bitLength();
+
+        while (true) {
+            BigInteger index = BigInteger.ZERO;
+
+            for (int b = 0; b < bits; b += 62) {
+                long word = RandomUtil.getInstance().nextLong() & ((1L << 62) - 1);
+                index = index.or(BigInteger.valueOf(word).shiftLeft(b));
+            }
+
+            index = index.and(BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE));
+
+            if (index.compareTo(numDags) < 0) {
+                return index;
+            }
+        }
+    }
+
+    private static boolean isSubset(BitSet a, BitSet b) {
+        BitSet difference = (BitSet) a.clone();
+        difference.andNot(b);
+        return difference.isEmpty();
+    }
+
+    private static BigInteger factorial(int n) {
+        BigInteger factorial = BigInteger.ONE;
+
+        for (int i = 2; i <= n; i++) {
+            factorial = factorial.multiply(BigInteger.valueOf(i));
+        }
+
+        return factorial;
+    }
+
+    private List<Node> names(BitSet vertices) {
+        List<Node> _nodes = new ArrayList<>();
+
+        for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+            _nodes.add(nodes.get(v));
+        }
+
+        return _nodes;
+    }
+
+    /**
+     * The orientation of a subgraph implied by choosing its first clique, with the undirected components that
+     * remain.
+     */
+    private static class Rooting {
+        private final BitSet[] out;
+        private final List<BitSet> components;
+
+        private Rooting(BitSet[] out, List<BitSet> components) {
+            this.out = out;
+            this.components = components;
+        }
+    }
+}
@@ -27,6 +27,8 @@ import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implements a test for simultaneously zero tetrads in Bollen, K. (1990). "Outlier screening and distribution-free test
@@ -42,12 +44,13 @@ public class DeltaTetradTest {
     private ICovarianceMatrix cov;
     private int df;
     private double chisq;
-    //    private double[][][][] fourthMoment;
-//    private int numVars;
-//    private double[] means;
     private List<Node> variables;
     private Map<Node, Integer> variablesHash;
-//    private boolean cacheFourthMoments = false;
+
+    // Fourth moments already calculated, keyed by sorted index quadruples.
+    private final ConcurrentMap<Long, Double> fourthMoments = new ConcurrentHashMap<>();
+    private boolean cacheFourthMoments = true;
+    private int maxCachedFourthMoments = 1000000;
 
 
     // As input we require a data set and a list of non-redundant Tetrads.
@@ -116,11 +119,6 @@ public class DeltaTetradTest {
         }
     }
 
-//    private void initializeForthMomentMatrix(List<Node> variables) {
-//        int n = variables.size();
-//        fourthMoment = new double[n][n][n][n];
-//    }
-
     /**
      * Takes a list of tetrads for the given data set and returns the chi square value for the test. We assume that the
      * tetrads are non-redundant; if not, a matrix exception will be thrown.
@@ -130,7 +128,60 @@ public class DeltaTetradTest {
      */
     public double calcChiSquare(Tetrad... tetrads) {
         this.df = tetrads.length;
+        this.chisq = chiSquare(tetrads);
+        return this.chisq;
+    }
+
+    /**
+     * @return the p value for the most recent test.
+     */
+    public double getPValue() {
+        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
+        return 1.0 - cdf;
+    }
+
+    /**
+     * Returns the p value for the simultaneous test of the given tetrads. The result is not recorded as the most
+     * recent test, so getPValue() is unchanged; this makes it safe to call from several threads at once.
+     */
+    public double getPValue(Tetrad... tetrads) {
+        double chisq = chiSquare(tetrads);
+        return 1.0 - new ChiSquaredDistribution(tetrads.length).cumulativeProbability(chisq);
+    }
 
+    /**
+     * Tests each of the given sets of tetrads in turn, as getPValue would, returning one p value per set. The sets
+     * are tested one after another and share only the fourth moment cache (see setCacheFourthMoments).
+     */
+    public double[] getPValues(List<Tetrad[]> tetradSets) {
+        double[] p = new double[tetradSets.size()];
+
+        for (int i = 0; i < tetradSets.size(); i++) {
+            Tetrad[] tetrads = tetradSets.get(i);
+            p[i] = 1.0 - new ChiSquaredDistribution(tetrads.length).cumulativeProbability(chiSquare(tetrads));
+        }
+
+        return p;
+    }
+
+    /**
+     * Whether fourth moments should be cached. Caching pays off when many overlapping tetrads are tested, as in
+     * the clustering searches. Default true.
+     */
+    public void setCacheFourthMoments(boolean cacheFourthMoments) {
+        this.cacheFourthMoments = cacheFourthMoments;
+        if (!cacheFourthMoments) fourthMoments.clear();
+    }
+
+    /**
+     * The maximum number of fourth moments to cache; when the cache is full it is cleared. Default 1000000.
+     */
+    public void setMaxCachedFourthMoments(int maxCachedFourthMoments) {
+        if (maxCachedFourthMoments < 0) throw new IllegalArgumentException("Cache size must be >= 0.");
+        this.maxCachedFourthMoments = maxCachedFourthMoments;
+    }
+
+    private double chiSquare(Tetrad[] tetrads) {
         // Need a list of symbolic covariances--i.e. covariances that appear in tetrads.
         Set<Sigma> boldSigmaSet = new LinkedHashSet<>();
         List<Sigma> boldSigma = new ArrayList<>();
@@ -229,24 +280,7 @@ public class DeltaTetradTest {
         TetradMatrix v0 = sigma_tt.inverse();
         TetradMatrix v1 = t.transpose().times(v0);
         TetradMatrix v2 = v1.times(t);
-        double chisq = N * v2.get(0, 0);
-
-        this.chisq = chisq;
-
-        return chisq;
-    }
-
-    /**
-     * @return the p value for the most recent test.
-     */
-    public double getPValue() {
-        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
-        return 1.0 - cdf;
-    }
-
-    public double getPValue(Tetrad... tetrads) {
-        calcChiSquare(tetrads);
-        return getPValue();
+        return N * v2.get(0, 0);
     }
 
     private double sxyzw(Node e, Node f, Node g, Node h) {
@@ -262,53 +296,28 @@ public class DeltaTetradTest {
         return getForthMoment(x, y, z, w);
     }
 
-//    private void setForthMoment(int x, int y, int z, int w, double sxyzw) {
-//        fourthMoment[x][y][z][w] = sxyzw;
-//        fourthMoment[x][y][w][z] = sxyzw;
-//        fourthMoment[x][w][z][y] = sxyzw;
-//        fourthMoment[x][w][y][z] = sxyzw;
-//        fourthMoment[x][z][y][w] = sxyzw;
-//        fourthMoment[x][z][w][y] = sxyzw;
-//
-//        fourthMoment[y][x][z][w] = sxyzw;
-//        fourthMoment[y][x][w][z] = sxyzw;
-//        fourthMoment[y][z][x][w] = sxyzw;
-//        fourthMoment[y][z][w][x] = sxyzw;
-//        fourthMoment[y][w][x][z] = sxyzw;
-//        fourthMoment[y][w][z][x] = sxyzw;
-//
-//        fourthMoment[z][x][y][w] = sxyzw;
-//        fourthMoment[z][x][w][y] = sxyzw;
-//        fourthMoment[z][y][x][w] = sxyzw;
-//        fourthMoment[z][y][w][x] = sxyzw;
-//        fourthMoment[z][w][x][y] = sxyzw;
-//        fourthMoment[z][w][y][x] = sxyzw;
-//
-//        fourthMoment[w][x][y][z] = sxyzw;
-//        fourthMoment[w][x][z][y] = sxyzw;
-//        fourthMoment[w][y][x][z] = sxyzw;
-//        fourthMoment[w][y][z][x] = sxyzw;
-//        fourthMoment[w][z][x][y] = sxyzw;
-//        fourthMoment[w][z][y][x] = sxyzw;
-//    }
-
     private double getForthMoment(int x, int y, int z, int w) {
-//        if (cacheFourthMoments) {
-//            if (fourthMoment == null) {
-//                initializeForthMomentMatrix(dataSet.getVariable());
-//            }
-//
-//            double sxyzw = fourthMoment[x][y][z][w];
-//
-//            if (sxyzw == 0.0) {
-//                sxyzw = sxyzw(x, y, z, w);
-////                setForthMoment(x, y, z, w, sxyzw);
-//            }
-//
-//            return sxyzw;
-//        } else {
-        return sxyzw(x, y, z, w);
-//        }
+        if (!cacheFourthMoments || variables.size() > 0xFFFF) {
+            return sxyzw(x, y, z, w);
+        }
+
+        int[] q = {x, y, z, w};
+        Arrays.sort(q);
+        long key = ((long) q[0] << 48) | ((long) q[1] << 32) | ((long) q[2] << 16) | (long) q[3];
+
+        Double sxyzw = fourthMoments.get(key);
+
+        if (sxyzw == null) {
+            sxyzw = sxyzw(x, y, z, w);
+
+            if (fourthMoments.size() >= maxCachedFourthMoments) {
+                fourthMoments.clear();
+            }
+
+            fourthMoments.put(key, sxyzw);
+        }
+
+        return sxyzw;
     }
 
     /**
@@ -364,10 +373,6 @@ public class DeltaTetradTest {
         return 0.0;
     }
 
-//    public void setCacheFourthMoments(boolean cacheFourthMoments) {
-//        this.cacheFourthMoments = cacheFourthMoments;
-//    }
-
     private static class Sigma {
         private Node a;
         private Node b;
@@ -31,9 +31,11 @@ import java.util.List;
  */
 public class DirichletScore implements LocalDiscreteScore, Score {
     private List<Node> variables;
-    private int[][] data;
     private int sampleSize;
 
+    // Conditional counts, which may be shared with other scores over the same data.
+    private final AdTreeStatistics statistics;
+
     private double samplePrior = 1;
     private double structurePrior = 1;
 
@@ -42,43 +44,37 @@ public class DirichletScore implements LocalDiscreteScore, Score {
     private double lastBumpThreshold = 0.0;
 
     public DirichletScore(DataSet dataSet) {
+        this(dataSet, new AdTreeStatistics(dataSet));
+    }
+
+    /**
+     * Scores the given data set, counting from the given statistics, which must have been made from it. Scores
+     * given the same statistics share their counts.
+     */
+    public DirichletScore(DataSet dataSet, AdTreeStatistics statistics) {
         if (dataSet == null) {
             throw new NullPointerException();
         }
 
-        if (dataSet instanceof BoxDataSet) {
-            DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
-
-            this.variables = dataSet.getVariables();
-
-            if (!(((BoxDataSet) dataSet).getDataBox() instanceof VerticalIntDataBox)) {
-                throw new IllegalArgumentException();
-            }
-
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
-
-            data = box.getVariableVectors();
-            this.sampleSize = dataSet.getNumRows();
-        } else {
-            data = new int[dataSet.getNumColumns()][];
-            this.variables = dataSet.getVariables();
-
-            for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
-
-                for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
-                }
-            }
+        if (statistics == null) {
+            throw new NullPointerException("Statistics were not provided.");
+        }
 
-            this.sampleSize = dataSet.getNumRows();
+        if (!statistics.isFor(dataSet)) {
+            throw new IllegalArgumentException("The statistics were not made from this data set.");
         }
 
+        // The discrete columns are read from the statistics, which code them compactly.
+        this.variables = dataSet.getVariables();
+        this.sampleSize = dataSet.getNumRows();
+
         final List<Node> variables = dataSet.getVariables();
         numCategories = new int[variables.size()];
         for (int i = 0; i < variables.size(); i++) {
             numCategories[i] = (getVariable(i)).getNumCategories();
         }
+
+        this.statistics = statistics;
     }
 
     private DiscreteVariable getVariable(int i) {
@@ -105,35 +101,19 @@ public class DirichletScore implements LocalDiscreteScore, Score {
             q *= dims[p];
         }
 
-        // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[q][r];
-        int n_j[] = new int[q];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
+        if (statistics.hasMissingValues(node)) {
+            throw new IllegalStateException("Please remove or impute missing " +
+                    "values (column " + node + ")");
         }
 
-        int[] myChild = data[node];
-
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
+        // Conditional cell coefs of data for node given parents(node).
+        int n_jk[][] = statistics.getCounts(node, parents);
+        int n_j[] = new int[q];
 
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + i + " column " + i + ")");
+        for (int j = 0; j < q; j++) {
+            for (int k = 0; k < r; k++) {
+                n_j[j] += n_jk[j][k];
             }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
         }
 
         //Finally, compute the score
@@ -177,7 +157,7 @@ public class DirichletScore implements LocalDiscreteScore, Score {
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
         double k = numParents;
-        double n = data.length;
+        double n = variables.size();
         return k * Math.log(e / n) + (n - k) * Math.log(1.0 - (e / n));
     }
 
@@ -305,15 +285,6 @@ public class DirichletScore implements LocalDiscreteScore, Score {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     public double getStructurePrior() {
         return structurePrior;
     }
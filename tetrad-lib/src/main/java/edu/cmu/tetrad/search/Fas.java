@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
@@ -65,6 +66,11 @@ public class Fas implements IFas {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge, compiled for the nodes at the start of the search.
+     */
+    private CompiledKnowledge compiledKnowledge;
+
     /**
      * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
      * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
@@ -167,6 +173,7 @@ public class Fas implements IFas {
         }
 
         Map<Node, Set<Node>> adjacencies = new HashMap<>();
+        compiledKnowledge = new CompiledKnowledge(knowledge, nodes);
 
         for (Node node : nodes) {
             adjacencies.put(node, new TreeSet<Node>());
@@ -218,6 +225,7 @@ public class Fas implements IFas {
 
         Map<Node, Set<Node>> adjacencies = new HashMap<>();
         List<Node> nodes = graph.getNodes();
+        compiledKnowledge = new CompiledKnowledge(knowledge, nodes);
 
         for (Node node : nodes) {
             adjacencies.put(node, new TreeSet<Node>());
@@ -309,7 +317,7 @@ public class Fas implements IFas {
                 }
 
                 boolean noEdgeRequired =
-                        knowledge.noEdgeRequired(x.getName(), y.getName());
+                        compiledKnowledge.noEdgeRequired(i, j);
 
 
                 if (independent && noEdgeRequired) {
@@ -325,7 +333,7 @@ public class Fas implements IFas {
                                 nf.format(test.getScore()));
                     }
 
-                } else if (!forbiddenEdge(x, y)) {
+                } else if (!forbiddenEdge(x, y, i, j)) {
                     adjacencies.get(x).add(y);
                     adjacencies.get(y).add(x);
 
@@ -359,12 +367,10 @@ public class Fas implements IFas {
         return max;
     }
 
-    private boolean forbiddenEdge(Node x, Node y) {
-        String name1 = x.getName();
-        String name2 = y.getName();
-
-        if (knowledge.isForbidden(name1, name2) &&
-                knowledge.isForbidden(name2, name1)) {
+    // The nodes x and y are at indices i and j of the compiled knowledge.
+    private boolean forbiddenEdge(Node x, Node y, int i, int j) {
+        if (compiledKnowledge.isForbidden(i, j) &&
+                compiledKnowledge.isForbidden(j, i)) {
 //            this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
 //                    "forbidden by background knowledge.");
             System.out.println(Edges.undirectedEdge(x, y) + " because it was " +
@@ -389,12 +395,14 @@ public class Fas implements IFas {
             }
 
             List<Node> adjx = new ArrayList<>(adjacencies.get(x));
+            int _x = compiledKnowledge.getIndex(x);
 
             EDGE:
             for (Node y : adjx) {
                 List<Node> _adjx = new ArrayList<>(adjacencies.get(x));
                 _adjx.remove(y);
-                List<Node> ppx = possibleParents(x, _adjx, knowledge);
+                List<Node> ppx = possibleParents(_x, _adjx, compiledKnowledge);
+                int _y = compiledKnowledge.getIndex(y);
 
                 if (ppx.size() >= depth) {
                     ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
@@ -427,7 +435,7 @@ public class Fas implements IFas {
                         }
 
                         boolean noEdgeRequired =
-                                knowledge.noEdgeRequired(x.getName(), y.getName());
+                                compiledKnowledge.noEdgeRequired(_x, _y);
 
                         if (independent && noEdgeRequired) {
                             adjacencies.get(x).remove(y);
@@ -451,15 +459,13 @@ public class Fas implements IFas {
         return freeDegree(nodes, adjacencies) > depth;
     }
 
-    private List<Node> possibleParents(Node x, List<Node> adjx,
-                                       IKnowledge knowledge) {
+    // The node x is at index x of the knowledge.
+    private List<Node> possibleParents(int x, List<Node> adjx,
+                                       CompiledKnowledge knowledge) {
         List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
 
         for (Node z : adjx) {
-            String _z = z.getName();
-
-            if (possibleParentOf(_z, _x, knowledge)) {
+            if (possibleParentOf(knowledge.getIndex(z), x, knowledge)) {
                 possibleParents.add(z);
             }
         }
@@ -467,7 +473,7 @@ public class Fas implements IFas {
         return possibleParents;
     }
 
-    private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
+    private boolean possibleParentOf(int z, int x, CompiledKnowledge knowledge) {
         return !knowledge.isForbidden(z, x) && !knowledge.isRequired(x, z);
     }
 
@@ -116,6 +116,21 @@ public final class Fci implements GraphSearch {
     private Graph initialGraph;
     private int possibleDsepDepth = -1;
 
+    /**
+     * True iff the possible dsep step is done in parallel, by PossibleDsepConcurrent.
+     */
+    private boolean possibleDsepConcurrent = false;
+
+    /**
+     * The time allowed for each edge in the parallel possible dsep step, in milliseconds, or -1 if unlimited.
+     */
+    private long possibleDsepTimeBudget = -1;
+
+    /**
+     * The edges for which the parallel possible dsep step used up its time budget in the last search.
+     */
+    private List<Edge> possibleDsepEdgesOverBudget = new ArrayList<>();
+
 
     //============================CONSTRUCTORS============================//
 
@@ -211,22 +226,33 @@ public final class Fci implements GraphSearch {
 //            long time1 = System.currentTimeMillis();
             new FciOrient(new SepsetsSet(this.sepsets, independenceTest)).ruleR0(graph);
 
-            for (Edge edge : new ArrayList<>(graph.getEdges())) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+            if (possibleDsepConcurrent) {
+                PossibleDsepConcurrent possibleDsep = new PossibleDsepConcurrent(graph, independenceTest);
+                possibleDsep.setKnowledge(knowledge);
+                possibleDsep.setDepth(depth);
+                possibleDsep.setMaxPathLength(maxPathLength);
+                possibleDsep.setTimeBudget(possibleDsepTimeBudget);
+                possibleDsep.setVerbose(verbose);
+                sepsets.addAll(possibleDsep.search());
+                possibleDsepEdgesOverBudget = possibleDsep.getEdgesOverBudget();
+            } else {
+                for (Edge edge : new ArrayList<>(graph.getEdges())) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
 
-                Node x = edge.getNode1();
-                Node y = edge.getNode2();
+                    Node x = edge.getNode1();
+                    Node y = edge.getNode2();
 
-                List<Node> sepset = sp.getSepset(x, y);
+                    List<Node> sepset = sp.getSepset(x, y);
 
-                if (sepset != null) {
-                    graph.removeEdge(x, y);
-                    sepsets.set(x, y, sepset);
+                    if (sepset != null) {
+                        graph.removeEdge(x, y);
+                        sepsets.set(x, y, sepset);
 
-                    if (verbose) {
-                        System.out.println("Possible DSEP Removed " + x + "--- " + y + " sepset = " + sepset);
+                        if (verbose) {
+                            System.out.println("Possible DSEP Removed " + x + "--- " + y + " sepset = " + sepset);
+                        }
                     }
                 }
             }
@@ -437,6 +463,41 @@ public final class Fci implements GraphSearch {
     public void setPossibleDsepDepth(int possibleDsepDepth) {
         this.possibleDsepDepth = possibleDsepDepth;
     }
+
+    public boolean isPossibleDsepConcurrent() {
+        return possibleDsepConcurrent;
+    }
+
+    /**
+     * True if the possible dsep step should be done in parallel, judging every edge against the graph as it was
+     * at the start of the step. False by default.
+     */
+    public void setPossibleDsepConcurrent(boolean possibleDsepConcurrent) {
+        this.possibleDsepConcurrent = possibleDsepConcurrent;
+    }
+
+    public long getPossibleDsepTimeBudget() {
+        return possibleDsepTimeBudget;
+    }
+
+    /**
+     * Sets the time allowed for each edge in the parallel possible dsep step, in milliseconds, or -1 if unlimited.
+     * An edge that uses up its time is kept.
+     */
+    public void setPossibleDsepTimeBudget(long possibleDsepTimeBudget) {
+        if (possibleDsepTimeBudget < -1) {
+            throw new IllegalArgumentException("Time budget must be -1 (unlimited) or >= 0: " + possibleDsepTimeBudget);
+        }
+
+        this.possibleDsepTimeBudget = possibleDsepTimeBudget;
+    }
+
+    /**
+     * @return the edges for which the parallel possible dsep step used up its time budget in the last search.
+     */
+    public List<Edge> getPossibleDsepEdgesOverBudget() {
+        return new ArrayList<>(possibleDsepEdgesOverBudget);
+    }
 }
 
 
@@ -20,12 +20,15 @@
 ///////////////////////////////////////////////////////////////////////////////
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.data.KnowledgeEdge;
 import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodePair;
+import edu.cmu.tetrad.graph.Triple;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
 import java.io.PrintStream;
@@ -57,6 +60,11 @@ public final class FciOrient {
 
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge, compiled for the nodes of the graph being oriented.
+     */
+    private CompiledKnowledge compiledKnowledge;
+
     private boolean changeFlag = true;
 
     /**
@@ -93,6 +101,12 @@ public final class FciOrient {
     private Graph dag;
     private boolean skipDiscriminatingPathRule;
 
+    /**
+     * While doFinalOrientation runs, the changes made so far and the checks made, so that a check none of whose
+     * inputs has changed since it was last made can be skipped. Null otherwise.
+     */
+    private Changes changes = null;
+
     //============================CONSTRUCTORS============================//
     /**
      * Constructs a new FCI search for the given independence test and
@@ -180,60 +194,58 @@ public final class FciOrient {
      * Zhang's step F3, rule R0.
      */
     public void ruleR0(Graph graph) {
+        compiledKnowledge = new CompiledKnowledge(knowledge, graph.getNodes());
         graph.reorientAllWith(Endpoint.CIRCLE);
         fciOrientbk(knowledge, graph, graph.getNodes());
 
-        List<Node> nodes = graph.getNodes();
+        List<Triple> triples = ColliderClassification.getUnshieldedTriples(graph);
+        Map<NodePair, List<List<Node>>> sepsetsByPair = null;
 
-        for (Node b : nodes) {
+        // Separating sets for the conservative rules depend only on the endpoints, so they can be found for all
+        // pairs at once, in parallel, before anything is oriented.
+        if (sepsets instanceof ColliderClassification.Classifier) {
+            sepsetsByPair = ColliderClassification.getSepsets(triples, (ColliderClassification.Classifier) sepsets);
+        }
+
+        for (Triple triple : triples) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
 
-            List<Node> adjacentNodes = graph.getAdjacentNodes(b);
+            Node a = triple.getX();
+            Node b = triple.getY();
+            Node c = triple.getZ();
 
-            if (adjacentNodes.size() < 2) {
+            if (graph.isDefCollider(a, b, c)) {
                 continue;
             }
 
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
-
-            while ((combination = cg.next()) != null) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+            boolean collider;
 
-                Node a = adjacentNodes.get(combination[0]);
-                Node c = adjacentNodes.get(combination[1]);
+            if (sepsetsByPair != null) {
+                collider = ((ColliderClassification.Classifier) sepsets).isCollider(b,
+                        sepsetsByPair.get(new NodePair(a, c)));
+            } else {
+                collider = sepsets.isCollider(a, b, c);
+            }
 
-                // Skip triples that are shielded.
-                if (graph.isAdjacentTo(a, c)) {
+            if (collider) {
+                if (!isArrowpointAllowed(a, b, graph)) {
                     continue;
                 }
 
-                if (graph.isDefCollider(a, b, c)) {
+                if (!isArrowpointAllowed(c, b, graph)) {
                     continue;
                 }
 
-                if (sepsets.isCollider(a, b, c)) {
-                    if (!isArrowpointAllowed(a, b, graph)) {
-                        continue;
-                    }
-
-                    if (!isArrowpointAllowed(c, b, graph)) {
-                        continue;
-                    }
-
-                    graph.setEndpoint(a, b, Endpoint.ARROW);
-                    graph.setEndpoint(c, b, Endpoint.ARROW);
-                    if (verbose) {
-                        logger.log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(a, b, c));
-                        out.println(SearchLogUtils.colliderOrientedMsg(a, b, c));
-                        String location = "R0";
+                setEndpoint(a, b, Endpoint.ARROW, graph);
+                setEndpoint(c, b, Endpoint.ARROW, graph);
+                if (verbose) {
+                    logger.log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(a, b, c));
+                    out.println(SearchLogUtils.colliderOrientedMsg(a, b, c));
+                    String location = "R0";
 
-                        printWrongColliderMessage(a, b, c, location, graph);
-                    }
+                    printWrongColliderMessage(a, b, c, location, graph);
                 }
             }
         }
@@ -251,10 +263,17 @@ public final class FciOrient {
      * Zhang's step F4, rules R1-R10.
      */
     public void doFinalOrientation(Graph graph) {
-        if (completeRuleSetUsed) {
-            zhangFinalOrientation(graph);
-        } else {
-            spirtesFinalOrientation(graph);
+        compiledKnowledge = new CompiledKnowledge(knowledge, graph.getNodes());
+        changes = new Changes();
+
+        try {
+            if (completeRuleSetUsed) {
+                zhangFinalOrientation(graph);
+            } else {
+                spirtesFinalOrientation(graph);
+            }
+        } finally {
+            changes = null;
         }
     }
 
@@ -356,6 +375,13 @@ public final class FciOrient {
                 continue;
             }
 
+            // These rules look only at edges into B and edges among the nodes adjacent to B.
+            if (isCurrent(Rule.R1R2, B)) {
+                continue;
+            }
+
+            long stamp = stamp();
+
             ChoiceGenerator cg = new ChoiceGenerator(adj.size(), 2);
             int[] combination;
 
@@ -373,6 +399,8 @@ public final class FciOrient {
                 ruleR2(A, B, C, graph);
                 ruleR2(C, B, A, graph);
             }
+
+            checked(Rule.R1R2, B, stamp, B, adj);
         }
     }
 
@@ -388,8 +416,8 @@ public final class FciOrient {
                 return;
             }
 
-            graph.setEndpoint(c, b, Endpoint.TAIL);
-            graph.setEndpoint(b, c, Endpoint.ARROW);
+            setEndpoint(c, b, Endpoint.TAIL, graph);
+            setEndpoint(b, c, Endpoint.ARROW, graph);
             changeFlag = true;
 
             if (verbose) {
@@ -417,7 +445,7 @@ public final class FciOrient {
                     return;
                 }
 
-                graph.setEndpoint(a, c, Endpoint.ARROW);
+                setEndpoint(a, c, Endpoint.ARROW, graph);
 
                 if (verbose) {
                     logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Away from ancestor", graph.getEdge(a, c)));
@@ -478,6 +506,12 @@ public final class FciOrient {
                 break;
             }
 
+            if (isCurrent(Rule.R3, B)) {
+                continue;
+            }
+
+            long stamp = stamp();
+
             List<Node> intoBArrows = graph.getNodesInTo(B, Endpoint.ARROW);
             List<Node> intoBCircles = graph.getNodesInTo(B, Endpoint.CIRCLE);
 
@@ -522,7 +556,7 @@ public final class FciOrient {
                         continue;
                     }
 
-                    graph.setEndpoint(D, B, Endpoint.ARROW);
+                    setEndpoint(D, B, Endpoint.ARROW, graph);
 
                     if (verbose) {
                         logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Double triangle", graph.getEdge(D, B)));
@@ -532,6 +566,10 @@ public final class FciOrient {
                     changeFlag = true;
                 }
             }
+
+            List<Node> reads = new ArrayList<>(intoBArrows);
+            reads.addAll(intoBCircles);
+            checked(Rule.R3, B, stamp, B, reads);
         }
     }
 
@@ -693,7 +731,7 @@ public final class FciOrient {
         }
 
         if (sepset.contains(b)) {
-            graph.setEndpoint(c, b, Endpoint.TAIL);
+            setEndpoint(c, b, Endpoint.TAIL, graph);
 
             if (verbose) {
                 logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Definite discriminating path d = " + d, graph.getEdge(b, c)));
@@ -710,8 +748,8 @@ public final class FciOrient {
                 return;
             }
 
-            graph.setEndpoint(a, b, Endpoint.ARROW);
-            graph.setEndpoint(c, b, Endpoint.ARROW);
+            setEndpoint(a, b, Endpoint.ARROW, graph);
+            setEndpoint(c, b, Endpoint.ARROW, graph);
             logger.log("colliderOrientations", SearchLogUtils.colliderOrientedMsg("Definite discriminating path.. d = " + d, a, b, c));
             changeFlag = true;
         }
@@ -766,7 +804,18 @@ public final class FciOrient {
                         continue;
                     }
 
-                    ddpOrient(a, b, c, graph);
+                    // The search for a discriminating path is made again only if some node it looked at has
+                    // been touched since.
+                    List<Node> triple = Arrays.asList(a, b, c);
+
+                    if (isCurrent(Rule.R4, triple)) {
+                        continue;
+                    }
+
+                    long stamp = stamp();
+                    Set<Node> reads = new HashSet<>();
+                    ddpOrient(a, b, c, graph, reads);
+                    checked(Rule.R4, triple, stamp, c, reads);
                 }
             }
         }
@@ -779,6 +828,15 @@ public final class FciOrient {
      * The body of a DDP consists of colliders that are parents of c.
      */
     public void ddpOrient(Node a, Node b, Node c, Graph graph) {
+        ddpOrient(a, b, c, graph, null);
+    }
+
+    // As above, adding to reads, if it is not null, the nodes whose edges are looked at.
+    private void ddpOrient(Node a, Node b, Node c, Graph graph, Set<Node> reads) {
+        if (reads != null) {
+            reads.add(b);
+        }
+
         Queue<Node> Q = new ArrayDeque<Node>();
         Set<Node> V = new HashSet<Node>();
 
@@ -801,6 +859,10 @@ public final class FciOrient {
 
             Node t = Q.poll();
 
+            if (reads != null) {
+                reads.add(t);
+            }
+
             if (e == null || e == t) {
                 e = t;
                 distance++;
@@ -830,6 +892,10 @@ public final class FciOrient {
                 previous.put(d, t);
 
                 if (!graph.isAdjacentTo(d, c)) {
+                    if (reads != null) {
+                        reads.add(d);
+                    }
+
                     if (doDdpOrientation(d, a, b, c, previous, graph)) {
                         return;
                     }
@@ -850,7 +916,7 @@ public final class FciOrient {
     private boolean doDdpOrientation(Node d, Node a, Node b, Node c, Map<Node, Node> previous, Graph graph) {
         if (dag != null) {
             if (dag.isAncestorOf(b, c)) {
-                graph.setEndpoint(c, b, Endpoint.TAIL);
+                setEndpoint(c, b, Endpoint.TAIL, graph);
                 changeFlag = true;
             } else {
                 if (!isArrowpointAllowed(a, b, graph)) {
@@ -861,8 +927,8 @@ public final class FciOrient {
                     return false;
                 }
 
-                graph.setEndpoint(a, b, Endpoint.ARROW);
-                graph.setEndpoint(c, b, Endpoint.ARROW);
+                setEndpoint(a, b, Endpoint.ARROW, graph);
+                setEndpoint(c, b, Endpoint.ARROW, graph);
                 changeFlag = true;
             }
 
@@ -903,7 +969,7 @@ public final class FciOrient {
 //        printDdp(d, path, a, b, c, graph);
         if (ind) {
 //            if (sepset.contains(b)) {
-            graph.setEndpoint(c, b, Endpoint.TAIL);
+            setEndpoint(c, b, Endpoint.TAIL, graph);
 
             if (verbose) {
                 logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Definite discriminating path d = " + d, graph.getEdge(b, c)));
@@ -921,8 +987,8 @@ public final class FciOrient {
                 return false;
             }
 
-            graph.setEndpoint(a, b, Endpoint.ARROW);
-            graph.setEndpoint(c, b, Endpoint.ARROW);
+            setEndpoint(a, b, Endpoint.ARROW, graph);
+            setEndpoint(c, b, Endpoint.ARROW, graph);
 
             if (verbose) {
                 logger.log("impliedOrientations", SearchLogUtils.colliderOrientedMsg("Definite discriminating path.. d = " + d, a, b, c));
@@ -1013,8 +1079,8 @@ public final class FciOrient {
 
                     logger.log("colliderOrientations", SearchLogUtils.edgeOrientedMsg("Orient circle path", graph.getEdge(a, b)));
 
-                    graph.setEndpoint(a, b, Endpoint.TAIL);
-                    graph.setEndpoint(b, a, Endpoint.TAIL);
+                    setEndpoint(a, b, Endpoint.TAIL, graph);
+                    setEndpoint(b, a, Endpoint.TAIL, graph);
                     orientTailPath(u, graph);
                     changeFlag = true;
                 }
@@ -1041,6 +1107,13 @@ public final class FciOrient {
                 continue;
             }
 
+            // These rules look only at edges into b.
+            if (isCurrent(Rule.R6R7, b)) {
+                continue;
+            }
+
+            long stamp = stamp();
+
             ChoiceGenerator cg = new ChoiceGenerator(adjacents.size(), 2);
 
             for (int[] choice = cg.next(); choice != null && !Thread.currentThread().isInterrupted(); choice = cg.next()) {
@@ -1062,7 +1135,7 @@ public final class FciOrient {
                 if (graph.getEndpoint(a, b) == Endpoint.TAIL) {
 
                     // We know A---Bo-*C: R6 applies!
-                    graph.setEndpoint(c, b, Endpoint.TAIL);
+                    setEndpoint(c, b, Endpoint.TAIL, graph);
 
                     logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Single tails (tail)", graph.getEdge(c, b)));
 
@@ -1075,11 +1148,13 @@ public final class FciOrient {
                     logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Single tails (tail)", graph.getEdge(c, b)));
 
                     // We know A--oBo-*C and A,C nonadjacent: R7 applies!
-                    graph.setEndpoint(c, b, Endpoint.TAIL);
+                    setEndpoint(c, b, Endpoint.TAIL, graph);
                     changeFlag = true;
                 }
 
             }
+
+            checked(Rule.R6R7, b, stamp, b, Collections.<Node>emptyList());
         }
     }
 
@@ -1108,14 +1183,26 @@ public final class FciOrient {
                 }
                 // We know Ao->C.
 
+                List<Node> pair = Arrays.asList(a, c);
+
+                if (isCurrent(Rule.R8R9R10, pair)) {
+                    continue;
+                }
+
+                long stamp = stamp();
+                Set<Node> reads = new HashSet<>();
+                reads.add(a);
+
                 // Try each of R8, R9, R10 in that order, stopping ASAP.
                 if (!ruleR8(a, c, graph)) {
-                    boolean b = ruleR9(a, c, graph);
+                    boolean b = ruleR9(a, c, graph, reads);
 
                     if (!b) {
-                        ruleR10(a, c, graph);
+                        ruleR10(a, c, graph, reads);
                     }
                 }
+
+                checked(Rule.R8R9R10, pair, stamp, c, reads);
             }
         }
 
@@ -1134,8 +1221,8 @@ public final class FciOrient {
             Node n1 = path.get(i);
             Node n2 = path.get(i + 1);
 
-            graph.setEndpoint(n1, n2, Endpoint.TAIL);
-            graph.setEndpoint(n2, n1, Endpoint.TAIL);
+            setEndpoint(n1, n2, Endpoint.TAIL, graph);
+            setEndpoint(n2, n1, Endpoint.TAIL, graph);
             changeFlag = true;
 
             logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Orient circle undirectedPaths", graph.getEdge(n1, n2)));
@@ -1154,14 +1241,23 @@ public final class FciOrient {
      * n2.
      */
     private List<List<Node>> getUcPdPaths(Node n1, Node n2, Graph graph) {
+        return getUcPdPaths(n1, n2, graph, null);
+    }
+
+    // As above, adding to reads, if it is not null, the nodes whose edges are looked at.
+    private List<List<Node>> getUcPdPaths(Node n1, Node n2, Graph graph, Set<Node> reads) {
         List<List<Node>> ucPdPaths = new LinkedList<List<Node>>();
 
         LinkedList<Node> soFar = new LinkedList<Node>();
         soFar.add(n1);
 
+        if (reads != null) {
+            reads.add(n1);
+        }
+
         List<Node> adjacencies = graph.getAdjacentNodes(n1);
         for (Node curr : adjacencies) {
-            getUcPdPsHelper(curr, soFar, n2, ucPdPaths, graph);
+            getUcPdPsHelper(curr, soFar, n2, ucPdPaths, graph, reads);
         }
 
         return ucPdPaths;
@@ -1181,7 +1277,7 @@ public final class FciOrient {
      * @param ucPdPaths The getModel list of uncovered p.d. undirectedPaths.
      */
     private void getUcPdPsHelper(Node curr, List<Node> soFar, Node end,
-            List<List<Node>> ucPdPaths, Graph graph) {
+            List<List<Node>> ucPdPaths, Graph graph, Set<Node> reads) {
 
         if (soFar.contains(curr)) {
             return;
@@ -1200,6 +1296,10 @@ public final class FciOrient {
 
         soFar.add(curr); // Adding curr is OK, so let's do it.
 
+        if (reads != null) {
+            reads.add(curr);
+        }
+
         if (curr.equals(end)) {
             // We've reached the goal! Save soFar as a path.
             ucPdPaths.add(new LinkedList<Node>(soFar));
@@ -1207,7 +1307,7 @@ public final class FciOrient {
             // Otherwise, try each node adjacent to the getModel one.
             List<Node> adjacents = graph.getAdjacentNodes(curr);
             for (Node next : adjacents) {
-                getUcPdPsHelper(next, soFar, end, ucPdPaths, graph);
+                getUcPdPsHelper(next, soFar, end, ucPdPaths, graph, reads);
             }
         }
 
@@ -1292,7 +1392,7 @@ public final class FciOrient {
 
             logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R8", graph.getEdge(c, a)));
 
-            graph.setEndpoint(c, a, Endpoint.TAIL);
+            setEndpoint(c, a, Endpoint.TAIL, graph);
             changeFlag = true;
             return true;
         }
@@ -1311,10 +1411,11 @@ public final class FciOrient {
      *
      * @param a The node A.
      * @param c The node C.
+     * @param reads The nodes whose edges are looked at are added to this.
      * @return Whether or not R9 was succesfully applied.
      */
-    private boolean ruleR9(Node a, Node c, Graph graph) {
-        List<List<Node>> ucPdPsToC = getUcPdPaths(a, c, graph);
+    private boolean ruleR9(Node a, Node c, Graph graph, Set<Node> reads) {
+        List<List<Node>> ucPdPsToC = getUcPdPaths(a, c, graph, reads);
 
         for (List<Node> u : ucPdPsToC) {
             Node b = u.get(1);
@@ -1328,7 +1429,7 @@ public final class FciOrient {
 
             logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R9", graph.getEdge(c, a)));
 
-            graph.setEndpoint(c, a, Endpoint.TAIL);
+            setEndpoint(c, a, Endpoint.TAIL, graph);
             changeFlag = true;
             return true;
         }
@@ -1348,9 +1449,10 @@ public final class FciOrient {
      *
      * @param a The node A.
      * @param c The node C.
+     * @param reads The nodes whose edges are looked at are added to this.
      * @return Whether or not R10 was successfully applied.
      */
-    private boolean ruleR10(Node a, Node c, Graph graph) {
+    private boolean ruleR10(Node a, Node c, Graph graph, Set<Node> reads) {
         List<Node> intoCArrows = graph.getNodesInTo(c, Endpoint.ARROW);
 
         for (Node b : intoCArrows) {
@@ -1381,8 +1483,8 @@ public final class FciOrient {
                 }
                 // We know Ao->C and B-->C<--D.
 
-                List<List<Node>> ucPdPsToB = getUcPdPaths(a, b, graph);
-                List<List<Node>> ucPdPsToD = getUcPdPaths(a, d, graph);
+                List<List<Node>> ucPdPsToB = getUcPdPaths(a, b, graph, reads);
+                List<List<Node>> ucPdPsToD = getUcPdPaths(a, d, graph, reads);
                 for (List<Node> u1 : ucPdPsToB) {
                     if (Thread.currentThread().isInterrupted()) {
                         break;
@@ -1406,7 +1508,7 @@ public final class FciOrient {
 
                         logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R10", graph.getEdge(c, a)));
 
-                        graph.setEndpoint(c, a, Endpoint.TAIL);
+                        setEndpoint(c, a, Endpoint.TAIL, graph);
                         changeFlag = true;
                         return true;
                     }
@@ -1444,8 +1546,8 @@ public final class FciOrient {
             }
 
             // Orient to*->from
-            graph.setEndpoint(to, from, Endpoint.ARROW);
-            graph.setEndpoint(from, to, Endpoint.CIRCLE);
+            setEndpoint(to, from, Endpoint.ARROW, graph);
+            setEndpoint(from, to, Endpoint.CIRCLE, graph);
             changeFlag = true;
             logger.log("knowledgeOrientation", SearchLogUtils.edgeOrientedMsg("Knowledge", graph.getEdge(from, to)));
         }
@@ -1470,8 +1572,8 @@ public final class FciOrient {
                 continue;
             }
 
-            graph.setEndpoint(to, from, Endpoint.TAIL);
-            graph.setEndpoint(from, to, Endpoint.ARROW);
+            setEndpoint(to, from, Endpoint.TAIL, graph);
+            setEndpoint(from, to, Endpoint.ARROW, graph);
             changeFlag = true;
             logger.log("knowledgeOrientation", SearchLogUtils.edgeOrientedMsg("Knowledge", graph.getEdge(from, to)));
         }
@@ -1498,13 +1600,13 @@ public final class FciOrient {
 
         if (graph.getEndpoint(y, x) == Endpoint.ARROW) {
 //            return true;
-            if (!knowledge.isForbidden(x.getName(), y.getName())) {
+            if (!isForbidden(x, y, graph)) {
                 return true;
             }
         }
 
         if (graph.getEndpoint(y, x) == Endpoint.TAIL) {
-            if (!knowledge.isForbidden(x.getName(), y.getName())) {
+            if (!isForbidden(x, y, graph)) {
                 return true;
             }
         }
@@ -1512,6 +1614,128 @@ public final class FciOrient {
         return graph.getEndpoint(y, x) == Endpoint.CIRCLE;
     }
 
+    // True if the knowledge forbids x --> y, checked by the indices of x and y where they are nodes of the
+    // compiled graph.
+    private boolean isForbidden(Node x, Node y, Graph graph) {
+        CompiledKnowledge knowledge = compiledKnowledge(graph);
+
+        if (knowledge.isEmpty()) {
+            return false;
+        }
+
+        int i = knowledge.getIndex(x);
+        int j = knowledge.getIndex(y);
+
+        if (i == -1 || j == -1) {
+            return knowledge.isForbidden(x, y);
+        }
+
+        return knowledge.isForbidden(i, j);
+    }
+
+    // Sets an endpoint, noting the change if doFinalOrientation is running. The endpoint is set even if it is
+    // already so, as it always has been, since that moves the edge to the end of the edge lists of x and y, which
+    // is the order in which later sweeps visit the adjacents of x and y.
+    private void setEndpoint(Node x, Node y, Endpoint endpoint, Graph graph) {
+        graph.setEndpoint(x, y, endpoint);
+
+        if (changes != null) {
+            changes.touch(x, y);
+        }
+    }
+
+    // The time to record for a check about to be made.
+    private long stamp() {
+        return changes == null ? 0 : changes.clock;
+    }
+
+    // True iff the check of the given rule for the given key has been made and none of the nodes it looked at has
+    // been touched since.
+    private boolean isCurrent(Rule rule, Object key) {
+        if (changes == null) {
+            return false;
+        }
+
+        Changes.Check check = changes.checks.get(rule).get(key);
+
+        if (check == null) {
+            return false;
+        }
+
+        for (Node node : check.reads) {
+            Long touched = changes.touched.get(node);
+
+            if (touched != null && touched > check.stamp) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Records a check of the given rule for the given key, begun at the given time, that looked at the edges of
+    // node and of the given nodes.
+    private void checked(Rule rule, Object key, long stamp, Node node, Collection<Node> reads) {
+        if (changes == null) {
+            return;
+        }
+
+        Node[] _reads = new Node[reads.size() + 1];
+        _reads[0] = node;
+        int i = 1;
+
+        for (Node read : reads) {
+            _reads[i++] = read;
+        }
+
+        changes.checks.get(rule).put(key, new Changes.Check(stamp, _reads));
+    }
+
+    // The rules whose checks are recorded.
+    private enum Rule {
+        R1R2, R3, R4, R6R7, R8R9R10
+    }
+
+    // For each node, the time an edge into it was last set, and for each rule the checks that have been made.
+    // Adjacencies do not change while the rules are applied, so a check that looked at the edges of the same
+    // nodes, set the same way and listed in the same order, would do the same again; such a check is skipped.
+    private static class Changes {
+        private long clock = 0;
+        private final Map<Node, Long> touched = new HashMap<>();
+        private final Map<Rule, Map<Object, Check>> checks = new EnumMap<>(Rule.class);
+
+        private Changes() {
+            for (Rule rule : Rule.values()) {
+                checks.put(rule, new HashMap<Object, Check>());
+            }
+        }
+
+        private void touch(Node x, Node y) {
+            clock++;
+            touched.put(x, clock);
+            touched.put(y, clock);
+        }
+
+        private static class Check {
+            private final long stamp;
+            private final Node[] reads;
+
+            private Check(long stamp, Node[] reads) {
+                this.stamp = stamp;
+                this.reads = reads;
+            }
+        }
+    }
+
+    // The knowledge compiled for the nodes of the graph, compiled again if the knowledge has been replaced or changed.
+    private CompiledKnowledge compiledKnowledge(Graph graph) {
+        if (compiledKnowledge == null || !compiledKnowledge.isFor(knowledge)) {
+            compiledKnowledge = new CompiledKnowledge(knowledge, graph.getNodes());
+        }
+
+        return compiledKnowledge;
+    }
+
     public boolean isPossibleDsepSearchDone() {
         return possibleDsepSearchDone;
     }
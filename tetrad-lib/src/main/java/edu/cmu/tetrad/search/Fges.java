@@ -67,6 +67,11 @@ public final class Fges implements GraphSearch, GraphScorer {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge, compiled for the variables.
+     */
+    private volatile CompiledKnowledge compiledKnowledge;
+
     /**
      * List of variables in the data set, in order.
      */
@@ -226,6 +231,8 @@ public final class Fges implements GraphSearch, GraphScorer {
         lookupArrows = new ConcurrentHashMap<>();
         final List<Node> nodes = new ArrayList<>(variables);
         graph = new EdgeListGraphSingleConnections(nodes);
+        buildIndexing(score.getVariables());
+        compiledKnowledge = new CompiledKnowledge(knowledge, score.getVariables());
 
         if (adjacencies != null) {
             adjacencies = GraphUtils.replaceNodes(adjacencies, nodes);
@@ -571,9 +578,11 @@ public final class Fges implements GraphSearch, GraphScorer {
 
                 for (int j = i + 1; j < nodes.size() && !Thread.currentThread().isInterrupted(); j++) {
                     Node x = nodes.get(j);
+                    int child = hashIndices.get(y);
+                    int parent = hashIndices.get(x);
 
                     if (existsKnowledge()) {
-                        if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                        if (bothForbidden(parent, child)) {
                             continue;
                         }
 
@@ -585,9 +594,6 @@ public final class Fges implements GraphSearch, GraphScorer {
                     if (adjacencies != null && !adjacencies.isAdjacentTo(x, y)) {
                         continue;
                     }
-
-                    int child = hashIndices.get(y);
-                    int parent = hashIndices.get(x);
                     double bump = score.localScoreDiff(parent, child);
 
                     if (symmetricFirstStep) {
@@ -761,7 +767,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (bothForbidden(hashIndices.get(x), hashIndices.get(y))) {
                                     continue;
                                 }
 
@@ -870,7 +876,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (bothForbidden(hashIndices.get(x), hashIndices.get(y))) {
                                     continue;
                                 }
 
@@ -1066,12 +1072,25 @@ public final class Fges implements GraphSearch, GraphScorer {
             toProcess.addAll(newArrows);
         }
 
-        return meekOrientRestricted(new ArrayList<>(toProcess), getKnowledge());
+        return meekOrientRestricted(new ArrayList<>(toProcess), compiledKnowledge());
     }
 
     // Returns true if knowledge is not empty.
     private boolean existsKnowledge() {
-        return !knowledge.isEmpty();
+        return !compiledKnowledge().isEmpty();
+    }
+
+    // The knowledge compiled for the score's variables, so that its indices are those of hashIndices; compiled
+    // again if the knowledge has been replaced or changed.
+    private CompiledKnowledge compiledKnowledge() {
+        CompiledKnowledge compiled = compiledKnowledge;
+
+        if (compiled == null || !compiled.isFor(knowledge)) {
+            compiled = new CompiledKnowledge(knowledge, score.getVariables());
+            compiledKnowledge = compiled;
+        }
+
+        return compiled;
     }
 
     // Initiaizes the sorted arrows lists for the backward search.
@@ -1081,7 +1100,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             Node y = edge.getNode2();
 
             if (existsKnowledge()) {
-                if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
+                if (!compiledKnowledge().noEdgeRequired(x, y)) {
                     continue;
                 }
             }
@@ -1207,7 +1226,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         if (existsKnowledge()) {
-            if (getKnowledge().isForbidden(a.getName(), b.getName())) {
+            if (compiledKnowledge().isForbidden(hashIndices.get(a), hashIndices.get(b))) {
                 return;
             }
         }
@@ -1346,7 +1365,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Calculates the arrows for the removal in the backward direction.
     private void calculateArrowsBackward(Node a, Node b) {
         if (existsKnowledge()) {
-            if (!getKnowledge().noEdgeRequired(a.getName(), b.getName())) {
+            if (!compiledKnowledge().noEdgeRequired(a, b)) {
                 return;
             }
         }
@@ -1655,12 +1674,15 @@ public final class Fges implements GraphSearch, GraphScorer {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            if (knowledge.isForbidden(x.getName(), y.getName())) {
+            CompiledKnowledge knowledge = compiledKnowledge();
+            int _y = hashIndices.get(y);
+
+            if (knowledge.isForbidden(hashIndices.get(x), _y)) {
                 violatesKnowledge = true;
             }
 
             for (Node t : T) {
-                if (knowledge.isForbidden(t.getName(), y.getName())) {
+                if (knowledge.isForbidden(hashIndices.get(t), _y)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1677,12 +1699,18 @@ public final class Fges implements GraphSearch, GraphScorer {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
+            CompiledKnowledge knowledge = compiledKnowledge();
+            int _x = hashIndices.get(x);
+            int _y = hashIndices.get(y);
+
             for (Node h : H) {
-                if (knowledge.isForbidden(x.getName(), h.getName())) {
+                int _h = hashIndices.get(h);
+
+                if (knowledge.isForbidden(_x, _h)) {
                     violatesKnowledge = true;
                 }
 
-                if (knowledge.isForbidden(y.getName(), h.getName())) {
+                if (knowledge.isForbidden(_y, _h)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1740,7 +1768,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                     }
                 }
 
-                if (!graph.isChildOf(nodeA, nodeB) && getKnowledge().isForbidden(nodeA.getName(), nodeB.getName())) {
+                if (!graph.isChildOf(nodeA, nodeB) && compiledKnowledge().isForbidden(nodeA, nodeB)) {
                     if (!graph.isAncestorOf(nodeA, nodeB)) {
                         graph.removeEdges(nodeA, nodeB);
                         graph.addDirectedEdge(nodeB, nodeA);
@@ -1767,7 +1795,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                         }
                     }
                 }
-                if (!graph.isChildOf(nodeA, nodeB) && getKnowledge().isForbidden(nodeA.getName(), nodeB.getName())) {
+                if (!graph.isChildOf(nodeA, nodeB) && compiledKnowledge().isForbidden(nodeA, nodeB)) {
                     if (!graph.isAncestorOf(nodeA, nodeB)) {
                         graph.removeEdges(nodeA, nodeB);
                         graph.addDirectedEdge(nodeB, nodeA);
@@ -1785,14 +1813,25 @@ public final class Fges implements GraphSearch, GraphScorer {
     // direction according to prior knowledge. If some orientation is forbidden in the subset, the whole subset is
     // forbidden.
     private boolean validSetByKnowledge(Node y, Set<Node> subset) {
+        if (subset.isEmpty()) return true;
+
+        CompiledKnowledge knowledge = compiledKnowledge();
+        int _y = hashIndices.get(y);
+
         for (Node node : subset) {
-            if (getKnowledge().isForbidden(node.getName(), y.getName())) {
+            if (knowledge.isForbidden(hashIndices.get(node), _y)) {
                 return false;
             }
         }
         return true;
     }
 
+    // True if the edges in both directions between the variables at the given indices are forbidden.
+    private boolean bothForbidden(int x, int y) {
+        CompiledKnowledge knowledge = compiledKnowledge();
+        return knowledge.isForbidden(x, y) && knowledge.isForbidden(y, x);
+    }
+
     // Find all adj that are connected to Y by an undirected edge that are adjacent to X (that is, by undirected or
     // directed edge).
     private Set<Node> getNaYX(Node x, Node y) {
@@ -1901,11 +1940,11 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Runs Meek rules on just the changed adj.
     private Set<Node> reorientNode(List<Node> nodes) {
         addRequiredEdges(graph);
-        return meekOrientRestricted(nodes, getKnowledge());
+        return meekOrientRestricted(nodes, compiledKnowledge());
     }
 
     // Runs Meek rules on just the changed adj.
-    private Set<Node> meekOrientRestricted(List<Node> nodes, IKnowledge knowledge) {
+    private Set<Node> meekOrientRestricted(List<Node> nodes, CompiledKnowledge knowledge) {
         MeekRules rules = new MeekRules();
         rules.setKnowledge(knowledge);
         rules.setUndirectUnforcedEdges(true);
@@ -1915,7 +1954,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     private void orientNodeAway(Node node) {
         MeekRules rules = new MeekRules();
-        rules.setKnowledge(knowledge);
+        rules.setKnowledge(compiledKnowledge());
 //        rules.setUndirectUnforcedEdges(true);
         rules.orientImplied(graph, Collections.singletonList(node));
 //        return rules.getVisited();
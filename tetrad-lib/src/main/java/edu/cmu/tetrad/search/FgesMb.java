@@ -20,6 +20,7 @@
 ///////////////////////////////////////////////////////////////////////////////
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.data.KnowledgeEdge;
@@ -71,6 +72,11 @@ public final class FgesMb {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge, compiled for the variables.
+     */
+    private volatile CompiledKnowledge compiledKnowledge;
+
     /**
      * List of variables in the data set, in order.
      */
@@ -1250,6 +1256,9 @@ public final class FgesMb {
                 continue;
             }
 
+            orientNodeAway(x);
+            orientNodeAway(y);
+
             totalScore += bump;
 
             clearArrow(x, y);
@@ -1274,8 +1283,6 @@ public final class FgesMb {
             storeGraph(graph);
             reevaluateBackward(toProcess);
         }
-
-        meekOrientRestricted(getVariables(), getKnowledge());
     }
 
     private Set<Node> getCommonAdjacents(Node x, Node y) {
@@ -1293,7 +1300,7 @@ public final class FgesMb {
             toProcess.addAll(newArrows);
         }
 
-        return meekOrientRestricted(new ArrayList<>(toProcess), getKnowledge());
+        return meekOrientRestricted(new ArrayList<>(toProcess), compiledKnowledge());
     }
 
     // Returns true if knowledge is not empty.
@@ -2114,11 +2121,11 @@ public final class FgesMb {
     // Runs Meek rules on just the changed adj.
     private Set<Node> reorientNode(List<Node> nodes) {
         addRequiredEdges(graph);
-        return meekOrientRestricted(nodes, getKnowledge());
+        return meekOrientRestricted(nodes, compiledKnowledge());
     }
 
     // Runs Meek rules on just the changed adj.
-    private Set<Node> meekOrientRestricted(List<Node> nodes, IKnowledge knowledge) {
+    private Set<Node> meekOrientRestricted(List<Node> nodes, CompiledKnowledge knowledge) {
         MeekRules rules = new MeekRules();
         rules.setKnowledge(knowledge);
         rules.setUndirectUnforcedEdges(true);
@@ -2126,6 +2133,24 @@ public final class FgesMb {
         return rules.getVisited();
     }
 
+    private void orientNodeAway(Node node) {
+        MeekRules rules = new MeekRules();
+        rules.setKnowledge(compiledKnowledge());
+        rules.orientImplied(graph, Collections.singletonList(node));
+    }
+
+    // The knowledge compiled for the variables, compiled again if the knowledge has been replaced or changed.
+    private CompiledKnowledge compiledKnowledge() {
+        CompiledKnowledge compiled = compiledKnowledge;
+
+        if (compiled == null || !compiled.isFor(knowledge)) {
+            compiled = new CompiledKnowledge(knowledge, variables);
+            compiledKnowledge = compiled;
+        }
+
+        return compiled;
+    }
+
     // Maps adj to their indices for quick lookup.
     private void buildIndexing(List<Node> nodes) {
         this.hashIndices = new ConcurrentHashMap<>();
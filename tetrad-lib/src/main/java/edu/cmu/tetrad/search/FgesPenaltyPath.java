@@ -0,0 +1,151 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.Graph;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Runs FGES with a SemBicScore for each of a list of penalty discounts. Only the penalty term of the score depends
+ * on the penalty discount, so the score's residual variances are cached by node and parent set and shared by all
+ * of the runs. The runs go from the largest penalty discount to the smallest, each starting from the graph found
+ * for the one before it, which is sparser, so that each run only has to add the edges the smaller penalty admits.
+ *
+ * @author Joseph Ramsey
+ */
+public class FgesPenaltyPath {
+
+    // The score; its penalty discount is set for each run.
+    private final SemBicScore score;
+
+    // Specification of forbidden and required edges.
+    private IKnowledge knowledge = new Knowledge2();
+
+    // True if it is assumed that all path pairs with one length 1 path do not cancel.
+    private boolean faithfulnessAssumed = true;
+
+    // The maximum number of parents a node may have, or null for the default of the score.
+    private Integer maxDegree = null;
+
+    // True if verbose output should be printed.
+    private boolean verbose = false;
+
+    // The print stream output is sent to.
+    private PrintStream out = System.out;
+
+    /**
+     * @param score The score to search with. Caching of residual variances is turned on for it.
+     */
+    public FgesPenaltyPath(SemBicScore score) {
+        if (score == null) throw new NullPointerException("Score was not provided.");
+        this.score = score;
+    }
+
+    /**
+     * Searches with each of the given penalty discounts.
+     *
+     * @return the patterns found, in the order of the given penalty discounts.
+     */
+    public List<Graph> search(double[] penaltyDiscounts) {
+        Integer[] order = new Integer[penaltyDiscounts.length];
+        for (int k = 0; k < order.length; k++) order[k] = k;
+
+        final double[] _penaltyDiscounts = penaltyDiscounts;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer k1, Integer k2) {
+                return Double.compare(_penaltyDiscounts[k2], _penaltyDiscounts[k1]);
+            }
+        });
+
+        boolean caching = score.isCacheResidualVariances();
+        double penaltyDiscount = score.getPenaltyDiscount();
+        score.setCacheResidualVariances(true);
+
+        Graph[] graphs = new Graph[penaltyDiscounts.length];
+        Graph previous = null;
+
+        try {
+            for (int k : order) {
+                score.setPenaltyDiscount(penaltyDiscounts[k]);
+
+                Fges fges = new Fges(score);
+                fges.setKnowledge(knowledge);
+                fges.setFaithfulnessAssumed(faithfulnessAssumed);
+                if (maxDegree != null) fges.setMaxDegree(maxDegree);
+                fges.setVerbose(verbose);
+                fges.setOut(out);
+                fges.setInitialGraph(previous);
+
+                previous = fges.search();
+                graphs[k] = previous;
+
+                if (verbose) {
+                    out.println("Penalty discount " + penaltyDiscounts[k] + ": " + previous.getNumEdges()
+                            + " edges; " + score.getNumCachedResidualVariances() + " residual variances cached.");
+                }
+            }
+        } finally {
+            score.setPenaltyDiscount(penaltyDiscount);
+            score.setCacheResidualVariances(caching);
+        }
+
+        return Arrays.asList(graphs);
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) throw new NullPointerException();
+        this.knowledge = knowledge;
+    }
+
+    public boolean isFaithfulnessAssumed() {
+        return faithfulnessAssumed;
+    }
+
+    public void setFaithfulnessAssumed(boolean faithfulnessAssumed) {
+        this.faithfulnessAssumed = faithfulnessAssumed;
+    }
+
+    /**
+     * @param maxDegree The maximum number of parents any node may have, -1 for unlimited.
+     */
+    public void setMaxDegree(int maxDegree) {
+        if (maxDegree < -1) throw new IllegalArgumentException();
+        this.maxDegree = maxDegree;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+}
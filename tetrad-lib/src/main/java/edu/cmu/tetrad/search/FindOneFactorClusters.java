@@ -27,6 +27,8 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
@@ -263,62 +265,91 @@ public class FindOneFactorClusters {
 
     }
 
-    private Set<Set<Integer>> findPuretriples(List<Integer> allVariables) {
+    private Set<Set<Integer>> findPuretriples(final List<Integer> allVariables) {
         if (allVariables.size() < 4) {
             return new HashSet<>();
         }
 
         log("Finding pure triples.", true);
 
-        ChoiceGenerator gen = new ChoiceGenerator(allVariables.size(), 3);
-        int[] choice;
-        Set<Set<Integer>> puretriples = new HashSet<>();
-        CHOICE:
-        while ((choice = gen.next()) != null) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
+        final Set<Set<Integer>> puretriples = Collections.newSetFromMap(new ConcurrentHashMap<Set<Integer>, Boolean>());
+        final int n = allVariables.size();
+
+        // Triples are split up by their first variable. The Wishart test keeps state between calls, so
+        // it is only used from one thread.
+        class Task extends RecursiveTask<Boolean> {
+            private int from;
+            private int to;
+            private int chunk = 5;
+
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
             }
 
-            int n1 = allVariables.get(choice[0]);
-            int n2 = allVariables.get(choice[1]);
-            int n3 = allVariables.get(choice[2]);
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk || testType != TestType.TETRAD_DELTA) {
+                    for (int i = from; i < to; i++) {
+                        for (int j = i + 1; j < n; j++) {
+                            for (int k = j + 1; k < n; k++) {
+                                if (Thread.currentThread().isInterrupted()) {
+                                    return true;
+                                }
+
+                                List<Integer> triple = triple(allVariables.get(i), allVariables.get(j),
+                                        allVariables.get(k));
+
+                                if (isPureTriple(triple, allVariables)) {
+                                    if (verbose) {
+                                        log("++" + variablesForIndices(triple), false);
+                                    }
+
+                                    puretriples.add(new HashSet<>(triple));
+                                }
+                            }
+                        }
+                    }
 
-            List<Integer> triple = triple(n1, n2, n3);
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
 
-            if (zeroCorr(triple)) continue;
+                    Task left = new Task(from, mid);
+                    Task right = new Task(mid, to);
 
-            for (int o : allVariables) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+                    left.fork();
+                    right.compute();
+                    left.join();
 
-                if (triple.contains(o)) {
-                    continue;
+                    return true;
                 }
+            }
+        }
 
-                List<Integer> quartet = quartet(n1, n2, n3, o);
-
-                boolean vanishes = vanishes(quartet);
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new Task(0, n));
 
-                if (!vanishes) {
-                    continue CHOICE;
-                }
+        return new HashSet<>(puretriples);
+    }
 
-//                if (!(avgSumLnP(quartet) > -20)) {
-//                    continue CHOICE;
-//                }
-            }
+    private boolean isPureTriple(List<Integer> triple, List<Integer> allVariables) {
+        if (zeroCorr(triple)) return false;
 
-            HashSet<Integer> _cluster = new HashSet<>(triple);
+        int n1 = triple.get(0);
+        int n2 = triple.get(1);
+        int n3 = triple.get(2);
 
-            if (verbose) {
-                log("++" + variablesForIndices(triple), false);
+        for (int o : allVariables) {
+            if (triple.contains(o)) {
+                continue;
             }
 
-            puretriples.add(_cluster);
+            if (!vanishes(quartet(n1, n2, n3, o))) {
+                return false;
+            }
         }
 
-        return puretriples;
+        return true;
     }
 
     private Set<Set<Integer>> combinePuretriples(Set<Set<Integer>> puretriples, List<Integer> _variables) {
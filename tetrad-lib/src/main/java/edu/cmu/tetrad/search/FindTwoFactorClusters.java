@@ -27,6 +27,8 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
@@ -246,55 +248,97 @@ public class FindTwoFactorClusters {
 
     }
 
-    private Set<List<Integer>> findPurepentads(List<Integer> variables) {
+    private Set<List<Integer>> findPurepentads(final List<Integer> variables) {
         if (variables.size() < 6) {
             return new HashSet<>();
         }
 
         log("Finding pure pentads.", true);
 
-        ChoiceGenerator gen = new ChoiceGenerator(variables.size(), 5);
-        int[] choice;
-        Set<List<Integer>> purePentads = new HashSet<>();
-        CHOICE:
-        while ((choice = gen.next()) != null) {
-            int n1 = variables.get(choice[0]);
-            int n2 = variables.get(choice[1]);
-            int n3 = variables.get(choice[2]);
-            int n4 = variables.get(choice[3]);
-            int n5 = variables.get(choice[4]);
+        final Set<List<Integer>> purePentads = Collections.newSetFromMap(new ConcurrentHashMap<List<Integer>, Boolean>());
+        final int n = variables.size();
 
-            List<Integer> pentad = pentad(n1, n2, n3, n4, n5);
+        // Pentads are split up by their first variable; the rest of each pentad is chosen from the
+        // variables after it.
+        class Task extends RecursiveTask<Boolean> {
+            private int from;
+            private int to;
+            private int chunk = 1;
 
-            if (zeroCorr(pentad, 4)) continue;
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
 
-            for (int o : variables) {
-                if (pentad.contains(o)) {
-                    continue;
-                }
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        if (n - i - 1 < 4) continue;
+
+                        ChoiceGenerator gen = new ChoiceGenerator(n - i - 1, 4);
+                        int[] choice;
+
+                        while ((choice = gen.next()) != null) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return true;
+                            }
+
+                            List<Integer> pentad = pentad(variables.get(i),
+                                    variables.get(i + 1 + choice[0]), variables.get(i + 1 + choice[1]),
+                                    variables.get(i + 1 + choice[2]), variables.get(i + 1 + choice[3]));
+
+                            if (isPurePentad(pentad, variables)) {
+                                if (verbose) {
+                                    System.out.println(variablesForIndices(pentad));
+                                    log("++" + variablesForIndices(pentad), false);
+                                }
+
+                                purePentads.add(pentad);
+                            }
+                        }
+                    }
 
-                List<Integer> sextet = sextet(n1, n2, n3, n4, n5, o);
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
 
-                Collections.sort(sextet);
+                    Task left = new Task(from, mid);
+                    Task right = new Task(mid, to);
 
-                boolean vanishes = vanishes(sextet);
+                    left.fork();
+                    right.compute();
+                    left.join();
 
-                if (!vanishes) {
-                    continue CHOICE;
+                    return true;
                 }
             }
+        }
 
-            List<Integer> _cluster = new ArrayList<>(pentad);
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new Task(0, n));
 
-            if (verbose) {
-                System.out.println(variablesForIndices(pentad));
-                log("++" + variablesForIndices(pentad), false);
+        return new HashSet<>(purePentads);
+    }
+
+    private boolean isPurePentad(List<Integer> pentad, List<Integer> variables) {
+        if (zeroCorr(pentad, 4)) return false;
+
+        for (int o : variables) {
+            if (pentad.contains(o)) {
+                continue;
             }
 
-            purePentads.add(_cluster);
+            List<Integer> sextet = sextet(pentad.get(0), pentad.get(1), pentad.get(2), pentad.get(3),
+                    pentad.get(4), o);
+
+            Collections.sort(sextet);
+
+            if (!vanishes(sextet)) {
+                return false;
+            }
         }
 
-        return purePentads;
+        return true;
     }
 
     private Set<List<Integer>> combinePurePentads(Set<List<Integer>> purePentads, List<Integer> _variables) {
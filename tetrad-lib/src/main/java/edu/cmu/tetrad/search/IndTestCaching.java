@@ -0,0 +1,478 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the results of an independence test, so that a question asked again, in a later phase of a search or
+ * by another search, is answered without doing the test again. Results are kept in a Store, which may be shared by
+ * any number of these wrappers over the same kind of test on the same data, from any number of threads, and may be
+ * saved to a file and loaded again, so that repeated analyses of a data set start with the results of earlier
+ * ones. A question is keyed by the unordered pair tested and the set conditioned on, as indices of variables in
+ * the store, so the order of the pair and of the conditioning set do not matter. A result is reused only at the
+ * alpha level it was found at; p values do not depend on alpha, but decisions may.
+ *
+ * @author Joseph Ramsey
+ */
+public final class IndTestCaching implements IndependenceTest {
+
+    // The test being remembered.
+    private final IndependenceTest test;
+
+    // Where results are kept.
+    private final Store store;
+
+    // The index in the store of each variable of the test.
+    private final Map<Node, Integer> indices = new HashMap<>();
+
+    // The p value and score of the last test.
+    private volatile double pValue = Double.NaN;
+    private volatile double score = Double.NaN;
+
+    // The number of results found in the store and not found there, since the last reset.
+    private final AtomicLong numHits = new AtomicLong();
+    private final AtomicLong numMisses = new AtomicLong();
+
+    /**
+     * Wraps the given test, with a store of its own holding up to a million results.
+     */
+    public IndTestCaching(IndependenceTest test) {
+        this(test, new Store(test.getVariableNames(), 1000000));
+    }
+
+    /**
+     * Wraps the given test, keeping results in the given store. Every variable of the test must have a variable of
+     * the same name in the store.
+     */
+    public IndTestCaching(IndependenceTest test, Store store) {
+        if (test == null) throw new NullPointerException("Test was not provided.");
+        if (store == null) throw new NullPointerException("Store was not provided.");
+
+        this.test = test;
+        this.store = store;
+
+        for (Node node : test.getVariables()) {
+            Integer index = store.index(node.getName());
+
+            if (index == null) {
+                throw new IllegalArgumentException("Variable " + node + " is not in the store.");
+            }
+
+            indices.put(node, index);
+        }
+    }
+
+    /**
+     * Results of independence tests, shared by any number of IndTestCaching's over the same data, and bounded in
+     * number. Results are kept in two generations: when the newer fills to half the bound, it becomes the older,
+     * and what was older is dropped. A result found in the older generation is moved to the newer, so results in
+     * use are kept.
+     */
+    public static final class Store {
+        private static final int MAGIC = 0x49544331;
+
+        private final List<String> variableNames;
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final int maxSize;
+        private volatile ConcurrentHashMap<Key, Fact> newer = new ConcurrentHashMap<>();
+        private volatile ConcurrentHashMap<Key, Fact> older = new ConcurrentHashMap<>();
+        private final AtomicLong numHits = new AtomicLong();
+        private final AtomicLong numMisses = new AtomicLong();
+
+        /**
+         * @param variableNames The names of the variables results are to be kept for.
+         * @param maxSize       The largest number of results to keep.
+         */
+        public Store(List<String> variableNames, int maxSize) {
+            if (maxSize < 2) throw new IllegalArgumentException("Max size must be at least 2: " + maxSize);
+
+            this.variableNames = new ArrayList<>(variableNames);
+            this.maxSize = maxSize;
+
+            for (int i = 0; i < variableNames.size(); i++) {
+                if (indices.put(variableNames.get(i), i) != null) {
+                    throw new IllegalArgumentException("Duplicate variable name: " + variableNames.get(i));
+                }
+            }
+        }
+
+        /**
+         * Loads a store saved with save.
+         */
+        public static Store load(File file, int maxSize) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                    1 << 16))) {
+                if (in.readInt() != MAGIC) throw new IOException("Not a saved store of test results: " + file);
+
+                int numVariables = in.readInt();
+                List<String> names = new ArrayList<>();
+                for (int i = 0; i < numVariables; i++) names.add(in.readUTF());
+
+                Store store = new Store(names, maxSize);
+                int size = in.readInt();
+
+                for (int k = 0; k < size; k++) {
+                    int[] key = new int[in.readInt()];
+
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = in.readInt();
+                        if (key[i] < 0 || key[i] >= numVariables) throw new IOException("Bad variable index.");
+                    }
+
+                    boolean independent = in.readBoolean();
+                    double alpha = in.readDouble();
+                    double pValue = in.readDouble();
+                    double score = in.readDouble();
+                    store.put(new Key(key), new Fact(independent, alpha, pValue, score));
+                }
+
+                return store;
+            }
+        }
+
+        /**
+         * Saves the results in the store to the given file.
+         */
+        public void save(File file) throws IOException {
+            Map<Key, Fact> all = new HashMap<>(older);
+            all.putAll(newer);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                    1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(variableNames.size());
+                for (String name : variableNames) out.writeUTF(name);
+                out.writeInt(all.size());
+
+                for (Map.Entry<Key, Fact> entry : all.entrySet()) {
+                    int[] key = entry.getKey().key;
+                    out.writeInt(key.length);
+                    for (int i : key) out.writeInt(i);
+
+                    Fact fact = entry.getValue();
+                    out.writeBoolean(fact.independent);
+                    out.writeDouble(fact.alpha);
+                    out.writeDouble(fact.pValue);
+                    out.writeDouble(fact.score);
+                }
+            }
+        }
+
+        /**
+         * @return the names of the variables results are kept for.
+         */
+        public List<String> getVariableNames() {
+            return Collections.unmodifiableList(variableNames);
+        }
+
+        /**
+         * @return the number of results kept, counting each once.
+         */
+        public int size() {
+            Set<Key> keys = new HashSet<>(older.keySet());
+            keys.addAll(newer.keySet());
+            return keys.size();
+        }
+
+        /**
+         * @return the number of lookups that found a result, over all of the tests using this store.
+         */
+        public long getNumHits() {
+            return numHits.get();
+        }
+
+        /**
+         * @return the number of lookups that did not find a result, over all of the tests using this store.
+         */
+        public long getNumMisses() {
+            return numMisses.get();
+        }
+
+        /**
+         * @return the fraction of lookups that found a result, or NaN if there have been none.
+         */
+        public double getHitRate() {
+            return hitRate(numHits.get(), numMisses.get());
+        }
+
+        /**
+         * Removes all results.
+         */
+        public synchronized void clear() {
+            newer = new ConcurrentHashMap<>();
+            older = new ConcurrentHashMap<>();
+        }
+
+        // The index of the variable with the given name, or null if there is none.
+        Integer index(String name) {
+            return indices.get(name);
+        }
+
+        // The result for the given key found at the given alpha, or null if there is none, counting a hit or a
+        // miss.
+        Fact get(Key key, double alpha) {
+            Fact fact = newer.get(key);
+
+            if (fact == null) {
+                fact = older.get(key);
+                if (fact != null) put(key, fact);
+            }
+
+            if (fact != null && Double.compare(fact.alpha, alpha) == 0) {
+                numHits.incrementAndGet();
+                return fact;
+            } else {
+                numMisses.incrementAndGet();
+                return null;
+            }
+        }
+
+        void put(Key key, Fact fact) {
+            if (newer.size() >= maxSize / 2) {
+                synchronized (this) {
+                    if (newer.size() >= maxSize / 2) {
+                        older = newer;
+                        newer = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+
+            newer.put(key, fact);
+        }
+
+        // The key of the question whether the variables at x and y are independent given those at z.
+        static Key key(int x, int y, int[] z) {
+            int[] key = new int[z.length + 2];
+            key[0] = Math.min(x, y);
+            key[1] = Math.max(x, y);
+            System.arraycopy(z, 0, key, 2, z.length);
+            Arrays.sort(key, 2, key.length);
+            return new Key(key);
+        }
+    }
+
+    /**
+     * @return the number of results found in the store since the last reset.
+     */
+    public long getNumHits() {
+        return numHits.get();
+    }
+
+    /**
+     * @return the number of results not found in the store since the last reset.
+     */
+    public long getNumMisses() {
+        return numMisses.get();
+    }
+
+    /**
+     * @return the fraction of results found in the store since the last reset, or NaN if there have been none.
+     */
+    public double getHitRate() {
+        return hitRate(numHits.get(), numMisses.get());
+    }
+
+    /**
+     * Sets the counts of hits and misses to zero, say at the start of a run.
+     */
+    public void resetCounts() {
+        numHits.set(0);
+        numMisses.set(0);
+    }
+
+    /**
+     * @return the store results are kept in.
+     */
+    public Store getStore() {
+        return store;
+    }
+
+    /**
+     * @return the test being remembered.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return new IndTestCaching(test.indTestSubset(vars), store);
+    }
+
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        int[] _z = new int[z.size()];
+        for (int i = 0; i < _z.length; i++) _z[i] = index(z.get(i));
+
+        Key key = Store.key(index(x), index(y), _z);
+        double alpha = alphaOf(test);
+        Fact fact = store.get(key, alpha);
+
+        if (fact != null) {
+            numHits.incrementAndGet();
+        } else {
+            numMisses.incrementAndGet();
+
+            boolean independent = test.isIndependent(x, y, z);
+            fact = new Fact(independent, alpha, test.getPValue(), test.getScore());
+            store.put(key, fact);
+        }
+
+        this.pValue = fact.pValue;
+        this.score = fact.score;
+        return fact.independent;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public double getPValue() {
+        return pValue;
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    public void setAlpha(double alpha) {
+        test.setAlpha(alpha);
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public String toString() {
+        return test.toString();
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+        if (index == null) throw new IllegalArgumentException("Not a variable of the test: " + node);
+        return index;
+    }
+
+    // Some tests have no alpha; their results are kept under NaN.
+    static double alphaOf(IndependenceTest test) {
+        try {
+            return test.getAlpha();
+        } catch (UnsupportedOperationException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double hitRate(long hits, long misses) {
+        return hits + misses == 0 ? Double.NaN : hits / (double) (hits + misses);
+    }
+
+    // A question, as variable indices: the pair in increasing order, then the conditioning set in increasing
+    // order.
+    static final class Key {
+        private final int[] key;
+        private final int hash;
+
+        Key(int[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(key, ((Key) o).key);
+        }
+    }
+
+    // An answer: the decision, the alpha it was made at, the p value and the score.
+    static final class Fact {
+        final boolean independent;
+        final double alpha;
+        final double pValue;
+        final double score;
+
+        Fact(boolean independent, double alpha, double pValue, double score) {
+            this.independent = independent;
+            this.alpha = alpha;
+            this.pValue = pValue;
+            this.score = score;
+        }
+    }
+}
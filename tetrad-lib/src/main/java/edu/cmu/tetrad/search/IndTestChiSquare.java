@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.AdTreeStatistics;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
@@ -90,6 +91,18 @@ public final class IndTestChiSquare implements IndependenceTest {
      * @param alpha   the significance level of the tests.
      */
     public IndTestChiSquare(DataSet dataSet, double alpha) {
+        this(dataSet, alpha, null);
+    }
+
+    /**
+     * Constructs a new independence checker for discrete data using a chi square test, counting from the given
+     * statistics, which must have been made from the data set and may be shared with scores and estimators over it.
+     *
+     * @param dataSet    the discrete data set.
+     * @param alpha      the significance level of the tests.
+     * @param statistics statistics for the data set, or null if the test is to count for itself.
+     */
+    public IndTestChiSquare(DataSet dataSet, double alpha, AdTreeStatistics statistics) {
 
         // The g square test requires as parameters: (a) the data set
         // itself, (b) an array containing the number of values for
@@ -113,7 +126,7 @@ public final class IndTestChiSquare implements IndependenceTest {
             numVals[i] = v.getNumCategories();
         }
 
-        this.chiSquareTest = new ChiSquareTest(dataSet, alpha);
+        this.chiSquareTest = new ChiSquareTest(dataSet, alpha, statistics);
     }
 
     /**
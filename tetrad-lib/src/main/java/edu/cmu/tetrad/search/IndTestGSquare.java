@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.AdTreeStatistics;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
@@ -96,6 +97,18 @@ public final class IndTestGSquare implements IndependenceTest {
      * @param alpha   the significance level of the tests.
      */
     public IndTestGSquare(DataSet dataSet, double alpha) {
+        this(dataSet, alpha, null);
+    }
+
+    /**
+     * Constructs a new independence checker for discrete data using a g square test, counting from the given
+     * statistics, which must have been made from the data set and may be shared with scores and estimators over it.
+     *
+     * @param dataSet    the discrete data set.
+     * @param alpha      the significance level of the tests.
+     * @param statistics statistics for the data set, or null if the test is to count for itself.
+     */
+    public IndTestGSquare(DataSet dataSet, double alpha, AdTreeStatistics statistics) {
 
         // The g square test requires as parameters: (a) the data set
         // itself, (b) an array containing the number of values for
@@ -120,7 +133,7 @@ public final class IndTestGSquare implements IndependenceTest {
             numVals[i] = v.getNumCategories();
         }
 
-        this.gSquareTest = new GSquareTest(dataSet, alpha);
+        this.gSquareTest = new GSquareTest(dataSet, alpha, statistics);
     }
 
     /**
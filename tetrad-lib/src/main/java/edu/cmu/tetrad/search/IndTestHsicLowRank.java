@@ -0,0 +1,648 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.kernel.KernelGaussian;
+import edu.cmu.tetrad.search.kernel.KernelUtils;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradLogger;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks the conditional independence X _||_ Y | S using the Hilbert-Schmidt Independence Criterion (HSIC), with
+ * the Gaussian kernels replaced by random Fourier feature approximations. The Gram matrices are never formed; for
+ * D features the statistic is computed in O(N D^2) time and O(N D) memory, so the test can be used with tens of
+ * thousands of samples. For a nonempty conditioning set, the features of X and Y are residualized on the features
+ * of S by ridge regression, and the statistic is the squared Hilbert-Schmidt norm of the cross-covariance of the
+ * residuals. The null distribution is approximated by permuting the residuals of Y; permutations are run in
+ * parallel on the low-rank factors.
+ * <p>
+ * The random features and permutations are drawn from a seed fixed when the test is made (see setSeed), so asking
+ * the same question twice, with the variables in any order, gives the same answer.
+ *
+ * @author Joseph Ramsey
+ * @see IndTestHsic
+ */
+public final class IndTestHsicLowRank implements IndependenceTest {
+
+    /**
+     * The variables of the data set, in order. (Unmodifiable list.)
+     */
+    private List<Node> variables;
+
+    /**
+     * The data set being analyzed.
+     */
+    private DataSet dataSet;
+
+    /**
+     * The data, by column.
+     */
+    private double[][] columns;
+
+    /**
+     * Column indices of the variables.
+     */
+    private Map<Node, Integer> indices;
+
+    /**
+     * The significance level of the independence tests.
+     */
+    private double alpha;
+
+    /**
+     * The p value of the most recent test.
+     */
+    private double pValue = Double.NaN;
+
+    /**
+     * The value of the empirical estimate of HSIC for the most recent test.
+     */
+    private double hsic = Double.NaN;
+
+    /**
+     * Number of random features for X and for Y.
+     */
+    private int numFeatures = 25;
+
+    /**
+     * Number of random features for the conditioning set.
+     */
+    private int numConditioningFeatures = 100;
+
+    /**
+     * Number of permutations to approximate the null distribution.
+     */
+    private int perms = 100;
+
+    /**
+     * The ridge regularizer for residualizing on the conditioning set, relative to the sample size.
+     */
+    private double regularizer = 0.0001;
+
+    /**
+     * Maximum number of points used in the median distance heuristic for bandwidths.
+     */
+    private int maxBandwidthPoints = 1000;
+
+    /**
+     * The seed for the random features and permutations.
+     */
+    private long seed = RandomUtil.getInstance().nextLong();
+
+    /**
+     * Formats as 0.0000.
+     */
+    private static NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+    private boolean verbose = false;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a new low rank HSIC independence test. The given significance level is used.
+     *
+     * @param dataSet A data set containing only continuous columns.
+     * @param alpha   The alpha level of the test.
+     */
+    public IndTestHsicLowRank(DataSet dataSet, double alpha) {
+        if (!(dataSet.isContinuous())) {
+            throw new IllegalArgumentException("Data set must be continuous.");
+        }
+
+        this.variables = Collections.unmodifiableList(dataSet.getVariables());
+        this.dataSet = dataSet;
+        setAlpha(alpha);
+
+        int m = dataSet.getNumRows();
+        this.columns = new double[dataSet.getNumColumns()][m];
+        this.indices = new HashMap<>();
+
+        for (int j = 0; j < dataSet.getNumColumns(); j++) {
+            for (int i = 0; i < m; i++) {
+                columns[j][i] = dataSet.getDouble(i, j);
+            }
+
+            indices.put(variables.get(j), j);
+        }
+    }
+
+    //==========================PUBLIC METHODS=============================//
+
+    /**
+     * Creates a new IndTestHsicLowRank instance for a subset of the variables.
+     */
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        if (vars.isEmpty()) {
+            throw new IllegalArgumentException("Subset may not be empty.");
+        }
+
+        int[] _indices = new int[vars.size()];
+
+        for (int i = 0; i < _indices.length; i++) {
+            Integer index = indices.get(vars.get(i));
+
+            if (index == null) {
+                throw new IllegalArgumentException("All vars must be original vars");
+            }
+
+            _indices[i] = index;
+        }
+
+        IndTestHsicLowRank test = new IndTestHsicLowRank(this.dataSet.subsetColumns(_indices), getAlpha());
+        test.setNumFeatures(numFeatures);
+        test.setNumConditioningFeatures(numConditioningFeatures);
+        test.setPerms(perms);
+        test.setRegularizer(regularizer);
+        test.setSeed(seed);
+        return test;
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z.
+     *
+     * @param x the one variable being compared.
+     * @param y the second variable being compared.
+     * @param z the list of conditioning variables.
+     * @return true iff x _||_ y | z.
+     */
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        // The question is put in a fixed order, and each set of variables draws its features from a seed of its
+        // own, so that the answer does not depend on the order in which x, y and z are given.
+        Node _x = x;
+        Node _y = y;
+
+        if (indices.get(x) > indices.get(y)) {
+            _x = y;
+            _y = x;
+        }
+
+        List<Node> _z = sorted(z);
+
+        double[][] fx = center(features(Collections.singletonList(_x), numFeatures));
+        double[][] fy = center(features(Collections.singletonList(_y), numFeatures));
+
+        if (!_z.isEmpty()) {
+            double[][] fz = center(features(_z, numConditioningFeatures));
+            double[][] gram = ridgeGram(fz);
+            fx = residuals(fx, fz, gram);
+            fy = residuals(fy, fz, gram);
+        }
+
+        final int m = sampleSize();
+        final double stat = statistic(fx, fy, null);
+        this.hsic = stat / Math.pow(m - 1, 2);
+
+        // permutation replicates, in parallel
+        List<Node> all = new ArrayList<>(_z);
+        all.add(_x);
+        all.add(_y);
+        final long permSeed = random(all).nextLong();
+        final double[][] _fx = fx;
+        final double[][] _fy = fy;
+
+        class Task extends RecursiveTask<Integer> {
+            private int from;
+            private int to;
+            private int chunk = 5;
+
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Integer compute() {
+                if (to - from <= chunk) {
+                    int count = 0;
+
+                    for (int p = from; p < to; p++) {
+                        int[] perm = permutation(m, new Random(permSeed + p));
+                        if (statistic(_fx, _fy, perm) > stat) count++;
+                    }
+
+                    return count;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    Task left = new Task(from, mid);
+                    Task right = new Task(mid, to);
+
+                    left.fork();
+                    int count = right.compute();
+                    return count + left.join();
+                }
+            }
+        }
+
+        int exceed = ForkJoinPoolInstance.getInstance().getPool().invoke(new Task(0, perms));
+        this.pValue = (exceed + 1.0) / (perms + 1);
+
+        // reject if pvalue <= alpha
+        if (this.pValue <= this.alpha) {
+            TetradLogger.getInstance().log("dependencies", SearchLogUtils
+                    .dependenceFactMsg(x, y, z, getPValue()));
+            return false;
+        }
+
+        if (verbose) {
+            TetradLogger.getInstance().log("independencies", SearchLogUtils
+                    .independenceFactMsg(x, y, z, getPValue()));
+        }
+
+        return true;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        List<Node> zList = Arrays.asList(z);
+        return isDependent(x, y, zList);
+    }
+
+    /**
+     * @return the empirical HSIC for the most recent test.
+     */
+    public double getHsic() {
+        return this.hsic;
+    }
+
+    /**
+     * @return the probability associated with the most recently computed independence test.
+     */
+    public double getPValue() {
+        return this.pValue;
+    }
+
+    /**
+     * Sets the significance level at which independence judgments should be made.
+     */
+    public void setAlpha(double alpha) {
+        if (alpha < 0.0 || alpha > 1.0) {
+            throw new IllegalArgumentException("Significance out of range.");
+        }
+
+        this.alpha = alpha;
+    }
+
+    /**
+     * Gets the getModel significance level.
+     */
+    public double getAlpha() {
+        return this.alpha;
+    }
+
+    /**
+     * Sets the number of random Fourier features used for each of X and Y.
+     */
+    public void setNumFeatures(int numFeatures) {
+        if (numFeatures < 1) throw new IllegalArgumentException("Number of features must be >= 1");
+        this.numFeatures = numFeatures;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * Sets the number of random Fourier features used for the conditioning set.
+     */
+    public void setNumConditioningFeatures(int numConditioningFeatures) {
+        if (numConditioningFeatures < 1) throw new IllegalArgumentException("Number of features must be >= 1");
+        this.numConditioningFeatures = numConditioningFeatures;
+    }
+
+    public int getNumConditioningFeatures() {
+        return numConditioningFeatures;
+    }
+
+    /**
+     * Set the number of permutations to use
+     */
+    public void setPerms(int perms) {
+        if (perms < 1) throw new IllegalArgumentException("Number of permutations must be >= 1");
+        this.perms = perms;
+    }
+
+    public int getPerms() {
+        return this.perms;
+    }
+
+    /**
+     * Sets the ridge regularizer used when residualizing on the conditioning set.
+     */
+    public void setRegularizer(double regularizer) {
+        this.regularizer = regularizer;
+    }
+
+    public double getRegularizer() {
+        return this.regularizer;
+    }
+
+    /**
+     * Sets the seed from which the random features and permutations are drawn.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the maximum number of points used to choose kernel bandwidths by the median distance heuristic.
+     */
+    public void setMaxBandwidthPoints(int maxBandwidthPoints) {
+        this.maxBandwidthPoints = maxBandwidthPoints;
+    }
+
+    /**
+     * @return the list of variables over which this independence checker is capable of determinine independence
+     * relations.
+     */
+    public List<Node> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the variable with the given name.
+     */
+    public Node getVariable(String name) {
+        for (Node variable : getVariables()) {
+            if (variable.getName().equals(name)) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the list of variable varNames.
+     */
+    public List<String> getVariableNames() {
+        List<String> variableNames = new ArrayList<>();
+        for (Node variable : getVariables()) {
+            variableNames.add(variable.getName());
+        }
+        return variableNames;
+    }
+
+    public boolean determines(List<Node> z, Node x) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Method not implemented");
+    }
+
+    /**
+     * @return the data set being analyzed.
+     */
+    public DataSet getData() {
+        return dataSet;
+    }
+
+    @Override
+    public ICovarianceMatrix getCov() {
+        return null;
+    }
+
+    @Override
+    public List<DataSet> getDataSets() {
+        return null;
+    }
+
+    @Override
+    public int getSampleSize() {
+        return sampleSize();
+    }
+
+    @Override
+    public List<TetradMatrix> getCovMatrices() {
+        return null;
+    }
+
+    @Override
+    public double getScore() {
+        return getPValue();
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * @return a string representation of this test.
+     */
+    public String toString() {
+        return "HSIC (low rank), alpha = " + nf.format(getAlpha());
+    }
+
+    //==========================PRIVATE METHODS============================//
+
+    private int sampleSize() {
+        return this.dataSet.getNumRows();
+    }
+
+    // Random Fourier features for the product of Gaussian kernels over the given variables, with bandwidths
+    // chosen by the median distance heuristic.
+    private double[][] features(List<Node> nodes, int numFeatures) {
+        Random random = random(nodes);
+        List<KernelGaussian> kernels = new ArrayList<>();
+        double[][] data = new double[nodes.size()][];
+
+        for (int k = 0; k < nodes.size(); k++) {
+            data[k] = columns[indices.get(nodes.get(k))];
+            kernels.add(new KernelGaussian(KernelUtils.medianBandwidth(data[k], maxBandwidthPoints, random)));
+        }
+
+        return KernelUtils.randomFourierFeatures(kernels, data, numFeatures, random);
+    }
+
+    // The given variables in column order.
+    private List<Node> sorted(List<Node> nodes) {
+        List<Node> sorted = new ArrayList<>(nodes);
+
+        Collections.sort(sorted, new Comparator<Node>() {
+            public int compare(Node n1, Node n2) {
+                return Integer.compare(indices.get(n1), indices.get(n2));
+            }
+        });
+
+        return sorted;
+    }
+
+    // A generator seeded from the test's seed and the columns of the given variables, in any order.
+    private Random random(List<Node> nodes) {
+        int[] cols = new int[nodes.size()];
+
+        for (int k = 0; k < cols.length; k++) {
+            cols[k] = indices.get(nodes.get(k));
+        }
+
+        Arrays.sort(cols);
+        long s = seed;
+
+        for (int col : cols) {
+            s = 31 * s + col + 1;
+        }
+
+        return new Random(s);
+    }
+
+    // Centers each feature in place.
+    private static double[][] center(double[][] f) {
+        for (double[] row : f) {
+            double mean = 0.0;
+            for (double v : row) mean += v;
+            mean /= row.length;
+            for (int i = 0; i < row.length; i++) row[i] -= mean;
+        }
+
+        return f;
+    }
+
+    // Cholesky factor of Fz Fz' + regularizer * m * I, lower triangular.
+    private double[][] ridgeGram(double[][] fz) {
+        int k = fz.length;
+        int m = fz[0].length;
+        double[][] a = new double[k][k];
+
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j <= i; j++) {
+                a[i][j] = dot(fz[i], fz[j]);
+            }
+            a[i][i] += regularizer * m;
+        }
+
+        for (int j = 0; j < k; j++) {
+            double d = a[j][j];
+            for (int p = 0; p < j; p++) d -= a[j][p] * a[j][p];
+            double l = Math.sqrt(d);
+            a[j][j] = l;
+
+            for (int i = j + 1; i < k; i++) {
+                double s = a[i][j];
+                for (int p = 0; p < j; p++) s -= a[i][p] * a[j][p];
+                a[i][j] = s / l;
+            }
+        }
+
+        return a;
+    }
+
+    // Residuals of each feature in f after ridge regression on the features fz, given the Cholesky factor of
+    // the regularized Gram matrix of fz.
+    private static double[][] residuals(double[][] f, double[][] fz, double[][] chol) {
+        int k = fz.length;
+        int m = f[0].length;
+        double[][] r = new double[f.length][];
+        double[] b = new double[k];
+
+        for (int a = 0; a < f.length; a++) {
+            for (int c = 0; c < k; c++) b[c] = dot(fz[c], f[a]);
+
+            // forward and back substitution
+            for (int i = 0; i < k; i++) {
+                double s = b[i];
+                for (int p = 0; p < i; p++) s -= chol[i][p] * b[p];
+                b[i] = s / chol[i][i];
+            }
+
+            for (int i = k - 1; i >= 0; i--) {
+                double s = b[i];
+                for (int p = i + 1; p < k; p++) s -= chol[p][i] * b[p];
+                b[i] = s / chol[i][i];
+            }
+
+            double[] res = f[a].clone();
+
+            for (int c = 0; c < k; c++) {
+                double coef = b[c];
+                double[] z = fz[c];
+                for (int i = 0; i < m; i++) res[i] -= coef * z[i];
+            }
+
+            r[a] = res;
+        }
+
+        return r;
+    }
+
+    // Squared Frobenius norm of fx' fy, with the samples of fy permuted by perm if it is not null.
+    private static double statistic(double[][] fx, double[][] fy, int[] perm) {
+        int m = fx[0].length;
+        double sum = 0.0;
+        double[] permuted = perm == null ? null : new double[m];
+
+        for (double[] y : fy) {
+            if (perm != null) {
+                for (int i = 0; i < m; i++) permuted[i] = y[perm[i]];
+                y = permuted;
+            }
+
+            for (double[] x : fx) {
+                double c = dot(x, y);
+                sum += c * c;
+            }
+        }
+
+        return sum;
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0.0;
+        for (int i = 0; i < x.length; i++) sum += x[i] * y[i];
+        return sum;
+    }
+
+    private static int[] permutation(int m, Random random) {
+        int[] perm = new int[m];
+        for (int i = 0; i < m; i++) perm[i] = i;
+
+        for (int i = m - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+
+        return perm;
+    }
+}
@@ -0,0 +1,383 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the Markov blankets of a batch of targets concurrently, with any of the Markov blanket searches (Iamb,
+ * InterIamb, HitonMb, Mmmb, GrowShrink...). The searches share one store of independence results (see
+ * IndTestCaching), keyed by the unordered pair tested and the set conditioned on, so that a test done for one
+ * target is not done again for another whose neighborhood overlaps it. Tests not in the store are done on a copy
+ * of the test for each thread (see indTestSubset), or, for tests that cannot be copied, one at a time on the test
+ * given.
+ *
+ * @author Joseph Ramsey
+ */
+public class MbService {
+
+    /**
+     * Makes a Markov blanket search using a given test.
+     */
+    public interface Searcher {
+        MbSearch create(IndependenceTest test);
+    }
+
+    /**
+     * The Markov blanket found for one target.
+     */
+    public static class Result {
+        private final Node target;
+        private final List<Node> mb;
+        private final int numTests;
+        private final int numCached;
+        private final long elapsedTime;
+
+        private Result(Node target, List<Node> mb, int numTests, int numCached, long elapsedTime) {
+            this.target = target;
+            this.mb = mb;
+            this.numTests = numTests;
+            this.numCached = numCached;
+            this.elapsedTime = elapsedTime;
+        }
+
+        public Node getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the Markov blanket of the target.
+         */
+        public List<Node> getMb() {
+            return mb;
+        }
+
+        /**
+         * @return the number of independence tests the search asked for.
+         */
+        public int getNumIndependenceTests() {
+            return numTests;
+        }
+
+        /**
+         * @return the number of those tests that were answered from the store.
+         */
+        public int getNumCached() {
+            return numCached;
+        }
+
+        /**
+         * @return the time the search took, in milliseconds.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        public String toString() {
+            return target + ": " + mb + " (" + numTests + " tests, " + numCached + " cached, " + elapsedTime
+                    + " ms)";
+        }
+    }
+
+    // The test given, and copies of it, one for each thread, if it can be copied.
+    private final IndependenceTest test;
+    private final ThreadLocal<IndependenceTest> copies;
+    private volatile boolean copyable = true;
+
+    private final Searcher searcher;
+    private final Map<Node, Integer> indices = new HashMap<>();
+
+    // Independence results.
+    private final IndTestCaching.Store store;
+
+    /**
+     * @param test     The independence test; the searches are over its variables.
+     * @param searcher Makes the search to run for each target.
+     */
+    public MbService(IndependenceTest test, Searcher searcher) {
+        this(test, searcher, new IndTestCaching.Store(test.getVariableNames(), 1000000));
+    }
+
+    /**
+     * @param test     The independence test; the searches are over its variables.
+     * @param searcher Makes the search to run for each target.
+     * @param store    Where to keep independence results; it may hold results already, say loaded from a file.
+     *                 Every variable of the test must have a variable of the same name in the store.
+     */
+    public MbService(final IndependenceTest test, Searcher searcher, IndTestCaching.Store store) {
+        if (test == null) throw new NullPointerException("Test was not provided.");
+        if (searcher == null) throw new NullPointerException("Searcher was not provided.");
+        if (store == null) throw new NullPointerException("Store was not provided.");
+
+        this.test = test;
+        this.searcher = searcher;
+        this.store = store;
+
+        for (Node node : test.getVariables()) {
+            Integer index = store.index(node.getName());
+            if (index == null) throw new IllegalArgumentException("Variable " + node + " is not in the store.");
+            indices.put(node, index);
+        }
+
+        this.copies = new ThreadLocal<IndependenceTest>() {
+            protected IndependenceTest initialValue() {
+                IndependenceTest copy;
+
+                try {
+                    copy = test.indTestSubset(test.getVariables());
+                } catch (Exception e) {
+                    copy = null;
+                }
+
+                // Some tests return themselves.
+                if (copy == null || copy == test) {
+                    copyable = false;
+                    return null;
+                }
+
+                return copy;
+            }
+        };
+    }
+
+    /**
+     * Finds the Markov blankets of the given targets, in parallel.
+     *
+     * @return the results, in the order of the targets.
+     */
+    public List<Result> findMbs(List<String> targetNames) {
+        final Result[] results = new Result[targetNames.size()];
+        final List<Node> targets = new ArrayList<>();
+
+        for (String name : targetNames) {
+            Node target = test.getVariable(name);
+            if (target == null) throw new IllegalArgumentException("No variable named " + name);
+            targets.add(target);
+        }
+
+        class TargetTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private TargetTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from == 1) {
+                    results[from] = findMb(targets.get(from));
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new TargetTask(from, mid), new TargetTask(mid, to));
+                }
+            }
+        }
+
+        if (!targets.isEmpty()) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new TargetTask(0, targets.size()));
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Merges the neighborhoods found into a single graph, with an undirected edge from each target to each node
+     * of its Markov blanket. A pair found from both ends is joined once.
+     */
+    public static Graph merge(List<Result> results) {
+        Set<Node> nodes = new LinkedHashSet<>();
+
+        for (Result result : results) {
+            nodes.add(result.getTarget());
+            nodes.addAll(result.getMb());
+        }
+
+        Graph graph = new EdgeListGraph(new ArrayList<>(nodes));
+
+        for (Result result : results) {
+            for (Node node : result.getMb()) {
+                if (!graph.isAdjacentTo(result.getTarget(), node)) {
+                    graph.addUndirectedEdge(result.getTarget(), node);
+                }
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * @return the store of independence results, which may be saved for later runs.
+     */
+    public IndTestCaching.Store getStore() {
+        return store;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private Result findMb(Node target) {
+        long start = System.currentTimeMillis();
+        CachedTest view = new CachedTest();
+        List<Node> mb = searcher.create(view).findMb(target.getName());
+        return new Result(target, mb, view.numTests, view.numCached, System.currentTimeMillis() - start);
+    }
+
+    // Does an independence test not in the store, and stores its result.
+    private IndTestCaching.Fact test(IndTestCaching.Key key, Node x, Node y, List<Node> z, double alpha) {
+        IndependenceTest _test = copyable ? copies.get() : null;
+        IndTestCaching.Fact fact;
+
+        if (_test != null) {
+            boolean independent = _test.isIndependent(x, y, z);
+            fact = new IndTestCaching.Fact(independent, alpha, _test.getPValue(), _test.getScore());
+        } else {
+            synchronized (test) {
+                boolean independent = test.isIndependent(x, y, z);
+                fact = new IndTestCaching.Fact(independent, alpha, test.getPValue(), test.getScore());
+            }
+        }
+
+        store.put(key, fact);
+        return fact;
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+        if (index == null) throw new IllegalArgumentException("Not a variable of the test: " + node);
+        return index;
+    }
+
+    // The test as seen by the search for a single target, which runs in a single thread: results come from the
+    // shared store, and the p value and score are those of the last test this search asked for.
+    private class CachedTest implements IndependenceTest {
+        private double pValue = Double.NaN;
+        private double score = Double.NaN;
+        private int numTests = 0;
+        private int numCached = 0;
+
+        public IndependenceTest indTestSubset(List<Node> vars) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean isIndependent(Node x, Node y, List<Node> z) {
+            numTests++;
+
+            int[] _z = new int[z.size()];
+            for (int i = 0; i < _z.length; i++) _z[i] = index(z.get(i));
+
+            IndTestCaching.Key key = IndTestCaching.Store.key(index(x), index(y), _z);
+            double alpha = IndTestCaching.alphaOf(test);
+            IndTestCaching.Fact fact = store.get(key, alpha);
+
+            if (fact != null) {
+                numCached++;
+            } else {
+                fact = test(key, x, y, z, alpha);
+            }
+
+            pValue = fact.pValue;
+            score = fact.score;
+            return fact.independent;
+        }
+
+        public boolean isIndependent(Node x, Node y, Node... z) {
+            return isIndependent(x, y, Arrays.asList(z));
+        }
+
+        public boolean isDependent(Node x, Node y, List<Node> z) {
+            return !isIndependent(x, y, z);
+        }
+
+        public boolean isDependent(Node x, Node y, Node... z) {
+            return !isIndependent(x, y, z);
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        public List<Node> getVariables() {
+            return test.getVariables();
+        }
+
+        public Node getVariable(String name) {
+            return test.getVariable(name);
+        }
+
+        public List<String> getVariableNames() {
+            return test.getVariableNames();
+        }
+
+        public boolean determines(List<Node> z, Node y) {
+            synchronized (test) {
+                return test.determines(z, y);
+            }
+        }
+
+        public double getAlpha() {
+            return test.getAlpha();
+        }
+
+        public void setAlpha(double alpha) {
+            throw new UnsupportedOperationException("The alpha of a shared test may not be changed.");
+        }
+
+        public DataModel getData() {
+            return test.getData();
+        }
+
+        public ICovarianceMatrix getCov() {
+            return test.getCov();
+        }
+
+        public List<DataSet> getDataSets() {
+            return test.getDataSets();
+        }
+
+        public int getSampleSize() {
+            return test.getSampleSize();
+        }
+
+        public List<TetradMatrix> getCovMatrices() {
+            return test.getCovMatrices();
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public String toString() {
+            return "Cached " + test;
+        }
+    }
+}
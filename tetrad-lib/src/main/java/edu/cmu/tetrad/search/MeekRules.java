@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
@@ -42,6 +43,9 @@ public class MeekRules implements ImpliedOrientation {
 
     private IKnowledge knowledge;
 
+    // The knowledge, compiled for the nodes of the graph; made on first use if not given.
+    private CompiledKnowledge compiledKnowledge;
+
     //True if cycles are to be aggressively prevented. May be expensive for large graphs (but also useful for large
     //graphs).
     private boolean aggressivelyPreventCycles = false;
@@ -93,13 +97,26 @@ public class MeekRules implements ImpliedOrientation {
         this.visited.addAll(nodes);
 
         TetradLogger.getInstance().log("impliedOrientations", "Starting Orientation Step D.");
-        orientUsingMeekRulesLocally(knowledge, graph);
+        if (knowledge != null && (compiledKnowledge == null || !compiledKnowledge.isFor(knowledge))) {
+            compiledKnowledge = new CompiledKnowledge(knowledge, graph.getNodes());
+        }
+
+        orientUsingMeekRulesLocally(compiledKnowledge, graph);
         TetradLogger.getInstance().log("impliedOrientations", "Finishing Orientation Step D.");
 
     }
 
     public void setKnowledge(IKnowledge knowledge) {
         this.knowledge = knowledge;
+        this.compiledKnowledge = null;
+    }
+
+    /**
+     * Sets knowledge already compiled, so that it need not be compiled again for each call.
+     */
+    public void setKnowledge(CompiledKnowledge knowledge) {
+        this.knowledge = knowledge == null ? null : knowledge.getKnowledge();
+        this.compiledKnowledge = knowledge;
     }
 
 
@@ -137,7 +154,7 @@ public class MeekRules implements ImpliedOrientation {
 
     //============================== Private Methods ===================================//
 
-    private void orientUsingMeekRulesLocally(IKnowledge knowledge, Graph graph) {
+    private void orientUsingMeekRulesLocally(CompiledKnowledge knowledge, Graph graph) {
 
         oriented = new HashSet<>();
 
@@ -175,7 +192,7 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
-    private void runMeekRules(Node node, Graph graph, IKnowledge knowledge) {
+    private void runMeekRules(Node node, Graph graph, CompiledKnowledge knowledge) {
         meekR1(node, graph, knowledge);
         meekR2(node, graph, knowledge);
         meekR3(node, graph, knowledge);
@@ -185,7 +202,7 @@ public class MeekRules implements ImpliedOrientation {
     /**
      * Meek's rule R1: if a-->b, b---c, and a not adj to c, then a-->c
      */
-    private void meekR1(Node b, Graph graph, IKnowledge knowledge) {
+    private void meekR1(Node b, Graph graph, CompiledKnowledge knowledge) {
         List<Node> adjacentNodes = graph.getAdjacentNodes(b);
 
         if (adjacentNodes.size() < 2) {
@@ -205,7 +222,7 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
-    private void r1Helper(Node a, Node b, Node c, Graph graph, IKnowledge knowledge) {
+    private void r1Helper(Node a, Node b, Node c, Graph graph, CompiledKnowledge knowledge) {
         if (!graph.isAdjacentTo(a, c) && graph.isDirectedFromTo(a, b) && graph.isUndirectedFromTo(b, c)) {
             if (!isUnshieldedNoncollider(a, b, c, graph)) {
                 return;
@@ -223,7 +240,7 @@ public class MeekRules implements ImpliedOrientation {
     /**
      * If a-->b-->c, a--c, then b-->c.
      */
-    private void meekR2(Node c, Graph graph, IKnowledge knowledge) {
+    private void meekR2(Node c, Graph graph, CompiledKnowledge knowledge) {
         List<Node> adjacentNodes = graph.getAdjacentNodes(c);
 
         if (adjacentNodes.size() < 2) {
@@ -245,7 +262,7 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
-    private void r2Helper(Node a, Node b, Node c, Graph graph, IKnowledge knowledge) {
+    private void r2Helper(Node a, Node b, Node c, Graph graph, CompiledKnowledge knowledge) {
         if (graph.isDirectedFromTo(a, b) &&
                 graph.isDirectedFromTo(b, c) &&
                 graph.isUndirectedFromTo(a, c)) {
@@ -258,55 +275,83 @@ public class MeekRules implements ImpliedOrientation {
 
     /**
      * Meek's rule R3. If a--b, a--c, a--d, c-->b, d-->b, then orient a-->b.
+     * <p>
+     * Here a is the node into which the edge is to be oriented and d the node it is to be oriented from: for each
+     * d---a, the b and c of a kite are the parents of a joined to d by undirected edges. That intersection is found
+     * in time linear in the degrees of a and d, and only its pairs are looked at.
      */
-    private void meekR3(Node a, Graph graph, IKnowledge knowledge) {
+    private void meekR3(Node a, Graph graph, CompiledKnowledge knowledge) {
         List<Node> adjacentNodes = graph.getAdjacentNodes(a);
 
         if (adjacentNodes.size() < 3) {
             return;
         }
 
+        Set<Node> parents = new HashSet<>();
+
+        for (Edge edge : graph.getEdges(a)) {
+            if (edge.pointsTowards(a)) {
+                parents.add(edge.getDistalNode(a));
+            }
+        }
+
+        if (parents.size() < 2) {
+            return;
+        }
+
         for (Node d : adjacentNodes) {
-            if (Edges.isUndirectedEdge(graph.getEdge(a, d))) {
-                List<Node> otherAdjacents = new ArrayList<>(adjacentNodes);
-                otherAdjacents.remove(d);
+            if (!Edges.isUndirectedEdge(graph.getEdge(a, d))) {
+                continue;
+            }
 
-                ChoiceGenerator cg = new ChoiceGenerator(otherAdjacents.size(), 2);
-                int[] choice;
+            if (!isArrowpointAllowed(d, a, knowledge)) {
+                continue;
+            }
 
-                while ((choice = cg.next()) != null) {
-                    List<Node> nodes = GraphUtils.asList(choice, otherAdjacents);
-                    Node b = nodes.get(0);
-                    Node c = nodes.get(1);
+            Set<Node> undirected = new HashSet<>();
 
-                    boolean isKite = isKite(a, d, b, c, graph);
+            for (Edge edge : graph.getEdges(d)) {
+                if (Edges.isUndirectedEdge(edge)) {
+                    undirected.add(edge.getDistalNode(d));
+                }
+            }
 
-                    if (isKite) {
-                        if (isArrowpointAllowed(d, a, knowledge)) {
-                            if (!isUnshieldedNoncollider(c, d, b, graph)) {
-                                continue;
-                            }
+            // The kite nodes, in the order of the adjacents of a.
+            List<Node> kiteNodes = new ArrayList<>();
 
-                            direct(d, a, graph);
-                            log(SearchLogUtils.edgeOrientedMsg("Meek R3", graph.getEdge(d, a)));
-                        }
-                    }
+            for (Node b : adjacentNodes) {
+                if (b != d && parents.contains(b) && undirected.contains(b)) {
+                    kiteNodes.add(b);
                 }
             }
-        }
-    }
 
-    private boolean isKite(Node a, Node d, Node b, Node c, Graph graph) {
-        boolean b4 = graph.isUndirectedFromTo(d, c);
-        boolean b5 = graph.isUndirectedFromTo(d, b);
-        boolean b6 = graph.isDirectedFromTo(b, a);
-        boolean b7 = graph.isDirectedFromTo(c, a);
-        boolean b8 = graph.isUndirectedFromTo(d, a);
+            if (kiteNodes.size() < 2) {
+                continue;
+            }
+
+            ChoiceGenerator cg = new ChoiceGenerator(kiteNodes.size(), 2);
+            int[] choice;
+
+            while ((choice = cg.next()) != null) {
+                Node b = kiteNodes.get(choice[0]);
+                Node c = kiteNodes.get(choice[1]);
 
-        return b4 && b5 && b6 && b7 && b8;
+                if (!isUnshieldedNoncollider(c, d, b, graph)) {
+                    continue;
+                }
+
+                direct(d, a, graph);
+                log(SearchLogUtils.edgeOrientedMsg("Meek R3", graph.getEdge(d, a)));
+
+                if (!graph.isUndirectedFromTo(d, a)) {
+                    parents.add(d);
+                    break;
+                }
+            }
+        }
     }
 
-    private void meekR4(Node a, Graph graph, IKnowledge knowledge) {
+    private void meekR4(Node a, Graph graph, CompiledKnowledge knowledge) {
         if (!useRule4) {
             return;
         }
@@ -368,7 +413,8 @@ public class MeekRules implements ImpliedOrientation {
     private void direct(Node a, Node c, Graph graph) {
         Edge before = graph.getEdge(a, c);
 
-        if (knowledge != null && knowledge.isForbidden(a.getName(), c.getName())) {
+        if (compiledKnowledge != null && isForbidden(compiledKnowledge, a, compiledKnowledge.getIndex(a),
+                c, compiledKnowledge.getIndex(c))) {
             return;
         }
 
@@ -412,35 +458,58 @@ public class MeekRules implements ImpliedOrientation {
     }
 
 
-    private static boolean isArrowpointAllowed(Node from, Node to, IKnowledge knowledge) {
-        if (knowledge == null) return true;
-        return !knowledge.isRequired(to.toString(), from.toString()) &&
-                !knowledge.isForbidden(from.toString(), to.toString());
+    private static boolean isArrowpointAllowed(Node from, Node to, CompiledKnowledge knowledge) {
+        if (knowledge == null || knowledge.isEmpty()) return true;
+        int _from = knowledge.getIndex(from);
+        int _to = knowledge.getIndex(to);
+        return !isRequired(knowledge, to, _to, from, _from) && !isForbidden(knowledge, from, _from, to, _to);
+    }
+
+    // True if x --> y is forbidden, where i and j are the indices of x and y in the knowledge, or -1.
+    private static boolean isForbidden(CompiledKnowledge knowledge, Node x, int i, Node y, int j) {
+        if (i == -1 || j == -1) return knowledge.isForbidden(x, y);
+        return knowledge.isForbidden(i, j);
+    }
+
+    // True if x --> y is required, where i and j are the indices of x and y in the knowledge, or -1.
+    private static boolean isRequired(CompiledKnowledge knowledge, Node x, int i, Node y, int j) {
+        if (i == -1 || j == -1) return knowledge.isRequired(x, y);
+        return knowledge.isRequired(i, j);
     }
 
     private void undirectUnforcedEdges(Node y, Graph graph) {
         Set<Node> parentsToUndirect = new HashSet<>();
         List<Node> parents = graph.getParents(y);
+        Set<Node> _parents = new HashSet<>(parents);
 
-        NEXT_EDGE:
+        // x --> y is forced if some other parent of y is not adjacent to x, that is, if fewer than all of the
+        // other parents are among the adjacents of x.
         for (Node x : parents) {
-            for (Node parent : parents) {
-                if (parent != x) {
-                    if (!graph.isAdjacentTo(parent, x)) {
-                        oriented.add(graph.getEdge(x, y));
-                        continue NEXT_EDGE;
-                    }
+            int count = 0;
+
+            for (Node z : graph.getAdjacentNodes(x)) {
+                if (_parents.contains(z)) {
+                    count++;
                 }
             }
 
+            if (count < _parents.size() - 1) {
+                oriented.add(graph.getEdge(x, y));
+                continue;
+            }
+
             parentsToUndirect.add(x);
         }
 
         boolean didit = false;
+        CompiledKnowledge knowledge = compiledKnowledge != null && !compiledKnowledge.isEmpty()
+                ? compiledKnowledge : null;
+        int _y = knowledge != null ? knowledge.getIndex(y) : -1;
 
         for (Node x : parentsToUndirect) {
-            boolean mustOrient = knowledge.isRequired(x.getName(), y.getName()) ||
-                    knowledge.isForbidden(y.getName(), x.getName());
+            int _x = knowledge != null ? knowledge.getIndex(x) : -1;
+            boolean mustOrient = knowledge != null && (isRequired(knowledge, x, _x, y, _y) ||
+                    isForbidden(knowledge, y, _y, x, _x));
             if (!oriented.contains(graph.getEdge(x, y)) && !mustOrient) {
                 graph.removeEdge(x, y);
                 graph.addUndirectedEdge(x, y);
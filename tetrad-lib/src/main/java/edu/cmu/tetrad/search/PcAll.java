@@ -30,6 +30,7 @@ import edu.cmu.tetrad.util.TetradLogger;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -436,48 +437,39 @@ public final class PcAll implements GraphSearch {
         colliderTriples = new HashSet<>();
         noncolliderTriples = new HashSet<>();
         ambiguousTriples = new HashSet<>();
-        List<Node> nodes = graph.getNodes();
-
-        for (Node y : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
-
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
-
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
+        List<Triple> triples = ColliderClassification.getUnshieldedTriples(graph);
+        Map<NodePair, List<List<Node>>> sepsetsByPair = ColliderClassification.getSepsets(triples,
+                new ColliderClassification.PairSepsets() {
+                    public List<List<Node>> getSepsets(Node x, Node z) {
+                        return PcAll.this.getSepsets(x, z, graph);
+                    }
+                });
 
-            while ((combination = cg.next()) != null) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
 
-                Node x = adjacentNodes.get(combination[0]);
-                Node z = adjacentNodes.get(combination[1]);
+            List<List<Node>> sepsetsxz = sepsetsByPair.get(new NodePair(x, z));
 
-                if (this.graph.isAdjacentTo(x, z)) {
-                    continue;
-                }
-
-                List<List<Node>> sepsetsxz = getSepsets(x, z, graph);
-
-                if (isColliderSepset(y, sepsetsxz)) {
-                    if (colliderAllowed(x, y, z, knowledge)) {
-                        orientCollider(x, y, z, conflictRule, graph);
-                    }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
 
-                    colliderTriples.add(new Triple(x, y, z));
-                } else if (isNoncolliderSepset(y, sepsetsxz)) {
-                    noncolliderTriples.add(new Triple(x, y, z));
-                } else {
-                    Triple triple = new Triple(x, y, z);
-                    ambiguousTriples.add(triple);
-                    graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+            if (ColliderClassification.isColliderSepset(y, sepsetsxz)) {
+                if (colliderAllowed(x, y, z, knowledge)) {
+                    orientCollider(x, y, z, conflictRule, graph);
                 }
 
-                getAllTriples().add(new Triple(x, y, z));
+                colliderTriples.add(triple);
+            } else if (ColliderClassification.isNoncolliderSepset(y, sepsetsxz)) {
+                noncolliderTriples.add(triple);
+            } else {
+                ambiguousTriples.add(triple);
+                graph.addAmbiguousTriple(x, y, z);
             }
+
+            getAllTriples().add(triple);
         }
 
         TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
@@ -542,26 +534,6 @@ public final class PcAll implements GraphSearch {
         return sepsets;
     }
 
-    private boolean isColliderSepset(Node j, List<List<Node>> sepsets) {
-        if (sepsets.isEmpty()) return false;
-
-        for (List<Node> sepset : sepsets) {
-            if (sepset.contains(j)) return false;
-        }
-
-        return true;
-    }
-
-    private boolean isNoncolliderSepset(Node j, List<List<Node>> sepsets) {
-        if (sepsets.isEmpty()) return false;
-
-        for (List<Node> sepset : sepsets) {
-            if (!sepset.contains(j)) return false;
-        }
-
-        return true;
-    }
-
 //    private void orientUnshieldedTriplesConcurrent(final IKnowledge knowledge,
 //                                                   final IndependenceTest test, final int depth) {
 //        ExecutorService executor = Executors.newFixedThreadPool(NTHREDS);
@@ -0,0 +1,542 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The Possible-D-Sep step of FCI (Spirtes et al., 2000), done in parallel. For each edge x *-* y of the graph, looks
+ * for a set S among the possible parents of x in Possible-D-Sep(x), or else of y in Possible-D-Sep(y), for which
+ * x _||_ y | S, and if it finds one removes the edge and records S as the sepset.
+ * <p>
+ * A node v is in Possible-D-Sep(x) iff v != x and there is a path between x and v on which every interior node is
+ * either a definite collider or the middle of a triangle. These sets depend only on x, so they are found once for
+ * each node, by a search over the graph indexed by ints, bounded by the maximum path length. As in the stable
+ * variant of the step, every edge is judged against the graph as it was at the start, so that the edges may be
+ * tested in parallel and the result does not depend on the order of the edges; edges are removed afterward.
+ * <p>
+ * For each edge the sets are tried in order of size. After the sets of size one, the candidates are ranked by the
+ * p values of those tests, highest first, so that larger sets made of the nodes that came closest to separating x
+ * and y are tried first. If a time budget is given, an edge that has used it up without a sepset being found is
+ * kept and reported by getEdgesOverBudget.
+ * <p>
+ * Tests run on a copy of the test for each thread (see indTestSubset), or, for tests that cannot be copied, one at
+ * a time on the test given.
+ *
+ * @author Joseph Ramsey
+ */
+public class PossibleDsepConcurrent {
+
+    private final Graph graph;
+    private final IndependenceTest test;
+    private final ThreadLocal<IndependenceTest> copies;
+    private volatile boolean copyable = true;
+
+    private IKnowledge knowledge = new Knowledge2();
+    private int depth = -1;
+    private int maxPathLength = -1;
+    private long timeBudget = -1;
+    private boolean verbose = false;
+
+    // The graph, indexed: the adjacents of each node in increasing order, and for each adjacency (its position in
+    // the list for the node plus the offset of the node), whether the edge has an arrowhead at the node.
+    private List<Node> nodes;
+    private Map<Node, Integer> indices;
+    private int[][] adj;
+    private int[] offsets;
+    private int[] owners;
+    private boolean[] into;
+
+    private List<Edge> edgesOverBudget = new ArrayList<>();
+    private long elapsedTime = 0;
+
+    /**
+     * Works on the given graph, which is changed by search, with the given test.
+     */
+    public PossibleDsepConcurrent(Graph graph, final IndependenceTest test) {
+        if (graph == null) throw new NullPointerException("Graph was not provided.");
+        if (test == null) throw new NullPointerException("Test was not provided.");
+
+        this.graph = graph;
+        this.test = test;
+
+        this.copies = new ThreadLocal<IndependenceTest>() {
+            protected IndependenceTest initialValue() {
+                IndependenceTest copy;
+
+                try {
+                    copy = test.indTestSubset(test.getVariables());
+                } catch (Exception e) {
+                    copy = null;
+                }
+
+                // Some tests return themselves.
+                if (copy == null || copy == test) {
+                    copyable = false;
+                    return null;
+                }
+
+                return copy;
+            }
+        };
+    }
+
+    //============================== Public Methods =========================//
+
+    /**
+     * Tests every edge of the graph, in parallel, and removes those for which a sepset is found.
+     *
+     * @return the sepsets found, with their p values.
+     */
+    public SepsetMap search() {
+        long start = System.currentTimeMillis();
+
+        index();
+
+        final int[][] possibleDsep = new int[nodes.size()][];
+
+        class NodeTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private NodeTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 16) {
+                    for (int i = from; i < to; i++) {
+                        possibleDsep[i] = reach(i);
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new NodeTask(from, mid), new NodeTask(mid, to));
+                }
+            }
+        }
+
+        if (!nodes.isEmpty()) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new NodeTask(0, nodes.size()));
+        }
+
+        // The knowledge is consulted here, in one thread, rather than from the tasks.
+        final List<List<Node>> possibleParents = new ArrayList<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            List<Node> _possibleParents = new ArrayList<>();
+
+            for (int j : possibleDsep[i]) {
+                if (possibleParentOf(nodes.get(j).getName(), nodes.get(i).getName())) {
+                    _possibleParents.add(nodes.get(j));
+                }
+            }
+
+            possibleParents.add(_possibleParents);
+
+            if (verbose) {
+                System.out.println("Possible-D-Sep(" + nodes.get(i) + ") = " + asNodes(possibleDsep[i]));
+            }
+        }
+
+        final List<Edge> edges = new ArrayList<>();
+
+        for (Edge edge : graph.getEdges()) {
+            if (knowledge.noEdgeRequired(edge.getNode1().getName(), edge.getNode2().getName())) {
+                edges.add(edge);
+            }
+        }
+
+        final Outcome[] outcomes = new Outcome[edges.size()];
+
+        class EdgeTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private EdgeTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from == 1) {
+                    Edge edge = edges.get(from);
+                    Node x = edge.getNode1();
+                    Node y = edge.getNode2();
+                    outcomes[from] = getSepset(x, y, possibleParents.get(indices.get(x)),
+                            possibleParents.get(indices.get(y)));
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new EdgeTask(from, mid), new EdgeTask(mid, to));
+                }
+            }
+        }
+
+        if (!edges.isEmpty()) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new EdgeTask(0, edges.size()));
+        }
+
+        SepsetMap sepsets = new SepsetMap();
+        edgesOverBudget = new ArrayList<>();
+
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            Outcome outcome = outcomes[i];
+
+            if (outcome == null) continue;
+
+            Node x = edge.getNode1();
+            Node y = edge.getNode2();
+
+            if (outcome.sepset != null) {
+                graph.removeEdge(edge);
+                sepsets.set(x, y, outcome.sepset);
+                sepsets.setPValue(x, y, outcome.pValue);
+
+                if (verbose) {
+                    System.out.println("Possible DSEP Removed " + x + "--- " + y + " sepset = " + outcome.sepset);
+                }
+            } else if (outcome.overBudget) {
+                edgesOverBudget.add(edge);
+
+                if (verbose) {
+                    System.out.println("Possible DSEP time budget used up for " + x + "--- " + y);
+                }
+            }
+        }
+
+        elapsedTime = System.currentTimeMillis() - start;
+
+        return sepsets;
+    }
+
+    /**
+     * @return Possible-D-Sep(x) in the graph as it is now, bounded by the maximum path length.
+     */
+    public Set<Node> getPossibleDsep(Node x) {
+        index();
+        Integer i = indices.get(x);
+        if (i == null) throw new IllegalArgumentException("Not a node in the graph: " + x);
+        return new LinkedHashSet<>(asNodes(reach(i)));
+    }
+
+    /**
+     * @return the edges of the last search that used up the time budget without a sepset being found. These are
+     * kept in the graph.
+     */
+    public List<Edge> getEdgesOverBudget() {
+        return new ArrayList<>(edgesOverBudget);
+    }
+
+    /**
+     * @return the elapsed time of the last search, in milliseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the largest sepset to try, or -1 if unlimited.
+     */
+    public void setDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException("Depth must be -1 (unlimited) or >= 0: " + depth);
+        }
+
+        this.depth = depth;
+    }
+
+    public int getMaxPathLength() {
+        return maxPathLength;
+    }
+
+    /**
+     * Sets the length of the longest path followed in finding Possible-D-Sep, or -1 if unlimited.
+     */
+    public void setMaxPathLength(int maxPathLength) {
+        if (maxPathLength < -1) {
+            throw new IllegalArgumentException("Max path length must be -1 (unlimited) or >= 0: " + maxPathLength);
+        }
+
+        this.maxPathLength = maxPathLength;
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the time allowed for each edge, in milliseconds, or -1 if unlimited.
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget < -1) {
+            throw new IllegalArgumentException("Time budget must be -1 (unlimited) or >= 0: " + timeBudget);
+        }
+
+        this.timeBudget = timeBudget;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) throw new NullPointerException();
+        this.knowledge = knowledge;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    //============================== Private Methods =========================//
+
+    // The result for a single edge.
+    private static class Outcome {
+        private List<Node> sepset = null;
+        private double pValue = Double.NaN;
+        private boolean overBudget = false;
+    }
+
+    // Indexes the graph as it is now.
+    private void index() {
+        nodes = graph.getNodes();
+        indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        adj = new int[nodes.size()][];
+        offsets = new int[nodes.size() + 1];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            List<Node> adjacentNodes = graph.getAdjacentNodes(nodes.get(i));
+            adj[i] = new int[adjacentNodes.size()];
+
+            for (int k = 0; k < adjacentNodes.size(); k++) {
+                adj[i][k] = indices.get(adjacentNodes.get(k));
+            }
+
+            Arrays.sort(adj[i]);
+            offsets[i + 1] = offsets[i] + adj[i].length;
+        }
+
+        owners = new int[offsets[nodes.size()]];
+        into = new boolean[offsets[nodes.size()]];
+
+        for (int b = 0; b < nodes.size(); b++) {
+            for (int k = 0; k < adj[b].length; k++) {
+                owners[offsets[b] + k] = b;
+                into[offsets[b] + k] = graph.getEndpoint(nodes.get(adj[b][k]), nodes.get(b)) == Endpoint.ARROW;
+            }
+        }
+    }
+
+    // The position of the adjacency of b to a, or -1 if they are not adjacent.
+    private int slot(int b, int a) {
+        int k = Arrays.binarySearch(adj[b], a);
+        return k < 0 ? -1 : offsets[b] + k;
+    }
+
+    // Possible-D-Sep(x), by a breadth first search over adjacencies b <- a, each reached by the shortest path it
+    // can be, so that none is followed twice.
+    private int[] reach(int x) {
+        int _maxPathLength = maxPathLength == -1 ? Integer.MAX_VALUE : maxPathLength;
+        boolean[] reached = new boolean[nodes.size()];
+        boolean[] visited = new boolean[owners.length];
+
+        List<Integer> frontier = new ArrayList<>();
+
+        if (_maxPathLength >= 1) {
+            for (int b : adj[x]) {
+                int s = slot(b, x);
+                visited[s] = true;
+                reached[b] = true;
+                frontier.add(s);
+            }
+        }
+
+        for (int length = 1; length < _maxPathLength && !frontier.isEmpty(); length++) {
+            List<Integer> next = new ArrayList<>();
+
+            for (int s : frontier) {
+                int b = owners[s];
+                int a = adj[b][s - offsets[b]];
+
+                for (int k = 0; k < adj[b].length; k++) {
+                    int c = adj[b][k];
+
+                    if (c == a) continue;
+
+                    if ((into[s] && into[offsets[b] + k]) || slot(a, c) != -1) {
+                        int t = slot(c, b);
+
+                        if (!visited[t]) {
+                            visited[t] = true;
+                            reached[c] = true;
+                            next.add(t);
+                        }
+                    }
+                }
+            }
+
+            frontier = next;
+        }
+
+        reached[x] = false;
+
+        int count = 0;
+        for (boolean r : reached) if (r) count++;
+
+        int[] possibleDsep = new int[count];
+        int j = 0;
+
+        for (int i = 0; i < reached.length; i++) {
+            if (reached[i]) possibleDsep[j++] = i;
+        }
+
+        return possibleDsep;
+    }
+
+    // Looks for a sepset for x and y, first among the possible parents of x, then among those of y.
+    private Outcome getSepset(Node x, Node y, List<Node> possibleParentsX, List<Node> possibleParentsY) {
+        Outcome outcome = new Outcome();
+        long deadline = timeBudget == -1 ? Long.MAX_VALUE : System.currentTimeMillis() + timeBudget;
+
+        List<Node> _possibleParentsX = new ArrayList<>(possibleParentsX);
+        _possibleParentsX.remove(y);
+
+        if (getSepset(x, y, _possibleParentsX, true, deadline, outcome)) return outcome;
+        if (outcome.overBudget) return outcome;
+
+        List<Node> _possibleParentsY = new ArrayList<>(possibleParentsY);
+        _possibleParentsY.remove(x);
+
+        getSepset(x, y, _possibleParentsY, false, deadline, outcome);
+        return outcome;
+    }
+
+    // Tries the subsets of the candidates up to the depth, returning true if one of them separates x and y. The
+    // empty set need only be tried once for each edge.
+    private boolean getSepset(Node x, Node y, List<Node> candidates, boolean tryEmpty, long deadline,
+                              Outcome outcome) {
+        int _depth = Math.min(depth == -1 ? 1000 : depth, candidates.size());
+
+        if (tryEmpty && isIndependent(x, y, new ArrayList<Node>(), outcome)) return true;
+        if (_depth < 1) return false;
+
+        // Sets of size one, which also rank the candidates.
+        final Map<Node, Double> pValues = new HashMap<>();
+
+        for (Node z : candidates) {
+            if (Thread.currentThread().isInterrupted()) return false;
+
+            if (System.currentTimeMillis() > deadline) {
+                outcome.overBudget = true;
+                return false;
+            }
+
+            if (isIndependent(x, y, Collections.singletonList(z), outcome)) return true;
+            pValues.put(z, outcome.pValue);
+        }
+
+        List<Node> ranked = new ArrayList<>(candidates);
+
+        Collections.sort(ranked, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return Double.compare(pValues.get(o2), pValues.get(o1));
+            }
+        });
+
+        for (int d = 2; d <= _depth; d++) {
+            ChoiceGenerator cg = new ChoiceGenerator(ranked.size(), d);
+            int[] choice;
+
+            while ((choice = cg.next()) != null) {
+                if (Thread.currentThread().isInterrupted()) return false;
+
+                if (System.currentTimeMillis() > deadline) {
+                    outcome.overBudget = true;
+                    return false;
+                }
+
+                if (isIndependent(x, y, GraphUtils.asList(choice, ranked), outcome)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Does a test, recording its p value in the outcome, and the sepset if x and y are independent.
+    private boolean isIndependent(Node x, Node y, List<Node> z, Outcome outcome) {
+        IndependenceTest _test = copyable ? copies.get() : null;
+        boolean independent;
+
+        if (_test != null) {
+            independent = _test.isIndependent(x, y, z);
+            outcome.pValue = _test.getPValue();
+        } else {
+            synchronized (test) {
+                independent = test.isIndependent(x, y, z);
+                outcome.pValue = test.getPValue();
+            }
+        }
+
+        if (independent) {
+            outcome.sepset = new ArrayList<>(z);
+        }
+
+        return independent;
+    }
+
+    private boolean possibleParentOf(String _z, String _x) {
+        return !(knowledge.isForbidden(_z, _x) || knowledge.isRequired(_x, _z));
+    }
+
+    private List<Node> asNodes(int[] _indices) {
+        List<Node> list = new ArrayList<>();
+        for (int i : _indices) list.add(nodes.get(i));
+        return list;
+    }
+}
@@ -32,6 +32,8 @@ import org.apache.commons.math3.linear.SingularMatrixException;
 
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.Math.log;
 
@@ -69,6 +71,9 @@ public class SemBicScore implements Score {
 
     private Map<String, Integer> indexMap;
 
+    // Residual variances by node and parent set, if they are being cached; these do not depend on the penalty,
+    // so may be reused across searches with different penalties.
+    private ConcurrentMap<ParentSet, Double> residualVariances = null;
 
     /**
      * Constructs the score using a covariance matrix.
@@ -91,12 +96,7 @@ public class SemBicScore implements Score {
         for (int p : parents) if (forbidden.contains(p)) return Double.NaN;
 
         try {
-            double s2 = getCovariances().getValue(i, i);
-            int p = parents.length;
-
-            TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
-            TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
-            s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+            double s2 = residualVariance(i, parents);
 
             if (s2 <= 0) {
                 if (isVerbose()) {
@@ -141,6 +141,15 @@ public class SemBicScore implements Score {
     @Override
     public double localScoreDiff(int x, int y, int[] z) {
 
+        // As in localScore, parent sets with a forbidden variable are not scored, whether or not residual
+        // variances are cached.
+        for (int p : z) if (forbidden.contains(p)) return Double.NaN;
+        if (forbidden.contains(x)) return Double.NaN;
+
+        if (residualVariances != null) {
+            return cachedLocalScoreDiff(x, y, z);
+        }
+
         Node _x = variables.get(x);
         Node _y = variables.get(y);
         List<Node> _z = getVariableList(z);
@@ -161,6 +170,49 @@ public class SemBicScore implements Score {
 //        return localScore(y, append(z, x)) - localScore(y, z);
     }
 
+    // The score difference computed from cached residual variances: 1 - r^2 for the partial correlation of x and
+    // y given z is the ratio of the residual variance of y given z and x to that of y given z.
+    private double cachedLocalScoreDiff(int x, int y, int[] z) {
+        double s2;
+        double s2x;
+
+        try {
+            s2 = residualVariance(y, z);
+            s2x = residualVariance(y, append(z, x));
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+
+        if (s2 <= 0 || s2x <= 0) return Double.NaN;
+
+        int p = 2 + z.length;
+
+        int N = covariances.getSampleSize();
+        return -N * (Math.log(s2x) - Math.log(s2)) - p * getPenaltyDiscount() * Math.log(N);
+    }
+
+    // The variance of i not explained by its regression on the parents, from the cache if one is kept.
+    private double residualVariance(int i, int[] parents) {
+        ParentSet key = null;
+
+        if (residualVariances != null) {
+            key = new ParentSet(i, parents);
+            Double s2 = residualVariances.get(key);
+            if (s2 != null) return s2;
+        }
+
+        double s2 = getCovariances().getValue(i, i);
+
+        if (parents.length > 0) {
+            TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
+            TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
+            s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+        }
+
+        if (key != null) residualVariances.put(key, s2);
+        return s2;
+    }
+
     private List<Node> getVariableList(int[] indices) {
         List<Node> variables = new ArrayList<>();
         for (int i : indices) {
@@ -264,6 +316,33 @@ public class SemBicScore implements Score {
         this.ignoreLinearDependent = ignoreLinearDependent;
     }
 
+    /**
+     * True iff residual variances are cached by node and parent set.
+     */
+    public boolean isCacheResidualVariances() {
+        return residualVariances != null;
+    }
+
+    /**
+     * Sets whether residual variances are cached by node and parent set. These do not depend on the penalty
+     * discount, so the cache is kept when the penalty discount is changed, and a search repeated with a different
+     * penalty discount reuses the regressions of the ones before it. Turning caching off clears the cache.
+     */
+    public void setCacheResidualVariances(boolean cache) {
+        if (!cache) {
+            residualVariances = null;
+        } else if (residualVariances == null) {
+            residualVariances = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @return the number of residual variances cached.
+     */
+    public int getNumCachedResidualVariances() {
+        return residualVariances == null ? 0 : residualVariances.size();
+    }
+
     public void setOut(PrintStream out) {
         this.out = out;
     }
@@ -380,7 +459,30 @@ public class SemBicScore implements Score {
 
         return Double.isNaN(v);
     }
-}
 
+    // A node with a set of parents, which are sorted so that the order they are given in does not matter.
+    private static final class ParentSet {
+        private final int node;
+        private final int[] parents;
+        private final int hash;
+
+        ParentSet(int node, int[] parents) {
+            this.node = node;
+            this.parents = Arrays.copyOf(parents, parents.length);
+            Arrays.sort(this.parents);
+            this.hash = 31 * node + Arrays.hashCode(this.parents);
+        }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
 
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ParentSet)) return false;
+            ParentSet other = (ParentSet) o;
+            return node == other.node && Arrays.equals(parents, other.parents);
+        }
+    }
+}
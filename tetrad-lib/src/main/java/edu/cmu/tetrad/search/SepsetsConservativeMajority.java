@@ -32,7 +32,7 @@ import java.util.List;
 /**
  * Created by josephramsey on 3/24/15.
  */
-public class SepsetsConservativeMajority implements SepsetProducer {
+public class SepsetsConservativeMajority implements SepsetProducer, ColliderClassification.Classifier {
     private final Graph graph;
     private final IndependenceTest independenceTest;
     private final SepsetMap extraSepsets;
@@ -106,15 +106,30 @@ public class SepsetsConservativeMajority implements SepsetProducer {
     }
 
     public boolean isCollider(Node i, Node j, Node k) {
-        List<List<List<Node>>> ret = getSepsetsLists(i, j, k, independenceTest, depth, true);
+        List<List<List<Node>>> ret = getSepsetsLists(i, j, k, independenceTest, depth, verbose);
         return ret.get(0).size() <= ret.get(1).size();
     }
 
     public boolean isNoncollider(Node i, Node j, Node k) {
-        List<List<List<Node>>> ret = getSepsetsLists(i, j, k, independenceTest, depth, true);
+        List<List<List<Node>>> ret = getSepsetsLists(i, j, k, independenceTest, depth, verbose);
         return ret.get(0).size() >= ret.get(1).size();
     }
 
+    /**
+     * @return the sets from adj(x) or adj(z), up to the depth, for which x _||_ z, in the order they are tested.
+     */
+    public List<List<Node>> getSepsets(Node x, Node z) {
+        return getSepsets(x, z, independenceTest, depth, verbose);
+    }
+
+    public boolean isCollider(Node y, List<List<Node>> sepsets) {
+        return 2 * ColliderClassification.countContaining(y, sepsets) <= sepsets.size();
+    }
+
+    public boolean isNoncollider(Node y, List<List<Node>> sepsets) {
+        return 2 * ColliderClassification.countContaining(y, sepsets) >= sepsets.size();
+    }
+
     // The published version.
     public List<List<List<Node>>> getSepsetsLists(Node x, Node y, Node z,
                                                   IndependenceTest test, int depth,
@@ -122,6 +137,24 @@ public class SepsetsConservativeMajority implements SepsetProducer {
         List<List<Node>> sepsetsContainingY = new ArrayList<>();
         List<List<Node>> sepsetsNotContainingY = new ArrayList<>();
 
+        for (List<Node> cond : getSepsets(x, z, test, depth, verbose)) {
+            if (cond.contains(y)) {
+                sepsetsContainingY.add(cond);
+            } else {
+                sepsetsNotContainingY.add(cond);
+            }
+        }
+
+        List<List<List<Node>>> ret = new ArrayList<>();
+        ret.add(sepsetsContainingY);
+        ret.add(sepsetsNotContainingY);
+
+        return ret;
+    }
+
+    private List<List<Node>> getSepsets(Node x, Node z, IndependenceTest test, int depth, boolean verbose) {
+        List<List<Node>> sepsets = new ArrayList<>();
+
         List<Node> _nodes = graph.getAdjacentNodes(x);
         _nodes.remove(z);
 
@@ -144,11 +177,7 @@ public class SepsetsConservativeMajority implements SepsetProducer {
                         System.out.println("Indep: " + x + " _||_ " + z + " | " + cond);
                     }
 
-                    if (cond.contains(y)) {
-                        sepsetsContainingY.add(cond);
-                    } else {
-                        sepsetsNotContainingY.add(cond);
-                    }
+                    sepsets.add(cond);
                 }
             }
         }
@@ -170,20 +199,12 @@ public class SepsetsConservativeMajority implements SepsetProducer {
                 List<Node> cond = GraphUtils.asList(choice, _nodes);
 
                 if (test.isIndependent(x, z, cond)) {
-                    if (cond.contains(y)) {
-                        sepsetsContainingY.add(cond);
-                    } else {
-                        sepsetsNotContainingY.add(cond);
-                    }
+                    sepsets.add(cond);
                 }
             }
         }
 
-        List<List<List<Node>>> ret = new ArrayList<>();
-        ret.add(sepsetsContainingY);
-        ret.add(sepsetsNotContainingY);
-
-        return ret;
+        return sepsets;
     }
 
 
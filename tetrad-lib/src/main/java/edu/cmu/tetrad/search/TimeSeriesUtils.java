@@ -367,9 +367,7 @@ public class TimeSeriesUtils {
     public static DataSet createLagData(DataSet data, int numLags) {
         List<Node> variables = data.getVariables();
         int dataSize = variables.size();
-        int laggedRows = data.getNumRows() - numLags;
         IKnowledge knowledge = new Knowledge2();
-        Node[][] laggedNodes = new Node[numLags + 1][dataSize];
         List<Node> newVariables = new ArrayList<>((numLags + 1) * dataSize + 1);
 
         for (int lag = 0; lag <= numLags; lag++) {
@@ -394,7 +392,6 @@ public class TimeSeriesUtils {
                 }
                 newVariables.add(laggedNode);
                 laggedNode.setCenter(80 * col + 50, 80 * (numLags - lag) + 50);
-                laggedNodes[lag][col] = laggedNode;
 //                knowledge.addToTier(numLags - lag, laggedNode.getName());
             }
         }
@@ -447,21 +444,9 @@ public class TimeSeriesUtils {
             knowledge.addToTier(numLags - lag, node.getName());
         }
 
-        DataSet laggedData = new ColtDataSet(laggedRows, newVariables);
-        for (int lag = 0; lag <= numLags; lag++) {
-            for (int col = 0; col < dataSize; col++) {
-                for (int row = 0; row < laggedRows; row++) {
-                    Node laggedNode = laggedNodes[lag][col];
-                    if (laggedNode instanceof ContinuousVariable) {
-                        double value = data.getDouble(row + numLags - lag, col);
-                        laggedData.setDouble(row, col + lag * dataSize, value);
-                    } else {
-                        int value = data.getInt(row + numLags - lag, col);
-                        laggedData.setInt(row, col + lag * dataSize, value);
-                    }
-                }
-            }
-        }
+        // The lagged columns are views over one copy of the series, so later changes to either data set are not
+        // seen in the other; the lags themselves are not copied until the lagged data are written to.
+        DataSet laggedData = new BoxDataSet(new LagViewDataBox(data, newVariables, numLags), newVariables);
 
         knowledge.setDefaultToKnowledgeLayout(true);
 //        knowledge.setLagged(true);
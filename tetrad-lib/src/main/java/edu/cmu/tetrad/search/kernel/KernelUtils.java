@@ -25,7 +25,9 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradMatrix;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Various kernel utilities
@@ -186,6 +188,84 @@ public class KernelUtils {
         return Gm;
     }
 
+    /**
+     * Approximates the feature map of a product of Gaussian kernels using random Fourier features, so that the
+     * Gram matrix is approximated by F'F, where F is the returned matrix. The result has one row per feature and
+     * one column per sample, so the memory used is linear in the sample size.
+     *
+     * @param kernels     the Gaussian kernels for each variable
+     * @param columns     the data for each variable, by column
+     * @param numFeatures the number of random features to draw
+     * @param random      the source of randomness for the feature frequencies and phases
+     */
+    public static double[][] randomFourierFeatures(List<KernelGaussian> kernels, double[][] columns, int numFeatures,
+                                                   Random random) {
+        if (numFeatures < 1) {
+            throw new IllegalArgumentException("Number of features must be >= 1");
+        }
+
+        int m = columns[0].length;
+        double scale = Math.sqrt(2.0 / numFeatures);
+        double[][] features = new double[numFeatures][m];
+        double[] omega = new double[columns.length];
+
+        for (int d = 0; d < numFeatures; d++) {
+
+            // spectral density of exp(-.5 (x - y)^2 / sigma^2) is N(0, 1 / sigma^2)
+            for (int k = 0; k < columns.length; k++) {
+                omega[k] = random.nextGaussian() / kernels.get(k).getBandwidth();
+            }
+
+            double phase = 2.0 * Math.PI * random.nextDouble();
+            double[] f = features[d];
+
+            for (int i = 0; i < m; i++) {
+                double s = phase;
+                for (int k = 0; k < columns.length; k++) {
+                    s += omega[k] * columns[k][i];
+                }
+                f[i] = scale * Math.cos(s);
+            }
+        }
+
+        return features;
+    }
+
+    /**
+     * Median distance heuristic for the bandwidth of a Gaussian kernel, computed over a random subsample of at
+     * most maxPoints points so that it can be used for large samples.
+     *
+     * @param column    the data for the variable
+     * @param maxPoints the maximum number of points to compare pairwise
+     * @param random    the source of randomness for the subsample
+     */
+    public static double medianBandwidth(double[] column, int maxPoints, Random random) {
+        int m = column.length;
+        double[] sample;
+
+        if (m <= maxPoints) {
+            sample = column;
+        } else {
+            sample = new double[maxPoints];
+            for (int i = 0; i < maxPoints; i++) {
+                sample[i] = column[random.nextInt(m)];
+            }
+        }
+
+        int n = sample.length;
+        double[] diff = new double[n * (n - 1) / 2];
+        int c = 0;
+        for (int i = 0; i < (n - 1); i++) {
+            for (int j = (i + 1); j < n; j++) {
+                diff[c++] = Math.abs(sample[i] - sample[j]);
+            }
+        }
+
+        Arrays.sort(diff);
+        double median = diff.length == 0 ? 1.0 : diff[diff.length / 2];
+        return median > 0 ? median : 1.0;
+    }
+
     // evaluates tensor product for kernels
 
     private static double evaluate(List<Kernel> kernels, DataSet dataset, List<Node> vars, int i, int j) {
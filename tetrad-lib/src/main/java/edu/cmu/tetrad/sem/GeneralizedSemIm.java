@@ -21,8 +21,10 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
+import edu.cmu.tetrad.calculator.expression.ExpressionCompiler;
 import edu.cmu.tetrad.calculator.parser.ExpressionLexer;
 import edu.cmu.tetrad.calculator.parser.Token;
 import edu.cmu.tetrad.data.*;
@@ -409,32 +411,14 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
     /**
      * This simulates data by picking random values for the exogenous terms and
      * percolating this information down through the SEM, assuming it is
-     * acyclic. Fast for large simulations but hangs for cyclic models.
+     * acyclic. Fast for large simulations but hangs for cyclic models. The node
+     * expressions are compiled and evaluated for blocks of rows at a time, one
+     * node after another in tier order.
      *
      * @param sampleSize > 0.
      * @return the simulated data set.
      */
     public DataSet simulateDataRecursive(int sampleSize, boolean latentDataSaved) {
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
         List<Node> variables = pm.getNodes();
         List<Node> continuousVariables = new LinkedList<>();
         List<Node> nonErrorVariables = pm.getVariableNodes();
@@ -449,41 +433,36 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
             }
         }
 
-        DataSet fullDataSet = new ColtDataSet(sampleSize, continuousVariables);
-
         // Create some index arrays to hopefully speed up the simulation.
         SemGraph graph = pm.getGraph();
         List<Node> tierOrdering = graph.getFullTierOrdering();
 
-        int[] tierIndices = new int[variables.size()];
-
-        for (int i = 0; i < tierIndices.length; i++) {
-            tierIndices[i] = nonErrorVariables.indexOf(tierOrdering.get(i));
-        }
-
-        int[][] _parents = new int[variables.size()][];
+        ExpressionCompiler compiler = getCompiler(variables);
 
-        for (int i = 0; i < variables.size(); i++) {
-            Node node = variables.get(i);
-            List<Node> parents = graph.getParents(node);
+        int[] tierIndices = new int[tierOrdering.size()];
+        int[] tierSlots = new int[tierOrdering.size()];
+        CompiledExpression[] expressions = new CompiledExpression[tierOrdering.size()];
 
-            _parents[i] = new int[parents.size()];
-
-            for (int j = 0; j < parents.size(); j++) {
-                Node _parent = parents.get(j);
-                _parents[i][j] = variables.indexOf(_parent);
-            }
+        for (int i = 0; i < tierOrdering.size(); i++) {
+            Node node = tierOrdering.get(i);
+            tierIndices[i] = nonErrorVariables.indexOf(node);
+            tierSlots[i] = compiler.getSlot(node.getName());
+            expressions[i] = compiler.compile(pm.getNodeExpression(node));
         }
 
+        double[][] all = new double[continuousVariables.size()][sampleSize];
+
         // Do the simulation.
-        for (int row = 0; row < sampleSize; row++) {
-            variableValues.clear();
+        int blockSize = Math.min(sampleSize, 1024);
+        double[][] columns = new double[compiler.getNumSlots()][blockSize];
+        double[] values = new double[blockSize];
+
+        for (int from = 0; from < sampleSize; from += blockSize) {
+            int n = Math.min(blockSize, sampleSize - from);
 
             for (int tier = 0; tier < tierOrdering.size(); tier++) {
-                Node node = tierOrdering.get(tier);
-                Expression expression = pm.getNodeExpression(node);
-                double value = expression.evaluate(context);
-                variableValues.put(node.getName(), value);
+                expressions[tier].evaluate(columns, 0, n, values);
+                System.arraycopy(values, 0, columns[tierSlots[tier]], 0, n);
 
                 int col = tierIndices[tier];
 
@@ -491,21 +470,12 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
                     continue;
                 }
 
-//                if (isSimulatePositiveDataOnly() && value < 0) {
-//                    row--;
-//                    continue ROW;
-//                }
-
-//                if (!Double.isNaN(selfLoopCoef) && row > 0) {
-//                    value += selfLoopCoef * fullDataSet.getDouble(row - 1, col);
-//                }
-
-//                value = min(max(value, -5.), 5.);
-
-                fullDataSet.setDouble(row, col, value);
+                System.arraycopy(values, 0, all[col], from, n);
             }
         }
 
+        DataSet fullDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVariables);
+
         if (latentDataSaved) {
             return fullDataSet;
         } else {
@@ -513,7 +483,6 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         }
     }
 
-
     public DataSet simulateDataMinimizeSurface(int sampleSize, boolean latentDataSaved) {
         final Map<String, Double> variableValues = new HashMap<>();
 
@@ -858,27 +827,31 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         if (epsilon <= 0.0) throw new IllegalArgumentException(
                 "Epsilon must be > 0: " + epsilon);
 
-        final Map<String, Double> variableValues = new HashMap<>();
+        final List<Node> variableNodes = pm.getVariableNodes();
 
-        final Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
+        ExpressionCompiler compiler = getCompiler(pm.getNodes());
+        double[] values = new double[compiler.getNumSlots()];
 
-                if (value != null) {
-                    return value;
-                }
+        int[] errorSlots = new int[variableNodes.size()];
+        int[] variableSlots = new int[variableNodes.size()];
+        Expression[] errorExpressions = new Expression[variableNodes.size()];
+        CompiledExpression[] compiledErrors = new CompiledExpression[variableNodes.size()];
+        CompiledExpression[] compiledVariables = new CompiledExpression[variableNodes.size()];
 
-                value = variableValues.get(term);
+        for (int j = 0; j < variableNodes.size(); j++) {
+            Node node = variableNodes.get(j);
+            Node error = pm.getErrorNode(node);
 
-                if (value != null) {
-                    return value;
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
+            if (error == null) {
+                throw new NullPointerException();
             }
-        };
 
-        final List<Node> variableNodes = pm.getVariableNodes();
+            errorSlots[j] = compiler.getSlot(error.getName());
+            variableSlots[j] = compiler.getSlot(node.getName());
+            errorExpressions[j] = pm.getNodeExpression(error);
+            compiledErrors[j] = compiler.compile(errorExpressions[j]);
+            compiledVariables[j] = compiler.compile(pm.getNodeExpression(node));
+        }
 
         double[] t1 = new double[variableNodes.size()];
         double[] t2 = new double[variableNodes.size()];
@@ -888,30 +861,20 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         // Do the simulation.
         for (int row = 0; row < sampleSize; row++) {
             for (int j = 0; j < t1.length; j++) {
-                Node error = pm.getErrorNode(variableNodes.get(j));
-
-                if (error == null) {
-                    throw new NullPointerException();
-                }
-
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
+                double value = compiledErrors[j].evaluate(values);
 
                 if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
+                    throw new IllegalArgumentException("Undefined value for expression: " + errorExpressions[j]);
                 }
 
-                variableValues.put(error.getName(), value);
+                values[errorSlots[j]] = value;
                 shocks[j] = value;
             }
 
             for (int i = 0; i < intervalBetweenShocks; i++) {
                 for (int j = 0; j < t1.length; j++) {
-                    t2[j] = shocks[j];
-                    Node node = variableNodes.get(j);
-                    Expression expression = pm.getNodeExpression(node);
-                    t2[j] = expression.evaluate(context);
-                    variableValues.put(node.getName(), t2[j]);
+                    t2[j] = compiledVariables[j].evaluate(values);
+                    values[variableSlots[j]] = t2[j];
                 }
 
                 boolean converged = true;
@@ -950,6 +913,24 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
     }
 
 
+    /**
+     * @return a compiler for node expressions, with a slot for each of the given nodes and the parameters as
+     * constants.
+     */
+    private ExpressionCompiler getCompiler(List<Node> nodes) {
+        List<String> names = new ArrayList<>();
+
+        for (Node node : nodes) {
+            names.add(node.getName());
+        }
+
+        return new ExpressionCompiler(names, parameterValues, new Context() {
+            public Double getValue(String term) {
+                throw new IllegalArgumentException("No value recorded for '" + term + "'");
+            }
+        });
+    }
+
     public TetradVector simulateOneRecord(TetradVector e) {
         final Map<String, Double> variableValues = new HashMap<>();
 
@@ -26,10 +26,11 @@ import edu.cmu.tetrad.util.*;
 import edu.cmu.tetrad.util.dist.Distribution;
 import edu.cmu.tetrad.util.dist.Split;
 import edu.cmu.tetrad.util.dist.Uniform;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import static java.lang.Math.sqrt;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
 import org.apache.commons.collections4.map.HashedMap;
 import org.apache.commons.math3.distribution.*;
 import org.apache.commons.math3.random.Well1024a;
@@ -69,6 +70,7 @@ public final class LargeScaleSimulation {
     private double betaLeftValue;
     private double betaRightValue;
     private double selfLoopCoef = 0.0;
+    private transient SparseSemSimulator simulator;
 
     //=============================CONSTRUCTORS============================//
     public LargeScaleSimulation(Graph graph) {
@@ -102,84 +104,19 @@ public final class LargeScaleSimulation {
 
     /**
      * This simulates data by picking random values for the exogenous terms and
-     * percolating this information down through the SEM, assuming it is
-     * acyclic. Works, but will hang for cyclic models, and is very slow for
-     * large numbers of variables (probably due to the heavyweight lookups of
-     * various values--could be improved). The model must be acyclic, or else
-     * this will spin.
+     * percolating this information down through the SEM, which must be
+     * acyclic. The model is compiled into a sparse form once, and columns are
+     * simulated in blocks of rows, in parallel; see SparseSemSimulator.
      */
     public DataSet simulateDataRecursive(int sampleSize) {
-        if (tierIndices == null) {
-            List<Node> nodes = graph.getNodes();
-            tierIndices = new int[nodes.size()];
-            for (int j = 0; j < nodes.size(); j++) {
-                tierIndices[j] = j;
-            }
-        }
-
         int size = variableNodes.size();
         setupModel(size);
 
-        class SimulateTask extends RecursiveTask<Boolean> {
-
-            private final int from;
-            private final int to;
-            private double[][] all;
-            private int chunk;
-
-            public SimulateTask(int from, int to, double[][] all, int chunk) {
-                this.from = from;
-                this.to = to;
-                this.all = all;
-                this.chunk = chunk;
-            }
-
-            @Override
-            protected Boolean compute() {
-                if (from - to > chunk) {
-                    int mid = from + to / 2;
-                    SimulateTask left = new SimulateTask(from, mid, all, chunk);
-                    SimulateTask right = new SimulateTask(mid, to, all, chunk);
-                    left.fork();
-                    right.compute();
-                    left.join();
-                    return true;
-                } else {
-                    for (int i = from; i < to; i++) {
-                        NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                        normal.sample();
-
-                        if (verbose && (i + 1) % 50 == 0) {
-                            System.out.println("Simulating " + (i + 1));
-                        }
-
-                        for (int col : tierIndices) {
-                            double value = normal.sample() * sqrt(errorVars[col]);
-
-                            for (int j = 0; j < parents[col].length; j++) {
-                                value += all[parents[col][j]][i] * coefs[col][j];
-                            }
-
-                            value += means[col];
-
-                            all[col][i] = value;
-                        }
-                    }
-
-                    return true;
-                }
-            }
-        }
-
         if (graph instanceof TimeLagGraph) {
             sampleSize += 200;
         }
 
-        double[][] all = new double[variableNodes.size()][sampleSize];
-
-        int chunk = sampleSize / ForkJoinPoolInstance.getInstance().getPool().getParallelism() + 1;
-
-        ForkJoinPoolInstance.getInstance().getPool().invoke(new SimulateTask(0, sampleSize, all, chunk));
+        double[][] all = getSimulator().simulate(sampleSize, ++seed);
 
         if (graph instanceof TimeLagGraph) {
             int[] rem = new int[200];
@@ -194,6 +131,21 @@ public final class LargeScaleSimulation {
         return new BoxDataSet(new VerticalDoubleDataBox(all), variableNodes);
     }
 
+    /**
+     * Simulates data as simulateDataRecursive does, but writes it to the given
+     * file rather than keeping it in memory, so that samples too large for
+     * memory may be drawn. For the format of the file, see SparseSemSimulator.
+     *
+     * @param sampleSize The number of samples to draw.
+     * @param file The file to write.
+     */
+    public void simulateDataToFile(int sampleSize, File file) throws IOException {
+        int size = variableNodes.size();
+        setupModel(size);
+
+        getSimulator().simulate(sampleSize, ++seed, file);
+    }
+
     /**
      * Simulates data using the model X = (I - B)Y^-1 * e. Errors are
      * uncorrelated.
@@ -209,6 +161,29 @@ public final class LargeScaleSimulation {
         int size = variableNodes.size();
         setupModel(size);
 
+        double[][] all;
+
+        if (!graph.existsDirectedCycle()) {
+
+            // For an acyclic model, solving the equations in causal order gives (I - B)^-1 e without inverting.
+            all = new SparseSemSimulator(parents, coefs, errorVars, new double[size]).simulate(sampleSize, ++seed);
+        } else {
+            all = simulateReducedFormDense(sampleSize);
+        }
+
+        List<Node> continuousVars = new ArrayList<>();
+
+        for (Node node : getVariableNodes()) {
+            final ContinuousVariable var = new ContinuousVariable(node.getName());
+            var.setNodeType(node.getNodeType());
+            continuousVars.add(var);
+        }
+
+        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
+        return DataUtils.restrictToMeasured(boxDataSet);
+    }
+
+    private double[][] simulateReducedFormDense(int sampleSize) {
         NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);
 
         TetradMatrix B = new TetradMatrix(getCoefficientMatrix());
@@ -230,16 +205,7 @@ public final class LargeScaleSimulation {
             }
         }
 
-        List<Node> continuousVars = new ArrayList<>();
-
-        for (Node node : getVariableNodes()) {
-            final ContinuousVariable var = new ContinuousVariable(node.getName());
-            var.setNodeType(node.getNodeType());
-            continuousVars.add(var);
-        }
-
-        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
-        return DataUtils.restrictToMeasured(boxDataSet);
+        return all;
     }
 
     /**
@@ -515,6 +481,15 @@ public final class LargeScaleSimulation {
         alreadySetUp = true;
     }
 
+    // The compiled model, made once the model has been set up.
+    private SparseSemSimulator getSimulator() {
+        if (simulator == null) {
+            simulator = new SparseSemSimulator(parents, coefs, errorVars, means);
+        }
+
+        return simulator;
+    }
+
     public TetradAlgebra getAlgebra() {
         if (algebra == null) {
             algebra = new TetradAlgebra();
@@ -2391,7 +2391,7 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
         return unmeasuredLatents;
     }
 
-    private TetradMatrix errCovar() {
+    TetradMatrix errCovar() {
         return this.errCovar;
     }
 
@@ -2625,7 +2625,7 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
 //
 //        return trace;
 //    }
-    private TetradMatrix edgeCoef() {
+    TetradMatrix edgeCoef() {
         return this.edgeCoef;
     }
 
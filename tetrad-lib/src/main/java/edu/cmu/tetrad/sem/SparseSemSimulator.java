@@ -0,0 +1,516 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.data.DataSink;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edges;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulates data from a linear, acyclic SEM with independent Gaussian errors, for large numbers of variables and
+ * large samples. The model is compiled once into a sparse coefficient structure in compressed sparse row form,
+ * with the variables in causal order: row k lists the parents of the k'th variable in that order, together with
+ * their coefficients. Data are then generated in blocks of rows. For each block, the variables are visited in
+ * causal order, and for each a whole block of its column is filled with errors and then added to, one parent at a
+ * time; the inner loops are over contiguous stretches of columns, which the JIT compiles to vector instructions.
+ * <p>
+ * Blocks are simulated in parallel. Each block draws its errors from its own random stream, split in order from
+ * a stream seeded with the given seed, so the data depend only on the seed and the block size, not on the number
+ * of threads.
+ * <p>
+ * Data may be simulated into memory, one array per column, or written to a binary file, which does not require
+ * the whole sample to fit in memory. The file holds the number of rows and the number of columns as ints,
+ * followed by the values as doubles, row by row, all in the byte order of DataOutputStream.
+ *
+ * @author Joseph Ramsey
+ */
+public final class SparseSemSimulator {
+
+    // The variables in causal order.
+    private final int[] order;
+
+    // The parents of order[k] are parentIndices[rowStarts[k]] through parentIndices[rowStarts[k + 1] - 1].
+    private final int[] rowStarts;
+
+    // The parents, by variable index, and their coefficients.
+    private final int[] parentIndices;
+    private final double[] coefficients;
+
+    // The standard deviation of the error and the mean of each variable, by variable index.
+    private final double[] errorSds;
+    private final double[] means;
+
+    // The number of rows simulated together for each variable.
+    private int blockSize = 4096;
+
+    // The most doubles to hold in memory at once when writing to a file.
+    private long maxBufferedValues = 1L << 25;
+
+    /**
+     * Compiles the given model.
+     *
+     * @param parents   parents[j] are the indices of the parents of variable j.
+     * @param coefs     coefs[j][k] is the coefficient of parents[j][k] in the equation for variable j.
+     * @param errorVars The error variance of each variable.
+     * @param means     The mean of the error of each variable, which is added to it.
+     * @throws IllegalArgumentException if the model is cyclic.
+     */
+    public SparseSemSimulator(int[][] parents, double[][] coefs, double[] errorVars, double[] means) {
+        int p = parents.length;
+
+        if (coefs.length != p || errorVars.length != p || means.length != p) {
+            throw new IllegalArgumentException("Expecting parents, coefficients, error variances and means "
+                    + "for each of " + p + " variables.");
+        }
+
+        this.order = causalOrder(parents);
+        this.rowStarts = new int[p + 1];
+
+        for (int k = 0; k < p; k++) {
+            int j = order[k];
+
+            if (coefs[j].length != parents[j].length) {
+                throw new IllegalArgumentException("Expecting a coefficient for each parent of variable " + j);
+            }
+
+            rowStarts[k + 1] = rowStarts[k] + parents[j].length;
+        }
+
+        this.parentIndices = new int[rowStarts[p]];
+        this.coefficients = new double[rowStarts[p]];
+
+        for (int k = 0; k < p; k++) {
+            int j = order[k];
+            System.arraycopy(parents[j], 0, parentIndices, rowStarts[k], parents[j].length);
+            System.arraycopy(coefs[j], 0, coefficients, rowStarts[k], coefs[j].length);
+        }
+
+        this.errorSds = new double[p];
+        this.means = means.clone();
+
+        for (int j = 0; j < p; j++) {
+            errorSds[j] = Math.sqrt(errorVars[j]);
+        }
+    }
+
+    /**
+     * Compiles the given SEM, which must be one that canSimulate accepts. The columns are those of
+     * im.getVariableNodes(), latent variables included, and have the variable means of the SEM.
+     */
+    public SparseSemSimulator(SemIm im) {
+        this(compile(im));
+    }
+
+    private SparseSemSimulator(Model model) {
+        this(model.parents, model.coefs, model.errorVars, model.errorMeans);
+    }
+
+    /**
+     * @return true if the given SEM can be simulated by a SparseSemSimulator: it must be acyclic, with
+     * uncorrelated errors, not a time series model, and not restricted to positive data.
+     */
+    public static boolean canSimulate(SemIm im) {
+        SemGraph graph = im.getSemPm().getGraph();
+
+        if (graph.isTimeLagModel() || im.isSimulatedPositiveDataOnly()) {
+            return false;
+        }
+
+        for (Edge edge : graph.getEdges()) {
+            if (!Edges.isDirectedEdge(edge)) {
+                return false;
+            }
+        }
+
+        return !graph.existsDirectedCycle();
+    }
+
+    /**
+     * Simulates a sample of the given size.
+     *
+     * @return the data, by column; data[j] is the column for variable j.
+     */
+    public double[][] simulate(int sampleSize, long seed) {
+        if (sampleSize < 0) throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+
+        double[][] data = new double[order.length][sampleSize];
+        simulate(data, 0, sampleSize, new SplittableRandom(seed));
+        return data;
+    }
+
+    /**
+     * Simulates a sample of the given size into the given file, in the format described above, holding at most
+     * about getMaxBufferedValues() values in memory at once.
+     */
+    public void simulate(int sampleSize, long seed, File file) throws IOException {
+        if (sampleSize < 0) throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+
+        int p = order.length;
+        int passRows = getPassRows(sampleSize);
+
+        double[][] buffer = new double[p][passRows];
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Values are put into a buffer by hand, since DataOutputStream writes them a byte at a time.
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            bytes.putInt(sampleSize);
+            bytes.putInt(p);
+
+            for (int from = 0; from < sampleSize; from += passRows) {
+                int rows = Math.min(passRows, sampleSize - from);
+                simulate(buffer, 0, rows, random);
+
+                for (int i = 0; i < rows; i++) {
+                    for (int j = 0; j < p; j++) {
+                        if (bytes.remaining() < 8) {
+                            out.write(bytes.array(), 0, bytes.position());
+                            bytes.clear();
+                        }
+
+                        bytes.putDouble(buffer[j][i]);
+                    }
+                }
+            }
+
+            out.write(bytes.array(), 0, bytes.position());
+        }
+    }
+
+    /**
+     * Simulates a sample of the given size, passing it to the given sink a block of rows at a time and holding at
+     * most about getMaxBufferedValues() values in memory at once. The sink must already have been started, with
+     * one column for each variable, in variable order; it is not closed. For a given seed, the data are those that
+     * simulate(int, long) gives if the number of rows per pass is a multiple of the block size, as it is unless
+     * the buffer is small.
+     */
+    public void simulate(int sampleSize, long seed, DataSink sink) throws IOException {
+        if (sampleSize < 0) throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+
+        int passRows = getPassRows(sampleSize);
+        double[][] buffer = new double[order.length][passRows];
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (int from = 0; from < sampleSize; from += passRows) {
+            int rows = Math.min(passRows, sampleSize - from);
+            simulate(buffer, 0, rows, random);
+            sink.write(buffer, rows);
+        }
+    }
+
+    /**
+     * Reads data written by simulate(int, long, File).
+     *
+     * @return the data, by column.
+     */
+    public static double[][] read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                1 << 16))) {
+            int n = in.readInt();
+            int p = in.readInt();
+            double[][] data = new double[p][n];
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < p; j++) {
+                    data[j][i] = in.readDouble();
+                }
+            }
+
+            return data;
+        }
+    }
+
+    /**
+     * @return the variable indices in the causal order in which they are simulated.
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /**
+     * @return the number of nonzero coefficients.
+     */
+    public int getNumEdges() {
+        return parentIndices.length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of rows simulated together for each variable. The data for a given seed depend on this.
+     * Default 4096.
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be >= 1: " + blockSize);
+        this.blockSize = blockSize;
+    }
+
+    public long getMaxBufferedValues() {
+        return maxBufferedValues;
+    }
+
+    /**
+     * Sets the most values to hold in memory at once when simulating into a file. Default 2^25 (256 MB).
+     */
+    public void setMaxBufferedValues(long maxBufferedValues) {
+        if (maxBufferedValues < 1) throw new IllegalArgumentException("Must be >= 1: " + maxBufferedValues);
+        this.maxBufferedValues = maxBufferedValues;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // The rows to simulate per pass when not keeping the whole sample: a multiple of the block size where the
+    // buffer allows, and enough blocks to keep the threads busy.
+    private int getPassRows(int sampleSize) {
+        int p = order.length;
+        int parallelism = ForkJoinPoolInstance.getInstance().getPool().getParallelism();
+
+        long perPass = Math.max(1, maxBufferedValues / Math.max(1, p));
+        perPass = Math.min(perPass, (long) blockSize * parallelism);
+        perPass = perPass >= blockSize ? perPass / blockSize * blockSize : perPass;
+        return (int) Math.max(1, Math.min(perPass, Math.max(1, sampleSize)));
+    }
+
+    // Fills rows from through to - 1 of the given columns, splitting a random stream off the given one for each
+    // block in order.
+    private void simulate(final double[][] data, int from, int to, SplittableRandom random) {
+        List<int[]> blocks = new ArrayList<>();
+        List<SplittableRandom> randoms = new ArrayList<>();
+
+        for (int start = from; start < to; start += blockSize) {
+            blocks.add(new int[]{start, Math.min(to, start + blockSize)});
+            randoms.add(random.split());
+        }
+
+        class BlockTask extends RecursiveTask<Boolean> {
+            private final int lo;
+            private final int hi;
+
+            private BlockTask(int lo, int hi) {
+                this.lo = lo;
+                this.hi = hi;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (hi - lo <= 1) {
+                    for (int b = lo; b < hi; b++) {
+                        simulateBlock(data, blocks.get(b)[0], blocks.get(b)[1], randoms.get(b));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (lo + hi) / 2;
+
+                    BlockTask left = new BlockTask(lo, mid);
+                    BlockTask right = new BlockTask(mid, hi);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (blocks.size() == 1) {
+            simulateBlock(data, blocks.get(0)[0], blocks.get(0)[1], randoms.get(0));
+        } else if (!blocks.isEmpty()) {
+            ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+            pool.invoke(new BlockTask(0, blocks.size()));
+        }
+    }
+
+    // Simulates rows from through to - 1, visiting the variables in causal order.
+    private void simulateBlock(double[][] data, int from, int to, SplittableRandom random) {
+        for (int k = 0; k < order.length; k++) {
+            int j = order[k];
+            double[] column = data[j];
+            double sd = errorSds[j];
+            double mean = means[j];
+
+            // Errors, drawn in pairs by the polar method.
+            for (int i = from; i < to; i += 2) {
+                double u, v, s;
+
+                do {
+                    u = 2.0 * random.nextDouble() - 1.0;
+                    v = 2.0 * random.nextDouble() - 1.0;
+                    s = u * u + v * v;
+                } while (s >= 1.0 || s == 0.0);
+
+                double f = sd * Math.sqrt(-2.0 * Math.log(s) / s);
+
+                column[i] = u * f + mean;
+                if (i + 1 < to) column[i + 1] = v * f + mean;
+            }
+
+            for (int e = rowStarts[k]; e < rowStarts[k + 1]; e++) {
+                double[] parent = data[parentIndices[e]];
+                double c = coefficients[e];
+
+                for (int i = from; i < to; i++) {
+                    column[i] += c * parent[i];
+                }
+            }
+        }
+    }
+
+    // The parents, coefficients, error variances and error means of the given SEM, indexed as its variable
+    // nodes. Error means are chosen so that the variables have the means of the SEM.
+    private static Model compile(SemIm im) {
+        if (!canSimulate(im)) {
+            throw new IllegalArgumentException("Only acyclic models with uncorrelated errors can be compiled.");
+        }
+
+        List<Node> variables = im.getVariableNodes();
+        int p = variables.size();
+
+        Map<Node, Integer> indices = new HashMap<>();
+        for (int j = 0; j < p; j++) indices.put(variables.get(j), j);
+
+        List<List<Integer>> _parents = new ArrayList<>();
+        for (int j = 0; j < p; j++) _parents.add(new ArrayList<Integer>());
+
+        for (Edge edge : im.getSemPm().getGraph().getEdges()) {
+            Integer tail = indices.get(Edges.getDirectedEdgeTail(edge));
+            Integer head = indices.get(Edges.getDirectedEdgeHead(edge));
+
+            // Edges from error nodes are not coefficients.
+            if (tail != null && head != null) {
+                _parents.get(head).add(tail);
+            }
+        }
+
+        TetradMatrix edgeCoef = im.edgeCoef();
+        TetradMatrix errCovar = im.errCovar();
+        double[] variableMeans = im.getVariableMeans();
+
+        int[][] parents = new int[p][];
+        double[][] coefs = new double[p][];
+        double[] errorVars = new double[p];
+        double[] errorMeans = new double[p];
+
+        for (int j = 0; j < p; j++) {
+            List<Integer> list = _parents.get(j);
+            parents[j] = new int[list.size()];
+            coefs[j] = new double[list.size()];
+
+            double mean = variableMeans[j];
+
+            for (int k = 0; k < list.size(); k++) {
+                int parent = list.get(k);
+                parents[j][k] = parent;
+                coefs[j][k] = edgeCoef.get(parent, j);
+                mean -= coefs[j][k] * variableMeans[parent];
+            }
+
+            errorVars[j] = errCovar.get(j, j);
+            errorMeans[j] = mean;
+        }
+
+        return new Model(parents, coefs, errorVars, errorMeans);
+    }
+
+    // Orders the variables so that parents come before children, by Kahn's algorithm.
+    private static int[] causalOrder(int[][] parents) {
+        int p = parents.length;
+        int[] inDegree = new int[p];
+        int[] numChildren = new int[p];
+
+        for (int j = 0; j < p; j++) {
+            inDegree[j] = parents[j].length;
+
+            for (int parent : parents[j]) {
+                numChildren[parent]++;
+            }
+        }
+
+        int[][] children = new int[p][];
+        for (int j = 0; j < p; j++) children[j] = new int[numChildren[j]];
+
+        int[] filled = new int[p];
+
+        for (int j = 0; j < p; j++) {
+            for (int parent : parents[j]) {
+                children[parent][filled[parent]++] = j;
+            }
+        }
+
+        int[] order = new int[p];
+        int head = 0;
+        int tail = 0;
+
+        for (int j = 0; j < p; j++) {
+            if (inDegree[j] == 0) order[tail++] = j;
+        }
+
+        while (head < tail) {
+            int j = order[head++];
+
+            for (int child : children[j]) {
+                if (--inDegree[child] == 0) order[tail++] = child;
+            }
+        }
+
+        if (tail < p) {
+            throw new IllegalArgumentException("The model is cyclic.");
+        }
+
+        return order;
+    }
+
+    /**
+     * A model compiled from a SemIm, before it is put in sparse form.
+     */
+    private static final class Model {
+        private final int[][] parents;
+        private final double[][] coefs;
+        private final double[] errorVars;
+        private final double[] errorMeans;
+
+        private Model(int[][] parents, double[][] coefs, double[] errorVars, double[] errorMeans) {
+            this.parents = parents;
+            this.coefs = coefs;
+            this.errorVars = errorVars;
+            this.errorMeans = errorMeans;
+        }
+    }
+}
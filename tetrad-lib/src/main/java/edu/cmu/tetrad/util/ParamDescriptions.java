@@ -263,6 +263,18 @@ public class ParamDescriptions {
         map.put("probTwoCycle", new ParamDescription(
                 "The probability of creating a 2-cycles in the graph (0 - 1)",
                 0.0, 0.0, 1.0));
+
+        map.put("hsicNumFeatures", new ParamDescription(
+                "Number of random Fourier features for each of X and Y in the low rank HSIC test",
+                25, 1, Integer.MAX_VALUE));
+
+        map.put("hsicNumConditioningFeatures", new ParamDescription(
+                "Number of random Fourier features for the conditioning set in the low rank HSIC test",
+                100, 1, Integer.MAX_VALUE));
+
+        map.put("hsicNumPermutations", new ParamDescription(
+                "Number of permutations for the null distribution of the low rank HSIC test",
+                100, 1, Integer.MAX_VALUE));
     }
 
     public static ParamDescriptions getInstance() {
@@ -39,7 +39,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Runs a search algorithm over a N subsamples of size b to asses stability
@@ -72,55 +72,57 @@ public class StabilityUtils {
 
     //returns an adjacency matrix containing the edgewise instability as defined in Liu et al
     public static DoubleMatrix2D StabilitySearchPar(final DataSet data, final DataGraphSearch gs, int N, int b){
+        return StabilitySearchPar(data, gs, subSampleNoReplacement(data.getNumRows(), b, N));
+    }
 
-        final int numVars = data.getNumColumns();
-        final DoubleMatrix2D thetaMat = DoubleFactory2D.dense.make(numVars, numVars, 0.0);
+    //as above, over the given subsamples (one per row of samps), so that the same subsamples can be used for every
+    //value along a penalty path
+    public static DoubleMatrix2D StabilitySearchPar(final DataSet data, final DataGraphSearch gs, final int[][] samps){
 
-        final int[][] samps = subSampleNoReplacement(data.getNumRows(), b, N);
+        final int numVars = data.getNumColumns();
+        final int N = samps.length;
 
         final ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
 
-        class StabilityAction extends RecursiveAction{
+        //each task sums the adjacency matrices of its subsamples, and the sums are added as the tasks are joined, so
+        //no matrix is shared between threads
+        class StabilityTask extends RecursiveTask<DoubleMatrix2D> {
             private int chunk;
             private int from;
             private int to;
 
-            public StabilityAction(int chunk, int from, int to){
+            public StabilityTask(int chunk, int from, int to){
                 this.chunk = chunk;
                 this.from = from;
                 this.to = to;
             }
 
-            //could avoid using syncronized if we keep track of array of mats and add at end, but that needs lots of
-            //memory
-            private synchronized void addToMat(DoubleMatrix2D matSum, DoubleMatrix2D curMat){
-                matSum.assign(curMat, Functions.plus);
-            }
-
             @Override
-            protected void compute(){
+            protected DoubleMatrix2D compute(){
                 if (to - from <= chunk) {
+                    DoubleMatrix2D sum = DoubleFactory2D.dense.make(numVars, numVars, 0.0);
+
                     for (int s = from; s < to; s++) {
                         DataSet dataSubSamp = data.subsetRows(samps[s]).copy();
                         DataGraphSearch curGs = gs.copy();
                         Graph g = curGs.search(dataSubSamp);
 
                         DoubleMatrix2D curAdj = MixedUtils.skeletonToMatrix(g); //set weights so that undirected stability works
-                        addToMat(thetaMat, curAdj);
+                        sum.assign(curAdj, Functions.plus);
                     }
 
-                    return;
+                    return sum;
                 } else {
-                    List<StabilityAction> tasks = new ArrayList<>();
-
                     final int mid = (to + from) / 2;
 
-                    tasks.add(new StabilityAction(chunk, from, mid));
-                    tasks.add(new StabilityAction(chunk, mid, to));
+                    StabilityTask left = new StabilityTask(chunk, from, mid);
+                    StabilityTask right = new StabilityTask(chunk, mid, to);
 
-                    invokeAll(tasks);
+                    left.fork();
+                    DoubleMatrix2D sum = right.compute();
+                    sum.assign(left.join(), Functions.plus);
 
-                    return;
+                    return sum;
                 }
             }
 
@@ -128,7 +130,7 @@ public class StabilityUtils {
 
         final int chunk = 2;
 
-        pool.invoke(new StabilityAction(chunk, 0, N));
+        DoubleMatrix2D thetaMat = pool.invoke(new StabilityTask(chunk, 0, N));
 
         thetaMat.assign(Functions.mult(1.0 / N));
 
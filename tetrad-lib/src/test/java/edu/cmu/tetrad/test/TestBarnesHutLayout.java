@@ -0,0 +1,86 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Barnes-Hut layout.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestBarnesHutLayout {
+
+    @Test
+    public void testLayout() {
+        Graph graph = GraphUtils.randomGraph(2000, 0, 2000, 10, 10, 10, false);
+        Graph graph2 = new EdgeListGraph(graph);
+
+        BarnesHutLayout layout = new BarnesHutLayout(graph);
+        layout.doLayout();
+
+        // The layout moves nodes but does not change the graph.
+        assertEquals(graph2, graph);
+
+        // It stops on its own before the maximum number of steps for each component.
+        assertTrue(layout.getNumIterations() > 0);
+
+        Set<String> positions = new HashSet<>();
+
+        for (Node node : graph.getNodes()) {
+            assertTrue(node.getCenterX() >= 0);
+            assertTrue(node.getCenterY() >= 0);
+            positions.add(node.getCenterX() + "," + node.getCenterY());
+        }
+
+        // Nodes are spread apart.
+        assertTrue(positions.size() > 0.95 * graph.getNumNodes());
+    }
+
+    @Test
+    public void testSmall() {
+        Graph graph = new EdgeListGraph();
+
+        GraphNode x1 = new GraphNode("X1");
+        GraphNode x2 = new GraphNode("X2");
+        GraphNode x3 = new GraphNode("X3");
+
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+
+        graph.addDirectedEdge(x1, x2);
+
+        BarnesHutLayout layout = new BarnesHutLayout(graph);
+        layout.doLayout();
+
+        // The isolated node goes to the right of the component with the edge.
+        assertTrue(x3.getCenterX() > Math.max(x1.getCenterX(), x2.getCenterX()));
+    }
+}
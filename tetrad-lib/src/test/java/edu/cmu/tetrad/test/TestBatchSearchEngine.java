@@ -0,0 +1,118 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.batch.BatchJob;
+import edu.cmu.tetrad.algcomparison.batch.BatchResult;
+import edu.cmu.tetrad.algcomparison.batch.BatchSearchEngine;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataWriter;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the batch search engine.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestBatchSearchEngine {
+
+    @Test
+    public void testParse() {
+        BatchJob job = BatchJob.parse("id=a data=x.txt algorithm=pc test=fisher-z alpha=0.01 depth=3 "
+                + "covariance=true timeout=2.5 memory=100");
+
+        assertEquals("a", job.getId());
+        assertEquals(new File("x.txt"), job.getDataFile());
+        assertEquals("pc", job.getAlgorithm());
+        assertEquals("fisher-z", job.getTest());
+        assertNull(job.getScore());
+        assertTrue(job.isUseCovariance());
+        assertEquals(2500, job.getTimeoutMillis());
+        assertEquals(100 * 1024 * 1024, job.getMemoryBytes());
+        assertEquals(0.01, job.getParameters().getDouble("alpha"), 0.0);
+        assertEquals(3, job.getParameters().getInt("depth"));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        RandomUtil.getInstance().setSeed(3829483L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 10, 10, 10, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+
+        File dir = new File("target/test_data/batch");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+
+        File dataFile = new File(dir, "data.txt");
+
+        try (Writer out = new FileWriter(dataFile)) {
+            DataWriter.writeRectangularData(data, out, '\t');
+        }
+
+        List<BatchJob> jobs = new ArrayList<>();
+
+        BatchJob fges = new BatchJob("fges", dataFile, "fges");
+        fges.setScore("sem-bic");
+        jobs.add(fges);
+
+        BatchJob pc = new BatchJob("pc", dataFile, "pc-all");
+        pc.setTest("fisher-z");
+        pc.setUseCovariance(true);
+        pc.getParameters().set("alpha", 0.01);
+        jobs.add(pc);
+
+        jobs.add(new BatchJob("unknown", dataFile, "no-such-algorithm"));
+
+        BatchJob large = new BatchJob("large", dataFile, "fges");
+        large.setScore("sem-bic");
+        large.setMemoryBytes(1024L * 1024 * 1024 * 1024);
+        jobs.add(large);
+
+        BatchSearchEngine engine = new BatchSearchEngine(new File(dir, "out"), 2, 512L * 1024 * 1024);
+        List<BatchResult> results = engine.runAll(jobs);
+        engine.shutdown();
+
+        assertEquals(BatchResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(BatchResult.Status.COMPLETED, results.get(1).getStatus());
+        assertEquals(BatchResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals(BatchResult.Status.REJECTED, results.get(3).getStatus());
+
+        assertEquals(10, results.get(0).getGraph().getNumNodes());
+        assertTrue(new File(dir, "out/graphs/fges.txt").exists());
+        assertTrue(new File(dir, "out/graphs/pc.txt").exists());
+        assertFalse(new File(dir, "out/graphs/unknown.txt").exists());
+        assertTrue(new File(dir, "out/metrics.txt").exists());
+    }
+}
@@ -0,0 +1,159 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.search.BlockGlasso;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the block-screened graphical lasso against its optimality conditions.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestBlockGlasso {
+
+    @Test
+    public void testOptimality() {
+        RandomUtil.getInstance().setSeed(4829382L);
+        double[][] s = getCovariance(40, 300);
+
+        BlockGlasso glasso = new BlockGlasso(s);
+        glasso.setThr(1e-8);
+
+        for (double rho : new double[]{0.5, 0.2, 0.05}) {
+            BlockGlasso.Result result = glasso.search(rho);
+            checkOptimality(s, result, rho);
+        }
+
+        glasso.setPenalizeDiagonal(true);
+        BlockGlasso.Result result = glasso.search(0.1);
+        checkOptimality(s, result, 0.1);
+    }
+
+    @Test
+    public void testBlocks() {
+        double[][] s = {
+                {1.0, 0.5, 0.0, 0.1},
+                {0.5, 1.0, 0.0, 0.0},
+                {0.0, 0.0, 1.0, 0.3},
+                {0.1, 0.0, 0.3, 1.0}
+        };
+
+        BlockGlasso glasso = new BlockGlasso(s);
+
+        int[][] blocks = glasso.getBlocks(0.2);
+        assertEquals(2, blocks.length);
+        assertEquals(0, blocks[0][0]);
+        assertEquals(1, blocks[0][1]);
+        assertEquals(2, blocks[1][0]);
+        assertEquals(3, blocks[1][1]);
+
+        assertEquals(1, glasso.getBlocks(0.05).length);
+        assertEquals(4, glasso.getBlocks(0.6).length);
+
+        // Off the blocks, the precision matrix is zero.
+        BlockGlasso.Result result = glasso.search(0.2);
+        assertEquals(0.0, result.getWwi(0, 3), 0.0);
+        assertEquals(0.0, result.getWwi(1, 2), 0.0);
+        assertTrue(result.getWwi(0, 1) != 0.0);
+    }
+
+    @Test
+    public void testPath() {
+        RandomUtil.getInstance().setSeed(4829383L);
+        double[][] s = getCovariance(30, 200);
+
+        BlockGlasso glasso = new BlockGlasso(s);
+        glasso.setThr(1e-8);
+
+        List<BlockGlasso.Result> path = glasso.path(new double[]{0.05, 0.4, 0.1, 0.2});
+        assertEquals(4, path.size());
+
+        for (int k = 0; k < path.size(); k++) {
+            BlockGlasso.Result warm = path.get(k);
+            if (k > 0) assertTrue(warm.getRho() < path.get(k - 1).getRho());
+
+            BlockGlasso.Result cold = glasso.search(warm.getRho());
+
+            for (int i = 0; i < s.length; i++) {
+                for (int j = 0; j < s.length; j++) {
+                    assertEquals(cold.getWwi(i, j), warm.getWwi(i, j), 1e-4);
+                }
+            }
+        }
+    }
+
+    // Checks that W is the inverse of the precision matrix and that W - S = rho * sign(Theta) off the diagonal.
+    private void checkOptimality(double[][] s, BlockGlasso.Result result, double rho) {
+        int p = s.length;
+        double[][] w = result.getWw();
+        double[][] theta = result.getWwi();
+
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j < p; j++) {
+                double product = 0.0;
+                for (int k = 0; k < p; k++) product += w[i][k] * theta[k][j];
+                assertEquals(i == j ? 1.0 : 0.0, product, 1e-5);
+
+                if (i == j) continue;
+
+                double t = (theta[i][j] + theta[j][i]) / 2.0;
+
+                if (t != 0.0) {
+                    assertEquals(rho * Math.signum(t), w[i][j] - s[i][j], 1e-5);
+                } else {
+                    assertTrue(Math.abs(w[i][j] - s[i][j]) <= rho + 1e-5);
+                }
+            }
+        }
+    }
+
+    // The sample covariance of chains of three variables.
+    private double[][] getCovariance(int p, int n) {
+        double[][] x = new double[n][p];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                x[i][j] = RandomUtil.getInstance().nextNormal(0, 1);
+                if (j % 3 != 0) x[i][j] += 0.8 * x[i][j - 1];
+            }
+        }
+
+        double[][] s = new double[p][p];
+
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j < p; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < n; k++) sum += x[k][i] * x[k][j];
+                s[i][j] = sum / n;
+            }
+        }
+
+        return s;
+    }
+}
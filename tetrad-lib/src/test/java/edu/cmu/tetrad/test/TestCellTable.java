@@ -21,11 +21,14 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.AdTreeStatistics;
+import edu.cmu.tetrad.data.BitmapCellCounts;
 import edu.cmu.tetrad.data.CellTable;
 import edu.cmu.tetrad.data.ColtDataSet;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.ChiSquareTest;
 import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
@@ -36,6 +39,7 @@ import static org.junit.Assert.assertEquals;
 
 public final class TestCellTable {
     private CellTable table;
+    private DataSet dataSet;
     private final int[] dims = new int[]{2, 2, 2, 2};
 
     private final int[][] data = new int[][]{{1, 1, 1, 0}, {0, 0, 1, 0},
@@ -301,7 +305,7 @@ public final class TestCellTable {
         variables.add(new DiscreteVariable("X3", 2));
         variables.add(new DiscreteVariable("X4", 2));
 
-        DataSet dataSet = new ColtDataSet(data.length, variables);
+        this.dataSet = new ColtDataSet(data.length, variables);
 
         for (int i = 0; i < data.length; i++) {
             for (int j = 0; j < data[0].length; j++) {
@@ -408,6 +412,167 @@ public final class TestCellTable {
         }
     }
 
+    @Test
+    public final void testBitmapCounts() {
+        setUp();
+
+        BitmapCellCounts counts = new BitmapCellCounts(dataSet);
+        BitmapCellCounts.Stratum[] strata = counts.getStrata(new int[]{3, 2});
+        long total = 0;
+
+        for (BitmapCellCounts.Stratum stratum : strata) {
+
+            // Read the conditioning values off the first row in the stratum.
+            int row = stratum.getRows()[0];
+
+            long[][] table = counts.countTable(stratum, 0, 1);
+
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 2; j++) {
+                    assertEquals(this.table.getValue(new int[]{i, j, data[row][2], data[row][3]}), table[i][j]);
+                    total += table[i][j];
+                }
+            }
+        }
+
+        assertEquals(data.length, total);
+    }
+
+    @Test
+    public final void testSparseStrata() {
+        RandomUtil.getInstance().setSeed(29384L);
+
+        List<Node> variables = new LinkedList<>();
+        variables.add(new DiscreteVariable("X", 2));
+        variables.add(new DiscreteVariable("Y", 3));
+        variables.add(new DiscreteVariable("Z", 200));
+        variables.add(new DiscreteVariable("W", 2));
+
+        int numRows = 2000;
+        DataSet dataSet = new ColtDataSet(numRows, variables);
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < 4; j++) {
+                int d = ((DiscreteVariable) variables.get(j)).getNumCategories();
+                int value = i % 97 == j ? DiscreteVariable.MISSING_VALUE : RandomUtil.getInstance().nextInt(d);
+                dataSet.setInt(i, j, value);
+            }
+        }
+
+        BitmapCellCounts counts = new BitmapCellCounts(dataSet);
+
+        // The strata of W are dense and those of Z, W sparse.
+        for (int[] z : new int[][]{{3}, {2, 3}}) {
+            int size = 0;
+
+            for (BitmapCellCounts.Stratum stratum : counts.getStrata(z)) {
+                int[] rows = stratum.getRows();
+                assertEquals(rows.length, stratum.size());
+                size += rows.length;
+
+                long[][] table = new long[2][3];
+                long[] margin = new long[2];
+
+                for (int row : rows) {
+                    for (int v : z) {
+                        assertEquals(dataSet.getInt(rows[0], v), dataSet.getInt(row, v));
+                    }
+
+                    int x = dataSet.getInt(row, 0);
+                    int y = dataSet.getInt(row, 1);
+
+                    if (x != DiscreteVariable.MISSING_VALUE) {
+                        margin[x]++;
+
+                        if (y != DiscreteVariable.MISSING_VALUE) {
+                            table[x][y]++;
+                        }
+                    }
+                }
+
+                long[][] _table = counts.countTable(stratum, 0, 1);
+                long[] _margin = counts.countMargin(stratum, 0);
+
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(margin[i], _margin[i]);
+
+                    for (int j = 0; j < 3; j++) {
+                        assertEquals(table[i][j], _table[i][j]);
+                    }
+                }
+            }
+
+            int complete = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                boolean missing = false;
+                for (int v : z) missing |= dataSet.getInt(i, v) == DiscreteVariable.MISSING_VALUE;
+                if (!missing) complete++;
+            }
+
+            assertEquals(complete, size);
+        }
+    }
+
+    @Test
+    public final void testAdTreeCounts() {
+        setUp();
+
+        AdTreeStatistics statistics = new AdTreeStatistics(dataSet);
+
+        // Parents out of sorted order; rows are indexed with the first parent varying slowest.
+        int[][] counts = statistics.getCounts(0, new int[]{3, 1});
+
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                for (int k = 0; k < 2; k++) {
+                    int expected = 0;
+
+                    for (int[] row : data) {
+                        if (row[0] == k && row[1] == j && row[3] == i) expected++;
+                    }
+
+                    assertEquals(expected, counts[i * 2 + j][k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public final void testAdTreeTables() {
+        setUp();
+
+        AdTreeStatistics statistics = new AdTreeStatistics(dataSet);
+        ChiSquareTest shared = new ChiSquareTest(dataSet, 0.05, statistics);
+        ChiSquareTest own = new ChiSquareTest(dataSet, 0.05);
+
+        int[][] questions = {{0, 1}, {0, 1, 2}, {0, 1, 3, 2}, {2, 3, 0}, {3, 1, 0, 2}};
+
+        for (int[] question : questions) {
+            ChiSquareTest.Result expected = own.calcChiSquare(question);
+            ChiSquareTest.Result result = shared.calcChiSquare(question);
+            assertEquals(expected.getXSquare(), result.getXSquare(), 1e-10);
+            assertEquals(expected.getDf(), result.getDf());
+            assertEquals(own.isDetermined(question, 0.9), shared.isDetermined(question, 0.9));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAdTreeTooManyParents() {
+        List<Node> variables = new LinkedList<>();
+
+        for (int j = 0; j < 17; j++) {
+            variables.add(new DiscreteVariable("X" + j, 4));
+        }
+
+        AdTreeStatistics statistics = new AdTreeStatistics(new ColtDataSet(10, variables));
+        int[] parents = new int[16];
+        for (int j = 0; j < 16; j++) parents[j] = j + 1;
+
+        // 4^16 combinations of parent values do not fit in an int.
+        statistics.getCounts(0, parents);
+    }
+
     private static int[] pickRandomCell(int size) {
 
         int[] cell = new int[size];
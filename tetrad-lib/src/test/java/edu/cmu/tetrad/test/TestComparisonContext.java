@@ -0,0 +1,131 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ComparisonContext;
+import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the one-pass comparison counts agree with the confusion classes and the structural Hamming distance
+ * they stand in for.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestComparisonContext {
+
+    @Test
+    public void testCounts() {
+        RandomUtil.getInstance().setSeed(49283L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        for (int trial = 0; trial < 50; trial++) {
+            Graph trueGraph = randomGraph(nodes, 0.3);
+            Graph estGraph = randomGraph(nodes, 0.3);
+
+            ComparisonContext context = new ComparisonContext(trueGraph, estGraph);
+
+            AdjacencyConfusion adjacencies = new AdjacencyConfusion(trueGraph, estGraph);
+            assertEquals(adjacencies.getAdjTp(), context.getAdjTp());
+            assertEquals(adjacencies.getAdjFp(), context.getAdjFp());
+            assertEquals(adjacencies.getAdjFn(), context.getAdjFn());
+            assertEquals(adjacencies.getAdjTn(), context.getAdjTn());
+
+            ArrowConfusion arrows = new ArrowConfusion(trueGraph, estGraph);
+            assertEquals(arrows.getArrowsTp(), context.getArrowsTp());
+            assertEquals(arrows.getArrowsFp(), context.getArrowsFp());
+            assertEquals(arrows.getArrowsFn(), context.getArrowsFn());
+            assertEquals(arrows.getArrowsTn(), context.getArrowsTn());
+            assertEquals(arrows.getArrowsTpc(), context.getArrowsTpc());
+            assertEquals(arrows.getArrowsFpc(), context.getArrowsFpc());
+            assertEquals(arrows.getArrowsFnc(), context.getArrowsFnc());
+            assertEquals(arrows.getArrowsTnc(), context.getArrowsTnc());
+            assertEquals(arrows.getTwoCycleTp(), context.getTwoCycleTp());
+            assertEquals(arrows.getTwoCycleFp(), context.getTwoCycleFp());
+            assertEquals(arrows.getTwoCycleFn(), context.getTwoCycleFn());
+
+            TailConfusion tails = new TailConfusion(trueGraph, estGraph);
+            assertEquals(tails.getArrowsTp(), context.getTailsTp());
+            assertEquals(tails.getArrowsFp(), context.getTailsFp());
+            assertEquals(tails.getArrowsFn(), context.getTailsFn());
+            assertEquals(tails.getArrowsTn(), context.getTailsTn());
+
+            assertEquals(SearchGraphUtils.structuralHammingDistance3(trueGraph, estGraph), context.getShd());
+        }
+    }
+
+    // A graph over the given nodes in which each pair is adjacent with the given probability, by a directed,
+    // undirected, bidirected, nondirected or partially oriented edge or by a two-cycle.
+    private Graph randomGraph(List<Node> nodes, double density) {
+        Graph graph = new EdgeListGraph(nodes);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                if (RandomUtil.getInstance().nextDouble() > density) continue;
+
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+
+                switch (RandomUtil.getInstance().nextInt(7)) {
+                    case 0:
+                        graph.addDirectedEdge(x, y);
+                        break;
+                    case 1:
+                        graph.addDirectedEdge(y, x);
+                        break;
+                    case 2:
+                        graph.addDirectedEdge(x, y);
+                        graph.addDirectedEdge(y, x);
+                        break;
+                    case 3:
+                        graph.addUndirectedEdge(x, y);
+                        break;
+                    case 4:
+                        graph.addBidirectedEdge(x, y);
+                        break;
+                    case 5:
+                        graph.addNondirectedEdge(x, y);
+                        break;
+                    default:
+                        graph.addPartiallyOrientedEdge(x, y);
+                }
+            }
+        }
+
+        return graph;
+    }
+}
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.TimeSeriesUtils;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
@@ -83,9 +84,54 @@ public final class TestCovarianceMatrix {
         assertEquals(-.051, c2.getValue(0, 1), 0.001);
         assertEquals(-.609, c3.getValue(0, 1), 0.001);
     }
-}
 
+    /**
+     * Tests that covariances over lagged views of a series match those computed column by column.
+     */
+    @Test
+    public void testLaggedCovariances() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
+
+        for (int i = 0; i < 3; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet series = new ColtDataSet(200, variables);
 
+        for (int j = 0; j < 3; j++) {
+            double last = 0.0;
 
+            for (int i = 0; i < 200; i++) {
+                last = 0.5 * last + RandomUtil.getInstance().nextNormal(0, 1) + 3;
+                series.setDouble(i, j, last);
+            }
+        }
+
+        int numLags = 4;
+        DataSet lagged = TimeSeriesUtils.createLagData(series, numLags);
+
+        assertEquals(200 - numLags, lagged.getNumRows());
+        assertEquals(series.getDouble(numLags - 2 + 5, 1), lagged.getDouble(5, 2 * 3 + 1), 0.0);
+
+        ICovarianceMatrix c1 = new CovarianceMatrix(lagged);
+        ICovarianceMatrix c2 = new CovarianceMatrixOnTheFly(lagged);
 
+        for (int i = 0; i < lagged.getNumColumns(); i++) {
+            for (int j = 0; j < lagged.getNumColumns(); j++) {
+                assertEquals(c2.getValue(i, j), c1.getValue(i, j), 1e-10);
+            }
+        }
+
+        // Changes to the series are not seen in the lagged data, nor the other way around.
+        double value = lagged.getDouble(5, 2 * 3 + 1);
+        series.setDouble(numLags - 2 + 5, 1, value + 1);
+        assertEquals(value, lagged.getDouble(5, 2 * 3 + 1), 0.0);
 
+        double before = series.getDouble(6 + numLags, 0);
+        lagged.setDouble(6, 0, before + 2);
+        assertEquals(before + 2, lagged.getDouble(6, 0), 0.0);
+        assertEquals(before, series.getDouble(6 + numLags, 0), 0.0);
+    }
+}
@@ -29,12 +29,15 @@ import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -102,6 +105,51 @@ public class TestCpc {
 
     }
 
+    /**
+     * Separating sets found once per pair of endpoints, in parallel, should classify every unshielded triple as
+     * the triple-by-triple version does, and with an oracle should find exactly the colliders of the DAG.
+     */
+    @Test
+    public void testPairSepsets() {
+        RandomUtil.getInstance().setSeed(3928374823L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Dag dag = new Dag(GraphUtils.randomGraph(nodes, 0, 16, 5, 5, 5, false));
+        IndependenceTest test = new IndTestDSep(dag);
+        Graph skeleton = GraphUtils.undirectedGraph(dag);
+
+        SepsetsConservative conservative = new SepsetsConservative(skeleton, test, null, -1);
+        SepsetsConservativeMajority majority = new SepsetsConservativeMajority(skeleton, test, null, -1);
+
+        List<Triple> triples = ColliderClassification.getUnshieldedTriples(skeleton);
+        Map<NodePair, List<List<Node>>> sepsets = ColliderClassification.getSepsets(triples, conservative);
+
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
+
+            List<List<Node>> sepsetsxz = sepsets.get(new NodePair(x, z));
+
+            assertEquals(conservative.isCollider(x, y, z), conservative.isCollider(y, sepsetsxz));
+            assertEquals(conservative.isNoncollider(x, y, z), conservative.isNoncollider(y, sepsetsxz));
+            assertEquals(majority.isCollider(x, y, z), majority.isCollider(y, sepsetsxz));
+            assertEquals(majority.isNoncollider(x, y, z), majority.isNoncollider(y, sepsetsxz));
+            assertEquals(dag.isDefCollider(x, y, z), conservative.isCollider(y, sepsetsxz));
+        }
+
+        Graph pattern = SearchGraphUtils.patternForDag(dag);
+        Graph resultGraph = new Cpc(test).search();
+        resultGraph = GraphUtils.replaceNodes(resultGraph, pattern.getNodes());
+
+        assertEquals(pattern.getEdges(), resultGraph.getEdges());
+    }
+
     /**
      * Presents the input graph to FCI and checks to make sure the output of FCI is equivalent to the given output
      * graph.
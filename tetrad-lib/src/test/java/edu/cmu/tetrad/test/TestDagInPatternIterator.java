@@ -26,14 +26,16 @@ import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.DagInPatternIterator;
+import edu.cmu.tetrad.search.DagInPatternSampler;
 import edu.cmu.tetrad.search.SearchGraphUtils;
 import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.math.BigInteger;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -231,7 +233,47 @@ public class TestDagInPatternIterator {
 
         assertEquals(6, count);
     }
-}
 
+    @Test
+    public void testSampler() {
+        RandomUtil.getInstance().setSeed(342233L);
+
+        for (int trial = 0; trial < 10; trial++) {
+            List<Node> nodes = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                nodes.add(new GraphNode("X" + (i + 1)));
+            }
+
+            Graph graph = GraphUtils.randomGraph(nodes, 0, 10, 4, 4, 4, false);
+            Graph pattern = SearchGraphUtils.patternForDag(graph);
+
+            int count = 0;
+            DagInPatternIterator iterator = new DagInPatternIterator(pattern);
+
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+
+            DagInPatternSampler sampler = new DagInPatternSampler(pattern);
+            assertEquals(BigInteger.valueOf(count), sampler.getNumDags());
+
+            Set<Graph> dags = new HashSet<>();
+            Iterator<Graph> dagIterator = sampler.iterator();
+
+            while (dagIterator.hasNext()) {
+                Graph dag = dagIterator.next();
+                new Dag(dag);
+                assertEquals(pattern, SearchGraphUtils.patternForDag(dag));
+                dags.add(dag);
+            }
 
+            assertEquals(count, dags.size());
 
+            for (Graph dag : sampler.sample(10)) {
+                assertTrue(dags.contains(dag));
+            }
+        }
+    }
+}
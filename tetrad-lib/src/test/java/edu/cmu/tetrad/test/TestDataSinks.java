@@ -0,0 +1,135 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.graph.RandomForward;
+import edu.cmu.tetrad.algcomparison.simulation.SemSimulation;
+import edu.cmu.tetrad.algcomparison.simulation.StreamingSimulation;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.Parameters;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sinks that simulated data are streamed to.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestDataSinks {
+
+    @Test
+    public void testTabular() throws IOException {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new ContinuousVariable("X2"));
+
+        StringWriter out = new StringWriter();
+        TabularDataSink sink = new TabularDataSink(out, '\t');
+        sink.setDecimals(4);
+
+        sink.start(variables, 3);
+        sink.write(new double[][]{{1.23456, -0.5}, {Double.NaN, 12}}, 2);
+        sink.write(new double[][]{{-0.00001}, {1e20}}, 1);
+        sink.close();
+
+        assertEquals("X1\tX2\n1.2346\t*\n-0.5000\t12.0000\n0.0000\t1.0E20\n", out.toString());
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new ContinuousVariable("X2"));
+
+        File file = File.createTempFile("data", ".bin");
+        file.deleteOnExit();
+
+        BinaryDataSink sink = new BinaryDataSink(file);
+        sink.start(variables, 3);
+        sink.write(new double[][]{{1.5, -2}, {Double.NaN, 3}}, 2);
+        sink.write(new double[][]{{4}, {5}}, 1);
+        sink.close();
+
+        DataSet data = BinaryDataSink.read(file);
+
+        assertEquals(3, data.getNumRows());
+        assertEquals("X2", data.getVariable(1).getName());
+        assertEquals(-2, data.getDouble(1, 0), 0);
+        assertEquals(Double.NaN, data.getDouble(0, 1), 0);
+        assertEquals(5, data.getDouble(2, 1), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testBinaryShort() throws IOException {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+
+        File file = File.createTempFile("data", ".bin");
+        file.deleteOnExit();
+
+        BinaryDataSink sink = new BinaryDataSink(file);
+        sink.start(variables, 3);
+        sink.write(new double[][]{{1}}, 1);
+        sink.close();
+    }
+
+    @Test
+    public void testStreamingSimulation() throws IOException {
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 2);
+        parameters.set("numMeasures", 10);
+        parameters.set("numLatents", 2);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 10000);
+        parameters.set("randomizeColumns", true);
+
+        final List<File> files = new ArrayList<>();
+
+        SemSimulation simulation = new SemSimulation(new RandomForward());
+
+        simulation.createData(parameters, new StreamingSimulation.Sinks() {
+            public DataSink getSink(int index) throws IOException {
+                File file = File.createTempFile("data", ".bin");
+                file.deleteOnExit();
+                files.add(file);
+                return new BinaryDataSink(file);
+            }
+        });
+
+        assertEquals(2, simulation.getNumDataModels());
+        assertEquals(2, files.size());
+
+        for (File file : files) {
+            DataSet data = BinaryDataSink.read(file);
+            assertEquals(10000, data.getNumRows());
+            assertEquals(10, data.getNumColumns());
+        }
+    }
+}
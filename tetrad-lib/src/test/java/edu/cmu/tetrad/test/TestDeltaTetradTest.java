@@ -111,6 +111,37 @@ public class TestDeltaTetradTest {
         }
     }
 
+    @Test
+    public void testCachedFourthMoments() {
+        RandomUtil.getInstance().setSeed(482834823L);
+
+        DataSet data = getFigure4aSem().simulateData(500, false);
+        Node x1 = data.getVariable("x1");
+        Node x2 = data.getVariable("x2");
+        Node x3 = data.getVariable("x3");
+        Node x4 = data.getVariable("x4");
+
+        Tetrad t1234 = new Tetrad(x1, x2, x3, x4);
+        Tetrad t1342 = new Tetrad(x1, x3, x4, x2);
+        Tetrad t1423 = new Tetrad(x1, x4, x2, x3);
+
+        DeltaTetradTest cached = new DeltaTetradTest(data);
+        DeltaTetradTest uncached = new DeltaTetradTest(data);
+        uncached.setCacheFourthMoments(false);
+
+        List<Tetrad[]> tetrads = new ArrayList<>();
+        tetrads.add(new Tetrad[]{t1234});
+        tetrads.add(new Tetrad[]{t1234, t1342});
+        tetrads.add(new Tetrad[]{t1342, t1423});
+
+        double[] p = cached.getPValues(tetrads);
+
+        for (int i = 0; i < tetrads.size(); i++) {
+            assertEquals(uncached.getPValue(tetrads.get(i)), p[i], 1e-10);
+            assertEquals(p[i], cached.getPValue(tetrads.get(i)), 1e-10);
+        }
+    }
+
     // Bollen and Ting, Confirmatory Tetrad Analysis, p. 164 Sympathy and Anger.
 
     @Test
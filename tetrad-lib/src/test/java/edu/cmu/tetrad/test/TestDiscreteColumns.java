@@ -0,0 +1,138 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compact coding of discrete columns.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestDiscreteColumns {
+
+    @Test
+    public void testBoxes() {
+        RandomUtil.getInstance().setSeed(48292L);
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("X1", 3));
+        variables.add(new DiscreteVariable("X2", 200));
+        variables.add(new ContinuousVariable("X3"));
+
+        int numRows = 100;
+
+        DataSet vertical = new BoxDataSet(new VerticalIntDataBox(numRows, 3), variables);
+        DataSet mixed = new BoxDataSet(new MixedDataBox(variables, numRows), variables);
+
+        for (int i = 0; i < numRows; i++) {
+            int x1 = i % 10 == 0 ? -99 : RandomUtil.getInstance().nextInt(3);
+            int x2 = RandomUtil.getInstance().nextInt(200);
+
+            vertical.setInt(i, 0, x1);
+            vertical.setInt(i, 1, x2);
+            mixed.setInt(i, 0, x1);
+            mixed.setInt(i, 1, x2);
+            mixed.setDouble(i, 2, 0.5);
+        }
+
+        for (DataSet dataSet : new DataSet[]{vertical, mixed}) {
+            DiscreteColumns columns = new DiscreteColumns(dataSet);
+
+            assertEquals(numRows, columns.getNumRows());
+            assertEquals(3, columns.getNumCategories(0));
+            assertEquals(200, columns.getNumCategories(1));
+            assertTrue(columns.getColumn(0).hasMissingValues());
+            assertFalse(columns.getColumn(1).hasMissingValues());
+
+            if (dataSet == mixed) {
+                assertFalse(columns.isDiscrete(2));
+                assertNull(columns.getColumn(2));
+            }
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < 2; j++) {
+                    int value = dataSet.getInt(i, j);
+                    int expected = value == DiscreteVariable.MISSING_VALUE ? DiscreteColumns.MISSING : value;
+                    assertEquals(expected, columns.get(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCopied() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("X1", 2));
+
+        DataSet dataSet = new BoxDataSet(new ByteDataBox(5, 1), variables);
+
+        for (int i = 0; i < 5; i++) {
+            dataSet.setInt(i, 0, i % 2);
+        }
+
+        DiscreteColumns columns = new DiscreteColumns(dataSet);
+
+        for (int i = 0; i < 5; i++) {
+            dataSet.setInt(i, 0, 1 - i % 2);
+        }
+
+        DiscreteColumns changed = new DiscreteColumns(dataSet);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i % 2, columns.get(i, 0));
+            assertEquals(1 - i % 2, changed.get(i, 0));
+        }
+    }
+
+    @Test
+    public void testColumnViews() {
+        DiscreteColumnView bytes = new ByteDataBox(new byte[][]{{0, 1}, {2, -99}}).getColumnView(1);
+        assertEquals(2, bytes.size());
+        assertEquals(1, bytes.get(0));
+        assertEquals(-99, bytes.get(1));
+
+        DiscreteColumnView shorts = new ShortDataBox(new short[][]{{0, 300}, {2, -99}}).getColumnView(1);
+        assertEquals(2, shorts.size());
+        assertEquals(300, shorts.get(0));
+        assertEquals(-99, shorts.get(1));
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("X1", 2));
+        variables.add(new ContinuousVariable("X2"));
+
+        MixedDataBox mixed = new MixedDataBox(variables, 3);
+        mixed.set(1, 0, 1);
+
+        assertEquals(1, mixed.getColumnView(0).get(1));
+        assertEquals(-99, mixed.getColumnView(0).get(0));
+        assertNull(mixed.getColumnView(1));
+    }
+}
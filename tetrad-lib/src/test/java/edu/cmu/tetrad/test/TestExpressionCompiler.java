@@ -0,0 +1,158 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
+import edu.cmu.tetrad.calculator.expression.Context;
+import edu.cmu.tetrad.calculator.expression.Expression;
+import edu.cmu.tetrad.calculator.expression.ExpressionCompiler;
+import edu.cmu.tetrad.calculator.parser.ExpressionParser;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that compiled expressions evaluate as the expressions themselves do.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestExpressionCompiler {
+
+    private static final List<String> SLOTS = Arrays.asList("X", "Y", "Z", "W");
+
+    @Test
+    public void testDeterministic() throws ParseException {
+        List<String> formulas = new ArrayList<>();
+
+        formulas.add("b1 * X + sin(Y) + b2 * Z ^ 2 + 3");
+        formulas.add("X * Y * Z - W / 2");
+        formulas.add("-X + pow(abs(Y), 1.5)");
+        formulas.add("exp(X) + ln(abs(Y) + 1) + log10(abs(Z) + 1)");
+        formulas.add("max(X, Y, Z) - min(X, Y, 0.5)");
+        formulas.add("logistic(X) + tanh(Y) + sqrt(abs(Z))");
+        formulas.add("ceil(X) + floor(Y) + round(Z) + signum(W)");
+        formulas.add("IF(X > Y, X, Y * 2)");
+        formulas.add("IF(X < 0 AND Y < 0, 1, 0) + IF(Z >= W, 1, 0)");
+        formulas.add("Switch(IF(X > 0, 0, 1), Y, Z)");
+        formulas.add("2 ^ 5 * cos(0) + b1");
+
+        ExpressionParser parser = new ExpressionParser();
+
+        for (String formula : formulas) {
+            Expression expression = parser.parseExpression(formula);
+            compare(expression, formula);
+        }
+    }
+
+    @Test
+    public void testRandom() throws ParseException {
+        RandomUtil.getInstance().setSeed(2398472L);
+
+        Map<String, Double> formulas = new LinkedHashMap<>();
+
+        formulas.put("Normal(X, 1)", 2.0);
+        formulas.put("X + N(0, b2)", 2.0);
+        formulas.put("U(0, X)", 1.0);
+        formulas.put("b1 * Split(0, 1, 5, 6)", 2.1);
+
+        ExpressionParser parser = new ExpressionParser();
+        ExpressionCompiler compiler = new ExpressionCompiler(SLOTS, getParameters(), null);
+
+        int n = 20000;
+        double[][] columns = new double[4][n];
+        Arrays.fill(columns[0], 2.0);
+
+        for (String formula : formulas.keySet()) {
+            CompiledExpression compiled = compiler.compile(parser.parseExpression(formula));
+
+            double[] out = new double[n];
+            compiled.evaluate(columns, 0, n, out);
+
+            double sum = 0.0;
+            for (double v : out) sum += v;
+
+            assertEquals(formula, formulas.get(formula), sum / n, 0.1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnassigned() throws ParseException {
+        Expression expression = new ExpressionParser().parseExpression("X * V");
+        new ExpressionCompiler(SLOTS).compile(expression).evaluate(new double[4]);
+    }
+
+    // Checks the compiled expression one row at a time and a block at a time against the expression itself.
+    private void compare(Expression expression, String formula) {
+        final Map<String, Double> parameters = getParameters();
+        final Map<String, Double> values = new HashMap<>();
+
+        Context context = new Context() {
+            public Double getValue(String var) {
+                Double value = parameters.get(var);
+                return value != null ? value : values.get(var);
+            }
+        };
+
+        CompiledExpression compiled = new ExpressionCompiler(SLOTS, parameters, null).compile(expression);
+
+        Random random = new Random(4324L);
+        int n = 100;
+        double[][] columns = new double[SLOTS.size()][n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < SLOTS.size(); j++) {
+                columns[j][i] = 3 * random.nextGaussian();
+            }
+        }
+
+        double[] out = new double[n - 10];
+        compiled.evaluate(columns, 10, n, out);
+
+        for (int i = 0; i < n; i++) {
+            double[] row = new double[SLOTS.size()];
+
+            for (int j = 0; j < SLOTS.size(); j++) {
+                row[j] = columns[j][i];
+                values.put(SLOTS.get(j), row[j]);
+            }
+
+            double expected = expression.evaluate(context);
+
+            assertEquals(formula, expected, compiled.evaluate(row), 1e-12);
+
+            if (i >= 10) {
+                assertEquals(formula, expected, out[i - 10], 1e-12);
+            }
+        }
+    }
+
+    private Map<String, Double> getParameters() {
+        Map<String, Double> parameters = new HashMap<>();
+        parameters.put("b1", 0.7);
+        parameters.put("b2", 1.3);
+        return parameters;
+    }
+}
@@ -27,13 +27,16 @@ import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TextTable;
 import org.junit.Test;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -224,6 +227,143 @@ public class TestFci {
         search.search();
     }
 
+    @Test
+    public void testSearch16() {
+        int numVars = 10;
+        int numEdges = 10;
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Dag trueGraph = new Dag(GraphUtils.randomGraph(nodes, 10, numEdges,
+                7, 5, 5, false));
+
+        IndependenceTest test = new IndTestDSep(trueGraph);
+
+        Fci fci = new Fci(test);
+        fci.setPossibleDsepConcurrent(true);
+
+        Graph graph = fci.search();
+
+        DagToPag dagToPag = new DagToPag(trueGraph);
+        Graph truePag = dagToPag.convert();
+
+        assertEquals(graph, truePag);
+        assertTrue(fci.getPossibleDsepEdgesOverBudget().isEmpty());
+    }
+
+    /**
+     * The final orientation skips checks whose inputs have not changed, and should orient exactly as sweeping
+     * every rule over the whole graph until nothing changes does.
+     */
+    @Test
+    public void testFinalOrientation() {
+        RandomUtil.getInstance().setSeed(2374827349L);
+
+        for (int run = 0; run < 5; run++) {
+            List<Node> nodes = new ArrayList<>();
+
+            for (int i = 0; i < 20; i++) {
+                nodes.add(new ContinuousVariable("X" + (i + 1)));
+            }
+
+            Dag dag = new Dag(GraphUtils.randomGraph(nodes, 6, 25, 5, 5, 5, false));
+            IndependenceTest test = new IndTestDSep(dag);
+
+            Fas fas = new Fas(test);
+            Graph graph = fas.search();
+            SepsetMap sepsets = fas.getSepsets();
+
+            FciOrient orient = new FciOrient(new SepsetsSet(sepsets, test));
+            orient.setCompleteRuleSetUsed(true);
+            orient.ruleR0(graph);
+
+            Graph graph1 = new EdgeListGraph(graph);
+            Graph graph2 = new EdgeListGraph(graph);
+
+            FciOrient orient1 = new FciOrient(new SepsetsSet(sepsets, test));
+            orient1.setCompleteRuleSetUsed(true);
+            orient1.doFinalOrientation(graph1);
+
+            FciOrient orient2 = new FciOrient(new SepsetsSet(sepsets, test));
+            orient2.setCompleteRuleSetUsed(true);
+            sweep(orient2, graph2);
+
+            assertEquals(graph2, graph1);
+        }
+    }
+
+    @Test
+    public void testPossibleDsep() {
+        Node a = new GraphNode("A");
+        Node b = new GraphNode("B");
+        Node c = new GraphNode("C");
+        Node d = new GraphNode("D");
+
+        List<Node> nodes = new ArrayList<>();
+        Collections.addAll(nodes, a, b, c, d);
+
+        // A o-> B <-o C o-o D. C is reached from A through the collider at B, but D is not, since C is not a
+        // collider on B, C, D.
+        Graph graph = new EdgeListGraph(nodes);
+        graph.addEdge(Edges.partiallyOrientedEdge(a, b));
+        graph.addEdge(Edges.partiallyOrientedEdge(c, b));
+        graph.addEdge(Edges.nondirectedEdge(c, d));
+
+        PossibleDsepConcurrent possibleDsep = new PossibleDsepConcurrent(graph, new IndTestDSep(graph));
+
+        assertEquals(new HashSet<>(Arrays.asList(b, c)), possibleDsep.getPossibleDsep(a));
+        assertEquals(new HashSet<>(Collections.singletonList(c)), possibleDsep.getPossibleDsep(d));
+
+        // A o-> B <-> C <-o D. Now D is reached too, unless paths are limited to two edges.
+        graph = new EdgeListGraph(nodes);
+        graph.addEdge(Edges.partiallyOrientedEdge(a, b));
+        graph.addEdge(Edges.bidirectedEdge(b, c));
+        graph.addEdge(Edges.partiallyOrientedEdge(d, c));
+
+        possibleDsep = new PossibleDsepConcurrent(graph, new IndTestDSep(graph));
+
+        assertEquals(new HashSet<>(Arrays.asList(b, c, d)), possibleDsep.getPossibleDsep(a));
+
+        possibleDsep.setMaxPathLength(2);
+        assertEquals(new HashSet<>(Arrays.asList(b, c)), possibleDsep.getPossibleDsep(a));
+    }
+
+    // The final orientation of FciOrient, with every rule applied to the whole graph each time.
+    private void sweep(FciOrient orient, Graph graph) {
+        orient.setChangeFlag(true);
+        boolean firstTime = true;
+
+        while (orient.isChangeFlag()) {
+            orient.setChangeFlag(false);
+            orient.rulesR1R2cycle(graph);
+            orient.ruleR3(graph);
+
+            if (orient.isChangeFlag() || firstTime && !orient.getKnowledge().isEmpty()) {
+                orient.ruleR4B(graph);
+                firstTime = false;
+            }
+        }
+
+        orient.ruleR5(graph);
+        orient.setChangeFlag(true);
+
+        while (orient.isChangeFlag()) {
+            orient.setChangeFlag(false);
+            orient.ruleR6R7(graph);
+        }
+
+        orient.setChangeFlag(true);
+
+        while (orient.isChangeFlag()) {
+            orient.setChangeFlag(false);
+            orient.rulesR8R9R10(graph);
+        }
+    }
+
     /**
      * Presents the input graph to FCI and checks to make sure the output of FCI is equivalent to the given output
      * graph.
@@ -1557,6 +1557,80 @@ public class TestFges {
     }
 
 
+    @Test
+    public void testPenaltyPath() {
+        RandomUtil.getInstance().setSeed(3029384L);
+
+        Graph dag = GraphUtils.randomGraph(15, 0, 20, 100, 100, 100, false);
+        SemIm im = new SemIm(new SemPm(dag));
+        DataSet data = im.simulateData(1000, false);
+
+        // Cached residual variances give the same score differences as partial correlations.
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data));
+        SemBicScore cached = new SemBicScore(new CovarianceMatrix(data));
+        cached.setCacheResidualVariances(true);
+
+        assertEquals(score.localScoreDiff(0, 1, new int[0]), cached.localScoreDiff(0, 1, new int[0]), 1e-6);
+        assertEquals(score.localScoreDiff(0, 1, new int[]{2, 3}), cached.localScoreDiff(0, 1, new int[]{3, 2}), 1e-6);
+        assertEquals(score.localScore(4, 5, 6), cached.localScore(4, 6, 5), 1e-6);
+        assertTrue(cached.getNumCachedResidualVariances() > 0);
+
+        double[] penaltyDiscounts = {1, 4, 2};
+
+        FgesPenaltyPath path = new FgesPenaltyPath(score);
+        List<Graph> graphs = path.search(penaltyDiscounts);
+
+        assertEquals(3, graphs.size());
+        assertFalse(score.isCacheResidualVariances());
+        assertEquals(1.0, score.getPenaltyDiscount(), 0.0);
+
+        // The largest penalty is run from the empty graph, as a single search would be.
+        SemBicScore single = new SemBicScore(new CovarianceMatrix(data));
+        single.setPenaltyDiscount(4);
+        assertEquals(new Fges(single).search(), graphs.get(1));
+    }
+
+    @Test
+    public void testForbiddenScoreDiff() {
+        RandomUtil.getInstance().setSeed(3029385L);
+
+        Graph dag = GraphUtils.randomGraph(6, 0, 6, 100, 100, 100, false);
+        SemIm im = new SemIm(new SemPm(dag));
+        DataSet data = im.simulateData(1000, false);
+
+        // X3 is made a copy of X1, so that scoring both as parents forbids one of them.
+        for (int i = 0; i < data.getNumRows(); i++) {
+            data.setDouble(i, 2, data.getDouble(i, 0));
+        }
+
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data));
+        SemBicScore cached = new SemBicScore(new CovarianceMatrix(data));
+        cached.setCacheResidualVariances(true);
+        score.setOut(new PrintStream(new ByteArrayOutputStream()));
+        cached.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+        assertTrue(Double.isNaN(score.localScore(3, 0, 1, 2)));
+        assertTrue(Double.isNaN(cached.localScore(3, 0, 1, 2)));
+
+        int numForbidden = 0;
+
+        for (int v = 0; v < 3; v++) {
+            double diff = score.localScoreDiff(v, 3, new int[0]);
+            double cachedDiff = cached.localScoreDiff(v, 3, new int[0]);
+            assertEquals(Double.isNaN(diff), Double.isNaN(cachedDiff));
+
+            if (Double.isNaN(diff)) {
+                numForbidden++;
+                assertTrue(Double.isNaN(score.localScoreDiff(4, 3, new int[]{v})));
+                assertTrue(Double.isNaN(cached.localScoreDiff(4, 3, new int[]{v})));
+            } else {
+                assertEquals(diff, cachedDiff, 1e-6);
+            }
+        }
+
+        assertEquals(1, numForbidden);
+    }
+
     public static void main(String... args) {
         if (args.length > 0) {
             int numMeasures = Integer.parseInt(args[0]);
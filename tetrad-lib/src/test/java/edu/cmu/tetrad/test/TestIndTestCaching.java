@@ -0,0 +1,134 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestCaching;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests remembering the results of independence tests.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestIndTestCaching {
+
+    @Test
+    public void testHits() {
+        RandomUtil.getInstance().setSeed(3928475L);
+        DataSet data = getData();
+        List<Node> v = data.getVariables();
+
+        IndependenceTest test = new IndTestFisherZ(data, 0.05);
+        IndTestCaching caching = new IndTestCaching(new IndTestFisherZ(data, 0.05));
+
+        boolean independent = test.isIndependent(v.get(0), v.get(1), v.get(2), v.get(3));
+        assertEquals(independent, caching.isIndependent(v.get(0), v.get(1), v.get(2), v.get(3)));
+        assertEquals(test.getPValue(), caching.getPValue(), 0.0);
+        assertEquals(0, caching.getNumHits());
+        assertEquals(1, caching.getNumMisses());
+
+        // The order of the pair and of the conditioning set do not matter.
+        assertEquals(independent, caching.isIndependent(v.get(1), v.get(0), v.get(3), v.get(2)));
+        assertEquals(test.getPValue(), caching.getPValue(), 0.0);
+        assertEquals(1, caching.getNumHits());
+        assertEquals(0.5, caching.getHitRate(), 0.0);
+
+        // Decisions are kept with the alpha they were made at.
+        caching.setAlpha(0.01);
+        caching.isIndependent(v.get(0), v.get(1), v.get(2), v.get(3));
+        assertEquals(2, caching.getNumMisses());
+
+        caching.resetCounts();
+        assertTrue(Double.isNaN(caching.getHitRate()));
+        assertEquals(1, caching.getStore().size());
+    }
+
+    @Test
+    public void testBounded() {
+        RandomUtil.getInstance().setSeed(3928476L);
+        DataSet data = getData();
+        List<Node> v = data.getVariables();
+
+        IndTestCaching.Store store = new IndTestCaching.Store(data.getVariableNames(), 10);
+        IndTestCaching caching = new IndTestCaching(new IndTestFisherZ(data, 0.05), store);
+
+        for (int i = 0; i < v.size(); i++) {
+            for (int j = i + 1; j < v.size(); j++) {
+                caching.isIndependent(v.get(i), v.get(j));
+                assertTrue(store.size() <= 10);
+            }
+        }
+
+        assertEquals(45, store.getNumMisses());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        RandomUtil.getInstance().setSeed(3928477L);
+        DataSet data = getData();
+        List<Node> v = data.getVariables();
+
+        IndTestCaching caching = new IndTestCaching(new IndTestFisherZ(data, 0.05));
+
+        for (int i = 1; i < v.size(); i++) {
+            caching.isIndependent(v.get(0), v.get(i), Arrays.asList(v.get((i + 1) % v.size())));
+        }
+
+        File file = File.createTempFile("tests", ".bin");
+        file.deleteOnExit();
+        caching.getStore().save(file);
+
+        IndTestCaching.Store store = IndTestCaching.Store.load(file, 1000);
+        assertEquals(caching.getStore().size(), store.size());
+
+        IndTestCaching warm = new IndTestCaching(new IndTestFisherZ(data, 0.05), store);
+
+        for (int i = 1; i < v.size(); i++) {
+            boolean independent = caching.isIndependent(v.get(0), v.get(i), v.get((i + 1) % v.size()));
+            assertEquals(independent, warm.isIndependent(v.get(i), v.get(0), v.get((i + 1) % v.size())));
+            assertEquals(caching.getPValue(), warm.getPValue(), 0.0);
+        }
+
+        assertEquals(0, warm.getNumMisses());
+    }
+
+    private DataSet getData() {
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 100, 100, 100, false);
+        return new SemIm(new SemPm(graph)).simulateData(500, false);
+    }
+}
@@ -0,0 +1,133 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestHsic;
+import edu.cmu.tetrad.search.IndTestHsicLowRank;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the low rank HSIC test against the exact one.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestIndTestHsicLowRank {
+
+    @Test
+    public void testAgreesWithHsic() {
+        DataSet data = data(200);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        IndTestHsicLowRank lowRank = new IndTestHsicLowRank(data, 0.01);
+        lowRank.setSeed(38491L);
+        IndTestHsic hsic = new IndTestHsic(data, 0.01);
+
+        // X and Y are independent.
+        assertTrue(lowRank.isIndependent(x, y));
+        assertTrue(hsic.isIndependent(x, y));
+
+        // Z depends on X, but not linearly.
+        assertFalse(lowRank.isIndependent(x, z));
+        assertFalse(hsic.isIndependent(x, z));
+    }
+
+    @Test
+    public void testPValue() {
+        DataSet data = data(200);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        IndTestHsicLowRank test = new IndTestHsicLowRank(data, 0.05);
+        test.setPerms(50);
+
+        // No permutation exceeds the statistic, but the p value is still at least 1 / (perms + 1).
+        test.isIndependent(x, z);
+        assertEquals(1.0 / 51, test.getPValue(), 1e-10);
+
+        // Asking again gives the same answer.
+        test.isIndependent(x, y);
+        double p = test.getPValue();
+        test.isIndependent(x, y);
+        assertEquals(p, test.getPValue(), 0.0);
+        assertTrue(p > 0 && p <= 1);
+    }
+
+    @Test
+    public void testSymmetric() {
+        DataSet data = data(200);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        IndTestHsicLowRank test = new IndTestHsicLowRank(data, 0.05);
+        test.setSeed(8472L);
+
+        test.isIndependent(x, y);
+        double p = test.getPValue();
+        double hsic = test.getHsic();
+
+        test.isIndependent(y, x);
+        assertEquals(p, test.getPValue(), 0.0);
+        assertEquals(hsic, test.getHsic(), 0.0);
+
+        test.isIndependent(x, z, y);
+        p = test.getPValue();
+        test.isIndependent(z, x, y);
+        assertEquals(p, test.getPValue(), 0.0);
+    }
+
+    // X and Y independent standard normals; Z = X^2 plus a little noise.
+    private DataSet data(int n) {
+        RandomUtil.getInstance().setSeed(29384L);
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        variables.add(new ContinuousVariable("Y"));
+        variables.add(new ContinuousVariable("Z"));
+
+        // IndTestHsic needs a ColtDataSet.
+        double[][] values = new double[n][3];
+
+        for (int i = 0; i < n; i++) {
+            double x = RandomUtil.getInstance().nextNormal(0, 1);
+            double y = RandomUtil.getInstance().nextNormal(0, 1);
+            values[i][0] = x;
+            values[i][1] = y;
+            values[i][2] = x * x + RandomUtil.getInstance().nextNormal(0, 0.1);
+        }
+
+        return ColtDataSet.makeContinuousData(variables, values);
+    }
+}
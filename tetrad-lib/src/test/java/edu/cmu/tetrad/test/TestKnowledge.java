@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -164,9 +166,66 @@ public final class TestKnowledge {
             assertTrue(knowledge.isForbidden("X11", "X22"));
         }
     }
-}
 
+    @Test
+    public final void testCompiled() {
+        List<Node> nodes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < 60; i++) {
+            nodes.add(new ContinuousVariable("X" + i));
+            names.add("X" + i);
+        }
+
+        Knowledge2 knowledge = new Knowledge2(names);
+
+        knowledge.addToTier(0, "X1*");
+        knowledge.addToTier(1, "X2*");
+        knowledge.addToTier(2, "X3*");
+        knowledge.setTierForbiddenWithin(1, true);
+
+        knowledge.setForbidden("X4", "X5");
+        knowledge.setForbidden("X40", "X1");
+        knowledge.setRequired("X6*", "X5*");
+        knowledge.setRequired("X7", "X8");
+
+        CompiledKnowledge compiled = new CompiledKnowledge(knowledge, nodes);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = 0; j < nodes.size(); j++) {
+                assertEquals(knowledge.isForbidden(names.get(i), names.get(j)), compiled.isForbidden(i, j));
+                assertEquals(knowledge.isRequired(names.get(i), names.get(j)), compiled.isRequired(i, j));
+            }
+        }
+
+        assertEquals(1, compiled.getTier(names.indexOf("X21")));
+        assertEquals(-1, compiled.getTier(names.indexOf("X4")));
+    }
+
+    @Test
+    public final void testCompiledChanged() {
+        List<Node> nodes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
 
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new ContinuousVariable("X" + i));
+            names.add("X" + i);
+        }
 
+        Knowledge2 knowledge = new Knowledge2(names);
+        knowledge.setForbidden("X0", "X1");
 
+        CompiledKnowledge compiled = new CompiledKnowledge(knowledge, nodes);
+        assertTrue(compiled.isFor(knowledge));
+        assertFalse(compiled.isFor(knowledge.copy()));
+        assertEquals(1, compiled.getIndex(nodes.get(1)));
+        assertEquals(-1, compiled.getIndex(new ContinuousVariable("X3")));
 
+        knowledge.setForbidden("X1", "X2");
+        assertFalse(compiled.isFor(knowledge));
+
+        compiled = new CompiledKnowledge(knowledge, nodes);
+        assertTrue(compiled.isFor(knowledge));
+        assertTrue(compiled.isForbidden(1, 2));
+    }
+}
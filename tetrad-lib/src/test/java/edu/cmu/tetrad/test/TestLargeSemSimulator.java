@@ -25,12 +25,16 @@ import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.sem.LargeScaleSimulation;
+import edu.cmu.tetrad.sem.SparseSemSimulator;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the MeasurementSimulator class using diagnostics devised by Richard
@@ -52,9 +56,66 @@ public class TestLargeSemSimulator {
 
         assertEquals(1000, dataset.getNumRows());
     }
-}
 
+    @Test
+    public void testRecursive() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) nodes.add(new ContinuousVariable("X" + i));
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 50, 5, 5, 5, false);
+
+        LargeScaleSimulation simulator = new LargeScaleSimulation(graph);
+        DataSet dataset = simulator.simulateDataRecursive(10000);
+
+        assertEquals(10000, dataset.getNumRows());
+        assertEquals(50, dataset.getNumColumns());
+    }
+
+    @Test
+    public void testSparse() throws Exception {
+
+        // X3 --> X2 --> X1, with the variables out of causal order.
+        int[][] parents = {{1}, {2}, {}};
+        double[][] coefs = {{0.5}, {2.0}, {}};
+        double[] errorVars = {1, 1, 1};
+        double[] means = {0, 0, 3};
 
+        SparseSemSimulator simulator = new SparseSemSimulator(parents, coefs, errorVars, means);
+        simulator.setBlockSize(1000);
 
+        assertTrue(Arrays.equals(new int[]{2, 1, 0}, simulator.getOrder()));
 
+        double[][] data = simulator.simulate(100000, 23L);
 
+        assertEquals(3.0, mean(data[2]), 0.05);
+        assertEquals(5.0, variance(data[1]), 0.1);
+        assertEquals(2.25, variance(data[0]), 0.1);
+
+        // The same seed gives the same data, in memory or in a file.
+        assertTrue(Arrays.deepEquals(data, simulator.simulate(100000, 23L)));
+
+        File file = File.createTempFile("simulation", ".bin");
+        file.deleteOnExit();
+
+        simulator.simulate(100000, 23L, file);
+        assertTrue(Arrays.deepEquals(data, SparseSemSimulator.read(file)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCyclic() {
+        new SparseSemSimulator(new int[][]{{1}, {0}}, new double[][]{{1}, {1}}, new double[2], new double[2]);
+    }
+
+    private double mean(double[] x) {
+        double sum = 0;
+        for (double v : x) sum += v;
+        return sum / x.length;
+    }
+
+    private double variance(double[] x) {
+        double mean = mean(x);
+        double sum = 0;
+        for (double v : x) sum += (v - mean) * (v - mean);
+        return sum / (x.length - 1);
+    }
+}
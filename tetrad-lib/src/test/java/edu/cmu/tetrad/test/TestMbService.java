@@ -0,0 +1,104 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.IndTestDSep;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.search.MbSearch;
+import edu.cmu.tetrad.search.MbService;
+import edu.cmu.tetrad.search.mb.Iamb;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests finding Markov blankets for many targets at once.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestMbService {
+
+    @Test
+    public void testBatch() {
+        RandomUtil.getInstance().setSeed(2938477283L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 15; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Dag dag = new Dag(GraphUtils.randomGraph(nodes, 0, 20, 5, 5, 5, false));
+
+        MbService service = new MbService(new IndTestDSep(dag), new MbService.Searcher() {
+            public MbSearch create(IndependenceTest test) {
+                return new Iamb(test);
+            }
+        });
+
+        List<String> targets = new ArrayList<>();
+        for (Node node : dag.getNodes()) targets.add(node.getName());
+
+        List<MbService.Result> results = service.findMbs(targets);
+        assertEquals(targets.size(), results.size());
+
+        int numTests = 0;
+        int numCached = 0;
+
+        for (int i = 0; i < targets.size(); i++) {
+            MbService.Result result = results.get(i);
+            assertEquals(targets.get(i), result.getTarget().getName());
+
+            Set<String> trueNames = new HashSet<>();
+
+            for (Node node : GraphUtils.markovBlanketDag(result.getTarget(), dag).getNodes()) {
+                trueNames.add(node.getName());
+            }
+
+            trueNames.remove(targets.get(i));
+
+            Set<String> names = new HashSet<>();
+            for (Node node : result.getMb()) names.add(node.getName());
+
+            assertEquals(trueNames, names);
+
+            numTests += result.getNumIndependenceTests();
+            numCached += result.getNumCached();
+        }
+
+        // Overlapping neighborhoods share tests.
+        assertTrue(numCached > 0);
+        assertTrue(service.getStore().size() <= numTests - numCached);
+
+        // Blankets are symmetric, so each adjacency of the merged graph is found from both ends.
+        Graph merged = MbService.merge(results);
+        int size = 0;
+        for (MbService.Result result : results) size += result.getMb().size();
+        assertEquals(size, 2 * merged.getNumEdges());
+    }
+}
@@ -0,0 +1,71 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekRules;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the Meek rules.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestMeekRules {
+
+    /**
+     * Starting from a DAG and undirecting the edges not forced by colliders, the rules should find its pattern.
+     * Here D --> A is oriented by R3, across the kite D --- B, D --- C, B --> A <-- C.
+     */
+    @Test
+    public void testKite() {
+        Graph dag = GraphConverter.convert("D-->B,D-->C,B-->A,C-->A,D-->A");
+
+        MeekRules rules = new MeekRules();
+        rules.setUndirectUnforcedEdges(true);
+        rules.orientImplied(dag);
+
+        Graph pattern = GraphConverter.convert("D---B,D---C,B-->A,C-->A,D-->A");
+        pattern = GraphUtils.replaceNodes(pattern, dag.getNodes());
+
+        assertEquals(pattern, dag);
+    }
+
+    /**
+     * An edge into a collider is kept; the others are undirected unless the rules orient them again.
+     */
+    @Test
+    public void testUnforced() {
+        Graph dag = GraphConverter.convert("X1-->X3,X2-->X3,X3-->X4,X5-->X4,X5-->X6");
+
+        MeekRules rules = new MeekRules();
+        rules.setUndirectUnforcedEdges(true);
+        rules.orientImplied(dag);
+
+        Graph pattern = GraphConverter.convert("X1-->X3,X2-->X3,X3-->X4,X5-->X4,X5---X6");
+        pattern = GraphUtils.replaceNodes(pattern, dag.getNodes());
+
+        assertEquals(pattern, dag);
+    }
+}
@@ -0,0 +1,194 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
+import edu.cmu.tetrad.algcomparison.algorithm.StabilityEngine;
+import edu.cmu.tetrad.algcomparison.algorithm.oracle.pattern.Fges;
+import edu.cmu.tetrad.algcomparison.score.SemBicScore;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataType;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the engine behind StARS and stability selection.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestStabilityEngine {
+
+    @Test
+    public void testInstability() {
+        RandomUtil.getInstance().setSeed(3829422L);
+        DataSet data = getData();
+        List<Node> nodes = data.getVariables();
+
+        StabilityEngine engine = new StabilityEngine(data, 4, 100);
+
+        List<Graph> graphs = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Graph graph = new EdgeListGraph(nodes);
+            graph.addDirectedEdge(nodes.get(0), nodes.get(1));
+            if (i % 2 == 0) graph.addUndirectedEdge(nodes.get(2), nodes.get(3));
+            graphs.add(graph);
+        }
+
+        // Only the pair (2, 3) is unstable, with theta = 1/2.
+        int p = nodes.size();
+        assertEquals(0.5 / (p * (p - 1) / 2.0), engine.getInstability(graphs), 1e-12);
+    }
+
+    /**
+     * Walks a path on which the instability is known: at value v, the pair (2, 3) is adjacent in k(v) of the 4
+     * subsamples, with k = 0, 0, 1, 2, 2 for v = 1, ..., 5, and no other pair varies. So the instabilities are 0,
+     * 0, 2(1/4)(3/4)/45 and 2(1/2)(1/2)/45, about 0.0083 and 0.0111, for the 45 pairs of 10 variables. With a cutoff
+     * of 0.01, the walk starts from v = 1, the more stable end, stops at v = 4, which is over the cutoff, and
+     * selects v = 3, without searching at v = 5. Started from v = 5 instead, the walk stops at once.
+     */
+    @Test
+    public void testPath() {
+        RandomUtil.getInstance().setSeed(3829423L);
+        DataSet data = getData();
+
+        StabilityEngine engine = new StabilityEngine(data, 4, data.getNumRows() / 2);
+        double cutoff = 0.01;
+
+        PathAlgorithm algorithm = new PathAlgorithm(engine);
+        StabilityEngine.Path path = engine.searchPath(algorithm, new Parameters(),
+                "penaltyDiscount", new double[]{1, 2, 3, 4, 5}, cutoff);
+
+        assertEquals(4, path.size());
+
+        double[] expectedValues = {1, 2, 3, 4};
+        double[] expectedInstabilities = {0, 0, 0.375 / 45, 0.5 / 45};
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expectedValues[i], path.getValue(i), 0.0);
+            assertEquals(expectedInstabilities[i], path.getInstability(i), 1e-12);
+        }
+
+        assertEquals(3, path.getSelectedValue(cutoff), 0.0);
+        assertFalse(algorithm.searched.contains(5.0));
+
+        algorithm = new PathAlgorithm(engine);
+        path = engine.searchPath(algorithm, new Parameters(),
+                "penaltyDiscount", new double[]{5, 4, 3, 2, 1}, cutoff);
+
+        assertEquals(1, path.size());
+        assertEquals(5, path.getValue(0), 0.0);
+        assertEquals(Collections.singleton(5.0), algorithm.searched);
+    }
+
+    @Test
+    public void testCovariance() {
+        RandomUtil.getInstance().setSeed(3829424L);
+        DataSet data = getData();
+
+        StabilityEngine engine = new StabilityEngine(data, 3, data.getNumRows() / 2);
+        Parameters parameters = new Parameters();
+
+        List<Graph> fromData = engine.search(new Fges(new SemBicScore()), parameters);
+        engine.setUseCovariance(true);
+        List<Graph> fromCovariance = engine.search(new Fges(new SemBicScore()), parameters);
+
+        for (int s = 0; s < 3; s++) {
+            Graph graph = GraphUtils.replaceNodes(fromCovariance.get(s), fromData.get(s).getNodes());
+            assertEquals(fromData.get(s), graph);
+        }
+    }
+
+    // Adjoins X1 and X2 always, and X3 and X4 in the first k subsamples, where k depends on the penalty discount
+    // as described in testPath.
+    private static class PathAlgorithm implements Algorithm {
+        static final long serialVersionUID = 23L;
+        private final transient StabilityEngine engine;
+
+        // The penalty discounts searched at.
+        private final transient Set<Double> searched =
+                Collections.newSetFromMap(new ConcurrentHashMap<Double, Boolean>());
+
+        private PathAlgorithm(StabilityEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public Graph search(DataModel dataSet, Parameters parameters) {
+            int subsample = -1;
+
+            for (int s = 0; s < engine.getNumSubsamples(); s++) {
+                if (engine.getSubsample(s) == dataSet) subsample = s;
+            }
+
+            double v = parameters.getDouble("penaltyDiscount");
+            searched.add(v);
+            int k = v <= 2 ? 0 : v <= 3 ? 1 : 2;
+
+            List<Node> nodes = dataSet.getVariables();
+            Graph graph = new EdgeListGraph(nodes);
+            graph.addUndirectedEdge(nodes.get(0), nodes.get(1));
+            if (subsample < k) graph.addUndirectedEdge(nodes.get(2), nodes.get(3));
+            return graph;
+        }
+
+        @Override
+        public Graph getComparisonGraph(Graph graph) {
+            return new EdgeListGraph(graph);
+        }
+
+        @Override
+        public String getDescription() {
+            return "Path";
+        }
+
+        @Override
+        public DataType getDataType() {
+            return DataType.Continuous;
+        }
+
+        @Override
+        public List<String> getParameters() {
+            return new ArrayList<>();
+        }
+    }
+
+    private DataSet getData() {
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 100, 100, 100, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(1000, false);
+    }
+}